@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.common;
+
+/**
+ * Ends the container a task runs in, where a task would otherwise call
+ * {@link System#exit(int)}. A container is normally a JVM of its own, but in
+ * local mode it is a thread of the AM, which must survive the task. Such a
+ * container installs a {@link Handler} on its thread, which the threads
+ * started by its tasks inherit, and is stopped by the handler instead.
+ */
+public class ContainerExit {
+
+  /** Stops a container which does not have a JVM of its own. */
+  public interface Handler {
+
+    /**
+     * Stop the container, e.g. by interrupting its task. Called on the
+     * thread of the task or on any thread the task started.
+     */
+    void exit(int status, String reason);
+
+    /** Whether {@link #exit(int, String)} has been called. */
+    boolean isExiting();
+  }
+
+  /**
+   * Thrown by {@link ContainerExit#exit(int, String)} in a container with a
+   * {@link Handler}, to unwind the thread which asked for the exit.
+   */
+  public static class ExitException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    public ExitException(int status, String reason) {
+      super(reason);
+      this.status = status;
+    }
+
+    public int getStatus() {
+      return status;
+    }
+  }
+
+  private static final InheritableThreadLocal<Handler> handler =
+      new InheritableThreadLocal<Handler>();
+
+  public static void setHandler(Handler exitHandler) {
+    handler.set(exitHandler);
+  }
+
+  public static void clearHandler() {
+    handler.remove();
+  }
+
+  /**
+   * Exit the container with <code>status</code>. Does not return: either
+   * the JVM exits, or the handler of the container is told and an
+   * {@link ExitException} is thrown.
+   */
+  public static void exit(int status, String reason) {
+    Handler exitHandler = handler.get();
+    if (exitHandler == null) {
+      System.exit(status);
+    }
+    exitHandler.exit(status, reason);
+    throw new ExitException(status, reason);
+  }
+
+  /** Whether the container of the current thread is being stopped. */
+  public static boolean isExiting() {
+    Handler exitHandler = handler.get();
+    return exitHandler != null && exitHandler.isExiting();
+  }
+}
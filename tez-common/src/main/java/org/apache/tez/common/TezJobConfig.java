@@ -54,6 +54,100 @@ public class TezJobConfig {
   public static final int DEFAULT_TEZ_ENGINE_IFILE_READAHEAD_BYTES =
       4 * 1024 * 1024;
 
+  /**
+   * Write each IFile key as the length of the prefix it shares with the
+   * previous key plus the remaining bytes. Pays off for sorted outputs with
+   * long, similar keys. Readers decode such files regardless of this setting.
+   */
+  public static final String TEZ_ENGINE_IFILE_PREFIX_KEYS =
+      "tez.engine.ifile.prefix-keys";
+  public static final boolean DEFAULT_TEZ_ENGINE_IFILE_PREFIX_KEYS = false;
+
+  /**
+   * Size in bits of the Bloom filter built over the keys of a semi-join
+   * build side. Must be the same on all tasks of that vertex.
+   */
+  public static final String TEZ_ENGINE_SEMIJOIN_FILTER_BITS =
+      "tez.engine.semijoin.filter.bits";
+  public static final int DEFAULT_TEZ_ENGINE_SEMIJOIN_FILTER_BITS =
+      8 * 1024 * 1024;
+
+  /**
+   * Number of hash functions of the semi-join Bloom filter.
+   */
+  public static final String TEZ_ENGINE_SEMIJOIN_FILTER_HASHES =
+      "tez.engine.semijoin.filter.hashes";
+  public static final int DEFAULT_TEZ_ENGINE_SEMIJOIN_FILTER_HASHES = 5;
+
+  /**
+   * Name of the vertex whose key filter a filtered output applies.
+   */
+  public static final String TEZ_ENGINE_SEMIJOIN_FILTER_SOURCE_VERTEX =
+      "tez.engine.semijoin.filter.source-vertex";
+
+  /**
+   * How often a filtered output asks for the filter while the source vertex
+   * has not finished. Records written until then are not filtered.
+   */
+  public static final String TEZ_ENGINE_SEMIJOIN_FILTER_POLL_INTERVAL_MS =
+      "tez.engine.semijoin.filter.poll-interval-ms";
+  public static final long DEFAULT_TEZ_ENGINE_SEMIJOIN_FILTER_POLL_INTERVAL_MS =
+      5000;
+
+  /**
+   * Keep the source outputs fetched by a broadcast input in a cache under
+   * the local dirs, so that only one task per node fetches each of them.
+   */
+  public static final String TEZ_ENGINE_BROADCAST_NODE_CACHE =
+      "tez.engine.broadcast.node-cache";
+  public static final boolean DEFAULT_TEZ_ENGINE_BROADCAST_NODE_CACHE = true;
+
+  /**
+   * Time after which a task stops waiting for another task on the node to
+   * cache a broadcast output, and fetches it itself, if the other task has
+   * not shown progress on the copy meanwhile.
+   */
+  public static final String TEZ_ENGINE_BROADCAST_CACHE_LOCK_TIMEOUT_MS =
+      "tez.engine.broadcast.cache.lock-timeout-ms";
+  public static final long DEFAULT_TEZ_ENGINE_BROADCAST_CACHE_LOCK_TIMEOUT_MS =
+      5 * 60 * 1000;
+
+  /**
+   * Interval between task heartbeats while events are arriving or the task
+   * is waiting for the AM to let it complete or commit.
+   */
+  public static final String TEZ_ENGINE_TASK_HEARTBEAT_MIN_INTERVAL_MS =
+      "tez.engine.task.heartbeat.min-interval-ms";
+  public static final long DEFAULT_TEZ_ENGINE_TASK_HEARTBEAT_MIN_INTERVAL_MS =
+      1000;
+
+  /**
+   * Interval which task heartbeats back off to while there is nothing new
+   * for the task.
+   */
+  public static final String TEZ_ENGINE_TASK_HEARTBEAT_MAX_INTERVAL_MS =
+      "tez.engine.task.heartbeat.max-interval-ms";
+  public static final long DEFAULT_TEZ_ENGINE_TASK_HEARTBEAT_MAX_INTERVAL_MS =
+      3000;
+
+  /**
+   * Number of threads initializing the inputs of a task concurrently, so
+   * that shuffles start fetching while the other inputs are set up. 1
+   * initializes them one after the other. Outputs are initialized after all
+   * the inputs.
+   */
+  public static final String TEZ_ENGINE_TASK_IO_INIT_THREADS =
+      "tez.engine.task.io-init.threads";
+  public static final int DEFAULT_TEZ_ENGINE_TASK_IO_INIT_THREADS = 4;
+
+  /**
+   * Number of key/value pairs a processor passing records from an input to
+   * an output in batches moves at a time.
+   */
+  public static final String TEZ_ENGINE_RECORD_BATCH_SIZE =
+      "tez.engine.record-batch.size";
+  public static final int DEFAULT_TEZ_ENGINE_RECORD_BATCH_SIZE = 1024;
+
   /**
    * 
    */
@@ -115,6 +209,59 @@ public class TezJobConfig {
   public static final String TEZ_ENGINE_COMBINE_MIN_SPILLS = 
       "tez.engine.combine.min.spills";
   public static final int  DEFAULT_TEZ_ENGINE_COMBINE_MIN_SPILLS = 3;
+
+  /**
+   * Place the spills and the final output of a task on the local dirs in
+   * turn, one file after the other, so that consecutive spills and the final
+   * merge use different volumes. Each file is still written to a single
+   * volume.
+   */
+  public static final String TEZ_ENGINE_SPILL_ROTATE_VOLUMES =
+      "tez.engine.spill.rotate-volumes";
+  public static final boolean DEFAULT_TEZ_ENGINE_SPILL_ROTATE_VOLUMES = false;
+
+  /**
+   * In the final merge of the sorter, copy the bytes of a partition which
+   * has records in only one spill instead of merging it.
+   */
+  public static final String TEZ_ENGINE_SORT_COPY_SINGLE_SEGMENTS =
+      "tez.engine.sort.copy-single-segments";
+  public static final boolean DEFAULT_TEZ_ENGINE_SORT_COPY_SINGLE_SEGMENTS =
+      true;
+
+  /**
+   * Read on-disk merge segments through background prefetch buffers, so
+   * that disk reads overlap with the merge.
+   */
+  public static final String TEZ_ENGINE_MERGE_PREFETCH =
+      "tez.engine.merge.prefetch";
+  public static final boolean DEFAULT_TEZ_ENGINE_MERGE_PREFETCH = false;
+
+  /**
+   * Size in bytes of each of the two prefetch buffers of a merge segment.
+   */
+  public static final String TEZ_ENGINE_MERGE_PREFETCH_BUFFER_BYTES =
+      "tez.engine.merge.prefetch.buffer.bytes";
+  public static final int DEFAULT_TEZ_ENGINE_MERGE_PREFETCH_BUFFER_BYTES =
+      256 * 1024;
+
+  /**
+   * Total bytes of prefetch buffers a single merge may hold. Segments opened
+   * once this is used up are read synchronously. This memory is taken out
+   * of the sort buffer of a sorted output and out of the shuffle buffer of a
+   * shuffled input when prefetching is enabled.
+   */
+  public static final String TEZ_ENGINE_MERGE_PREFETCH_MEMORY_BYTES =
+      "tez.engine.merge.prefetch.memory.bytes";
+  public static final long DEFAULT_TEZ_ENGINE_MERGE_PREFETCH_MEMORY_BYTES =
+      16 * 1024 * 1024;
+
+  /**
+   * Number of threads doing the prefetch reads.
+   */
+  public static final String TEZ_ENGINE_MERGE_PREFETCH_THREADS =
+      "tez.engine.merge.prefetch.threads";
+  public static final int DEFAULT_TEZ_ENGINE_MERGE_PREFETCH_THREADS = 4;
   
   /**
    * 
@@ -164,6 +311,15 @@ public class TezJobConfig {
       "tez.engine.shuffle.parallel.copies";
   public static final int DEFAULT_TEZ_ENGINE_SHUFFLE_PARALLEL_COPIES = 20;
 
+  /**
+   * How long the shuffle threads of a container stay idle, waiting for the
+   * shuffle of its next task, before they exit.
+   */
+  public static final String TEZ_ENGINE_SHUFFLE_THREAD_KEEP_ALIVE_MS = 
+      "tez.engine.shuffle.thread.keep-alive-ms";
+  public static final long DEFAULT_TEZ_ENGINE_SHUFFLE_THREAD_KEEP_ALIVE_MS = 
+      60 * 1000l;
+
   /**
    * TODO Is this user configurable.
    */
@@ -207,6 +363,29 @@ public class TezJobConfig {
       "tez.engine.shuffle.ssl.enable";
   public static final boolean DEFAULT_TEZ_ENGINE_SHUFFLE_ENABLE_SSL = false;
 
+  /**
+   * Class of the <code>org.apache.tez.engine.common.combine.Aggregator</code>
+   * which folds each fetched output into a running aggregate per key as it
+   * arrives, instead of merging the outputs once all are fetched. Only valid
+   * for associative aggregations; the keys are then not given in order. If
+   * the aggregates outgrow the shuffle memory they are spilled and merged
+   * with the remaining outputs instead, and the consumer sees the keys in
+   * order, each possibly more than once.
+   */
+  public static final String TEZ_ENGINE_SHUFFLE_AGGREGATOR_CLASS =
+      "tez.engine.shuffle.aggregator.class";
+
+  /**
+   * Whether outputs of tasks which ran on the same node are read directly
+   * from the application's local dirs instead of being fetched over HTTP.
+   * The owners of the output files are checked like the shuffle server
+   * checks them, which needs native IO when security is enabled.
+   */
+  public static final String TEZ_ENGINE_SHUFFLE_LOCAL_READ_ENABLED =
+      "tez.engine.shuffle.local-read.enabled";
+  public static final boolean DEFAULT_TEZ_ENGINE_SHUFFLE_LOCAL_READ_ENABLED =
+      false;
+
   /**
    * 
    */
@@ -101,4 +101,16 @@ public interface TezTaskStatus extends Writable {
 
   public abstract void setOutputSize(long l);
 
+  /**
+   * Bytes written to each output partition, or null if not reported.
+   */
+  public abstract long[] getPartitionSizes();
+
+  /**
+   * Records written to each output partition, or null if not reported.
+   */
+  public abstract long[] getPartitionRecords();
+
+  public abstract void setPartitionStats(long[] sizes, long[] records);
+
 }
@@ -0,0 +1,40 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.common.counters;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+// Milliseconds spent by a task in each phase of its execution. The AM
+// aggregates these into per-vertex histograms.
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public enum TaskPhaseCounter {
+  INPUT_INIT_MILLIS,
+  OUTPUT_INIT_MILLIS,
+  FIRST_RECORD_MILLIS,
+  PROCESSOR_MILLIS,
+  PROCESSOR_CPU_MILLIS,
+  SORT_SPILL_MILLIS,
+  SORT_MERGE_MILLIS,
+  SHUFFLE_WAIT_MILLIS,
+  SHUFFLE_COPY_MILLIS,
+  SHUFFLE_MERGE_MILLIS,
+  OUTPUT_COMMIT_MILLIS,
+}
@@ -18,11 +18,14 @@
 
 package org.apache.tez.client;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 
 import org.apache.hadoop.yarn.api.records.ApplicationId;
 import org.apache.hadoop.yarn.api.records.ApplicationReport;
+import org.apache.hadoop.yarn.api.records.ApplicationSubmissionContext;
+import org.apache.hadoop.yarn.api.records.YarnApplicationState;
 import org.apache.hadoop.yarn.client.YarnClient;
 import org.apache.hadoop.yarn.client.YarnClientImpl;
 import org.apache.hadoop.yarn.conf.YarnConfiguration;
@@ -37,6 +40,8 @@ import org.apache.tez.dag.api.client.VertexStatus;
 import org.apache.tez.dag.api.client.rpc.DAGClientRPCImpl;
 
 public class TezClient {
+  private static final long SESSION_POLL_INTERVAL_MS = 500;
+
   private final TezConfiguration conf;
   
   public TezClient(TezConfiguration conf) {
@@ -67,6 +72,57 @@ public class TezClient {
     return dagClient;    
   }
   
+  /**
+   * Submit an AM running in session mode and wait until it accepts DAGs.
+   * The AM container must be launched with the -session option of the AM.
+   * @return a client to submit DAGs to the session with
+   */
+  public DAGClient openSession(ApplicationSubmissionContext appContext)
+      throws IOException, TezException {
+    YarnClient yarnClient = new YarnClientImpl();
+    yarnClient.init(conf);
+    yarnClient.start();
+    try {
+      ApplicationId appId = yarnClient.submitApplication(appContext);
+      while (true) {
+        ApplicationReport appReport = yarnClient.getApplicationReport(appId);
+        YarnApplicationState appState = appReport.getYarnApplicationState();
+        if (appState == YarnApplicationState.RUNNING
+            && appReport.getRpcPort() > 0) {
+          return getDAGClient(appReport.getHost(), appReport.getRpcPort());
+        }
+        if (appState == YarnApplicationState.FINISHED
+            || appState == YarnApplicationState.FAILED
+            || appState == YarnApplicationState.KILLED) {
+          throw new TezException("Session " + appId + " ended in state "
+              + appState + ": " + appReport.getDiagnostics());
+        }
+        Thread.sleep(SESSION_POLL_INTERVAL_MS);
+      }
+    } catch (YarnRemoteException e) {
+      throw new TezException(e);
+    } catch (InterruptedException e) {
+      throw new TezException("Interrupted while waiting for session", e);
+    } finally {
+      yarnClient.stop();
+    }
+  }
+
+  /**
+   * Shut down a session opened with {@link #openSession}. The DAG running in
+   * it, if any, completes first.
+   */
+  public void closeSession(DAGClient session)
+      throws IOException, TezRemoteException {
+    try {
+      session.shutdownSession();
+    } finally {
+      if (session instanceof Closeable) {
+        ((Closeable) session).close();
+      }
+    }
+  }
+
   public static void main(String[] args) {
     try {
       TezClient tezClient = new TezClient(
@@ -65,7 +65,109 @@ public class TezConfiguration extends Configuration {
   public static final String DAG_MAX_TASK_ATTEMPTS = 
       DAG_AM_PREFIX + "max.task.attempts";
   public static final int DAG_MAX_TASK_ATTEMPTS_DEFAULT = 4;
+
+  /**
+   * Number of fetch failure notifications for a source task attempt after
+   * which it is considered faulty and re-executed.
+   */
+  public static final String DAG_MAX_FETCH_FAILURES_NOTIFICATIONS =
+      DAG_AM_PREFIX + "max.fetch-failures.notifications";
+  public static final int DAG_MAX_FETCH_FAILURES_NOTIFICATIONS_DEFAULT = 3;
+
+  /**
+   * Fraction of the running consumer tasks which must have failed to fetch
+   * from a source task attempt before it is re-executed.
+   */
+  public static final String DAG_MAX_ALLOWED_FETCH_FAILURES_FRACTION =
+      DAG_AM_PREFIX + "max.allowed.fetch-failures.fraction";
+  public static final float DAG_MAX_ALLOWED_FETCH_FAILURES_FRACTION_DEFAULT =
+      0.5f;
+
+  /**
+   * A shuffle partition is reported as skewed when it is larger than this
+   * factor times the median partition size of the edge.
+   */
+  public static final String DAG_SKEW_DETECTION_FACTOR =
+      DAG_AM_PREFIX + "skew-detection.factor";
+  public static final float DAG_SKEW_DETECTION_FACTOR_DEFAULT = 10f;
+
+  /**
+   * Minimum size in bytes of a shuffle partition before it is considered
+   * for skew reporting.
+   */
+  public static final String DAG_SKEW_DETECTION_MIN_BYTES =
+      DAG_AM_PREFIX + "skew-detection.min-bytes";
+  public static final long DAG_SKEW_DETECTION_MIN_BYTES_DEFAULT =
+      128 * 1024 * 1024l;
   
+  /**
+   * Compute the input splits of root vertices in the AM when the vertex is
+   * initialized, and send each task its split along with the task, instead
+   * of having the client compute them and every task read them back from
+   * the split files.
+   */
+  public static final String DAG_AM_GENERATE_SPLITS =
+      DAG_AM_PREFIX + "generate-splits";
+  public static final boolean DAG_AM_GENERATE_SPLITS_DEFAULT = false;
+
+  /** Number of threads listing input directories when generating splits. */
+  public static final String DAG_AM_SPLIT_GENERATION_THREADS =
+      DAG_AM_PREFIX + "split-generation.threads";
+  public static final int DAG_AM_SPLIT_GENERATION_THREADS_DEFAULT = 8;
+
+  /**
+   * Combine the splits generated in the AM by node, and then by rack, into
+   * groups of about {@link #DAG_AM_GROUPING_SPLIT_SIZE} bytes, each of which
+   * is read by one task. Only splits of the new mapreduce API are grouped.
+   */
+  public static final String DAG_AM_GROUP_SPLITS =
+      DAG_AM_PREFIX + "grouping.enabled";
+  public static final boolean DAG_AM_GROUP_SPLITS_DEFAULT = false;
+
+  /** Target size in bytes of a group of splits. */
+  public static final String DAG_AM_GROUPING_SPLIT_SIZE =
+      DAG_AM_PREFIX + "grouping.split-size";
+  public static final long DAG_AM_GROUPING_SPLIT_SIZE_DEFAULT =
+      256 * 1024 * 1024l;
+
+  /**
+   * Number of container requests the AM keeps outstanding at the RM, beyond
+   * what the available resources of the cluster would fit. Requests of
+   * further task attempts are held back in the AM, most important priority
+   * first, until outstanding ones are satisfied or the cluster has room.
+   */
+  public static final String DAG_AM_CONTAINER_REQUESTS_MIN_OUTSTANDING =
+      DAG_AM_PREFIX + "container-requests.min-outstanding";
+  public static final int DAG_AM_CONTAINER_REQUESTS_MIN_OUTSTANDING_DEFAULT =
+      100;
+
+  /**
+   * Maximum number of held back container requests sent with each heartbeat
+   * to the RM.
+   */
+  public static final String DAG_AM_CONTAINER_REQUESTS_BATCH_SIZE =
+      DAG_AM_PREFIX + "container-requests.batch-size";
+  public static final int DAG_AM_CONTAINER_REQUESTS_BATCH_SIZE_DEFAULT = 500;
+
+  /**
+   * How long, in milliseconds, a task which asked for containers on given
+   * nodes waits for one there before it takes a container elsewhere on their
+   * racks. Containers it may not take yet are held by the AM meanwhile. May
+   * be set for a single vertex, like other vertex settings.
+   */
+  public static final String DAG_AM_LOCALITY_NODE_DELAY_MS =
+      DAG_AM_PREFIX + "locality.node-delay-ms";
+  public static final long DAG_AM_LOCALITY_NODE_DELAY_MS_DEFAULT = 0;
+
+  /**
+   * How long, in milliseconds, a task further waits for a container on the
+   * racks of its nodes, after {@link #DAG_AM_LOCALITY_NODE_DELAY_MS}, before
+   * it takes a container anywhere. May be set for a single vertex.
+   */
+  public static final String DAG_AM_LOCALITY_RACK_DELAY_MS =
+      DAG_AM_PREFIX + "locality.rack-delay-ms";
+  public static final long DAG_AM_LOCALITY_RACK_DELAY_MS_DEFAULT = 0;
+
   public static final String DAG_NODE_BLACKLISTING_ENABLED = TEZ_PREFIX
       + "node-blacklisting.enabled";
   public static final boolean DAG_NODE_BLACKLISTING_ENABLED_DEFAULT = true;
@@ -105,6 +207,45 @@ public class TezConfiguration extends Configuration {
   public static final float 
           SLOWSTART_VERTEX_SCHEDULER_MAX_SRC_FRACTION_DEFAULT = 0.8f;
 
+  /**
+   * Run the DAG inside the AM JVM without YARN. Containers are handed out by
+   * an in-process stand-in for the ResourceManager and tasks execute on a
+   * thread pool in the AM.
+   */
+  public static final String TEZ_LOCAL_MODE = TEZ_PREFIX + "local.mode";
+  public static final boolean TEZ_LOCAL_MODE_DEFAULT = false;
+
+  /**
+   * Keep the AM running after its DAG completes and accept further DAGs
+   * from clients, which run one after the other in the same AM and
+   * containers. The session ends when a client shuts it down.
+   */
+  public static final String DAG_AM_SESSION_MODE =
+      DAG_AM_PREFIX + "session-mode";
+  public static final boolean DAG_AM_SESSION_MODE_DEFAULT = false;
+
+  /**
+   * Number of completed DAGs whose state is kept in a session AM for clients
+   * to query. Older completed DAGs are dropped.
+   */
+  public static final String DAG_AM_SESSION_MAX_COMPLETED_DAGS =
+      DAG_AM_PREFIX + "session.max-completed-dags";
+  public static final int DAG_AM_SESSION_MAX_COMPLETED_DAGS_DEFAULT = 10;
+
+  /** Maximum number of tasks running concurrently in local mode. */
+  public static final String TEZ_LOCAL_MODE_MAX_CONCURRENT_TASKS =
+      TEZ_PREFIX + "local.mode.max-concurrent-tasks";
+  public static final int TEZ_LOCAL_MODE_MAX_CONCURRENT_TASKS_DEFAULT = 4;
+
+  /**
+   * Comma separated list of directories used as node local dirs in local
+   * mode. Task outputs and working directories are created under these.
+   */
+  public static final String TEZ_LOCAL_MODE_LOCAL_DIRS =
+      TEZ_PREFIX + "local.mode.local-dirs";
+  public static final String TEZ_LOCAL_MODE_LOCAL_DIRS_DEFAULT =
+      "${hadoop.tmp.dir}/tez-local";
+
 private static final String TEZ_CONF_DIR_ENV = "TEZ_CONF_DIR";
   private static final String TEZ_HOME_ENV = "TEZ_HOME";
 
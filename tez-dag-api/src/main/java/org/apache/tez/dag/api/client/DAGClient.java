@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.util.List;
 
 import org.apache.tez.dag.api.TezRemoteException;
+import org.apache.tez.dag.api.records.DAGProtos.DAGPlan;
 
 /*
  * Inteface class for monitoring the <code>DAG</code> running in a Tez DAG
@@ -45,4 +46,24 @@ public interface DAGClient {
   VertexStatus getVertexStatus(String dagId, 
                                String vertexName) 
                                    throws IOException, TezRemoteException;
+
+  /**
+   * Get the per-phase timing histograms of the completed tasks of a Vertex
+   */
+  VertexPhaseTimings getVertexPhaseTimings(String dagId,
+                                           String vertexName)
+                                   throws IOException, TezRemoteException;
+
+  /**
+   * Submit a DAG to an AM running in session mode. The DAG runs once the
+   * DAGs submitted before it have completed.
+   * @return the identifier of the submitted DAG
+   */
+  String submitDAG(DAGPlan dagPlan) throws IOException, TezRemoteException;
+
+  /**
+   * Shut down an AM running in session mode once its running DAG, if any,
+   * has completed. DAGs which have not started yet are not run.
+   */
+  void shutdownSession() throws IOException, TezRemoteException;
 }
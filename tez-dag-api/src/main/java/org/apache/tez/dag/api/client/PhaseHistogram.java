@@ -0,0 +1,87 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.api.client;
+
+import java.util.List;
+
+import org.apache.tez.dag.api.records.DAGProtos.PhaseHistogramProtoOrBuilder;
+
+/**
+ * Distribution of the time spent by the successful tasks of a vertex in one
+ * phase of their execution, e.g. shuffle copy or sort spills. Task times are
+ * counted in power-of-two millisecond buckets.
+ */
+public class PhaseHistogram {
+
+  PhaseHistogramProtoOrBuilder proxy = null;
+
+  public PhaseHistogram(PhaseHistogramProtoOrBuilder proxy) {
+    this.proxy = proxy;
+  }
+
+  public String getPhase() {
+    return proxy.getPhase();
+  }
+
+  /**
+   * @return the number of tasks included in the histogram
+   */
+  public long getCount() {
+    return proxy.getCount();
+  }
+
+  public long getTotalMillis() {
+    return proxy.getTotalMillis();
+  }
+
+  public long getMinMillis() {
+    return proxy.getMinMillis();
+  }
+
+  public long getMaxMillis() {
+    return proxy.getMaxMillis();
+  }
+
+  public long getMeanMillis() {
+    return getCount() == 0 ? 0 : getTotalMillis() / getCount();
+  }
+
+  /**
+   * Bucket <code>i</code> counts the tasks which spent at least
+   * <code>2^(i-1)</code> and less than <code>2^i</code> milliseconds in the
+   * phase. Bucket 0 counts the tasks which spent no time in it.
+   */
+  public List<Long> getBucketCounts() {
+    return proxy.getBucketCountsList();
+  }
+
+  /**
+   * @return the exclusive upper bound in milliseconds of the given bucket
+   */
+  public static long getBucketUpperBound(int bucket) {
+    return 1L << bucket;
+  }
+
+  @Override
+  public String toString() {
+    return getPhase() + ": tasks=" + getCount() + " mean=" + getMeanMillis()
+        + "ms min=" + getMinMillis() + "ms max=" + getMaxMillis() + "ms";
+  }
+
+}
@@ -0,0 +1,70 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.api.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tez.dag.api.records.DAGProtos.PhaseHistogramProto;
+import org.apache.tez.dag.api.records.DAGProtos.VertexPhaseTimingsProtoOrBuilder;
+
+/**
+ * Per-phase timing histograms aggregated over the successful tasks of a
+ * vertex. Used to tell whether a vertex is compute, shuffle or spill bound.
+ */
+public class VertexPhaseTimings {
+
+  VertexPhaseTimingsProtoOrBuilder proxy = null;
+
+  public VertexPhaseTimings(VertexPhaseTimingsProtoOrBuilder proxy) {
+    this.proxy = proxy;
+  }
+
+  public List<PhaseHistogram> getPhases() {
+    List<PhaseHistogram> phases =
+        new ArrayList<PhaseHistogram>(proxy.getPhasesCount());
+    for (PhaseHistogramProto phase : proxy.getPhasesList()) {
+      phases.add(new PhaseHistogram(phase));
+    }
+    return phases;
+  }
+
+  /**
+   * @return the histogram for the named phase, or null if no task of the
+   *         vertex reported it
+   */
+  public PhaseHistogram getPhase(String phase) {
+    for (PhaseHistogramProto histogram : proxy.getPhasesList()) {
+      if (histogram.getPhase().equals(phase)) {
+        return new PhaseHistogram(histogram);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (PhaseHistogram phase : getPhases()) {
+      sb.append(phase).append("\n");
+    }
+    return sb.toString();
+  }
+
+}
@@ -28,11 +28,16 @@ import org.apache.hadoop.ipc.RPC;
 import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.dag.api.TezRemoteException;
 import org.apache.tez.dag.api.client.DAGClient;
+import org.apache.tez.dag.api.records.DAGProtos.DAGPlan;
 import org.apache.tez.dag.api.client.DAGStatus;
+import org.apache.tez.dag.api.client.VertexPhaseTimings;
 import org.apache.tez.dag.api.client.VertexStatus;
 import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.GetAllDAGsRequestProto;
 import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.GetDAGStatusRequestProto;
+import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.GetVertexPhaseTimingsRequestProto;
 import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.GetVertexStatusRequestProto;
+import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.ShutdownSessionRequestProto;
+import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.SubmitDAGRequestProto;
 
 import com.google.protobuf.ServiceException;
 
@@ -97,6 +102,51 @@ public class DAGClientRPCImpl implements DAGClient, Closeable {
     }
   }
 
+  @Override
+  public VertexPhaseTimings getVertexPhaseTimings(String dagId,
+                                                  String vertexName)
+                                    throws IOException, TezRemoteException {
+    GetVertexPhaseTimingsRequestProto requestProto =
+        GetVertexPhaseTimingsRequestProto.newBuilder().
+                        setDagId(dagId).setVertexName(vertexName).build();
+
+    try {
+      return new VertexPhaseTimings(
+                 proxy.getVertexPhaseTimings(null, requestProto)
+                   .getVertexPhaseTimings());
+    } catch (ServiceException e) {
+      // TEZ-151 retrieve wrapped TezRemoteException
+      throw new TezRemoteException(e);
+    }
+  }
+
+  @Override
+  public String submitDAG(DAGPlan dagPlan)
+                                    throws IOException, TezRemoteException {
+    SubmitDAGRequestProto requestProto =
+        SubmitDAGRequestProto.newBuilder().setDagPlan(dagPlan).build();
+
+    try {
+      return proxy.submitDAG(null, requestProto).getDagId();
+    } catch (ServiceException e) {
+      // TEZ-151 retrieve wrapped TezRemoteException
+      throw new TezRemoteException(e);
+    }
+  }
+
+  @Override
+  public void shutdownSession() throws IOException, TezRemoteException {
+    ShutdownSessionRequestProto requestProto =
+        ShutdownSessionRequestProto.newBuilder().build();
+
+    try {
+      proxy.shutdownSession(null, requestProto);
+    } catch (ServiceException e) {
+      // TEZ-151 retrieve wrapped TezRemoteException
+      throw new TezRemoteException(e);
+    }
+  }
+
   @Override
   public void close() throws IOException {
     if (this.proxy != null) {
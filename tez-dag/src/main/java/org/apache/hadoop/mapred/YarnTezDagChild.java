@@ -58,6 +58,7 @@ import org.apache.tez.dag.records.TezTaskAttemptID;
 import org.apache.tez.engine.api.Task;
 import org.apache.tez.engine.common.security.JobTokenIdentifier;
 import org.apache.tez.engine.common.security.TokenCache;
+import org.apache.tez.engine.common.shuffle.impl.ShuffleClientService;
 import org.apache.tez.engine.runtime.RuntimeUtils;
 import org.apache.tez.engine.task.RuntimeTask;
 import org.apache.tez.mapreduce.input.SimpleInput;
@@ -127,6 +128,11 @@ public class YarnTezDagChild {
     ContainerContext containerContext = new ContainerContext(containerId, pid);
 
     try {
+      // The same for all the tasks run by this container. Tasks of a vertex
+      // which already ran here reuse its parsed configuration.
+      Configuration containerConf = createContainerConf(defaultConf,
+          containerId.getApplicationAttemptId().getAttemptId());
+
       while (true) {
         // poll for new task
         for (int idle = 0; null == containerTask; ++idle) {
@@ -151,9 +157,8 @@ public class YarnTezDagChild {
 
         taskAttemptId = taskContext.getTaskAttemptId();
 
-        final Task t = createAndConfigureTezTask(taskContext, umbilical,
-            credentials, jobToken,
-            containerId.getApplicationAttemptId().getAttemptId());
+        final Task t =
+            configureTezTask(taskContext, umbilical, containerConf);
 
         final Configuration conf = ((RuntimeTask)t).getConfiguration();
 
@@ -188,6 +193,7 @@ public class YarnTezDagChild {
         umbilical.fatalError(taskAttemptId, cause);
       }
     } finally {
+      ShuffleClientService.shutdown();
       RPC.stopProxy(umbilical);
       DefaultMetricsSystem.shutdown();
       // Shutting down log4j of the child-vm...
@@ -208,11 +214,19 @@ public class YarnTezDagChild {
    */
   
   private static void configureLocalDirs(Configuration conf) throws IOException {
-    String[] localSysDirs = StringUtils.getTrimmedStrings(
-        System.getenv(Environment.LOCAL_DIRS.name()));
-    conf.setStrings(TezJobConfig.LOCAL_DIRS, localSysDirs);
-    conf.set(TezJobConfig.TASK_LOCAL_RESOURCE_DIR,
+    configureLocalDirs(conf, StringUtils.getTrimmedStrings(
+        System.getenv(Environment.LOCAL_DIRS.name())),
         System.getenv(Environment.PWD.name()));
+  }
+
+  /**
+   * Configure the given local dirs and task resource dir in place of the
+   * ones provided by the NodeManager environment.
+   */
+  public static void configureLocalDirs(Configuration conf,
+      String[] localSysDirs, String taskResourceDir) throws IOException {
+    conf.setStrings(TezJobConfig.LOCAL_DIRS, localSysDirs);
+    conf.set(TezJobConfig.TASK_LOCAL_RESOURCE_DIR, taskResourceDir);
     
     LOG.info(TezJobConfig.LOCAL_DIRS + " for child: " +
         conf.get(TezJobConfig.LOCAL_DIRS));
@@ -251,19 +265,27 @@ public class YarnTezDagChild {
     conf.set(TezJobConfig.JOB_LOCAL_DIR, workDir.toString());
   }
   
-  private static Task createAndConfigureTezTask(
-      TezEngineTaskContext taskContext, TezTaskUmbilicalProtocol master,
-      Credentials cxredentials, Token<JobTokenIdentifier> jobToken,
-      int appAttemptId) throws IOException, InterruptedException {
+  private static Configuration createContainerConf(Configuration defaultConf,
+      int appAttemptId) throws IOException {
 
-    Configuration conf = new Configuration();
+    // a copy of the already loaded default conf does not parse it again
+    Configuration conf = new Configuration(defaultConf);
     // set tcp nodelay
     conf.setBoolean("ipc.client.tcpnodelay", true);
     conf.setInt(TezJobConfig.APPLICATION_ATTEMPT_ID, appAttemptId);
     
     configureLocalDirs(conf);
     
-    
+    return conf;
+  }
+
+  /**
+   * Create and initialize the runtime task for the given context using an
+   * already configured conf.
+   */
+  public static Task configureTezTask(TezEngineTaskContext taskContext,
+      TezTaskUmbilicalProtocol master, Configuration conf)
+      throws IOException, InterruptedException {
     // FIXME need Input/Output vertices else we have this hack
     if (taskContext.getInputSpecList().isEmpty()) {
       taskContext.getInputSpecList().add(
@@ -282,7 +304,7 @@ public class YarnTezDagChild {
     return t;
   }
   
-  private static void runTezTask(
+  public static void runTezTask(
       Task t, TezTaskUmbilicalProtocol master, Configuration conf) 
   throws IOException, InterruptedException {
     // use job-specified working directory
@@ -0,0 +1,75 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.api.client;
+
+import org.apache.tez.dag.api.records.DAGProtos.PhaseHistogramProto;
+import org.apache.tez.dag.api.records.DAGProtos.VertexPhaseTimingsProto;
+import org.apache.tez.dag.api.records.DAGProtos.VertexPhaseTimingsProto.Builder;
+import org.apache.tez.dag.api.client.VertexPhaseTimings;
+
+public class VertexPhaseTimingsBuilder extends VertexPhaseTimings {
+
+  public VertexPhaseTimingsBuilder() {
+    super(VertexPhaseTimingsProto.newBuilder());
+  }
+
+  public VertexPhaseTimingsBuilder(VertexPhaseTimingsProto proto) {
+    super(proto.toBuilder());
+  }
+
+  /**
+   * Account for one task having spent <code>millis</code> in the phase.
+   */
+  public void addTaskTime(String phase, long millis) {
+    millis = Math.max(0, millis);
+    PhaseHistogramProto.Builder histogram = getHistogramBuilder(phase);
+    int bucket = 64 - Long.numberOfLeadingZeros(millis);
+    while (histogram.getBucketCountsCount() <= bucket) {
+      histogram.addBucketCounts(0);
+    }
+    histogram.setBucketCounts(bucket,
+        histogram.getBucketCounts(bucket) + 1);
+    if (histogram.getCount() == 0 || millis < histogram.getMinMillis()) {
+      histogram.setMinMillis(millis);
+    }
+    if (millis > histogram.getMaxMillis()) {
+      histogram.setMaxMillis(millis);
+    }
+    histogram.setCount(histogram.getCount() + 1);
+    histogram.setTotalMillis(histogram.getTotalMillis() + millis);
+  }
+
+  public VertexPhaseTimingsProto getProto() {
+    return getBuilder().build();
+  }
+
+  private PhaseHistogramProto.Builder getHistogramBuilder(String phase) {
+    Builder builder = getBuilder();
+    for (int i = 0; i < builder.getPhasesCount(); ++i) {
+      if (builder.getPhases(i).getPhase().equals(phase)) {
+        return builder.getPhasesBuilder(i);
+      }
+    }
+    return builder.addPhasesBuilder().setPhase(phase);
+  }
+
+  private VertexPhaseTimingsProto.Builder getBuilder() {
+    return (Builder) this.proxy;
+  }
+}
@@ -54,6 +54,7 @@ public class VertexStatusBuilder extends VertexStatus {
   private VertexStatusStateProto getProtoState(VertexState state) {
     switch(state) {
     case NEW:
+    case INITIALIZING:
     case INITED:
       return VertexStatusStateProto.VERTEX_INITED;
     case RUNNING:
@@ -25,6 +25,8 @@ import org.apache.tez.dag.api.TezRemoteException;
 import org.apache.tez.dag.api.client.DAGClient;
 import org.apache.tez.dag.api.client.DAGStatus;
 import org.apache.tez.dag.api.client.DAGStatusBuilder;
+import org.apache.tez.dag.api.client.VertexPhaseTimings;
+import org.apache.tez.dag.api.client.VertexPhaseTimingsBuilder;
 import org.apache.tez.dag.api.client.VertexStatus;
 import org.apache.tez.dag.api.client.VertexStatusBuilder;
 import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolBlockingPB;
@@ -32,8 +34,14 @@ import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.GetAllDAGsReques
 import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.GetAllDAGsResponseProto;
 import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.GetDAGStatusRequestProto;
 import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.GetDAGStatusResponseProto;
+import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.GetVertexPhaseTimingsRequestProto;
+import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.GetVertexPhaseTimingsResponseProto;
 import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.GetVertexStatusRequestProto;
 import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.GetVertexStatusResponseProto;
+import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.ShutdownSessionRequestProto;
+import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.ShutdownSessionResponseProto;
+import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.SubmitDAGRequestProto;
+import org.apache.tez.dag.api.client.rpc.DAGClientAMProtocolRPC.SubmitDAGResponseProto;
 
 import com.google.protobuf.RpcController;
 import com.google.protobuf.ServiceException;
@@ -96,6 +104,53 @@ public class DAGClientAMProtocolBlockingPBServerImpl implements
     }
   }
   
+  @Override
+  public GetVertexPhaseTimingsResponseProto getVertexPhaseTimings(
+      RpcController controller, GetVertexPhaseTimingsRequestProto request)
+      throws ServiceException {
+    try {
+      String dagId = request.getDagId();
+      String vertexName = request.getVertexName();
+      VertexPhaseTimings timings =
+          real.getVertexPhaseTimings(dagId, vertexName);
+      assert timings instanceof VertexPhaseTimingsBuilder;
+      VertexPhaseTimingsBuilder builder = (VertexPhaseTimingsBuilder) timings;
+      return GetVertexPhaseTimingsResponseProto.newBuilder().
+                            setVertexPhaseTimings(builder.getProto()).build();
+    } catch (TezRemoteException e) {
+      throw wrapException(e);
+    } catch(IOException e) {
+      throw wrapException(e);
+    }
+  }
+
+  @Override
+  public SubmitDAGResponseProto submitDAG(RpcController controller,
+      SubmitDAGRequestProto request) throws ServiceException {
+    try {
+      String dagId = real.submitDAG(request.getDagPlan());
+      return SubmitDAGResponseProto.newBuilder().setDagId(dagId).build();
+    } catch (TezRemoteException e) {
+      throw wrapException(e);
+    } catch(IOException e) {
+      throw wrapException(e);
+    }
+  }
+
+  @Override
+  public ShutdownSessionResponseProto shutdownSession(
+      RpcController controller, ShutdownSessionRequestProto request)
+      throws ServiceException {
+    try {
+      real.shutdownSession();
+      return ShutdownSessionResponseProto.newBuilder().build();
+    } catch (TezRemoteException e) {
+      throw wrapException(e);
+    } catch(IOException e) {
+      throw wrapException(e);
+    }
+  }
+
   ServiceException wrapException(Exception e){
     return new ServiceException(e);
   }
@@ -22,8 +22,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.security.PrivilegedExceptionAction;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -64,11 +67,13 @@ import org.apache.hadoop.yarn.event.EventHandler;
 import org.apache.hadoop.yarn.service.CompositeService;
 import org.apache.hadoop.yarn.service.Service;
 import org.apache.hadoop.yarn.util.ConverterUtils;
+import org.apache.tez.common.TezTaskUmbilicalProtocol;
 import org.apache.tez.dag.api.records.DAGProtos.DAGPlan;
 import org.apache.tez.dag.api.records.DAGProtos.VertexPlan;
 import org.apache.tez.dag.api.client.DAGClient;
 import org.apache.tez.dag.api.client.DAGClientServer;
 import org.apache.tez.dag.api.client.DAGStatus;
+import org.apache.tez.dag.api.client.VertexPhaseTimings;
 import org.apache.tez.dag.api.client.VertexStatus;
 import org.apache.tez.dag.api.DagTypeConverters;
 import org.apache.tez.dag.api.TezConfiguration;
@@ -90,6 +95,7 @@ import org.apache.tez.dag.app.dag.event.VertexEventType;
 import org.apache.tez.dag.app.dag.impl.DAGImpl;
 import org.apache.tez.dag.app.launcher.ContainerLauncher;
 import org.apache.tez.dag.app.launcher.ContainerLauncherImpl;
+import org.apache.tez.dag.app.launcher.LocalContainerLauncher;
 import org.apache.tez.dag.app.rm.AMSchedulerEventType;
 import org.apache.tez.dag.app.rm.NMCommunicatorEventType;
 import org.apache.tez.dag.app.rm.TaskSchedulerEventHandler;
@@ -181,6 +187,14 @@ public class DAGAppMaster extends CompositeService {
   private DAGClientHandler clientHandler;
 
   private DAG dag;
+  // session mode: all DAGs of the session by id, and those not started yet
+  private boolean sessionMode;
+  private int maxCompletedDAGs;
+  private boolean sessionShutdownRequested = false;
+  private boolean dagRunning = false;
+  private int dagCounter = 0;
+  private final Map<TezDAGID, DAG> dags = new LinkedHashMap<TezDAGID, DAG>();
+  private final LinkedList<DAG> pendingDAGs = new LinkedList<DAG>();
   private Credentials fsTokens = new Credentials(); // Filled during init
   private UserGroupInformation currentUser; // Will be setup during init
 
@@ -219,6 +233,11 @@ public class DAGAppMaster extends CompositeService {
     
     this.conf = (TezConfiguration) tezConf;
     conf.setBoolean(Dispatcher.DISPATCHER_EXIT_ON_ERROR_KEY, true);
+    sessionMode = conf.getBoolean(TezConfiguration.DAG_AM_SESSION_MODE,
+        TezConfiguration.DAG_AM_SESSION_MODE_DEFAULT);
+    maxCompletedDAGs = conf.getInt(
+        TezConfiguration.DAG_AM_SESSION_MAX_COMPLETED_DAGS,
+        TezConfiguration.DAG_AM_SESSION_MAX_COMPLETED_DAGS_DEFAULT);
 
     downloadTokensAndSetupUGI(conf);
 
@@ -226,10 +245,8 @@ public class DAGAppMaster extends CompositeService {
 
     // Job name is the same as the app name util we support DAG of jobs
     // for an app later
-    appName = jobPlan.getName();
+    appName = jobPlan != null ? jobPlan.getName() : "TezSession";
 
-    dagId = new TezDAGID(appAttemptID.getApplicationId(), 1);
-    
     clientHandler = new DAGClientHandler();
 
     // TODO Committer.
@@ -276,6 +293,8 @@ public class DAGAppMaster extends CompositeService {
     dispatcher.register(TaskAttemptEventType.class,
         new TaskAttemptEventDispatcher());
     dispatcher.register(TaskCleaner.EventType.class, taskCleaner);
+    dispatcher.register(DAGFinishEvent.Type.class,
+        createDAGFinishEventHandler());
 
     //    TODO XXX: Rename to NMComm
     //    corresponding service to launch allocated containers via NodeManager
@@ -426,7 +445,9 @@ public class DAGAppMaster extends CompositeService {
     switch (event.getType()) {
     case INTERNAL_ERROR:
       state = DAGAppMasterState.ERROR;
-      sendEvent(new DAGEvent(dag.getID(), DAGEventType.INTERNAL_ERROR));
+      if (dag != null) {
+        sendEvent(new DAGEvent(dag.getID(), DAGEventType.INTERNAL_ERROR));
+      }
       break;
     default:
       LOG.warn("No handler for event type: " + event.getType());
@@ -464,31 +485,123 @@ public class DAGAppMaster extends CompositeService {
         }
       }
     */
+      taskAttemptListener.dagComplete(event.getDagId());
+      if (continueSession()) {
+        return;
+      }
+
       // TODO:currently just wait for some time so clients can know the
       // final states. Will be removed once RM come on.
      
       setStateOnDAGCompletion();
-      
-      try {
-        Thread.sleep(5000);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-      }
+      shutdownAppMaster();
+    }
+  }
 
-      try {
-        // Stop all services
-        // This will also send the final report to the ResourceManager
-        LOG.info("Calling stop for all the services");
-        stop();
+  private void shutdownAppMaster() {
+    try {
+      Thread.sleep(5000);
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    }
 
-      } catch (Throwable t) {
-        LOG.warn("Graceful stop failed ", t);
+    try {
+      // Stop all services
+      // This will also send the final report to the ResourceManager
+      LOG.info("Calling stop for all the services");
+      stop();
+
+    } catch (Throwable t) {
+      LOG.warn("Graceful stop failed ", t);
+    }
+
+    //Bring the process down by force.
+    //Not needed after HADOOP-7140
+    LOG.info("Exiting MR AppMaster..GoodBye!");
+    sysexit();
+  }
+
+  /**
+   * Called when a DAG completes. In session mode starts the next submitted
+   * DAG, if any, and keeps the AM running until the session is shut down.
+   * @return true if the AM should keep running
+   */
+  private synchronized boolean continueSession() {
+    dagRunning = false;
+    if (!sessionMode) {
+      return false;
+    }
+    LOG.info("DAG " + dag.getID() + " completed with state " + dag.getState());
+    if (sessionShutdownRequested) {
+      state = DAGAppMasterState.SUCCEEDED;
+      return false;
+    }
+    evictCompletedDAGs();
+    if (!pendingDAGs.isEmpty()) {
+      startDAG(pendingDAGs.removeFirst());
+    }
+    return true;
+  }
+
+  synchronized TezDAGID submitDAG(DAGPlan dagPlan) throws TezRemoteException {
+    if (!sessionMode) {
+      throw new TezRemoteException("AM is not running in session mode");
+    }
+    if (sessionShutdownRequested || state != DAGAppMasterState.RUNNING) {
+      throw new TezRemoteException("AM is not accepting DAGs, state: "
+          + state);
+    }
+    DAG newDag = addDAG(dagPlan);
+    LOG.info("Submitted DAG " + newDag.getID() + " : " + dagPlan.getName());
+    if (dagRunning) {
+      pendingDAGs.add(newDag);
+    } else {
+      startDAG(newDag);
+    }
+    return newDag.getID();
+  }
+
+  /**
+   * Drop the oldest completed DAGs so that a long running session keeps at
+   * most maxCompletedDAGs of them. Late events for dropped DAGs are ignored.
+   */
+  private void evictCompletedDAGs() {
+    synchronized (dags) {
+      int completed = dags.size() - pendingDAGs.size();
+      Iterator<DAG> it = dags.values().iterator();
+      while (completed > maxCompletedDAGs && it.hasNext()) {
+        DAG oldDag = it.next();
+        if (oldDag == dag || pendingDAGs.contains(oldDag)) {
+          continue;
+        }
+        LOG.info("Dropping completed DAG " + oldDag.getID());
+        it.remove();
+        --completed;
       }
+    }
+  }
 
-      //Bring the process down by force.
-      //Not needed after HADOOP-7140
-      LOG.info("Exiting MR AppMaster..GoodBye!");
-      sysexit();
+  synchronized void shutdownSession() throws TezRemoteException {
+    if (!sessionMode) {
+      throw new TezRemoteException("AM is not running in session mode");
+    }
+    LOG.info("Session shutdown requested, dropping " + pendingDAGs.size()
+        + " DAGs which have not started");
+    sessionShutdownRequested = true;
+    for (DAG pendingDag : pendingDAGs) {
+      dags.remove(pendingDag.getID());
+    }
+    pendingDAGs.clear();
+    if (!dagRunning) {
+      state = DAGAppMasterState.SUCCEEDED;
+      // Not on the RPC handler thread, which is stopped with the AM
+      Thread t = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          shutdownAppMaster();
+        }
+      }, "AMShutdownThread");
+      t.start();
     }
   }
 
@@ -525,12 +638,13 @@ public class DAGAppMaster extends CompositeService {
 //    return new ContainerRequestorRouter(clientService, appContext);
 //  }
 
-  /** Create and initialize (but don't start) a single dag. */
+  /** Create (but don't initialize or start) a single dag. */
   protected DAG createDAG(DAGPlan dagPB) {
 
-    // create single job
+    dagId = new TezDAGID(appAttemptID.getApplicationId(), ++dagCounter);
     DAG newDag =
-        new DAGImpl(dagId, appAttemptID, conf, dagPB, dispatcher.getEventHandler(),
+        new DAGImpl(dagId, appAttemptID, createDAGConf(conf, dagPB), dagPB,
+            dispatcher.getEventHandler(),
             taskAttemptListener, jobTokenSecretManager, fsTokens, clock,
             // TODO Recovery
             //completedTasksFromPreviousRun,
@@ -540,13 +654,58 @@ public class DAGAppMaster extends CompositeService {
             currentUser.getShortUserName(), appSubmitTime,
             //amInfos,
             taskHeartbeatHandler, context);
-    ((RunningAppContext) context).setDAG(newDag);
-
-    dispatcher.register(DAGFinishEvent.Type.class,
-        createDAGFinishEventHandler());
     return newDag;
   } // end createDag()
 
+  /**
+   * The AM configuration with the settings of the DAG applied. Each DAG of a
+   * session gets its own copy so that settings do not leak across DAGs.
+   */
+  static TezConfiguration createDAGConf(TezConfiguration amConf,
+      DAGPlan dagPB) {
+    TezConfiguration dagConf = new TezConfiguration(amConf);
+    Map<String, String> config =
+        DagTypeConverters.createSettingsMapFromDAGPlan(
+            dagPB.getJobSettingList());
+    for (Entry<String, String> entry : config.entrySet()) {
+      dagConf.set(entry.getKey(), entry.getValue());
+    }
+    return dagConf;
+  }
+
+  /** Create a dag and make it known to the event dispatchers. */
+  private DAG addDAG(DAGPlan dagPB) {
+    DAG newDag = createDAG(dagPB);
+    synchronized (dags) {
+      dags.put(newDag.getID(), newDag);
+    }
+    return newDag;
+  }
+
+  /** Make a dag the current one and initialize it. */
+  protected void initDAG(DAG newDag) {
+    dag = newDag;
+    ((RunningAppContext) context).setDAG(newDag);
+
+    // create a job event for job intialization
+    DAGEvent initDagEvent = new DAGEvent(newDag.getID(), DAGEventType.DAG_INIT);
+    // Send init to the job (this does NOT trigger job execution)
+    // This is a synchronous call, not an event through dispatcher. We want
+    // job-init to be done completely here.
+    dagEventDispatcher.handle(initDagEvent);
+  }
+
+  private synchronized void startDAG(DAG newDag) {
+    initDAG(newDag);
+    startDags();
+  }
+
+  DAG getDAG(TezDAGID dagId) {
+    synchronized (dags) {
+      return dags.get(dagId);
+    }
+  }
+
 
   /**
    * Obtain the tokens needed by the job and put them in the UGI
@@ -619,6 +778,11 @@ public class DAGAppMaster extends CompositeService {
 
   protected ContainerLauncher
       createContainerLauncher(final AppContext context) {
+    if (conf.getBoolean(TezConfiguration.TEZ_LOCAL_MODE,
+        TezConfiguration.TEZ_LOCAL_MODE_DEFAULT)) {
+      return new LocalContainerLauncher(context,
+          (TezTaskUmbilicalProtocol) taskAttemptListener);
+    }
     return new ContainerLauncherImpl(context);
   }
 
@@ -682,10 +846,16 @@ public class DAGAppMaster extends CompositeService {
   }
   
   public List<String> getDiagnostics() {
+    if (dag == null) {
+      return new ArrayList<String>();
+    }
     return dag.getDiagnostics();
   }
   
   public float getProgress() {
+    if (dag == null) {
+      return 0.0f;
+    }
     return dag.getProgress();
   }
   
@@ -714,7 +884,13 @@ public class DAGAppMaster extends CompositeService {
 
     @Override
     public List<String> getAllDAGs() throws TezRemoteException {
-      return Collections.singletonList(dag.getID().toString());
+      List<String> dagIds = new ArrayList<String>();
+      synchronized (dags) {
+        for (TezDAGID id : dags.keySet()) {
+          dagIds.add(id.toString());
+        }
+      }
+      return dagIds;
     }
 
     @Override
@@ -733,17 +909,40 @@ public class DAGAppMaster extends CompositeService {
       
       return status;
     }
+
+    @Override
+    public VertexPhaseTimings getVertexPhaseTimings(String dagIdStr,
+        String vertexName) throws IOException, TezRemoteException {
+      VertexPhaseTimings timings =
+          getDAG(dagIdStr).getVertexPhaseTimings(vertexName);
+      if(timings == null) {
+        throw new TezRemoteException("Unknown vertexName: " + vertexName);
+      }
+
+      return timings;
+    }
     
     DAG getDAG(String dagIdStr) throws IOException, TezRemoteException {
       TezDAGID dagId = TezDAGID.fromString(dagIdStr);
       if(dagId == null) {
         throw new TezRemoteException("Bad dagId: " + dagIdStr);
       }
-      if(!dagId.equals(dag.getID())) {
+      DAG dag = DAGAppMaster.this.getDAG(dagId);
+      if(dag == null) {
         throw new TezRemoteException("Unknown dagId: " + dagIdStr);
       }
       return dag;
     }
+
+    @Override
+    public String submitDAG(DAGPlan dagPlan) throws TezRemoteException {
+      return DAGAppMaster.this.submitDAG(dagPlan).toString();
+    }
+
+    @Override
+    public void shutdownSession() throws TezRemoteException {
+      DAGAppMaster.this.shutdownSession();
+    }
   }
 
   private class RunningAppContext implements AppContext {
@@ -801,7 +1000,7 @@ public class DAGAppMaster extends CompositeService {
 
     @Override
     public String getUser() {
-      return dag.getUserName();
+      return currentUser.getShortUserName();
     }
 
     @Override
@@ -837,7 +1036,7 @@ public class DAGAppMaster extends CompositeService {
     public TezDAGID getDAGID() {
       try {
         rLock.lock();
-        return dag.getID();
+        return dag == null ? null : dag.getID();
       } finally {
         rLock.unlock();
       }
@@ -870,7 +1069,10 @@ public class DAGAppMaster extends CompositeService {
     */
     
     // /////////////////// Create the job itself.
-    dag = createDAG(jobPlan);
+    // A session may be started without a DAG and be sent DAGs later.
+    if (jobPlan != null) {
+      dag = addDAG(jobPlan);
+    }
 
     // End of creating the job.
 
@@ -878,12 +1080,9 @@ public class DAGAppMaster extends CompositeService {
     // It's more test friendly to put it here.
     DefaultMetricsSystem.initialize("MRAppMaster");
 
-    // create a job event for job intialization
-    DAGEvent initDagEvent = new DAGEvent(dag.getID(), DAGEventType.DAG_INIT);
-    // Send init to the job (this does NOT trigger job execution)
-    // This is a synchronous call, not an event through dispatcher. We want
-    // job-init to be done completely here.
-    dagEventDispatcher.handle(initDagEvent);
+    if (dag != null) {
+      initDAG(dag);
+    }
 
     //start all the components
     super.start();
@@ -891,11 +1090,15 @@ public class DAGAppMaster extends CompositeService {
     this.dagsStartTime = clock.getTime();
     AMStartedEvent startEvent = new AMStartedEvent(appAttemptID,
         startTime, dagsStartTime, appSubmitTime);
-    dispatcher.getEventHandler().handle(
-        new DAGHistoryEvent(this.dagId, startEvent));
+    // A session started without a DAG has no DAG to log the AM start under
+    dispatcher.getEventHandler().handle(this.dagId == null
+        ? new DAGHistoryEvent(startEvent)
+        : new DAGHistoryEvent(this.dagId, startEvent));
     
     // All components have started, start the job.
-    startDags();
+    if (dag != null) {
+      startDags();
+    }
   }
 
   /**
@@ -909,6 +1112,9 @@ public class DAGAppMaster extends CompositeService {
    */
   @SuppressWarnings("unchecked")
   protected void startDags() {
+    synchronized (this) {
+      dagRunning = true;
+    }
     /** create a job-start event to get this ball rolling */
     DAGEvent startDagEvent = new DAGEvent(dag.getID(), DAGEventType.DAG_START);
     /** send the job-start event. this triggers the job execution. */
@@ -919,7 +1125,12 @@ public class DAGAppMaster extends CompositeService {
     @SuppressWarnings("unchecked")
     @Override
     public void handle(DAGEvent event) {
-      ((EventHandler<DAGEvent>)context.getDAG()).handle(event);
+      DAG dag = getDAG(event.getDAGId());
+      if (dag == null) {
+        LOG.warn("Dropping event for unknown DAG: " + event);
+        return;
+      }
+      ((EventHandler<DAGEvent>)dag).handle(event);
     }
   }
   
@@ -927,8 +1138,13 @@ public class DAGAppMaster extends CompositeService {
     @SuppressWarnings("unchecked")
     @Override
     public void handle(TaskEvent event) {
+      DAG dag = getDAG(event.getTaskID().getVertexID().getDAGId());
+      if (dag == null) {
+        LOG.warn("Dropping event for unknown DAG: " + event);
+        return;
+      }
       Task task =
-          context.getDAG().getVertex(event.getTaskID().getVertexID()).
+          dag.getVertex(event.getTaskID().getVertexID()).
               getTask(event.getTaskID());
       ((EventHandler<TaskEvent>)task).handle(event);
     }
@@ -939,7 +1155,12 @@ public class DAGAppMaster extends CompositeService {
     @SuppressWarnings("unchecked")
     @Override
     public void handle(TaskAttemptEvent event) {
-      DAG dag = context.getDAG();
+      DAG dag = getDAG(
+          event.getTaskAttemptID().getTaskID().getVertexID().getDAGId());
+      if (dag == null) {
+        LOG.warn("Dropping event for unknown DAG: " + event);
+        return;
+      }
       Task task =
           dag.getVertex(event.getTaskAttemptID().getTaskID().getVertexID()).
               getTask(event.getTaskAttemptID().getTaskID());
@@ -953,7 +1174,11 @@ public class DAGAppMaster extends CompositeService {
     @SuppressWarnings("unchecked")
     @Override
     public void handle(VertexEvent event) {
-      DAG dag = context.getDAG();
+      DAG dag = getDAG(event.getVertexId().getDAGId());
+      if (dag == null) {
+        LOG.warn("Dropping event for unknown DAG: " + event);
+        return;
+      }
       org.apache.tez.dag.app.dag.Vertex vertex =
           dag.getVertex(event.getVertexId());
       ((EventHandler<VertexEvent>) vertex).handle(event);
@@ -1000,6 +1225,9 @@ public class DAGAppMaster extends CompositeService {
       TezConfiguration conf = new TezConfiguration(new YarnConfiguration());
       
       DAGPlan jobPlan = null;
+      if (cliParser.hasOption(OPT_SESSION)) {
+        conf.setBoolean(TezConfiguration.DAG_AM_SESSION_MODE, true);
+      }
       if (cliParser.hasOption(OPT_PREDEFINED)) {
         LOG.info("Running with PreDefined configuration");
         type = cliParser.getOptionValue(OPT_PREDEFINED, "mr");
@@ -1011,7 +1239,8 @@ public class DAGAppMaster extends CompositeService {
           jobPlan = MRRExampleHelper.createDAGConfigurationForMRR();
         }
       } 
-      else {
+      else if (!cliParser.hasOption(OPT_SESSION)
+          || new File(TezConfiguration.DAG_AM_PLAN_PB_BINARY).exists()) {
         // Read the protobuf DAG
         DAGPlan.Builder dagPlanBuilder = DAGPlan.newBuilder(); 
         FileInputStream dagPBBinaryStream = null;
@@ -1028,10 +1257,12 @@ public class DAGAppMaster extends CompositeService {
         jobPlan = dagPlanBuilder.build();
       }
 
-      LOG.info("XXXX Running a DAG with "
-          + jobPlan.getVertexCount() + " vertices ");
-      for (VertexPlan v : jobPlan.getVertexList()) {
-        LOG.info("XXXX DAG has vertex " + v.getName());
+      if (jobPlan != null) {
+        LOG.info("XXXX Running a DAG with "
+            + jobPlan.getVertexCount() + " vertices ");
+        for (VertexPlan v : jobPlan.getVertexList()) {
+          LOG.info("XXXX DAG has vertex " + v.getName());
+        }
       }
 
       String jobUserName = System
@@ -1042,9 +1273,11 @@ public class DAGAppMaster extends CompositeService {
       // the objects myself.
       conf.setBoolean("fs.automatic.close", false);
       
-      Map<String, String> config = DagTypeConverters.createSettingsMapFromDAGPlan(jobPlan.getJobSettingList());
-      for(Entry<String, String> entry : config.entrySet()) {
-        conf.set(entry.getKey(), entry.getValue());
+      if (jobPlan != null) {
+        Map<String, String> config = DagTypeConverters.createSettingsMapFromDAGPlan(jobPlan.getJobSettingList());
+        for(Entry<String, String> entry : config.entrySet()) {
+          conf.set(entry.getKey(), entry.getValue());
+        }
       }
 
       DAGAppMaster appMaster =
@@ -1064,11 +1297,14 @@ public class DAGAppMaster extends CompositeService {
   }
 
   private static String OPT_PREDEFINED = "predefined";
+  private static String OPT_SESSION = "session";
 
   private static Options getCliOptions() {
     Options opts = new Options();
     opts.addOption(OPT_PREDEFINED, true,
         "Whether to run the predefined MR/MRR jobs");
+    opts.addOption(OPT_SESSION, false,
+        "Keep running and accept DAGs from clients");
     return opts;
   }
 
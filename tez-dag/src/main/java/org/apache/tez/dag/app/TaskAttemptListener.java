@@ -21,6 +21,7 @@ package org.apache.tez.dag.app;
 import java.net.InetSocketAddress;
 
 import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.tez.dag.records.TezDAGID;
 import org.apache.tez.dag.records.TezTaskAttemptID;
 /**
  * This class listens for changes to the state of a Task.
@@ -41,6 +42,11 @@ public interface TaskAttemptListener {
 //  void unregisterRunningJvm(WrappedJvmID jvmID);
   
   void unregisterTaskAttempt(TezTaskAttemptID attemptID);
+
+  /**
+   * Drop what was kept for the tasks of a DAG which has completed.
+   */
+  void dagComplete(TezDAGID dagId);
   /**
    * Register a JVM with the listener.  This should be called as soon as a 
    * JVM ID is assigned to a task attempt, before it has been launched.
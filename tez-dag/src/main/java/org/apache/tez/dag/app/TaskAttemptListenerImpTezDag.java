@@ -20,7 +20,9 @@ package org.apache.tez.dag.app;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -29,6 +31,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.ipc.ProtocolSignature;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.ipc.Server;
@@ -43,8 +48,12 @@ import org.apache.tez.common.TezTaskStatus;
 import org.apache.tez.common.TezTaskUmbilicalProtocol;
 import org.apache.tez.common.records.ProceedToCompletionResponse;
 import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.api.oldrecords.TaskAttemptState;
 import org.apache.tez.dag.app.dag.DAG;
 import org.apache.tez.dag.app.dag.Task;
+import org.apache.tez.dag.app.dag.TaskAttempt;
+import org.apache.tez.dag.app.dag.Vertex;
+import org.apache.tez.dag.app.dag.VertexState;
 import org.apache.tez.dag.app.dag.event.TaskAttemptEventDiagnosticsUpdate;
 import org.apache.tez.dag.app.dag.event.TaskAttemptEvent;
 import org.apache.tez.dag.app.dag.event.TaskAttemptEventOutputConsumable;
@@ -55,9 +64,14 @@ import org.apache.tez.dag.app.dag.event.TaskAttemptEventStatusUpdate.TaskAttempt
 import org.apache.tez.dag.app.rm.container.AMContainerImpl;
 import org.apache.tez.dag.app.rm.container.AMContainerTask;
 import org.apache.tez.dag.app.security.authorize.MRAMPolicyProvider;
+import org.apache.tez.dag.records.TezDAGID;
 import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezVertexID;
 import org.apache.tez.engine.common.security.JobTokenSecretManager;
+import org.apache.tez.engine.common.semijoin.KeyBloomFilter;
 import org.apache.tez.engine.records.OutputContext;
+import org.apache.tez.engine.records.TezHeartbeatRequest;
+import org.apache.tez.engine.records.TezHeartbeatResponse;
 import org.apache.tez.engine.records.TezDependentTaskCompletionEvent;
 import org.apache.tez.engine.records.TezTaskDependencyCompletionEventsUpdate;
 
@@ -89,6 +103,13 @@ public class TaskAttemptListenerImpTezDag extends AbstractService implements
   
   private Set<ContainerId> registeredContainers = Collections
       .newSetFromMap(new ConcurrentHashMap<ContainerId, Boolean>());
+
+  // key filters published by attempts, until their vertex succeeds
+  final ConcurrentMap<TezTaskAttemptID, BytesWritable> attemptKeyFilters =
+      new ConcurrentHashMap<TezTaskAttemptID, BytesWritable>();
+  // combined key filters of succeeded vertices, until their DAG completes
+  final ConcurrentMap<TezVertexID, BytesWritable> vertexKeyFilters =
+      new ConcurrentHashMap<TezVertexID, BytesWritable>();
   
   public TaskAttemptListenerImpTezDag(AppContext context,
       TaskHeartbeatHandler thh, ContainerHeartbeatHandler chh,
@@ -293,8 +314,10 @@ public class TaskAttemptListenerImpTezDag extends AbstractService implements
     // set the fetch failures
     if (taskStatus.getFailedDependencies() != null
         && taskStatus.getFailedDependencies().size() > 0) {
-      LOG.warn("Failed dependencies are not handled at the moment." +
-      		" The job is likely to fail / hang");
+      // Aggregated per source attempt by the consumer's vertex, which
+      // re-runs the source once enough consumers have reported it.
+      LOG.info("Fetch failures reported by " + taskAttemptId + " for "
+          + taskStatus.getFailedDependencies());
       taskAttemptStatus.fetchFailedMaps = new ArrayList<TezTaskAttemptID>();
       for (TezTaskAttemptID failedAttemptId : taskStatus
           .getFailedDependencies()) {
@@ -302,6 +325,10 @@ public class TaskAttemptListenerImpTezDag extends AbstractService implements
       }
     }
 
+    // Per-partition output sizes, used for skew detection by consumers
+    taskAttemptStatus.partitionSizes = taskStatus.getPartitionSizes();
+    taskAttemptStatus.partitionRecords = taskStatus.getPartitionRecords();
+
     // Task sends the information about the nextRecordRange to the TT
 
     // TODO: The following are not needed here, but needed to be set somewhere
@@ -503,13 +530,173 @@ public class TaskAttemptListenerImpTezDag extends AbstractService implements
     */
     return COMPLETION_RESPONSE_NO_WAIT;
   }
-  
-  
+
+  @Override
+  public TezHeartbeatResponse heartbeat(TezHeartbeatRequest request)
+      throws IOException, InterruptedException {
+    TezTaskAttemptID taskAttemptId = request.getTaskAttemptId();
+    TezHeartbeatResponse response = new TezHeartbeatResponse();
+    boolean taskFound;
+    if (request.getStatus() != null) {
+      taskFound = statusUpdate(taskAttemptId, request.getStatus());
+    } else {
+      taskFound = ping(taskAttemptId);
+    }
+    if (taskFound) {
+      // the DAG of the attempt may have completed in the meantime
+      TaskAttempt attempt = getTaskAttempt(taskAttemptId);
+      if (attempt == null) {
+        taskFound = false;
+      } else {
+        TaskAttemptState state = attempt.getState();
+        taskFound = state != TaskAttemptState.FAILED
+            && state != TaskAttemptState.KILLED;
+      }
+    }
+    if (!taskFound) {
+      LOG.info("Telling " + taskAttemptId + " to die");
+      response.setShouldDie(true);
+      return response;
+    }
+
+    if (request.getFromEventIdx() >= 0) {
+      response.setEventsUpdate(getDependentTasksCompletionEvents(
+          request.getFromEventIdx(), request.getMaxEvents(), taskAttemptId));
+    }
+    if (request.askProceedToCompletion()) {
+      response.setProceedToCompletion(proceedToCompletion(taskAttemptId));
+    }
+    if (request.askCanCommit()) {
+      response.setCanCommit(canCommit(taskAttemptId));
+    }
+    return response;
+  }
+
+  @Override
+  public void publishKeyFilter(TezTaskAttemptID taskAttemptId,
+      BytesWritable filter) throws IOException {
+    LOG.info("AttemptId: " + taskAttemptId + " published a key filter of "
+        + filter.getLength() + " bytes");
+    taskHeartbeatHandler.progressing(taskAttemptId);
+    pingContainerHeartbeatHandler(taskAttemptId);
+    attemptKeyFilters.put(taskAttemptId, filter);
+  }
+
+  @Override
+  public BytesWritable getVertexKeyFilter(TezTaskAttemptID taskAttemptId,
+      String vertexName) throws IOException {
+    taskHeartbeatHandler.progressing(taskAttemptId);
+    pingContainerHeartbeatHandler(taskAttemptId);
+
+    DAG dag = context.getDAG();
+    Vertex vertex = null;
+    if (dag != null) {
+      for (Vertex v : dag.getVertices().values()) {
+        if (v.getName().equals(vertexName)) {
+          vertex = v;
+          break;
+        }
+      }
+    }
+    if (vertex == null) {
+      throw new IOException("Unknown vertex " + vertexName
+          + " requested by " + taskAttemptId);
+    }
+    if (vertex.getState() != VertexState.SUCCEEDED) {
+      return null;
+    }
+    return combineKeyFilters(vertex);
+  }
+
+  /**
+   * OR the filters of the successful attempts of a vertex which has
+   * succeeded into one, and drop the filters of all its attempts.
+   */
+  private synchronized BytesWritable combineKeyFilters(Vertex vertex)
+      throws IOException {
+    BytesWritable combined = vertexKeyFilters.get(vertex.getVertexId());
+    if (combined != null) {
+      return combined;
+    }
+    KeyBloomFilter filter = null;
+    int numFilters = 0;
+    DataInputBuffer in = new DataInputBuffer();
+    for (Task task : vertex.getTasks().values()) {
+      for (TaskAttempt attempt : task.getAttempts().values()) {
+        BytesWritable serialized = attemptKeyFilters.remove(attempt.getID());
+        if (serialized == null
+            || attempt.getState() != TaskAttemptState.SUCCEEDED) {
+          continue;
+        }
+        in.reset(serialized.getBytes(), serialized.getLength());
+        KeyBloomFilter attemptFilter = new KeyBloomFilter();
+        attemptFilter.readFields(in);
+        if (filter == null) {
+          filter = attemptFilter;
+        } else {
+          filter.or(attemptFilter);
+        }
+        ++numFilters;
+      }
+    }
+    if (filter == null) {
+      combined = new BytesWritable();
+    } else {
+      DataOutputBuffer out = new DataOutputBuffer();
+      filter.write(out);
+      combined = new BytesWritable(
+          Arrays.copyOf(out.getData(), out.getLength()));
+    }
+    LOG.info("Combined " + numFilters + " key filters of vertex "
+        + vertex.getName() + " into " + combined.getLength() + " bytes");
+    vertexKeyFilters.put(vertex.getVertexId(), combined);
+    return combined;
+  }
+
+  @Override
+  public void dagComplete(TezDAGID dagId) {
+    for (Iterator<TezVertexID> it = vertexKeyFilters.keySet().iterator();
+        it.hasNext();) {
+      if (it.next().getDAGId().equals(dagId)) {
+        it.remove();
+      }
+    }
+    for (Iterator<TezTaskAttemptID> it = attemptKeyFilters.keySet().iterator();
+        it.hasNext();) {
+      if (it.next().getTaskID().getVertexID().getDAGId().equals(dagId)) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * @return the attempt, or null if it is not part of the current DAG
+   */
+  private TaskAttempt getTaskAttempt(TezTaskAttemptID attemptId) {
+    DAG dag = context.getDAG();
+    if (dag == null) {
+      return null;
+    }
+    Vertex vertex = dag.getVertex(attemptId.getTaskID().getVertexID());
+    if (vertex == null) {
+      return null;
+    }
+    Task task = vertex.getTask(attemptId.getTaskID());
+    return (task == null) ? null : task.getAttempt(attemptId);
+  }
   
   // TODO EVENTUALLY remove all mrv2 ids.
   @Override
   public void unregisterTaskAttempt(TezTaskAttemptID attemptId) {
     attemptToContainerIdMap.remove(attemptId);
+    if (attemptKeyFilters.containsKey(attemptId)) {
+      // only the filters of successful attempts are combined
+      TaskAttempt attempt = getTaskAttempt(attemptId);
+      if (attempt == null
+          || attempt.getState() != TaskAttemptState.SUCCEEDED) {
+        attemptKeyFilters.remove(attemptId);
+      }
+    }
   }
 
   public AMContainerTask pullTaskAttemptContext(ContainerId containerId) {
@@ -26,6 +26,7 @@ import org.apache.hadoop.yarn.api.records.ApplicationAccessType;
 import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.dag.api.records.DAGProtos.DAGPlan;
 import org.apache.tez.dag.api.client.DAGStatusBuilder;
+import org.apache.tez.dag.api.client.VertexPhaseTimingsBuilder;
 import org.apache.tez.dag.api.client.VertexStatusBuilder;
 import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.dag.records.TezDAGID;
@@ -64,6 +65,7 @@ public interface DAG {
   DAGPlan getJobPlan();
   DAGStatusBuilder getDAGStatus();
   VertexStatusBuilder getVertexStatus(String vertexName);
+  VertexPhaseTimingsBuilder getVertexPhaseTimings(String vertexName);
   
   /**
    * @return the ACLs for this job for each type of JobACL given. 
@@ -100,6 +100,12 @@ public interface TaskAttempt {
    * @return the port shuffle is on.
    */
   public int getShufflePort();
+
+  /**
+   * @return the bytes written by the attempt to each output partition, or
+   * null if not reported.
+   */
+  long[] getPartitionSizes();
   
   public Task getTask();
   
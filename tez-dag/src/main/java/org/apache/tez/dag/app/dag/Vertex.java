@@ -30,6 +30,7 @@ import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.dag.api.EdgeProperty;
 import org.apache.tez.dag.api.records.DAGProtos.VertexPlan;
 import org.apache.tez.dag.api.client.ProgressBuilder;
+import org.apache.tez.dag.api.client.VertexPhaseTimingsBuilder;
 import org.apache.tez.dag.api.client.VertexStatusBuilder;
 import org.apache.tez.dag.records.TezTaskID;
 import org.apache.tez.dag.records.TezVertexID;
@@ -63,6 +64,7 @@ public interface Vertex extends Comparable<Vertex> {
   float getProgress();
   ProgressBuilder getVertexProgress();
   VertexStatusBuilder getVertexStatus();
+  VertexPhaseTimingsBuilder getVertexPhaseTimings();
   
   TezDependentTaskCompletionEvent[]
       getTaskAttemptCompletionEvents(int fromEventId, int maxEvents);
@@ -76,6 +78,12 @@ public interface Vertex extends Comparable<Vertex> {
   List<InputSpec> getInputSpecList();
   List<OutputSpec> getOutputSpecList();
 
+  /**
+   * @return the serialized input split of the task, or null if the splits
+   *         were not generated by the AM.
+   */
+  byte[] getSplitPayload(int taskIndex);
+
   int getInputVerticesCount();
   int getOutputVerticesCount();
   void scheduleTasks(Collection<TezTaskID> taskIDs);
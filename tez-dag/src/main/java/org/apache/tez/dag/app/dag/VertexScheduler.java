@@ -18,10 +18,22 @@
 
 package org.apache.tez.dag.app.dag;
 
+import java.util.List;
+
 import org.apache.tez.dag.records.TezTaskAttemptID;
 
 public interface VertexScheduler {
   void onVertexStarted();
   void onVertexCompleted();
   void onSourceTaskCompleted(TezTaskAttemptID attemptId);
+  /**
+   * Called when the outputs of the source tasks completed so far make
+   * partitions of the vertex skewed, before the completion of the source
+   * task is passed on to {@link #onSourceTaskCompleted(TezTaskAttemptID)}.
+   * Each partition is consumed by the task with the same index.
+   * 
+   * @param partitions the partitions newly found skewed
+   * @param partitionSizes the bytes of all partitions so far
+   */
+  void onPartitionsSkewed(List<Integer> partitions, long[] partitionSizes);
 }
@@ -19,6 +19,7 @@ package org.apache.tez.dag.app.dag;
 
 public enum VertexState {
   NEW,
+  INITIALIZING,
   INITED,
   RUNNING,
   SUCCEEDED,
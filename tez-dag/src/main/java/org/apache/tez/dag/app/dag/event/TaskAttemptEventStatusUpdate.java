@@ -54,5 +54,7 @@ public class TaskAttemptEventStatusUpdate extends TaskAttemptEvent {
     public long shuffleFinishTime;
     public long sortFinishTime;
     public TaskAttemptState taskState;
+    public long[] partitionSizes;
+    public long[] partitionRecords;
   }
 }
@@ -0,0 +1,52 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.app.dag.event;
+
+import java.io.IOException;
+
+import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.mapreduce.hadoop.InputSplitGenerator.TaskSplit;
+
+public class VertexEventSplitsGenerated extends VertexEvent {
+  private TaskSplit[] splits;
+  private IOException failure;
+
+  public VertexEventSplitsGenerated(TezVertexID vertexId, TaskSplit[] splits) {
+    super(vertexId, VertexEventType.V_SPLITS_GENERATED);
+    this.splits = splits;
+  }
+
+  public VertexEventSplitsGenerated(TezVertexID vertexId,
+      IOException failure) {
+    super(vertexId, VertexEventType.V_SPLITS_GENERATED);
+    this.failure = failure;
+  }
+
+  public TaskSplit[] getSplits() {
+    return splits;
+  }
+
+  /**
+   * @return why the splits could not be generated, or null if they were.
+   */
+  public IOException getFailure() {
+    return failure;
+  }
+
+}
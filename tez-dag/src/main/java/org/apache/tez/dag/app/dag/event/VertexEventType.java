@@ -31,6 +31,7 @@ public enum VertexEventType {
   
   //Producer:Vertex
   V_COMPLETED,
+  V_SPLITS_GENERATED,
   V_START,
   V_SOURCE_TASK_ATTEMPT_COMPLETED,
   V_SOURCE_VERTEX_STARTED,
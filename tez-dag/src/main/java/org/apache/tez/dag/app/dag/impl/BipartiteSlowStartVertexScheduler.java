@@ -20,7 +20,11 @@ package org.apache.tez.dag.app.dag.impl;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -36,7 +40,8 @@ import org.apache.tez.dag.records.TezVertexID;
 /**
  * Starts scheduling tasks when number of completed source tasks crosses 
  * <code>slowStartMinSrcCompletionFraction</code> and schedules all tasks 
- *  when <code>slowStartMaxSrcCompletionFraction</code> is reached
+ *  when <code>slowStartMaxSrcCompletionFraction</code> is reached.
+ *  Tasks of skewed partitions are scheduled before the others.
  */
 public class BipartiteSlowStartVertexScheduler implements VertexScheduler {
   
@@ -54,6 +59,7 @@ public class BipartiteSlowStartVertexScheduler implements VertexScheduler {
   int totalTasksToSchedule = 0;
   HashMap<TezVertexID, Vertex> bipartiteSources = 
                                             new HashMap<TezVertexID, Vertex>();
+  Set<Integer> skewedPartitions = new HashSet<Integer>();
   
   public BipartiteSlowStartVertexScheduler(Vertex managedVertex,
                                             float slowStartMinSrcCompletionFraction,
@@ -89,6 +95,7 @@ public class BipartiteSlowStartVertexScheduler implements VertexScheduler {
     // track the tasks in this vertex
     pendingTasks.addAll(managedVertex.getTasks().keySet());
     totalTasksToSchedule = pendingTasks.size();
+    prioritizeSkewedTasks();
     
     // track source vertices
     for(Vertex vertex : bipartiteSources.values()) {
@@ -115,6 +122,38 @@ public class BipartiteSlowStartVertexScheduler implements VertexScheduler {
     }
   }
   
+  @Override
+  public void onPartitionsSkewed(List<Integer> partitions,
+      long[] partitionSizes) {
+    skewedPartitions.addAll(partitions);
+    if (pendingTasks != null) {
+      prioritizeSkewedTasks();
+    }
+  }
+
+  /**
+   * Move the pending tasks of skewed partitions to the front, as they gain
+   * the most from shuffling while the source tasks still run.
+   */
+  void prioritizeSkewedTasks() {
+    if (skewedPartitions.isEmpty()) {
+      return;
+    }
+    ArrayList<TezTaskID> skewedTasks = new ArrayList<TezTaskID>();
+    Iterator<TezTaskID> iter = pendingTasks.iterator();
+    while (iter.hasNext()) {
+      TezTaskID taskId = iter.next();
+      if (skewedPartitions.contains(taskId.getId())) {
+        skewedTasks.add(taskId);
+        iter.remove();
+      }
+    }
+    if (!skewedTasks.isEmpty()) {
+      LOG.info("Scheduling tasks of skewed partitions first: " + skewedTasks);
+      pendingTasks.addAll(0, skewedTasks);
+    }
+  }
+
   void schedulePendingTasks(int numTasksToSchedule) {
     ArrayList<TezTaskID> scheduledTasks = new ArrayList<TezTaskID>(numTasksToSchedule);
     while(!pendingTasks.isEmpty() && numTasksToSchedule > 0) {
@@ -61,6 +61,7 @@ import org.apache.tez.dag.api.TezException;
 import org.apache.tez.dag.api.VertexLocationHint;
 import org.apache.tez.dag.api.client.DAGStatusBuilder;
 import org.apache.tez.dag.api.client.ProgressBuilder;
+import org.apache.tez.dag.api.client.VertexPhaseTimingsBuilder;
 import org.apache.tez.dag.api.client.VertexStatusBuilder;
 import org.apache.tez.dag.api.committer.DAGStatus;
 import org.apache.tez.dag.api.DagTypeConverters;
@@ -554,6 +555,15 @@ public class DAGImpl implements org.apache.tez.dag.app.dag.DAG,
     return vertex.getVertexStatus();
   }
 
+  @Override
+  public VertexPhaseTimingsBuilder getVertexPhaseTimings(String vertexName) {
+    Vertex vertex = vertexMap.get(vertexName);
+    if(vertex == null) {
+      return null;
+    }
+    return vertex.getVertexPhaseTimings();
+  }
+
 
   protected void startRootVertices() {
     for (Vertex v : vertices.values()) {
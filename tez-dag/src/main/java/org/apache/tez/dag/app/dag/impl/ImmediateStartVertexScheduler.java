@@ -18,6 +18,8 @@
 
 package org.apache.tez.dag.app.dag.impl;
 
+import java.util.List;
+
 import org.apache.tez.dag.app.dag.Vertex;
 import org.apache.tez.dag.app.dag.VertexScheduler;
 import org.apache.tez.dag.records.TezTaskAttemptID;
@@ -45,4 +47,10 @@ public class ImmediateStartVertexScheduler implements VertexScheduler {
   public void onSourceTaskCompleted(TezTaskAttemptID attemptId) {
   }
 
+  @Override
+  public void onPartitionsSkewed(List<Integer> partitions,
+      long[] partitionSizes) {
+    // all tasks are scheduled already
+  }
+
 }
@@ -0,0 +1,88 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.app.dag.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tez.dag.records.TezTaskID;
+
+/**
+ * Aggregates the per-partition output sizes reported by the source tasks of
+ * a vertex and flags partitions which are much larger than the median
+ * partition. Each partition is consumed by the task with the same index, so
+ * a skewed partition means a straggling task.
+ */
+class PartitionSkewDetector {
+
+  private final float skewFactor;
+  private final long minSkewedBytes;
+  // latest successful output of each source task. A re-run replaces it.
+  private final Map<TezTaskID, long[]> sourceSizes =
+      new HashMap<TezTaskID, long[]>();
+  // running per-partition totals over sourceSizes
+  private long[] totals = new long[0];
+
+  PartitionSkewDetector(float skewFactor, long minSkewedBytes) {
+    this.skewFactor = skewFactor;
+    this.minSkewedBytes = minSkewedBytes;
+  }
+
+  void sourceTaskSucceeded(TezTaskID sourceTaskId, long[] partitionSizes) {
+    long[] previous = sourceSizes.put(sourceTaskId, partitionSizes);
+    if (previous != null) {
+      for (int i = 0; i < previous.length; ++i) {
+        totals[i] -= previous[i];
+      }
+    }
+    if (partitionSizes.length > totals.length) {
+      totals = Arrays.copyOf(totals, partitionSizes.length);
+    }
+    for (int i = 0; i < partitionSizes.length; ++i) {
+      totals[i] += partitionSizes[i];
+    }
+  }
+
+  long[] getPartitionSizes() {
+    return Arrays.copyOf(totals, totals.length);
+  }
+
+  /**
+   * @return the partitions holding at least minSkewedBytes and more than
+   *         skewFactor times the median partition size
+   */
+  List<Integer> getSkewedPartitions() {
+    List<Integer> skewed = new ArrayList<Integer>();
+    if (totals.length < 2) {
+      return skewed;
+    }
+    long[] sorted = getPartitionSizes();
+    Arrays.sort(sorted);
+    long median = sorted[sorted.length / 2];
+    for (int i = 0; i < totals.length; ++i) {
+      if (totals[i] >= minSkewedBytes && totals[i] > skewFactor * median) {
+        skewed.add(i);
+      }
+    }
+    return skewed;
+  }
+}
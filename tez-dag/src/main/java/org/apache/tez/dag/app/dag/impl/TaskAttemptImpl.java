@@ -295,10 +295,13 @@ public class TaskAttemptImpl implements TaskAttempt,
     DAG dag = vertex.getDAG();
 
     // TODO  TEZ-50 user and jobname
-    return new TezEngineTaskContext(getID(), dag.getUserName(), 
-        dag.getName(), getTask()
+    TezEngineTaskContext context = new TezEngineTaskContext(getID(),
+        dag.getUserName(), dag.getName(), getTask()
         .getVertex().getName(), processorName,
         vertex.getInputSpecList(), vertex.getOutputSpecList());
+    context.setSplitPayload(
+        vertex.getSplitPayload(getID().getTaskID().getId()));
+    return context;
   }
   
   @Override
@@ -497,6 +500,16 @@ public class TaskAttemptImpl implements TaskAttempt,
     }
   }
 
+  @Override
+  public long[] getPartitionSizes() {
+    readLock.lock();
+    try {
+      return this.reportedStatus.partitionSizes;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
   @Override
   public Task getTask() {
     return appContext.getDAG()
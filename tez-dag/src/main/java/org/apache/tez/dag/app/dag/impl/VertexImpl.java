@@ -24,10 +24,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -38,7 +41,10 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience.Private;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.MRVertexOutputCommitter;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.security.Credentials;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.StringUtils;
@@ -54,6 +60,9 @@ import org.apache.hadoop.yarn.state.StateMachine;
 import org.apache.hadoop.yarn.state.StateMachineFactory;
 import org.apache.tez.common.InputSpec;
 import org.apache.tez.common.OutputSpec;
+import org.apache.tez.common.counters.CounterGroup;
+import org.apache.tez.common.counters.TaskPhaseCounter;
+import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.dag.api.oldrecords.TaskState;
 import org.apache.tez.dag.api.records.DAGProtos.VertexPlan;
@@ -64,6 +73,7 @@ import org.apache.tez.dag.api.EdgeProperty;
 import org.apache.tez.dag.api.VertexLocationHint;
 import org.apache.tez.dag.api.VertexLocationHint.TaskLocationHint;
 import org.apache.tez.dag.api.client.ProgressBuilder;
+import org.apache.tez.dag.api.client.VertexPhaseTimingsBuilder;
 import org.apache.tez.dag.api.client.VertexStatusBuilder;
 import org.apache.tez.dag.api.committer.NullVertexOutputCommitter;
 import org.apache.tez.dag.api.committer.VertexContext;
@@ -75,6 +85,7 @@ import org.apache.tez.dag.app.TaskAttemptListener;
 import org.apache.tez.dag.app.TaskHeartbeatHandler;
 import org.apache.tez.dag.app.dag.DAG;
 import org.apache.tez.dag.app.dag.Task;
+import org.apache.tez.dag.app.dag.TaskAttempt;
 import org.apache.tez.dag.app.dag.Vertex;
 import org.apache.tez.dag.app.dag.VertexScheduler;
 import org.apache.tez.dag.app.dag.VertexState;
@@ -89,9 +100,12 @@ import org.apache.tez.dag.app.dag.event.TaskEventType;
 import org.apache.tez.dag.app.dag.event.VertexEvent;
 import org.apache.tez.dag.app.dag.event.VertexEventSourceTaskAttemptCompleted;
 import org.apache.tez.dag.app.dag.event.VertexEventSourceVertexStarted;
+import org.apache.tez.dag.app.dag.event.VertexEventSplitsGenerated;
 import org.apache.tez.dag.app.dag.event.VertexEventTaskAttemptCompleted;
 import org.apache.tez.dag.app.dag.event.VertexEventTaskAttemptFetchFailure;
 import org.apache.tez.dag.app.dag.event.VertexEventTaskCompleted;
+import org.apache.tez.dag.app.dag.event.VertexEventTaskLaunched;
+import org.apache.tez.dag.app.dag.event.VertexEventTaskReschedule;
 import org.apache.tez.dag.app.dag.event.VertexEventType;
 import org.apache.tez.dag.history.DAGHistoryEvent;
 import org.apache.tez.dag.history.events.VertexFinishedEvent;
@@ -101,7 +115,11 @@ import org.apache.tez.dag.records.TezTaskAttemptID;
 import org.apache.tez.dag.records.TezTaskID;
 import org.apache.tez.dag.records.TezVertexID;
 import org.apache.tez.engine.common.security.JobTokenIdentifier;
+import org.apache.tez.engine.lib.input.BroadcastShuffledMergedInput;
 import org.apache.tez.engine.records.TezDependentTaskCompletionEvent;
+import org.apache.tez.mapreduce.hadoop.InputSplitGenerator;
+import org.apache.tez.mapreduce.hadoop.InputSplitGenerator.TaskSplit;
+import org.apache.tez.mapreduce.hadoop.MultiStageMRConfigUtil;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -121,12 +139,6 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
 
   private static final Log LOG = LogFactory.getLog(VertexImpl.class);
 
-  //The maximum fraction of fetch failures allowed for a map
-  private static final double MAX_ALLOWED_FETCH_FAILURES_FRACTION = 0.5;
-
-  // Maximum no. of fetch-failure notifications after which map task is failed
-  private static final int MAX_FETCH_FAILURES_NOTIFICATIONS = 3;
-
   //final fields
   private final Clock clock;
 
@@ -146,6 +158,14 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
   volatile Map<TezTaskID, Task> tasks = new LinkedHashMap<TezTaskID, Task>();
   private Object fullCountersLock = new Object();
   private TezCounters fullCounters = null;
+  // Running aggregates, so that status queries only visit running tasks
+  private final Set<TezTaskID> runningTasks = new LinkedHashSet<TezTaskID>();
+  // counters each completed task added to completedTasksCounters
+  private final Map<TezTaskID, TezCounters> completedTasks =
+      new HashMap<TezTaskID, TezCounters>();
+  private final TezCounters completedTasksCounters = new TezCounters();
+  private final VertexPhaseTimingsBuilder phaseTimings =
+      new VertexPhaseTimingsBuilder();
   private Resource taskResource;
 
   public TezConfiguration conf;
@@ -164,6 +184,19 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     new HashMap<TezTaskID, Integer>();
   private final Map<TezTaskAttemptID, Integer> fetchFailuresMapping =
     new HashMap<TezTaskAttemptID, Integer>();
+  // distinct tasks of this vertex which failed to fetch a source attempt
+  private final Map<TezTaskAttemptID, Set<TezTaskID>> fetchFailureReporters =
+    new HashMap<TezTaskAttemptID, Set<TezTaskID>>();
+
+  //The maximum fraction of fetch failures allowed for a map
+  private final float maxAllowedFetchFailuresFraction;
+
+  // Maximum no. of fetch-failure notifications after which map task is failed
+  private final int maxFetchFailuresNotifications;
+
+  // output sizes of the source tasks, per partition of this vertex
+  private final PartitionSkewDetector skewDetector;
+  private final Set<Integer> reportedSkewedPartitions = new HashSet<Integer>();
 
   List<InputSpec> inputSpecList;
   List<OutputSpec> outputSpecList;
@@ -176,6 +209,8 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
   private static final SourceTaskAttemptCompletedEventTransition
       SOURCE_TASK_ATTEMPT_COMPLETED_EVENT_TRANSITION =
           new SourceTaskAttemptCompletedEventTransition();
+  private static final TaskLaunchedTransition TASK_LAUNCHED_TRANSITION =
+      new TaskLaunchedTransition();
 
   protected static final
     StateMachineFactory<VertexImpl, VertexState, VertexEventType, VertexEvent>
@@ -186,7 +221,8 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
           // Transitions from NEW state
           .addTransition
               (VertexState.NEW,
-              EnumSet.of(VertexState.INITED, VertexState.FAILED),
+              EnumSet.of(VertexState.INITIALIZING, VertexState.INITED,
+                  VertexState.FAILED),
               VertexEventType.V_INIT,
               new InitTransition())
           .addTransition(VertexState.NEW, VertexState.KILLED,
@@ -196,6 +232,22 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
               VertexEventType.INTERNAL_ERROR,
               INTERNAL_ERROR_TRANSITION)
 
+          // Transitions from INITIALIZING state
+          .addTransition
+              (VertexState.INITIALIZING,
+              EnumSet.of(VertexState.INITED, VertexState.FAILED),
+              VertexEventType.V_SPLITS_GENERATED,
+              new SplitsGeneratedTransition())
+          .addTransition(VertexState.INITIALIZING, VertexState.INITIALIZING,
+              VertexEventType.V_START,
+              new StartWhenInitedTransition())
+          .addTransition(VertexState.INITIALIZING, VertexState.KILLED,
+              VertexEventType.V_KILL,
+              new KillInitializingVertexTransition())
+          .addTransition(VertexState.INITIALIZING, VertexState.ERROR,
+              VertexEventType.INTERNAL_ERROR,
+              INTERNAL_ERROR_TRANSITION)
+
           // Transitions from INITED state
           .addTransition(VertexState.INITED, VertexState.INITED,
               VertexEventType.V_SOURCE_VERTEX_STARTED,
@@ -235,6 +287,9 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
           .addTransition(VertexState.RUNNING, VertexState.RUNNING,
               VertexEventType.V_TASK_RESCHEDULED,
               new TaskRescheduledTransition())
+          .addTransition(VertexState.RUNNING, VertexState.RUNNING,
+              VertexEventType.V_TASK_LAUNCHED,
+              TASK_LAUNCHED_TRANSITION)
           .addTransition(VertexState.RUNNING, VertexState.RUNNING,
               VertexEventType.V_TASK_ATTEMPT_FETCH_FAILURE,
               new TaskAttemptFetchFailureTransition())
@@ -255,6 +310,9 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
           .addTransition(VertexState.KILL_WAIT, VertexState.KILL_WAIT,
               VertexEventType.V_SOURCE_TASK_ATTEMPT_COMPLETED,
               SOURCE_TASK_ATTEMPT_COMPLETED_EVENT_TRANSITION)
+          .addTransition(VertexState.KILL_WAIT, VertexState.KILL_WAIT,
+              VertexEventType.V_TASK_LAUNCHED,
+              TASK_LAUNCHED_TRANSITION)
           .addTransition(
               VertexState.KILL_WAIT,
               VertexState.ERROR, VertexEventType.INTERNAL_ERROR,
@@ -275,6 +333,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
               EnumSet.of(VertexEventType.V_KILL,
                   VertexEventType.V_TASK_ATTEMPT_FETCH_FAILURE,
                   VertexEventType.V_TASK_ATTEMPT_COMPLETED,
+                  VertexEventType.V_TASK_LAUNCHED,
                   VertexEventType.V_TASK_COMPLETED))
 
           // Transitions from FAILED state
@@ -287,6 +346,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
               EnumSet.of(VertexEventType.V_KILL,
                   VertexEventType.V_TASK_ATTEMPT_FETCH_FAILURE,
                   VertexEventType.V_TASK_ATTEMPT_COMPLETED,
+                  VertexEventType.V_TASK_LAUNCHED,
                   VertexEventType.V_TASK_COMPLETED))
 
           // Transitions from KILLED state
@@ -297,8 +357,10 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
           // Ignore-able events
           .addTransition(VertexState.KILLED, VertexState.KILLED,
               EnumSet.of(VertexEventType.V_KILL,
+                  VertexEventType.V_SPLITS_GENERATED,
                   VertexEventType.V_TASK_ATTEMPT_FETCH_FAILURE,
                   VertexEventType.V_TASK_ATTEMPT_COMPLETED,
+                  VertexEventType.V_TASK_LAUNCHED,
                   VertexEventType.V_TASK_COMPLETED))
 
           // No transitions from INTERNAL_ERROR state. Ignore all.
@@ -306,10 +368,12 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
               VertexState.ERROR,
               VertexState.ERROR,
               EnumSet.of(VertexEventType.V_INIT,
+                  VertexEventType.V_SPLITS_GENERATED,
                   VertexEventType.V_KILL,
                   VertexEventType.V_TASK_COMPLETED,
                   VertexEventType.V_TASK_ATTEMPT_COMPLETED,
                   VertexEventType.V_TASK_RESCHEDULED,
+                  VertexEventType.V_TASK_LAUNCHED,
                   VertexEventType.V_DIAGNOSTIC_UPDATE,
                   VertexEventType.V_TASK_ATTEMPT_FETCH_FAILURE,
                   VertexEventType.INTERNAL_ERROR))
@@ -327,6 +391,8 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
   private int killedTaskCount = 0;
 
   private long initTime;
+  // V_START came in while the splits were being generated
+  private boolean startRequested = false;
   private long startTime;
   private long finishTime;
   private float progress;
@@ -348,6 +414,8 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
   private VertexOutputCommitter committer;
   private AtomicBoolean committed = new AtomicBoolean(false);
   private VertexLocationHint vertexLocationHint;
+  // the serialized splits of the tasks, if they were generated by the AM
+  private byte[][] taskSplitPayloads;
   private Map<String, LocalResource> localResources;
   private Map<String, String> environment;
   private final String javaOpts;
@@ -367,6 +435,17 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     this.vertexPlan = vertexPlan;
     this.vertexName = vertexName;
     this.conf = conf;
+    this.maxFetchFailuresNotifications = conf.getInt(
+        TezConfiguration.DAG_MAX_FETCH_FAILURES_NOTIFICATIONS,
+        TezConfiguration.DAG_MAX_FETCH_FAILURES_NOTIFICATIONS_DEFAULT);
+    this.maxAllowedFetchFailuresFraction = conf.getFloat(
+        TezConfiguration.DAG_MAX_ALLOWED_FETCH_FAILURES_FRACTION,
+        TezConfiguration.DAG_MAX_ALLOWED_FETCH_FAILURES_FRACTION_DEFAULT);
+    this.skewDetector = new PartitionSkewDetector(
+        conf.getFloat(TezConfiguration.DAG_SKEW_DETECTION_FACTOR,
+            TezConfiguration.DAG_SKEW_DETECTION_FACTOR_DEFAULT),
+        conf.getLong(TezConfiguration.DAG_SKEW_DETECTION_MIN_BYTES,
+            TezConfiguration.DAG_SKEW_DETECTION_MIN_BYTES_DEFAULT));
     //this.metrics = metrics;
     this.clock = clock;
     // TODO: Recovery
@@ -468,7 +547,11 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
       }
 
       TezCounters counters = new TezCounters();
-      return incrTaskCounters(counters, tasks.values());
+      counters.incrAllCounters(completedTasksCounters);
+      for (TezTaskID taskId : runningTasks) {
+        counters.incrAllCounters(tasks.get(taskId).getCounters());
+      }
+      return counters;
 
     } finally {
       readLock.unlock();
@@ -552,12 +635,36 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     }
   }
 
+  @Override
+  public VertexPhaseTimingsBuilder getVertexPhaseTimings() {
+    this.readLock.lock();
+    try {
+      return new VertexPhaseTimingsBuilder(phaseTimings.getProto());
+    } finally {
+      this.readLock.unlock();
+    }
+  }
+
+  private void addPhaseTimings(Task task) {
+    TezCounters counters = task.getCounters();
+    if (counters == null) {
+      return;
+    }
+    for (CounterGroup group : counters) {
+      if (group.getName().equals(TaskPhaseCounter.class.getName())) {
+        for (TezCounter counter : group) {
+          phaseTimings.addTaskTime(counter.getName(), counter.getValue());
+        }
+      }
+    }
+  }
+
   private void computeProgress() {
     this.readLock.lock();
     try {
-      float progress = 0f;
-      for (Task task : this.tasks.values()) {
-        progress += (task.isFinished() ? 1f : task.getProgress());
+      float progress = completedTasks.size();
+      for (TezTaskID taskId : runningTasks) {
+        progress += tasks.get(taskId).getProgress();
       }
       if (this.numTasks != 0) {
         progress /= this.numTasks;
@@ -776,12 +883,33 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
         // TODO: Splits?
 
         vertex.numTasks = vertex.getVertexPlan().getTaskConfig().getNumTasks();
+        checkBroadcastInputs(vertex);
+        if (vertex.isRootVertex() && vertex.conf.getBoolean(
+            TezConfiguration.DAG_AM_GENERATE_SPLITS,
+            TezConfiguration.DAG_AM_GENERATE_SPLITS_DEFAULT)) {
+          // listing the input can take long, so it does not hold up the
+          // dispatcher. The rest of the init follows once the splits are in.
+          generateSplits(vertex);
+          return VertexState.INITIALIZING;
+        }
 
         /*
         TaskSplitMetaInfo[] taskSplitMetaInfo = createSplits(job, job.jobId);
         job.numMapTasks = taskSplitMetaInfo.length;
         */
 
+        return initTasks(vertex);
+      } catch (IOException e) {
+        return initFailed(vertex, e);
+      }
+    }
+
+    /**
+     * Create the tasks, the scheduler and the committer of the vertex, once
+     * the number of tasks is known.
+     */
+    protected VertexState initTasks(VertexImpl vertex) {
+      try {
         if (vertex.numTasks == 0) {
           vertex.addDiagnostic("No of tasks for vertex " + vertex.getVertexId());
         }
@@ -842,16 +970,90 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
         return VertexState.INITED;
 
       } catch (IOException e) {
-        LOG.warn("Vertex init failed", e);
-        vertex.addDiagnostic("Job init failed : "
-            + StringUtils.stringifyException(e));
-        vertex.abortVertex(VertexStatus.State.FAILED);
-        // TODO: Metrics
-        //job.metrics.endPreparingJob(vertex);
-        return vertex.finished(VertexState.FAILED);
+        return initFailed(vertex, e);
+      }
+    }
+
+    protected VertexState initFailed(VertexImpl vertex, IOException e) {
+      LOG.warn("Vertex init failed", e);
+      vertex.addDiagnostic("Job init failed : "
+          + StringUtils.stringifyException(e));
+      vertex.abortVertex(VertexStatus.State.FAILED);
+      // TODO: Metrics
+      //job.metrics.endPreparingJob(vertex);
+      return vertex.finished(VertexState.FAILED);
+    }
+
+
+    /**
+     * A broadcast input reads a single partition of each source output, which
+     * the sources only write on a ONE_TO_ALL edge.
+     */
+    private void checkBroadcastInputs(VertexImpl vertex) throws IOException {
+      if (vertex.sourceVertices == null) {
+        return;
+      }
+      for (Entry<Vertex, EdgeProperty> entry :
+          vertex.sourceVertices.entrySet()) {
+        EdgeProperty edge = entry.getValue();
+        if (isBroadcastInput(edge)
+            && edge.getConnectionPattern() != ConnectionPattern.ONE_TO_ALL) {
+          throw new IOException("Input " + edge.getInputClass()
+              + " from vertex " + entry.getKey().getName()
+              + " needs a " + ConnectionPattern.ONE_TO_ALL + " edge, not "
+              + edge.getConnectionPattern());
+        }
       }
     }
 
+    /**
+     * Generate the splits in a separate thread, which sends them to the
+     * vertex in a {@link VertexEventSplitsGenerated}.
+     */
+    private void generateSplits(final VertexImpl vertex) {
+      // the job settings are in the localized job.xml, not in the AM conf
+      JobConf jobConf = new JobConf(vertex.conf);
+      jobConf.addResource(new Path(MRJobConfig.JOB_CONF_FILE));
+      final JobConf vertexConf = new JobConf(
+          MultiStageMRConfigUtil.getConfForVertex(jobConf, vertex.getName()));
+      final TezVertexID vertexId = vertex.getVertexId();
+      final EventHandler eventHandler = vertex.eventHandler;
+      final Clock clock = vertex.clock;
+      Thread generator = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          VertexEventSplitsGenerated event;
+          try {
+            long start = clock.getTime();
+            TaskSplit[] splits = InputSplitGenerator.generate(vertexConf);
+            LOG.info("Generated " + splits.length + " splits for vertex "
+                + vertexId + " in " + (clock.getTime() - start) + " ms");
+            event = new VertexEventSplitsGenerated(vertexId, splits);
+          } catch (IOException e) {
+            event = new VertexEventSplitsGenerated(vertexId, e);
+          } catch (RuntimeException e) {
+            event = new VertexEventSplitsGenerated(vertexId,
+                new IOException(e));
+          }
+          eventHandler.handle(event);
+        }
+      }, "SplitGenerator for " + vertexId);
+      generator.setDaemon(true);
+      generator.start();
+    }
+
+    protected void setSplits(VertexImpl vertex, TaskSplit[] splits) {
+      vertex.numTasks = splits.length;
+      vertex.taskSplitPayloads = new byte[splits.length][];
+      TaskLocationHint[] locationHints = new TaskLocationHint[splits.length];
+      for (int i = 0; i < splits.length; ++i) {
+        vertex.taskSplitPayloads[i] = splits[i].getPayload();
+        locationHints[i] = new TaskLocationHint(splits[i].getHosts(),
+            splits[i].getRacks());
+      }
+      vertex.vertexLocationHint =
+          new VertexLocationHint(splits.length, locationHints);
+    }
 
     private void createTasks(VertexImpl vertex) {
       // TODO Fixme
@@ -1002,6 +1204,45 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     }
   }
 
+  public static class SplitsGeneratedTransition extends InitTransition {
+
+    @Override
+    public VertexState transition(VertexImpl vertex, VertexEvent event) {
+      VertexEventSplitsGenerated splitsEvent =
+          (VertexEventSplitsGenerated) event;
+      if (splitsEvent.getFailure() != null) {
+        return initFailed(vertex, splitsEvent.getFailure());
+      }
+      setSplits(vertex, splitsEvent.getSplits());
+      VertexState state = initTasks(vertex);
+      if (state == VertexState.INITED && vertex.startRequested) {
+        vertex.eventHandler.handle(
+            new VertexEvent(vertex.vertexId, VertexEventType.V_START));
+      }
+      return state;
+    }
+  }
+
+  private static class StartWhenInitedTransition
+  implements SingleArcTransition<VertexImpl, VertexEvent> {
+    @Override
+    public void transition(VertexImpl vertex, VertexEvent event) {
+      // the DAG starts its root vertices right after initializing them
+      vertex.startRequested = true;
+    }
+  }
+
+  private static class KillInitializingVertexTransition
+  implements SingleArcTransition<VertexImpl, VertexEvent> {
+    @Override
+    public void transition(VertexImpl vertex, VertexEvent event) {
+      // the splits being generated are dropped when they come in
+      vertex.setFinishTime();
+      vertex.addDiagnostic("Vertex received Kill in INITIALIZING state.");
+      vertex.finished(VertexState.KILLED);
+    }
+  }
+
   private static class KillInitedVertexTransition
   implements SingleArcTransition<VertexImpl, VertexEvent> {
     @Override
@@ -1059,6 +1300,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
           successEvent.setTaskStatus(TezDependentTaskCompletionEvent.Status.OBSOLETE);
         }
         vertex.successSourceAttemptCompletionEventNoMap.put(taskId, tce.getEventId());
+        vertex.checkPartitionSkew(attemptId);
       }
 
       vertex.vertexScheduler.onSourceTaskCompleted(attemptId);
@@ -1093,11 +1335,19 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     public void transition(VertexImpl vertex, VertexEvent event) {
       VertexEventTaskAttemptFetchFailure fetchfailureEvent =
           (VertexEventTaskAttemptFetchFailure) event;
+      TezTaskID reporter = fetchfailureEvent.getTarget().getTaskID();
       for (TezTaskAttemptID mapId : fetchfailureEvent.getSources()) {
         Integer fetchFailures = vertex.fetchFailuresMapping.get(mapId);
         fetchFailures = (fetchFailures == null) ? 1 : (fetchFailures+1);
         vertex.fetchFailuresMapping.put(mapId, fetchFailures);
 
+        Set<TezTaskID> reporters = vertex.fetchFailureReporters.get(mapId);
+        if (reporters == null) {
+          reporters = new HashSet<TezTaskID>();
+          vertex.fetchFailureReporters.put(mapId, reporters);
+        }
+        reporters.add(reporter);
+
         //get number of running reduces
         int runningReduceTasks = 0;
         for (TezTaskID taskId : vertex.tasks.keySet()) {
@@ -1106,17 +1356,26 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
           }
         }
 
+        // A single consumer repeatedly failing to fetch is more likely a
+        // problem on the consumer side, so the fraction is computed over the
+        // distinct consumers which reported the source attempt.
         float failureRate = runningReduceTasks == 0 ? 1.0f :
-          (float) fetchFailures / runningReduceTasks;
+          (float) reporters.size() / runningReduceTasks;
         // declare faulty if fetch-failures >= max-allowed-failures
         boolean isMapFaulty =
-            (failureRate >= MAX_ALLOWED_FETCH_FAILURES_FRACTION);
-        if (fetchFailures >= MAX_FETCH_FAILURES_NOTIFICATIONS && isMapFaulty) {
+            (failureRate >= vertex.maxAllowedFetchFailuresFraction);
+        if (fetchFailures >= vertex.maxFetchFailuresNotifications
+            && isMapFaulty) {
           LOG.info("Too many fetch-failures for output of task attempt: " +
-              mapId + " ... raising fetch failure to source");
+              mapId + " reported by " + reporters.size() + " tasks of "
+              + vertex.getName() + " ... raising fetch failure to source");
+          // Failing the source attempt reschedules its task and sends a
+          // FAILED completion event to the consumers, which stop fetching
+          // from it and pick up the output of the new attempt instead.
           vertex.eventHandler.handle(new TaskAttemptEvent(mapId,
               TaskAttemptEventType.TA_TOO_MANY_FETCH_FAILURES));
           vertex.fetchFailuresMapping.remove(mapId);
+          vertex.fetchFailureReporters.remove(mapId);
         }
       }
     }
@@ -1131,6 +1390,12 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
       LOG.info("Num completed Tasks: " + vertex.completedTaskCount);
       VertexEventTaskCompleted taskEvent = (VertexEventTaskCompleted) event;
       Task task = vertex.tasks.get(taskEvent.getTaskID());
+      vertex.runningTasks.remove(task.getTaskId());
+      if (!vertex.completedTasks.containsKey(task.getTaskId())) {
+        TezCounters taskCounters = task.getCounters();
+        vertex.completedTasks.put(task.getTaskId(), taskCounters);
+        vertex.completedTasksCounters.incrAllCounters(taskCounters);
+      }
       if (taskEvent.getState() == TaskState.SUCCEEDED) {
         taskSucceeded(vertex, task);
       } else if (taskEvent.getState() == TaskState.FAILED) {
@@ -1149,6 +1414,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
 
     private void taskSucceeded(VertexImpl vertex, Task task) {
       vertex.succeededTaskCount++;
+      vertex.addPhaseTimings(task);
       // TODO Metrics
       // job.metrics.completedTask(task);
     }
@@ -1185,6 +1451,69 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
       //succeeded map task is restarted back
       vertex.completedTaskCount--;
       vertex.succeededTaskCount--;
+      TezTaskID taskId = ((VertexEventTaskReschedule) event).getTaskID();
+      TezCounters taskCounters = vertex.completedTasks.remove(taskId);
+      if (taskCounters != null) {
+        // take back what the task added when it completed
+        for (CounterGroup group : taskCounters) {
+          CounterGroup aggregate =
+              vertex.completedTasksCounters.getGroup(group.getName());
+          for (TezCounter counter : group) {
+            aggregate.findCounter(counter.getName()).increment(
+                -counter.getValue());
+          }
+        }
+      }
+    }
+  }
+
+  private static class TaskLaunchedTransition implements
+      SingleArcTransition<VertexImpl, VertexEvent> {
+    @Override
+    public void transition(VertexImpl vertex, VertexEvent event) {
+      TezTaskID taskId = ((VertexEventTaskLaunched) event).getTaskID();
+      if (!vertex.completedTasks.containsKey(taskId)) {
+        vertex.runningTasks.add(taskId);
+      }
+    }
+  }
+
+  private void checkPartitionSkew(TezTaskAttemptID sourceAttemptId) {
+    Vertex sourceVertex = getDAG().getVertex(
+        sourceAttemptId.getTaskID().getVertexID());
+    if (sourceVertex == null) {
+      return;
+    }
+    Task sourceTask = sourceVertex.getTask(sourceAttemptId.getTaskID());
+    TaskAttempt sourceAttempt =
+        sourceTask == null ? null : sourceTask.getAttempt(sourceAttemptId);
+    long[] partitionSizes =
+        sourceAttempt == null ? null : sourceAttempt.getPartitionSizes();
+    if (partitionSizes == null) {
+      return;
+    }
+    skewDetector.sourceTaskSucceeded(sourceAttemptId.getTaskID(),
+        partitionSizes);
+    List<Integer> skewed = skewDetector.getSkewedPartitions();
+    if (skewed.isEmpty()) {
+      return;
+    }
+    long[] totalSizes = skewDetector.getPartitionSizes();
+    List<Integer> newlySkewed = new ArrayList<Integer>();
+    for (Integer partition : skewed) {
+      if (reportedSkewedPartitions.add(partition)) {
+        String diag = "Partition " + partition + " of vertex " + vertexName
+            + " is skewed, " + totalSizes[partition] + " bytes so far from "
+            + sourceVertex.getName();
+        LOG.warn(diag);
+        addDiagnostic(diag);
+        newlySkewed.add(partition);
+      }
+    }
+    if (!newlySkewed.isEmpty()) {
+      // TODO split skewed partitions over more tasks once the outputs can
+      // be consumed by sub-partition
+      vertexScheduler.onPartitionsSkewed(newlySkewed, totalSizes);
     }
   }
 
@@ -1270,6 +1599,20 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     return this.javaOpts;
   }
 
+  private boolean isRootVertex() {
+    return sourceVertices == null || sourceVertices.isEmpty();
+  }
+
+  @Override
+  public byte[] getSplitPayload(int taskIndex) {
+    readLock.lock();
+    try {
+      return taskSplitPayloads == null ? null : taskSplitPayloads[taskIndex];
+    } finally {
+      readLock.unlock();
+    }
+  }
+
   // TODO Eventually remove synchronization.
   @Override
   public synchronized List<InputSpec> getInputSpecList() {
@@ -1293,18 +1636,34 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex,
     if (this.outputSpecList == null) {
       outputSpecList = new ArrayList<OutputSpec>(this.getOutputVerticesCount());
       for (Entry<Vertex, EdgeProperty> entry : this.getOutputVertices().entrySet()) {
+        // a broadcast output is a single partition read by every consumer
+        int numOutputs = isBroadcastInput(entry.getValue())
+            ? 1 : entry.getKey().getTotalTasks();
         OutputSpec outputSpec = new OutputSpec(entry.getKey().getName(),
-            entry.getKey().getTotalTasks(),
+            numOutputs,
             entry.getValue().getOutputClass());
         LOG.info("DEBUG: For vertex : " + this.getName()
             + ", Using OutputSpec : " + outputSpec);
-        // TODO DAGAM This should be based on the edge type.
         outputSpecList.add(outputSpec);
       }
     }
     return outputSpecList;
   }
 
+  /**
+   * Whether the consumers of an edge read the single partition of each source
+   * output, instead of the partition of their own index.
+   */
+  static boolean isBroadcastInput(EdgeProperty edge) {
+    try {
+      return BroadcastShuffledMergedInput.class.isAssignableFrom(
+          Class.forName(edge.getInputClass()));
+    } catch (ClassNotFoundException e) {
+      // not one of ours, so not a broadcast input
+      return false;
+    }
+  }
+
   @VisibleForTesting
   VertexOutputCommitter getVertexOutputCommitter() {
     return this.committer;
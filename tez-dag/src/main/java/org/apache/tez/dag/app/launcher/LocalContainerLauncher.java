@@ -0,0 +1,408 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.app.launcher;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSError;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.ShuffleHandler;
+import org.apache.hadoop.mapred.YarnTezDagChild;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.yarn.YarnException;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
+import org.apache.hadoop.yarn.api.records.LocalResource;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+import org.apache.hadoop.yarn.service.AbstractService;
+import org.apache.hadoop.yarn.util.ConverterUtils;
+import org.apache.tez.common.ContainerContext;
+import org.apache.tez.common.ContainerExit;
+import org.apache.tez.common.ContainerTask;
+import org.apache.tez.common.TezEngineTaskContext;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezTaskUmbilicalProtocol;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.app.AppContext;
+import org.apache.tez.dag.app.rm.NMCommunicatorEvent;
+import org.apache.tez.dag.app.rm.NMCommunicatorLaunchRequestEvent;
+import org.apache.tez.dag.app.rm.container.AMContainerEvent;
+import org.apache.tez.dag.app.rm.container.AMContainerEventLaunchFailed;
+import org.apache.tez.dag.app.rm.container.AMContainerEventLaunched;
+import org.apache.tez.dag.app.rm.container.AMContainerEventType;
+import org.apache.tez.dag.history.DAGHistoryEvent;
+import org.apache.tez.dag.history.events.ContainerLaunchedEvent;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.engine.api.Task;
+import org.apache.tez.engine.task.RuntimeTask;
+import org.apache.tez.mapreduce.hadoop.MRJobConfig;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Launches containers inside the AM JVM for local mode. Each container is a
+ * thread which runs the same task loop as {@link YarnTezDagChild}, using the
+ * AM's task listener directly as the umbilical. Map outputs are written under
+ * {@link TezConfiguration#TEZ_LOCAL_MODE_LOCAL_DIRS} using the NodeManager
+ * directory layout and served by an in-process {@link ShuffleHandler}.
+ */
+public class LocalContainerLauncher extends AbstractService implements
+    ContainerLauncher {
+
+  static final Log LOG = LogFactory.getLog(LocalContainerLauncher.class);
+
+  private final AppContext context;
+  private final TezTaskUmbilicalProtocol umbilical;
+  private ExecutorService taskRunnerPool;
+  private ShuffleHandler shuffleHandler;
+  private int shufflePort = -1;
+  private boolean shuffleAppInited = false;
+  private String user;
+  private String[] localDirs;
+  private final Map<ContainerId, Future<?>> runningContainers =
+      new ConcurrentHashMap<ContainerId, Future<?>>();
+  private volatile ContainerExitListener exitListener;
+
+  /**
+   * Told when a local container has ended, as the ResourceManager would be
+   * told by the NodeManager, so that its resources can be handed out again.
+   */
+  public interface ContainerExitListener {
+    void containerExited(ContainerId containerId, int exitStatus,
+        String diagnostics);
+  }
+
+  public LocalContainerLauncher(AppContext context,
+      TezTaskUmbilicalProtocol umbilical) {
+    super(LocalContainerLauncher.class.getName());
+    this.context = context;
+    this.umbilical = umbilical;
+  }
+
+  public void setContainerExitListener(ContainerExitListener exitListener) {
+    this.exitListener = exitListener;
+  }
+
+  private void containerExited(ContainerId containerId, int exitStatus,
+      String diagnostics) {
+    ContainerExitListener listener = exitListener;
+    if (listener != null) {
+      listener.containerExited(containerId, exitStatus, diagnostics);
+    }
+  }
+
+  @Override
+  public synchronized void init(Configuration config) {
+    Configuration conf = new Configuration(config);
+    localDirs = conf.getTrimmedStrings(
+        TezConfiguration.TEZ_LOCAL_MODE_LOCAL_DIRS);
+    if (localDirs == null || localDirs.length == 0) {
+      localDirs = new String[] { conf.get(
+          TezConfiguration.TEZ_LOCAL_MODE_LOCAL_DIRS,
+          TezConfiguration.TEZ_LOCAL_MODE_LOCAL_DIRS_DEFAULT) };
+    }
+    try {
+      user = UserGroupInformation.getCurrentUser().getShortUserName();
+    } catch (IOException e) {
+      throw new YarnException(e);
+    }
+
+    // Serve map outputs from the local dirs, as the NodeManager would
+    Configuration shuffleConf = new Configuration(conf);
+    shuffleConf.setStrings(YarnConfiguration.NM_LOCAL_DIRS, localDirs);
+    shuffleConf.setInt(ShuffleHandler.SHUFFLE_PORT_CONFIG_KEY, 0);
+    shuffleHandler = new ShuffleHandler();
+    shuffleHandler.init(shuffleConf);
+    super.init(conf);
+  }
+
+  @Override
+  public void start() {
+    int numThreads = getConfig().getInt(
+        TezConfiguration.TEZ_LOCAL_MODE_MAX_CONCURRENT_TASKS,
+        TezConfiguration.TEZ_LOCAL_MODE_MAX_CONCURRENT_TASKS_DEFAULT);
+    taskRunnerPool = Executors.newFixedThreadPool(numThreads,
+        new ThreadFactoryBuilder().setNameFormat("LocalContainer #%d")
+            .setDaemon(true).build());
+    shuffleHandler.start();
+    try {
+      shufflePort = ShuffleHandler.deserializeMetaData(
+          shuffleHandler.getMeta());
+    } catch (IOException e) {
+      throw new YarnException(e);
+    }
+    LOG.info("Local mode shuffle handler listening on port " + shufflePort);
+    super.start();
+  }
+
+  @Override
+  public void stop() {
+    for (Future<?> container : runningContainers.values()) {
+      container.cancel(true);
+    }
+    if (taskRunnerPool != null) {
+      taskRunnerPool.shutdownNow();
+    }
+    if (shuffleHandler != null) {
+      shuffleHandler.stop();
+    }
+    super.stop();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void handle(NMCommunicatorEvent event) {
+    ContainerId containerId = event.getContainerId();
+    switch (event.getType()) {
+    case CONTAINER_LAUNCH_REQUEST:
+      NMCommunicatorLaunchRequestEvent launchEvent =
+          (NMCommunicatorLaunchRequestEvent) event;
+      try {
+        launch(containerId, launchEvent.getContainerLaunchContext());
+      } catch (Throwable t) {
+        String message = "Container launch failed for " + containerId
+            + " : " + StringUtils.stringifyException(t);
+        LOG.error(message);
+        context.getEventHandler().handle(
+            new AMContainerEventLaunchFailed(containerId, message));
+      }
+      break;
+    case CONTAINER_STOP_REQUEST:
+      Future<?> container = runningContainers.remove(containerId);
+      if (container != null) {
+        // equivalent of the NodeManager killing the container process
+        container.cancel(true);
+        containerExited(containerId, 0, "Container stopped by the AM");
+      }
+      context.getEventHandler().handle(
+          new AMContainerEvent(containerId,
+              AMContainerEventType.C_NM_STOP_SENT));
+      break;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized void launch(ContainerId containerId,
+      ContainerLaunchContext clc) throws IOException {
+    if (!shuffleAppInited) {
+      ByteBuffer shuffleSecret = clc.getServiceData().get(
+          ShuffleHandler.MAPREDUCE_SHUFFLE_SERVICEID);
+      if (shuffleSecret != null) {
+        shuffleHandler.initApp(user, context.getApplicationID(),
+            shuffleSecret.duplicate());
+        shuffleAppInited = true;
+      }
+    }
+
+    // $localdir/usercache/$user/appcache/$appId, as set up by the NM
+    String[] appDirs = new String[localDirs.length];
+    for (int i = 0; i < localDirs.length; ++i) {
+      appDirs[i] = new Path(localDirs[i], "usercache" + Path.SEPARATOR + user
+          + Path.SEPARATOR + "appcache" + Path.SEPARATOR
+          + context.getApplicationID()).toString();
+    }
+    Path workDir = new Path(appDirs[0], containerId.toString());
+    localizeResources(clc.getLocalResources(), workDir);
+
+    Future<?> container = taskRunnerPool.submit(
+        new LocalContainer(containerId, appDirs, workDir));
+    runningContainers.put(containerId, container);
+
+    context.getEventHandler().handle(
+        new AMContainerEventLaunched(containerId, shufflePort));
+    context.getEventHandler().handle(new DAGHistoryEvent(context.getDAGID(),
+        new ContainerLaunchedEvent(containerId,
+            context.getClock().getTime())));
+  }
+
+  /**
+   * Copy the container's local resources into its working directory.
+   */
+  private void localizeResources(Map<String, LocalResource> resources,
+      Path workDir) throws IOException {
+    FileSystem localFs = FileSystem.getLocal(getConfig());
+    if (!localFs.mkdirs(workDir)) {
+      throw new IOException("Mkdirs failed to create " + workDir);
+    }
+    if (resources == null) {
+      return;
+    }
+    for (Entry<String, LocalResource> entry : resources.entrySet()) {
+      Path src;
+      try {
+        src = ConverterUtils.getPathFromYarnURL(
+            entry.getValue().getResource());
+      } catch (Exception e) {
+        throw new IOException("Invalid resource " + entry.getKey(), e);
+      }
+      Path dst = new Path(workDir, entry.getKey());
+      if (!localFs.exists(dst)) {
+        src.getFileSystem(getConfig()).copyToLocalFile(src, dst);
+      }
+    }
+  }
+
+  /**
+   * Task loop of a single local container. Where a task in a container of
+   * its own would exit the JVM, e.g. when its attempt is killed, the
+   * container is stopped through its {@link ContainerExit.Handler} instead,
+   * and reports the exit status the JVM would have had.
+   */
+  private class LocalContainer implements Runnable, ContainerExit.Handler {
+
+    private final ContainerId containerId;
+    private final String[] appDirs;
+    private final Path workDir;
+    // guarded by this
+    private Thread thread;
+    private int requestedExitStatus = 0;
+    private String exitReason = null;
+
+    LocalContainer(ContainerId containerId, String[] appDirs, Path workDir) {
+      this.containerId = containerId;
+      this.appDirs = appDirs;
+      this.workDir = workDir;
+    }
+
+    @Override
+    public synchronized void exit(int status, String reason) {
+      if (exitReason == null) {
+        LOG.info("Local container " + containerId + " exiting with status "
+            + status + " : " + reason);
+        requestedExitStatus = status;
+        exitReason = reason;
+      }
+      if (thread != null) {
+        thread.interrupt();
+      }
+    }
+
+    @Override
+    public synchronized boolean isExiting() {
+      return exitReason != null;
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        thread = Thread.currentThread();
+      }
+      ContainerExit.setHandler(this);
+      ContainerContext containerContext =
+          new ContainerContext(containerId, "local");
+      ContainerTask containerTask = null;
+      TezTaskAttemptID taskAttemptId = null;
+      int exitStatus = 0;
+      String diagnostics = "Container exited";
+      try {
+        // shared by all the tasks of the container, see YarnTezDagChild
+        Configuration conf = new Configuration(getConfig());
+        conf.setInt(TezJobConfig.APPLICATION_ATTEMPT_ID,
+            containerId.getApplicationAttemptId().getAttemptId());
+        Path jobConf = new Path(workDir, MRJobConfig.JOB_CONF_FILE);
+        if (new File(jobConf.toUri().getPath()).exists()) {
+          conf.addResource(jobConf);
+        }
+        YarnTezDagChild.configureLocalDirs(conf, appDirs,
+            workDir.toString());
+
+        while (!Thread.currentThread().isInterrupted() && !isExiting()) {
+          // poll for new task
+          for (int idle = 0; null == containerTask; ++idle) {
+            MILLISECONDS.sleep(Math.min(idle * 500, 1500));
+            containerTask = umbilical.getTask(containerContext);
+          }
+          if (containerTask.shouldDie()) {
+            return;
+          }
+          TezEngineTaskContext taskContext =
+              (TezEngineTaskContext) containerTask.getTezEngineTaskContext();
+          taskAttemptId = taskContext.getTaskAttemptId();
+          LOG.info("Running " + taskAttemptId + " in local container "
+              + containerId);
+
+          Task t =
+              YarnTezDagChild.configureTezTask(taskContext, umbilical, conf);
+          YarnTezDagChild.runTezTask(t, umbilical,
+              ((RuntimeTask) t).getConfiguration());
+          containerTask = null;
+          taskAttemptId = null;
+        }
+      } catch (InterruptedException e) {
+        LOG.info("Local container " + containerId + " interrupted");
+      } catch (ContainerExit.ExitException e) {
+        LOG.info("Local container " + containerId + " exited : "
+            + e.getMessage());
+      } catch (FSError e) {
+        LOG.fatal("FSError from local container " + containerId, e);
+        exitStatus = 1;
+        diagnostics = "FSError: " + e.getMessage();
+        if (taskAttemptId != null) {
+          try {
+            umbilical.fsError(taskAttemptId, e.getMessage());
+          } catch (IOException ioe) {
+            LOG.warn("Failed to report error for " + taskAttemptId, ioe);
+          }
+        }
+      } catch (Throwable throwable) {
+        LOG.fatal("Error running local container " + containerId + " : "
+            + StringUtils.stringifyException(throwable));
+        exitStatus = 1;
+        diagnostics = StringUtils.stringifyException(throwable);
+        // a task told to exit reports nothing more, as in a JVM of its own
+        if (taskAttemptId != null && !isExiting()) {
+          try {
+            umbilical.fatalError(taskAttemptId,
+                StringUtils.stringifyException(throwable));
+          } catch (IOException e) {
+            LOG.warn("Failed to report error for " + taskAttemptId, e);
+          }
+        }
+      } finally {
+        ContainerExit.clearHandler();
+        synchronized (this) {
+          thread = null;
+          if (exitReason != null) {
+            exitStatus = requestedExitStatus;
+            diagnostics = exitReason;
+          }
+        }
+        // a stopped container has already been reported
+        if (runningContainers.remove(containerId) != null) {
+          containerExited(containerId, exitStatus, diagnostics);
+        }
+      }
+    }
+  }
+}
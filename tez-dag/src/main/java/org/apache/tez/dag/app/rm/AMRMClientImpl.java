@@ -113,7 +113,16 @@ public class AMRMClientImpl<T extends org.apache.tez.dag.app.rm.AMRMClient.Conta
 
   @Override
   public synchronized void start() {
-    final YarnConfiguration conf = new YarnConfiguration(getConfig());
+    rmClient = createRMProxy(new YarnConfiguration(getConfig()));
+    super.start();
+  }
+
+  /**
+   * Create the proxy used to talk to the ResourceManager.
+   * @param conf the client configuration
+   * @return the protocol instance used for all RM interactions
+   */
+  protected AMRMProtocol createRMProxy(final YarnConfiguration conf) {
     final YarnRPC rpc = YarnRPC.create(conf);
     final InetSocketAddress rmAddress = conf.getSocketAddr(
         YarnConfiguration.RM_SCHEDULER_ADDRESS,
@@ -128,7 +137,7 @@ public class AMRMClientImpl<T extends org.apache.tez.dag.app.rm.AMRMClient.Conta
     }
 
     // CurrentUser should already have AMToken loaded.
-    rmClient = currentUser.doAs(new PrivilegedAction<AMRMProtocol>() {
+    AMRMProtocol proxy = currentUser.doAs(new PrivilegedAction<AMRMProtocol>() {
       @Override
       public AMRMProtocol run() {
         return (AMRMProtocol) rpc.getProxy(AMRMProtocol.class, rmAddress,
@@ -136,7 +145,7 @@ public class AMRMClientImpl<T extends org.apache.tez.dag.app.rm.AMRMClient.Conta
       }
     });
     LOG.debug("Connecting to ResourceManager at " + rmAddress);
-    super.start();
+    return proxy;
   }
 
   @Override
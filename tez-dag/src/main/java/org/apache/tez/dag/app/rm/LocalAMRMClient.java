@@ -0,0 +1,229 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.app.rm;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceStability.Unstable;
+import org.apache.hadoop.yarn.api.AMRMProtocol;
+import org.apache.hadoop.yarn.api.protocolrecords.AllocateRequest;
+import org.apache.hadoop.yarn.api.protocolrecords.AllocateResponse;
+import org.apache.hadoop.yarn.api.protocolrecords.FinishApplicationMasterRequest;
+import org.apache.hadoop.yarn.api.protocolrecords.FinishApplicationMasterResponse;
+import org.apache.hadoop.yarn.api.protocolrecords.RegisterApplicationMasterRequest;
+import org.apache.hadoop.yarn.api.protocolrecords.RegisterApplicationMasterResponse;
+import org.apache.hadoop.yarn.api.records.ApplicationAccessType;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.ContainerState;
+import org.apache.hadoop.yarn.api.records.ContainerStatus;
+import org.apache.hadoop.yarn.api.records.NodeId;
+import org.apache.hadoop.yarn.api.records.NodeReport;
+import org.apache.hadoop.yarn.api.records.Priority;
+import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.hadoop.yarn.api.records.ResourceRequest;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+import org.apache.hadoop.yarn.exceptions.YarnRemoteException;
+import org.apache.hadoop.yarn.util.BuilderUtils;
+import org.apache.hadoop.yarn.util.Records;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.app.launcher.LocalContainerLauncher;
+
+/**
+ * {@link AMRMClient} used when the AM runs in local mode. Instead of talking
+ * to a ResourceManager, requests are served by an in-process stand-in which
+ * hands out containers on the local host, bounded by
+ * {@link TezConfiguration#TEZ_LOCAL_MODE_MAX_CONCURRENT_TASKS}. Locality is
+ * irrelevant on a single node so only off-switch requests are considered.
+ */
+@Unstable
+public class LocalAMRMClient<T extends AMRMClient.ContainerRequest>
+    extends AMRMClientImpl<T>
+    implements LocalContainerLauncher.ContainerExitListener {
+
+  private static final Log LOG = LogFactory.getLog(LocalAMRMClient.class);
+
+  public static final String LOCAL_HOST = "localhost";
+
+  // Memory reported per free slot. Local containers share the AM heap so
+  // this is only used to report headroom.
+  static final int LOCAL_CONTAINER_MEMORY_MB = 1024;
+
+  private volatile LocalResourceManager localRM;
+
+  public LocalAMRMClient(ApplicationAttemptId appAttemptId) {
+    super(appAttemptId);
+  }
+
+  @Override
+  protected AMRMProtocol createRMProxy(YarnConfiguration conf) {
+    int maxContainers = conf.getInt(
+        TezConfiguration.TEZ_LOCAL_MODE_MAX_CONCURRENT_TASKS,
+        TezConfiguration.TEZ_LOCAL_MODE_MAX_CONCURRENT_TASKS_DEFAULT);
+    LOG.info("Running in local mode with at most " + maxContainers
+        + " concurrent containers");
+    localRM = new LocalResourceManager(appAttemptId, maxContainers);
+    return localRM;
+  }
+
+  @Override
+  public void containerExited(ContainerId containerId, int exitStatus,
+      String diagnostics) {
+    LocalResourceManager rm = localRM;
+    if (rm != null) {
+      rm.containerExited(containerId, exitStatus, diagnostics);
+    }
+  }
+
+  /**
+   * Minimal single node ResourceManager. Asks are absolute outstanding
+   * counts per priority and capability, as sent by {@link AMRMClientImpl}.
+   */
+  static class LocalResourceManager implements AMRMProtocol, Closeable {
+
+    private final ApplicationAttemptId appAttemptId;
+    private final int maxContainers;
+    private final NodeId nodeId = BuilderUtils.newNodeId(LOCAL_HOST, 0);
+    private int containerIdCounter = 0;
+
+    // lower priority value means higher priority
+    private final Map<Priority, Map<Resource, Integer>> outstanding =
+        new TreeMap<Priority, Map<Resource, Integer>>(
+            new Comparator<Priority>() {
+              @Override
+              public int compare(Priority p1, Priority p2) {
+                return p1.getPriority() - p2.getPriority();
+              }
+            });
+    private final Set<ContainerId> running = new HashSet<ContainerId>();
+    private final List<ContainerStatus> completed =
+        new ArrayList<ContainerStatus>();
+
+    LocalResourceManager(ApplicationAttemptId appAttemptId,
+        int maxContainers) {
+      this.appAttemptId = appAttemptId;
+      this.maxContainers = maxContainers;
+    }
+
+    @Override
+    public RegisterApplicationMasterResponse registerApplicationMaster(
+        RegisterApplicationMasterRequest request) throws YarnRemoteException {
+      RegisterApplicationMasterResponse response =
+          Records.newRecord(RegisterApplicationMasterResponse.class);
+      response.setMinimumResourceCapability(BuilderUtils.newResource(1, 1));
+      // capability is not enforced for containers running in the AM JVM
+      response.setMaximumResourceCapability(
+          BuilderUtils.newResource(Integer.MAX_VALUE, Integer.MAX_VALUE));
+      response.setApplicationACLs(
+          Collections.<ApplicationAccessType, String>emptyMap());
+      return response;
+    }
+
+    @Override
+    public FinishApplicationMasterResponse finishApplicationMaster(
+        FinishApplicationMasterRequest request) throws YarnRemoteException {
+      LOG.info("Local application finished with status "
+          + request.getFinalApplicationStatus());
+      return Records.newRecord(FinishApplicationMasterResponse.class);
+    }
+
+    @Override
+    public synchronized AllocateResponse allocate(AllocateRequest request)
+        throws YarnRemoteException {
+      for (ResourceRequest ask : request.getAskList()) {
+        if (!ResourceRequest.ANY.equals(ask.getResourceName())) {
+          continue;
+        }
+        Map<Resource, Integer> asks = outstanding.get(ask.getPriority());
+        if (asks == null) {
+          asks = new HashMap<Resource, Integer>();
+          outstanding.put(ask.getPriority(), asks);
+        }
+        asks.put(ask.getCapability(), ask.getNumContainers());
+      }
+
+      for (ContainerId containerId : request.getReleaseList()) {
+        containerExited(containerId, 0, "Container released by the AM");
+      }
+
+      List<Container> allocated = new ArrayList<Container>();
+      for (Entry<Priority, Map<Resource, Integer>> priorityAsks : 
+          outstanding.entrySet()) {
+        for (Entry<Resource, Integer> ask : 
+            priorityAsks.getValue().entrySet()) {
+          int numContainers = ask.getValue();
+          while (numContainers > 0 && running.size() < maxContainers) {
+            ContainerId containerId = BuilderUtils.newContainerId(
+                appAttemptId, ++containerIdCounter);
+            allocated.add(BuilderUtils.newContainer(containerId, nodeId,
+                LOCAL_HOST + ":0", ask.getKey(), priorityAsks.getKey(),
+                null));
+            running.add(containerId);
+            --numContainers;
+          }
+          ask.setValue(numContainers);
+        }
+      }
+
+      int freeSlots = maxContainers - running.size();
+      AllocateResponse response = Records.newRecord(AllocateResponse.class);
+      response.setReboot(false);
+      response.setResponseId(request.getResponseId() + 1);
+      response.setAllocatedContainers(allocated);
+      response.setCompletedContainersStatuses(
+          new ArrayList<ContainerStatus>(completed));
+      response.setUpdatedNodes(Collections.<NodeReport>emptyList());
+      response.setAvailableResources(BuilderUtils.newResource(
+          freeSlots * LOCAL_CONTAINER_MEMORY_MB, freeSlots));
+      response.setNumClusterNodes(1);
+      completed.clear();
+      return response;
+    }
+
+    /**
+     * Free the slot of a container which ended, and report it as completed
+     * on the next allocate call. Containers already reported are ignored.
+     */
+    synchronized void containerExited(ContainerId containerId,
+        int exitStatus, String diagnostics) {
+      if (running.remove(containerId)) {
+        completed.add(BuilderUtils.newContainerStatus(containerId,
+            ContainerState.COMPLETE, diagnostics, exitStatus));
+      }
+    }
+
+    @Override
+    public void close() {
+      // nothing to release
+    }
+  }
+}
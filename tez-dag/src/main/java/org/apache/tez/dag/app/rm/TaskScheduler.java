@@ -22,9 +22,11 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -45,6 +47,7 @@ import org.apache.hadoop.yarn.api.records.ResourceRequest;
 import org.apache.hadoop.yarn.exceptions.YarnRemoteException;
 import org.apache.hadoop.yarn.service.AbstractService;
 import org.apache.hadoop.yarn.util.RackResolver;
+import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.dag.api.TezException;
 import org.apache.tez.dag.app.rm.AMRMClient.StoredContainerRequest;
 import org.apache.tez.dag.app.rm.TaskScheduler.TaskSchedulerAppCallback.AppFinalStatus;
@@ -103,22 +106,41 @@ public class TaskScheduler extends AbstractService
   
   Map<Object, StoredContainerRequest<CRCookie>> taskRequests =  
                   new HashMap<Object, StoredContainerRequest<CRCookie>>();
+  // requests not sent to the RM yet, by priority value, the most important
+  // (lowest) first, and in the order they were made within a priority
+  TreeMap<Integer, Map<Object, StoredContainerRequest<CRCookie>>> 
+      pendingTaskRequests = 
+          new TreeMap<Integer, Map<Object, StoredContainerRequest<CRCookie>>>();
+  int numPendingTaskRequests = 0;
   Map<Object, Container> taskAllocations = 
                   new HashMap<Object, Container>();
   Map<ContainerId, Object> containerAssigments = 
                   new HashMap<ContainerId, Object>();
   HashMap<ContainerId, Object> releasedContainers = 
                   new HashMap<ContainerId, Object>();
+  // containers no request may take until its locality delay has passed, in
+  // the order they were allocated
+  Map<ContainerId, Container> heldContainers = 
+                  new LinkedHashMap<ContainerId, Container>();
   
   final String appHostName;
   final int appHostPort;
   final String appTrackingUrl;
   
   boolean isStopped = false; 
+
+  int minOutstandingRequests = 
+      TezConfiguration.DAG_AM_CONTAINER_REQUESTS_MIN_OUTSTANDING_DEFAULT;
+  int requestBatchSize = 
+      TezConfiguration.DAG_AM_CONTAINER_REQUESTS_BATCH_SIZE_DEFAULT;
   
   class CRCookie {
     Object task;
     Object appCookie;
+    long nodeLocalityDelay;
+    long rackLocalityDelay;
+    // when the request was sent to the RM
+    long requestTime;
   }
   
   public TaskScheduler(ApplicationAttemptId id, 
@@ -135,6 +157,25 @@ public class TaskScheduler extends AbstractService
     this.appTrackingUrl = appTrackingUrl;
   }
   
+  /**
+   * Create a scheduler which talks to the given {@link AMRMClient} instead of
+   * the ResourceManager. Used for local mode.
+   */
+  public TaskScheduler(ApplicationAttemptId id, 
+                        TaskSchedulerAppCallback appClient,
+                        String appHostName, 
+                        int appHostPort,
+                        String appTrackingUrl,
+                        AMRMClient<StoredContainerRequest<CRCookie>> client) {
+    super(TaskScheduler.class.getName());
+    this.appClient = appClient;
+    this.amRmClient = 
+        new AMRMClientAsync<StoredContainerRequest<CRCookie>>(client, 1000, this);
+    this.appHostName = appHostName;
+    this.appHostPort = appHostPort;
+    this.appTrackingUrl = appTrackingUrl;
+  }
+  
   @Private
   @VisibleForTesting
   TaskScheduler(ApplicationAttemptId id, 
@@ -164,6 +205,12 @@ public class TaskScheduler extends AbstractService
   public synchronized void init(Configuration conf) {
     super.init(conf);
     amRmClient.init(conf);
+    minOutstandingRequests = conf.getInt(
+        TezConfiguration.DAG_AM_CONTAINER_REQUESTS_MIN_OUTSTANDING,
+        TezConfiguration.DAG_AM_CONTAINER_REQUESTS_MIN_OUTSTANDING_DEFAULT);
+    requestBatchSize = conf.getInt(
+        TezConfiguration.DAG_AM_CONTAINER_REQUESTS_BATCH_SIZE,
+        TezConfiguration.DAG_AM_CONTAINER_REQUESTS_BATCH_SIZE_DEFAULT);
   }
   
   @Override
@@ -254,6 +301,12 @@ public class TaskScheduler extends AbstractService
           continue;
         }
         
+        if(heldContainers.remove(completedId) != null) {
+          // never given to a task
+          LOG.info("Held container completed:" + completedId);
+          continue;
+        }
+        
         // container neither allocated nor released
         LOG.info("Ignoring unknown container: " + containerStatus.getContainerId());        
       }
@@ -274,39 +327,88 @@ public class TaskScheduler extends AbstractService
         new HashMap<StoredContainerRequest<CRCookie>, Container>
                                                         (containers.size());
     synchronized (this) {
+      long now = System.currentTimeMillis();
       for(Container container : containers) {
-        String location = container.getNodeId().getHost();
-        StoredContainerRequest<CRCookie> assigned = getMatchingRequest(container, location);
-        if(assigned == null) {
-          location = RackResolver.resolve(location).getNetworkLocation();
-          assigned = getMatchingRequest(container, location);
-        }
-        if(assigned == null) {
-          location = ResourceRequest.ANY;
-          assigned = getMatchingRequest(container, location);
+        if(tryAssignContainer(container, now, appContainers)) {
+          continue;
         }
-        if(assigned == null) {
-          // not matched anything. release container
-          // Probably we cancelled a request and RM allocated that to us 
-          // before RM heard of the cancellation
-          releaseContainer(container.getId(), null);
-          LOG.info("No RM requests matching container: " + container);
+        if(getMatchingRequest(container, ResourceRequest.ANY) != null) {
+          // a request may take it once its locality delay has passed. keep
+          // it until then rather than have the RM allocate another one
+          heldContainers.put(container.getId(), container);
+          LOG.info("Holding container: " + container.getId() + " on " 
+              + container.getNodeId().getHost() + " for locality delays");
           continue;
         }
-        
-        Object task = getTask(assigned);
-        assert task != null;
-        assignContainer(task, container, assigned);
-        appContainers.put(assigned, container);
-              
-        LOG.info("Assigning container: " + container + 
-            " for task: " + task + 
-            " at locality: " + location);
-        
+        // not matched anything. release container
+        // Probably we cancelled a request and RM allocated that to us 
+        // before RM heard of the cancellation
+        releaseContainer(container.getId(), null);
+        LOG.info("No RM requests matching container: " + container);
       }
     }
     
     // upcall to app must be outside locks
+    informAppAboutAssignments(appContainers);
+  }
+  
+  /**
+   * Assign the container to the first request which may take it, on its
+   * host, then on its rack, then anywhere.
+   * @return whether the container was assigned
+   */
+  private boolean tryAssignContainer(Container container, long now, 
+      Map<StoredContainerRequest<CRCookie>, Container> appContainers) {
+    String host = container.getNodeId().getHost();
+    String rack = RackResolver.resolve(host).getNetworkLocation();
+    String location = host;
+    StoredContainerRequest<CRCookie> assigned = 
+        getMatchingRequest(container, location, host, rack, now);
+    if(assigned == null) {
+      location = rack;
+      assigned = getMatchingRequest(container, location, host, rack, now);
+    }
+    if(assigned == null) {
+      location = ResourceRequest.ANY;
+      assigned = getMatchingRequest(container, location, host, rack, now);
+    }
+    if(assigned == null) {
+      return false;
+    }
+    
+    Object task = getTask(assigned);
+    assert task != null;
+    assignContainer(task, container, assigned);
+    appContainers.put(assigned, container);
+          
+    LOG.info("Assigning container: " + container + 
+        " for task: " + task + 
+        " at locality: " + location);
+    return true;
+  }
+  
+  /**
+   * Give held containers to the requests whose locality delays have passed.
+   * Release those no request is left for.
+   */
+  private void assignHeldContainers(long now, 
+      Map<StoredContainerRequest<CRCookie>, Container> appContainers) {
+    Iterator<Container> iterator = heldContainers.values().iterator();
+    while(iterator.hasNext()) {
+      Container container = iterator.next();
+      if(tryAssignContainer(container, now, appContainers)) {
+        iterator.remove();
+      } else if(getMatchingRequest(container, ResourceRequest.ANY) == null) {
+        // the requests it was held for were satisfied or withdrawn
+        iterator.remove();
+        releaseContainer(container.getId(), null);
+        LOG.info("Releasing held container: " + container.getId());
+      }
+    }
+  }
+  
+  private void informAppAboutAssignments(
+      Map<StoredContainerRequest<CRCookie>, Container> appContainers) {
     for (Entry<StoredContainerRequest<CRCookie>, Container> entry : 
               appContainers.entrySet()) {
       StoredContainerRequest<CRCookie> assigned = entry.getKey();
@@ -339,6 +441,17 @@ public class TaskScheduler extends AbstractService
     if(isStopped) {
       return 1;
     }
+    // called once after each heartbeat response has been handled. the
+    // locality delays of requests may have passed and the cluster may have
+    // room for more requests now
+    Map<StoredContainerRequest<CRCookie>, Container> appContainers = 
+        new HashMap<StoredContainerRequest<CRCookie>, Container>();
+    synchronized (this) {
+      assignHeldContainers(System.currentTimeMillis(), appContainers);
+      sendPendingTaskRequests();
+    }
+    // upcall to app must be outside locks
+    informAppAboutAssignments(appContainers);
     return appClient.getProgress();
   }
 
@@ -356,6 +469,24 @@ public class TaskScheduler extends AbstractService
                                            String[] racks,
                                            Priority priority,
                                            Object clientCookie) {
+    allocateTask(task, capability, hosts, racks, priority, 0, 0, 
+                 clientCookie);
+  }
+  
+  /**
+   * @param nodeLocalityDelay how long the task waits for a container on one
+   *                          of the hosts before taking one on their racks
+   * @param rackLocalityDelay how long the task further waits for a container
+   *                          on the racks before taking one anywhere
+   */
+  public synchronized void allocateTask(Object task, 
+                                           Resource capability,
+                                           String[] hosts,
+                                           String[] racks,
+                                           Priority priority,
+                                           long nodeLocalityDelay,
+                                           long rackLocalityDelay,
+                                           Object clientCookie) {
     // TODO check for nulls etc
     StoredContainerRequest<CRCookie> request = 
              new StoredContainerRequest<CRCookie>(capability, 
@@ -366,14 +497,27 @@ public class TaskScheduler extends AbstractService
     CRCookie cookie = new CRCookie();
     cookie.task = task;
     cookie.appCookie = clientCookie;
+    cookie.nodeLocalityDelay = nodeLocalityDelay;
+    cookie.rackLocalityDelay = rackLocalityDelay;
     request.setCookie(cookie);
 
-    addTaskRequest(task, request);
+    if(numPendingTaskRequests == 0 && taskRequests.size() < 
+        getMaxOutstandingRequests(amRmClient.getClusterAvailableResources(), 
+                                  capability)) {
+      addTaskRequest(task, request);
+    } else {
+      // sent with the next heartbeat with room for it
+      addPendingTaskRequest(task, request);
+    }
     LOG.info("Allocation request for task: " + task + 
              " with request: " + request);
   }
   
   public synchronized Container deallocateTask(Object task) {
+    if(removePendingTaskRequest(task) != null) {
+      LOG.info("Deallocating task: " + task + " before request was sent");
+      return null;
+    }
     StoredContainerRequest<CRCookie> request = removeTaskRequest(task);
     if(request != null) {
       // task not allocated yet
@@ -425,6 +569,71 @@ public class TaskScheduler extends AbstractService
     return assigned;
   }
   
+  /**
+   * @return the first request at the location which may take the container
+   *         on the given host and rack, after the locality delays of the
+   *         request.
+   */
+  private StoredContainerRequest<CRCookie> getMatchingRequest(
+      Container container, String location, String host, String rack, 
+      long now) {
+    Collection<StoredContainerRequest<CRCookie>> requests =
+        amRmClient.getMatchingRequests(container.getPriority(), location, 
+                                       container.getResource());
+    if(requests == null) {
+      return null;
+    }
+    for(StoredContainerRequest<CRCookie> request : requests) {
+      if(canAssign(request, host, rack, now)) {
+        return request;
+      }
+    }
+    return null;
+  }
+  
+  private boolean canAssign(StoredContainerRequest<CRCookie> request, 
+                              String host, String rack, long now) {
+    boolean hasHosts = request.hosts != null && request.hosts.length > 0;
+    boolean hasRacks = request.racks != null && request.racks.length > 0;
+    if(!hasHosts && !hasRacks) {
+      return true;
+    }
+    if(hasHosts && contains(request.hosts, host)) {
+      return true;
+    }
+    CRCookie cookie = (CRCookie)request.getCookie();
+    long waited = now - cookie.requestTime;
+    long nodeDelay = hasHosts ? cookie.nodeLocalityDelay : 0;
+    if(isOnRacks(request, rack)) {
+      return waited >= nodeDelay;
+    }
+    return waited >= nodeDelay + cookie.rackLocalityDelay;
+  }
+  
+  private boolean isOnRacks(StoredContainerRequest<CRCookie> request, 
+                              String rack) {
+    if(request.racks != null && contains(request.racks, rack)) {
+      return true;
+    }
+    if(request.hosts != null) {
+      for(String host : request.hosts) {
+        if(rack.equals(RackResolver.resolve(host).getNetworkLocation())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+  
+  private static boolean contains(String[] values, String value) {
+    for(String v : values) {
+      if(value.equals(v)) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
   private Object getTask(StoredContainerRequest<CRCookie> request) {
     return ((CRCookie)request.getCookie()).task;
   }
@@ -465,10 +674,104 @@ public class TaskScheduler extends AbstractService
   private void addTaskRequest(Object task, 
                                 StoredContainerRequest<CRCookie> request) {
     // TODO TEZ-37 fix duplicate handling
+    ((CRCookie)request.getCookie()).requestTime = System.currentTimeMillis();
     taskRequests.put(task, request);
     amRmClient.addContainerRequest(request);
   }
   
+  private void addPendingTaskRequest(Object task,
+                                StoredContainerRequest<CRCookie> request) {
+    Integer priority = request.priority.getPriority();
+    Map<Object, StoredContainerRequest<CRCookie>> requests = 
+        pendingTaskRequests.get(priority);
+    if(requests == null) {
+      requests = new LinkedHashMap<Object, StoredContainerRequest<CRCookie>>();
+      pendingTaskRequests.put(priority, requests);
+    }
+    if(requests.put(task, request) == null) {
+      ++numPendingTaskRequests;
+    }
+  }
+  
+  private StoredContainerRequest<CRCookie> removePendingTaskRequest(
+                                                              Object task) {
+    if(numPendingTaskRequests == 0) {
+      return null;
+    }
+    Iterator<Map<Object, StoredContainerRequest<CRCookie>>> byPriority = 
+        pendingTaskRequests.values().iterator();
+    while(byPriority.hasNext()) {
+      Map<Object, StoredContainerRequest<CRCookie>> requests = 
+          byPriority.next();
+      StoredContainerRequest<CRCookie> request = requests.remove(task);
+      if(request != null) {
+        --numPendingTaskRequests;
+        if(requests.isEmpty()) {
+          byPriority.remove();
+        }
+        return request;
+      }
+    }
+    return null;
+  }
+  
+  /**
+   * Send the RM as many held back requests, most important first, as keeps
+   * the outstanding requests within what the cluster has room for, or
+   * within the configured minimum. Called once per heartbeat, so that a
+   * batch goes out with each allocate call. The RM client aggregates the
+   * requests per priority, location and capability.
+   */
+  private void sendPendingTaskRequests() {
+    if(numPendingTaskRequests == 0) {
+      return;
+    }
+    Resource available = amRmClient.getClusterAvailableResources();
+    int sent = 0;
+    Iterator<Map<Object, StoredContainerRequest<CRCookie>>> byPriority = 
+        pendingTaskRequests.values().iterator();
+    while(byPriority.hasNext() && sent < requestBatchSize) {
+      Map<Object, StoredContainerRequest<CRCookie>> requests = 
+          byPriority.next();
+      Iterator<Entry<Object, StoredContainerRequest<CRCookie>>> iterator = 
+          requests.entrySet().iterator();
+      while(iterator.hasNext() && sent < requestBatchSize) {
+        Entry<Object, StoredContainerRequest<CRCookie>> entry = 
+            iterator.next();
+        if(taskRequests.size() >= 
+            getMaxOutstandingRequests(available, entry.getValue().capability)) {
+          // less important requests wait too
+          logSentTaskRequests(sent);
+          return;
+        }
+        iterator.remove();
+        --numPendingTaskRequests;
+        addTaskRequest(entry.getKey(), entry.getValue());
+        ++sent;
+      }
+      if(requests.isEmpty()) {
+        byPriority.remove();
+      }
+    }
+    logSentTaskRequests(sent);
+  }
+  
+  private int getMaxOutstandingRequests(Resource available, 
+                                          Resource capability) {
+    if(available == null || capability.getMemory() <= 0) {
+      return minOutstandingRequests;
+    }
+    return Math.max(minOutstandingRequests, 
+                    available.getMemory() / capability.getMemory());
+  }
+  
+  private void logSentTaskRequests(int sent) {
+    if(sent > 0) {
+      LOG.info("Sent " + sent + " container requests, outstanding: " 
+          + taskRequests.size() + ", held back: " + numPendingTaskRequests);
+    }
+  }
+  
   private Container unAssignContainer(Object task, boolean releaseIfFound) {
     Container container = taskAllocations.remove(task);
     if(container == null) {
@@ -19,6 +19,7 @@
 package org.apache.tez.dag.app.rm;
 
 import java.net.InetSocketAddress;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
@@ -38,6 +39,9 @@ import org.apache.hadoop.yarn.api.records.Resource;
 import org.apache.hadoop.yarn.event.Event;
 import org.apache.hadoop.yarn.event.EventHandler;
 import org.apache.hadoop.yarn.service.AbstractService;
+import org.apache.hadoop.yarn.util.RackResolver;
+import org.apache.tez.common.counters.DAGCounter;
+import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.dag.api.client.DAGClientServer;
 import org.apache.tez.dag.api.oldrecords.TaskAttemptState;
 import org.apache.tez.dag.app.AppContext;
@@ -47,7 +51,11 @@ import org.apache.tez.dag.app.dag.TaskAttempt;
 import org.apache.tez.dag.app.dag.event.DAGAppMasterEvent;
 import org.apache.tez.dag.app.dag.event.DAGAppMasterEventType;
 import org.apache.tez.dag.app.dag.event.DAGEvent;
+import org.apache.tez.dag.app.dag.event.DAGEventCounterUpdate;
 import org.apache.tez.dag.app.dag.event.DAGEventType;
+import org.apache.tez.dag.app.launcher.ContainerLauncher;
+import org.apache.tez.dag.app.launcher.LocalContainerLauncher;
+import org.apache.tez.dag.app.rm.AMRMClient.StoredContainerRequest;
 import org.apache.tez.dag.app.rm.TaskScheduler.TaskSchedulerAppCallback;
 import org.apache.tez.dag.app.rm.container.AMContainerEventAssignTA;
 import org.apache.tez.dag.app.rm.container.AMContainerEvent;
@@ -60,6 +68,8 @@ import org.apache.tez.dag.app.rm.node.AMNodeEventContainerAllocated;
 import org.apache.tez.dag.app.rm.node.AMNodeEventStateChanged;
 import org.apache.tez.dag.app.rm.node.AMNodeEventTaskAttemptEnded;
 import org.apache.tez.dag.app.rm.node.AMNodeEventTaskAttemptSucceeded;
+import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.mapreduce.hadoop.MultiStageMRConfigUtil;
 
 public class TaskSchedulerEventHandler extends AbstractService
                                          implements TaskSchedulerAppCallback, 
@@ -70,6 +80,9 @@ public class TaskSchedulerEventHandler extends AbstractService
   @SuppressWarnings("rawtypes")
   private final EventHandler eventHandler;
   private TaskScheduler taskScheduler;
+  // node and rack locality delays of each vertex with allocated attempts
+  private final Map<TezVertexID, LocalityDelays> localityDelays = 
+      new HashMap<TezVertexID, LocalityDelays>();
   private DAGAppMaster dagAppMaster;
   private Map<ApplicationAccessType, String> appAcls = null;
   private Thread eventHandlingThread;
@@ -206,6 +219,7 @@ public class TaskSchedulerEventHandler extends AbstractService
     
     TaskAttempt attempt = event.getAttempt();
     Container container = taskScheduler.deallocateTask(attempt);
+    releaseLocalityDelays(attempt);
     // use stored value of container id in case the scheduler has removed this
     // assignment because the task has been deallocated earlier. 
     // retroactive case
@@ -254,6 +268,7 @@ public class TaskSchedulerEventHandler extends AbstractService
     
     TaskAttempt attempt = event.getAttempt();
     Container container = taskScheduler.deallocateTask(attempt);
+    releaseLocalityDelays(attempt);
     if(container != null) {
       ContainerId containerId = container.getId();
       assert containerId.equals(event.getUsedContainerId());
@@ -327,14 +342,103 @@ public class TaskSchedulerEventHandler extends AbstractService
         TaskType.MAP, mapResourceReqt);
     event.getCapability().setMemory(mapResourceReqt);*/
     TaskAttempt taskAttempt = event.getTaskAttempt();
+    LocalityDelays delays = acquireLocalityDelays(event);
     taskScheduler.allocateTask(taskAttempt, 
                                event.getCapability(), 
                                event.getHosts(), 
                                event.getRacks(), 
                                event.getPriority(),
+                               delays.nodeDelay,
+                               delays.rackDelay,
                                event);
   }
 
+  private static class LocalityDelays {
+    final long nodeDelay;
+    final long rackDelay;
+    // attempts of the vertex allocated and not deallocated yet
+    int numAttempts = 0;
+
+    LocalityDelays(long nodeDelay, long rackDelay) {
+      this.nodeDelay = nodeDelay;
+      this.rackDelay = rackDelay;
+    }
+  }
+
+  private LocalityDelays acquireLocalityDelays(
+      AMSchedulerEventTALaunchRequest event) {
+    TezVertexID vertexId = event.getAttemptID().getTaskID().getVertexID();
+    LocalityDelays delays = localityDelays.get(vertexId);
+    if (delays == null) {
+      Configuration conf = event.getConf();
+      String vertexName = 
+          appContext.getDAG().getVertex(vertexId).getName();
+      delays = new LocalityDelays(
+          getVertexLong(conf, vertexName, 
+              TezConfiguration.DAG_AM_LOCALITY_NODE_DELAY_MS,
+              TezConfiguration.DAG_AM_LOCALITY_NODE_DELAY_MS_DEFAULT),
+          getVertexLong(conf, vertexName, 
+              TezConfiguration.DAG_AM_LOCALITY_RACK_DELAY_MS,
+              TezConfiguration.DAG_AM_LOCALITY_RACK_DELAY_MS_DEFAULT));
+      localityDelays.put(vertexId, delays);
+    }
+    ++delays.numAttempts;
+    return delays;
+  }
+
+  // forget the delays of a vertex once none of its attempts is allocated
+  private void releaseLocalityDelays(TaskAttempt attempt) {
+    TezVertexID vertexId = attempt.getID().getTaskID().getVertexID();
+    LocalityDelays delays = localityDelays.get(vertexId);
+    if (delays != null && --delays.numAttempts <= 0) {
+      localityDelays.remove(vertexId);
+    }
+  }
+
+  // the setting of the vertex, if any, else the one of the DAG
+  private static long getVertexLong(Configuration conf, String vertexName,
+      String name, long defaultValue) {
+    return conf.getLong(
+        MultiStageMRConfigUtil.getPropertyNameForVertex(vertexName, name), 
+        conf.getLong(name, defaultValue));
+  }
+
+  private DAGEventCounterUpdate createLocalityCounterUpdate(
+      AMSchedulerEventTALaunchRequest event, Container container) {
+    String[] hosts = event.getHosts();
+    String[] racks = event.getRacks();
+    if ((hosts == null || hosts.length == 0) 
+        && (racks == null || racks.length == 0)) {
+      return null;
+    }
+    String host = container.getNodeId().getHost();
+    String rack = RackResolver.resolve(host).getNetworkLocation();
+    DAGCounter counter = DAGCounter.OTHER_LOCAL_TASKS;
+    if (hosts != null) {
+      for (String h : hosts) {
+        if (host.equals(h)) {
+          counter = DAGCounter.DATA_LOCAL_TASKS;
+          break;
+        } else if (counter == DAGCounter.OTHER_LOCAL_TASKS 
+            && rack.equals(RackResolver.resolve(h).getNetworkLocation())) {
+          counter = DAGCounter.RACK_LOCAL_TASKS;
+        }
+      }
+    }
+    if (counter == DAGCounter.OTHER_LOCAL_TASKS && racks != null) {
+      for (String r : racks) {
+        if (rack.equals(r)) {
+          counter = DAGCounter.RACK_LOCAL_TASKS;
+          break;
+        }
+      }
+    }
+    DAGEventCounterUpdate update = new DAGEventCounterUpdate(
+        event.getAttemptID().getTaskID().getVertexID().getDAGId());
+    update.addCounterUpdate(counter, 1);
+    return update;
+  }
+
   // AbstractService methods
   @Override
   public synchronized void init(Configuration conf) {
@@ -347,12 +451,34 @@ public class TaskSchedulerEventHandler extends AbstractService
     // Answer: this is shared across dags. need job==app-dag-master
     // TODO set heartbeat value from conf here
     InetSocketAddress serviceAddr = clientService.getBindAddress();
-    taskScheduler = 
-        new TaskScheduler(appContext.getApplicationAttemptId(),
-                          this,
-                          serviceAddr.getHostName(),
-                          serviceAddr.getPort(),
-                          "");
+    if (getConfig().getBoolean(TezConfiguration.TEZ_LOCAL_MODE,
+        TezConfiguration.TEZ_LOCAL_MODE_DEFAULT)) {
+      LocalAMRMClient<StoredContainerRequest<TaskScheduler.CRCookie>> 
+          localClient = 
+              new LocalAMRMClient<StoredContainerRequest<TaskScheduler.CRCookie>>(
+                  appContext.getApplicationAttemptId());
+      // containers ending on their own have to give their slot back
+      ContainerLauncher launcher = 
+          appContext.getAppMaster().getContainerLauncher();
+      if (launcher instanceof LocalContainerLauncher) {
+        ((LocalContainerLauncher) launcher).setContainerExitListener(
+            localClient);
+      }
+      taskScheduler = 
+          new TaskScheduler(appContext.getApplicationAttemptId(),
+                            this,
+                            serviceAddr.getHostName(),
+                            serviceAddr.getPort(),
+                            "",
+                            localClient);
+    } else {
+      taskScheduler = 
+          new TaskScheduler(appContext.getApplicationAttemptId(),
+                            this,
+                            serviceAddr.getHostName(),
+                            serviceAddr.getPort(),
+                            "");
+    }
     taskScheduler.init(getConfig());
 
     dagAppMaster = appContext.getAppMaster();
@@ -469,6 +595,11 @@ public class TaskSchedulerEventHandler extends AbstractService
           taskAttempt.getEnvironment(),
           taskAttempt.getJavaOpts()));
     }
+    DAGEventCounterUpdate localityUpdate = 
+        createLocalityCounterUpdate(event, container);
+    if (localityUpdate != null) {
+      sendEvent(localityUpdate);
+    }
     sendEvent(new AMContainerEventAssignTA(containerId,
         taskAttempt.getID(), event.getRemoteTaskContext()));
   }
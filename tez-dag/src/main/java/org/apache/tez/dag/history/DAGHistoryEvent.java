@@ -33,6 +33,16 @@ public class DAGHistoryEvent extends AbstractEvent<HistoryEventType>{
     this.historyEvent = historyEvent;
   }
 
+  /**
+   * An event of the AM which does not belong to a DAG.
+   */
+  public DAGHistoryEvent(HistoryEvent historyEvent) {
+    this(null, historyEvent);
+  }
+
+  /**
+   * @return the DAG the event belongs to, or null for AM events
+   */
   public TezDAGID getDAGID() {
     return dagId;
   }
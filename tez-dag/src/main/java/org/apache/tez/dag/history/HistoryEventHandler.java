@@ -58,7 +58,7 @@ implements EventHandler<DAGHistoryEvent> {
   @Override
   public void handle(DAGHistoryEvent event) {
     LOG.info("[HISTORY]"
-        + "[DAG:" + context.getDAGID().toString() + "]"
+        + (event.getDAGID() == null ? "" : "[DAG:" + event.getDAGID() + "]")
         + "[Event:" + event.getType().name() + "]"
         + ": " + event.getHistoryEvent().getBlob().toString());
   }
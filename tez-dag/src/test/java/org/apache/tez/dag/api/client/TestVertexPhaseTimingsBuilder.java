@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.api.client;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestVertexPhaseTimingsBuilder {
+
+  @Test
+  public void testBuckets() {
+    VertexPhaseTimingsBuilder builder = new VertexPhaseTimingsBuilder();
+    builder.addTaskTime("sort", 0);
+    builder.addTaskTime("sort", 1);
+    builder.addTaskTime("sort", 2);
+    builder.addTaskTime("sort", 3);
+    builder.addTaskTime("sort", 4);
+    // negative times are counted as no time spent
+    builder.addTaskTime("sort", -5);
+
+    PhaseHistogram sort = builder.getPhase("sort");
+    Assert.assertEquals(6, sort.getCount());
+    Assert.assertEquals(0, sort.getMinMillis());
+    Assert.assertEquals(4, sort.getMaxMillis());
+    Assert.assertEquals(10, sort.getTotalMillis());
+    Assert.assertEquals(1, sort.getMeanMillis());
+    // [0], [1], [2, 3], [4, 7]
+    Assert.assertEquals(Arrays.asList(2L, 1L, 2L, 1L),
+        sort.getBucketCounts());
+    Assert.assertEquals(8, PhaseHistogram.getBucketUpperBound(3));
+  }
+
+  @Test
+  public void testMinAndMax() {
+    VertexPhaseTimingsBuilder builder = new VertexPhaseTimingsBuilder();
+    builder.addTaskTime("shuffle", 1000);
+    builder.addTaskTime("shuffle", 10);
+    builder.addTaskTime("shuffle", 100);
+
+    PhaseHistogram shuffle = builder.getPhase("shuffle");
+    Assert.assertEquals(10, shuffle.getMinMillis());
+    Assert.assertEquals(1000, shuffle.getMaxMillis());
+    Assert.assertEquals(370, shuffle.getMeanMillis());
+    // 1000ms falls in [512, 1024)
+    Assert.assertEquals(11, shuffle.getBucketCounts().size());
+    Assert.assertEquals(1L, shuffle.getBucketCounts().get(10).longValue());
+  }
+
+  @Test
+  public void testPhasesAndProtoRoundTrip() {
+    VertexPhaseTimingsBuilder builder = new VertexPhaseTimingsBuilder();
+    builder.addTaskTime("processor", 20);
+    builder.addTaskTime("commit", 5);
+    builder.addTaskTime("processor", 40);
+
+    Assert.assertEquals(2, builder.getPhases().size());
+    Assert.assertEquals("processor", builder.getPhases().get(0).getPhase());
+    Assert.assertEquals("commit", builder.getPhases().get(1).getPhase());
+    Assert.assertNull(builder.getPhase("shuffle"));
+
+    // a builder created from a proto accumulates into its own copy
+    VertexPhaseTimingsBuilder copy =
+        new VertexPhaseTimingsBuilder(builder.getProto());
+    copy.addTaskTime("processor", 60);
+    Assert.assertEquals(3, copy.getPhase("processor").getCount());
+    Assert.assertEquals(120, copy.getPhase("processor").getTotalMillis());
+    Assert.assertEquals(2, builder.getPhase("processor").getCount());
+
+    VertexPhaseTimings timings = new VertexPhaseTimings(copy.getProto());
+    Assert.assertEquals(1, timings.getPhase("commit").getCount());
+    Assert.assertEquals(5, timings.getPhase("commit").getMaxMillis());
+  }
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.app;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.event.EventHandler;
+import org.apache.hadoop.yarn.util.BuilderUtils;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.api.TezRemoteException;
+import org.apache.tez.dag.api.records.DAGProtos.DAGPlan;
+import org.apache.tez.dag.api.records.DAGProtos.PlanKeyValuePair;
+import org.apache.tez.dag.app.dag.DAG;
+import org.apache.tez.dag.app.dag.DAGState;
+import org.apache.tez.dag.app.dag.event.DAGFinishEvent;
+import org.apache.tez.dag.records.TezDAGID;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDAGAppMasterSession {
+
+  private ApplicationAttemptId appAttemptId;
+  private SessionAppMaster appMaster;
+
+  /**
+   * Runs mock DAGs, which never complete on their own, in a local mode AM.
+   */
+  private static class SessionAppMaster extends DAGAppMaster {
+    private int dagCount = 0;
+
+    SessionAppMaster(ApplicationAttemptId appAttemptId) {
+      super(appAttemptId, BuilderUtils.newContainerId(appAttemptId, 1),
+          "localhost", 0, 0, System.currentTimeMillis(), null);
+    }
+
+    @Override
+    protected DAG createDAG(DAGPlan dagPB) {
+      DAG dag = mock(DAG.class, withSettings().extraInterfaces(
+          EventHandler.class));
+      doReturn(new TezDAGID(getAppID(), ++dagCount)).when(dag).getID();
+      doReturn(DAGState.RUNNING).when(dag).getState();
+      return dag;
+    }
+
+    @Override
+    protected void sysexit() {
+    }
+
+    void finishDAG(DAG dag) {
+      doReturn(DAGState.SUCCEEDED).when(dag).getState();
+      createDAGFinishEventHandler().handle(new DAGFinishEvent(dag.getID()));
+    }
+  }
+
+  @Before
+  public void setup() {
+    // the shuffle handler of each AM registers the same metrics source
+    DefaultMetricsSystem.setMiniClusterMode(true);
+    appAttemptId = BuilderUtils.newApplicationAttemptId(
+        BuilderUtils.newApplicationId(1234, 1), 1);
+    TezConfiguration conf = new TezConfiguration();
+    conf.setBoolean(TezConfiguration.TEZ_LOCAL_MODE, true);
+    conf.setBoolean(TezConfiguration.DAG_AM_SESSION_MODE, true);
+    conf.setInt(TezConfiguration.DAG_AM_SESSION_MAX_COMPLETED_DAGS, 1);
+    appMaster = new SessionAppMaster(appAttemptId);
+    appMaster.init(conf);
+    appMaster.start();
+  }
+
+  @After
+  public void teardown() {
+    appMaster.stop();
+  }
+
+  private DAGPlan createPlan(String name) {
+    return DAGPlan.newBuilder().setName(name).build();
+  }
+
+  @Test
+  public void testDAGsRunOneAfterTheOther() throws Exception {
+    Assert.assertEquals(DAGAppMasterState.RUNNING, appMaster.getState());
+    Assert.assertNull(appMaster.getContext().getDAG());
+
+    TezDAGID dagId1 = appMaster.submitDAG(createPlan("dag1"));
+    TezDAGID dagId2 = appMaster.submitDAG(createPlan("dag2"));
+    DAG dag1 = appMaster.getDAG(dagId1);
+    DAG dag2 = appMaster.getDAG(dagId2);
+    Assert.assertSame(dag1, appMaster.getContext().getDAG());
+    Assert.assertNotNull(dag2);
+
+    appMaster.finishDAG(dag1);
+    Assert.assertSame(dag2, appMaster.getContext().getDAG());
+    Assert.assertEquals(DAGAppMasterState.RUNNING, appMaster.getState());
+    // completed DAGs can still be queried
+    Assert.assertSame(dag1, appMaster.getDAG(dagId1));
+
+    TezDAGID dagId3 = appMaster.submitDAG(createPlan("dag3"));
+    appMaster.finishDAG(dag2);
+    DAG dag3 = appMaster.getDAG(dagId3);
+    Assert.assertSame(dag3, appMaster.getContext().getDAG());
+    // only the latest completed DAG is kept
+    Assert.assertNull(appMaster.getDAG(dagId1));
+    Assert.assertSame(dag2, appMaster.getDAG(dagId2));
+  }
+
+  @Test
+  public void testShutdownDropsPendingDAGs() throws Exception {
+    TezDAGID dagId1 = appMaster.submitDAG(createPlan("dag1"));
+    TezDAGID dagId2 = appMaster.submitDAG(createPlan("dag2"));
+
+    appMaster.shutdownSession();
+    Assert.assertNull(appMaster.getDAG(dagId2));
+    Assert.assertNotNull(appMaster.getDAG(dagId1));
+    try {
+      appMaster.submitDAG(createPlan("dag3"));
+      Assert.fail("DAG accepted after the session was shut down");
+    } catch (TezRemoteException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDAGSettingsDoNotLeak() {
+    TezConfiguration amConf = new TezConfiguration();
+    amConf.set("am.setting", "am");
+    DAGPlan plan = DAGPlan.newBuilder().setName("dag")
+        .addJobSetting(PlanKeyValuePair.newBuilder()
+            .setKey("dag.setting").setValue("dag1").build())
+        .addJobSetting(PlanKeyValuePair.newBuilder()
+            .setKey("am.setting").setValue("overridden").build())
+        .build();
+
+    TezConfiguration dagConf = DAGAppMaster.createDAGConf(amConf, plan);
+    Assert.assertEquals("dag1", dagConf.get("dag.setting"));
+    Assert.assertEquals("overridden", dagConf.get("am.setting"));
+    Assert.assertNull(amConf.get("dag.setting"));
+    Assert.assertEquals("am", amConf.get("am.setting"));
+
+    TezConfiguration otherConf = DAGAppMaster.createDAGConf(amConf,
+        DAGPlan.newBuilder().setName("other").build());
+    Assert.assertNull(otherConf.get("dag.setting"));
+  }
+}
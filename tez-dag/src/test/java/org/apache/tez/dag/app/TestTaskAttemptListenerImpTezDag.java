@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.app;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.yarn.util.BuilderUtils;
+import org.apache.tez.dag.api.oldrecords.TaskAttemptState;
+import org.apache.tez.dag.app.dag.DAG;
+import org.apache.tez.dag.app.dag.Task;
+import org.apache.tez.dag.app.dag.TaskAttempt;
+import org.apache.tez.dag.app.dag.Vertex;
+import org.apache.tez.dag.app.dag.VertexState;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.engine.common.semijoin.KeyBloomFilter;
+import org.apache.tez.engine.records.TezDependentTaskCompletionEvent;
+import org.apache.tez.engine.records.TezHeartbeatRequest;
+import org.apache.tez.engine.records.TezHeartbeatResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTaskAttemptListenerImpTezDag {
+
+  private TezDAGID dagId;
+  private TezVertexID vertexId;
+  private Vertex vertex;
+  private AppContext appContext;
+  private TaskAttemptListenerImpTezDag listener;
+  private Map<TezTaskID, Task> tasks;
+  private Map<TezTaskAttemptID, TaskAttempt> attempts;
+
+  @Before
+  public void setup() {
+    dagId = new TezDAGID(BuilderUtils.newApplicationId(1, 1), 1);
+    vertexId = new TezVertexID(dagId, 1);
+    tasks = new HashMap<TezTaskID, Task>();
+    attempts = new HashMap<TezTaskAttemptID, TaskAttempt>();
+
+    vertex = mock(Vertex.class);
+    doReturn(vertexId).when(vertex).getVertexId();
+    doReturn("small").when(vertex).getName();
+    doReturn(VertexState.RUNNING).when(vertex).getState();
+    doReturn(tasks).when(vertex).getTasks();
+    Map<TezVertexID, Vertex> vertices = new HashMap<TezVertexID, Vertex>();
+    vertices.put(vertexId, vertex);
+
+    DAG dag = mock(DAG.class);
+    doReturn(dagId).when(dag).getID();
+    doReturn(vertices).when(dag).getVertices();
+    doReturn(vertex).when(dag).getVertex(vertexId);
+    appContext = mock(AppContext.class);
+    doReturn(dag).when(appContext).getDAG();
+
+    listener = new TaskAttemptListenerImpTezDag(appContext,
+        mock(TaskHeartbeatHandler.class), mock(ContainerHeartbeatHandler.class),
+        null);
+  }
+
+  /**
+   * Add a task with one attempt in the given state.
+   */
+  private TezTaskAttemptID addAttempt(int taskId, TaskAttemptState state) {
+    TezTaskID id = new TezTaskID(vertexId, taskId);
+    TezTaskAttemptID attemptId = new TezTaskAttemptID(id, 0);
+    TaskAttempt attempt = mock(TaskAttempt.class);
+    doReturn(attemptId).when(attempt).getID();
+    doReturn(state).when(attempt).getState();
+    attempts.put(attemptId, attempt);
+
+    Map<TezTaskAttemptID, TaskAttempt> taskAttempts =
+        new HashMap<TezTaskAttemptID, TaskAttempt>();
+    taskAttempts.put(attemptId, attempt);
+    Task task = mock(Task.class);
+    doReturn(taskAttempts).when(task).getAttempts();
+    doReturn(attempt).when(task).getAttempt(attemptId);
+    doReturn(task).when(vertex).getTask(id);
+    tasks.put(id, task);
+    return attemptId;
+  }
+
+  private BytesWritable filterOf(String key) throws IOException {
+    KeyBloomFilter filter = new KeyBloomFilter(1024, 3);
+    filter.add(key.getBytes(), 0, key.length());
+    DataOutputBuffer out = new DataOutputBuffer();
+    filter.write(out);
+    BytesWritable serialized = new BytesWritable(out.getData());
+    serialized.setSize(out.getLength());
+    return serialized;
+  }
+
+  private KeyBloomFilter readFilter(BytesWritable serialized)
+      throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(serialized.getBytes(), serialized.getLength());
+    KeyBloomFilter filter = new KeyBloomFilter();
+    filter.readFields(in);
+    return filter;
+  }
+
+  private static boolean mightContain(KeyBloomFilter filter, String key) {
+    return filter.mightContain(key.getBytes(), 0, key.length());
+  }
+
+  @Test
+  public void testCombineFiltersOfSuccessfulAttempts() throws IOException {
+    TezTaskAttemptID a1 = addAttempt(0, TaskAttemptState.SUCCEEDED);
+    TezTaskAttemptID a2 = addAttempt(1, TaskAttemptState.SUCCEEDED);
+    TezTaskAttemptID a3 = addAttempt(2, TaskAttemptState.FAILED);
+    listener.publishKeyFilter(a1, filterOf("k1"));
+    listener.publishKeyFilter(a2, filterOf("k2"));
+    listener.publishKeyFilter(a3, filterOf("k3"));
+
+    Assert.assertNull("vertex is still running",
+        listener.getVertexKeyFilter(a1, "small"));
+    Assert.assertEquals(3, listener.attemptKeyFilters.size());
+
+    doReturn(VertexState.SUCCEEDED).when(vertex).getState();
+    BytesWritable combined = listener.getVertexKeyFilter(a1, "small");
+    KeyBloomFilter filter = readFilter(combined);
+    Assert.assertTrue(mightContain(filter, "k1"));
+    Assert.assertTrue(mightContain(filter, "k2"));
+    Assert.assertFalse(mightContain(filter, "k3"));
+    // one filter per vertex is kept, the attempts' filters are dropped
+    Assert.assertTrue(listener.attemptKeyFilters.isEmpty());
+    Assert.assertEquals(1, listener.vertexKeyFilters.size());
+    Assert.assertSame(combined, listener.getVertexKeyFilter(a2, "small"));
+
+    listener.dagComplete(dagId);
+    Assert.assertTrue(listener.vertexKeyFilters.isEmpty());
+  }
+
+  @Test
+  public void testNoFilterPublished() throws IOException {
+    TezTaskAttemptID a1 = addAttempt(0, TaskAttemptState.SUCCEEDED);
+    doReturn(VertexState.SUCCEEDED).when(vertex).getState();
+    BytesWritable combined = listener.getVertexKeyFilter(a1, "small");
+    Assert.assertNotNull(combined);
+    Assert.assertEquals(0, combined.getLength());
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownVertex() throws IOException {
+    TezTaskAttemptID a1 = addAttempt(0, TaskAttemptState.RUNNING);
+    listener.getVertexKeyFilter(a1, "other");
+  }
+
+  @Test
+  public void testDropFiltersOfUnsuccessfulAttempts() throws IOException {
+    TezTaskAttemptID succeeded = addAttempt(0, TaskAttemptState.SUCCEEDED);
+    TezTaskAttemptID failed = addAttempt(1, TaskAttemptState.FAILED);
+    TezTaskAttemptID killed = addAttempt(2, TaskAttemptState.KILLED);
+    listener.publishKeyFilter(succeeded, filterOf("k1"));
+    listener.publishKeyFilter(failed, filterOf("k2"));
+    listener.publishKeyFilter(killed, filterOf("k3"));
+
+    listener.unregisterTaskAttempt(succeeded);
+    listener.unregisterTaskAttempt(failed);
+    listener.unregisterTaskAttempt(killed);
+    Assert.assertEquals(1, listener.attemptKeyFilters.size());
+    Assert.assertTrue(listener.attemptKeyFilters.containsKey(succeeded));
+
+    // a DAG which does not get to combine them drops them on completion
+    listener.dagComplete(dagId);
+    Assert.assertTrue(listener.attemptKeyFilters.isEmpty());
+  }
+
+  @Test
+  public void testHeartbeatAnswersEverythingAsked() throws Exception {
+    TezTaskAttemptID attemptId = addAttempt(0, TaskAttemptState.RUNNING);
+    Task task = tasks.get(attemptId.getTaskID());
+    doReturn(true).when(task).canCommit(attemptId);
+    TezDependentTaskCompletionEvent[] events =
+        new TezDependentTaskCompletionEvent[] {
+            new TezDependentTaskCompletionEvent() };
+    doReturn(events).when(vertex).getTaskAttemptCompletionEvents(3, 10);
+
+    // one round trip carries the events, completion and commit questions
+    TezHeartbeatRequest request = new TezHeartbeatRequest(attemptId);
+    request.setEventRange(3, 10);
+    request.setAskProceedToCompletion(true);
+    request.setAskCanCommit(true);
+    TezHeartbeatResponse response = listener.heartbeat(request);
+    Assert.assertFalse(response.shouldDie());
+    Assert.assertArrayEquals(events,
+        response.getEventsUpdate().getDependentTaskCompletionEvents());
+    Assert.assertTrue(response.getProceedToCompletion().readyToProceed());
+    Assert.assertTrue(response.canCommit());
+
+    // nothing is answered which was not asked
+    response = listener.heartbeat(new TezHeartbeatRequest(attemptId));
+    Assert.assertFalse(response.shouldDie());
+    Assert.assertNull(response.getEventsUpdate());
+    Assert.assertNull(response.getProceedToCompletion());
+    Assert.assertFalse(response.canCommit());
+  }
+
+  @Test
+  public void testHeartbeatOfGoneAttempt() throws Exception {
+    TezTaskAttemptID killed = addAttempt(0, TaskAttemptState.KILLED);
+    TezHeartbeatRequest request = new TezHeartbeatRequest(killed);
+    request.setEventRange(0, 10);
+    Assert.assertTrue(listener.heartbeat(request).shouldDie());
+
+    // unknown task, and no DAG once the DAG has completed
+    TezTaskAttemptID unknown =
+        new TezTaskAttemptID(new TezTaskID(vertexId, 5), 0);
+    Assert.assertTrue(
+        listener.heartbeat(new TezHeartbeatRequest(unknown)).shouldDie());
+    TezTaskAttemptID running = addAttempt(1, TaskAttemptState.RUNNING);
+    doReturn(null).when(appContext).getDAG();
+    Assert.assertTrue(
+        listener.heartbeat(new TezHeartbeatRequest(running)).shouldDie());
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.app.dag.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.yarn.util.BuilderUtils;
+import org.apache.tez.dag.api.EdgeProperty;
+import org.apache.tez.dag.api.EdgeProperty.ConnectionPattern;
+import org.apache.tez.dag.api.EdgeProperty.SourceType;
+import org.apache.tez.dag.app.dag.Task;
+import org.apache.tez.dag.app.dag.Vertex;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestBipartiteSlowStartVertexScheduler {
+
+  private TezVertexID sourceId;
+  private TezVertexID managedId;
+  private Vertex managedVertex;
+  private List<TezTaskID> scheduled;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    TezDAGID dagId = new TezDAGID(BuilderUtils.newApplicationId(1, 1), 1);
+    sourceId = new TezVertexID(dagId, 1);
+    managedId = new TezVertexID(dagId, 2);
+
+    Vertex source = mock(Vertex.class);
+    when(source.getVertexId()).thenReturn(sourceId);
+    when(source.getTotalTasks()).thenReturn(4);
+
+    Map<Vertex, EdgeProperty> inputs =
+        new LinkedHashMap<Vertex, EdgeProperty>();
+    inputs.put(source, new EdgeProperty(ConnectionPattern.BIPARTITE,
+        SourceType.STABLE, "input", "output"));
+    Map<TezTaskID, Task> tasks = new LinkedHashMap<TezTaskID, Task>();
+    for (int i = 0; i < 4; ++i) {
+      tasks.put(new TezTaskID(managedId, i), mock(Task.class));
+    }
+    managedVertex = mock(Vertex.class);
+    when(managedVertex.getVertexId()).thenReturn(managedId);
+    when(managedVertex.getInputVertices()).thenReturn(inputs);
+    when(managedVertex.getTasks()).thenReturn(tasks);
+    when(managedVertex.getTotalTasks()).thenReturn(4);
+    scheduled = new ArrayList<TezTaskID>();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        scheduled.addAll(
+            (Collection<TezTaskID>) invocation.getArguments()[0]);
+        return null;
+      }
+    }).when(managedVertex).scheduleTasks(any(Collection.class));
+  }
+
+  private TezTaskAttemptID sourceAttempt(int task) {
+    return new TezTaskAttemptID(new TezTaskID(sourceId, task), 0);
+  }
+
+  private TezTaskID task(int id) {
+    return new TezTaskID(managedId, id);
+  }
+
+  @Test
+  public void testScheduleInOrder() {
+    BipartiteSlowStartVertexScheduler scheduler =
+        new BipartiteSlowStartVertexScheduler(managedVertex, 0.5f, 1.0f);
+    scheduler.onVertexStarted();
+    Assert.assertTrue(scheduled.isEmpty());
+    for (int i = 0; i < 3; ++i) {
+      scheduler.onSourceTaskCompleted(sourceAttempt(i));
+    }
+    Assert.assertEquals(Arrays.asList(task(0), task(1)), scheduled);
+  }
+
+  @Test
+  public void testScheduleSkewedPartitionsFirst() {
+    BipartiteSlowStartVertexScheduler scheduler =
+        new BipartiteSlowStartVertexScheduler(managedVertex, 0.5f, 1.0f);
+    scheduler.onVertexStarted();
+    scheduler.onSourceTaskCompleted(sourceAttempt(0));
+    scheduler.onPartitionsSkewed(Collections.singletonList(3),
+        new long[] { 10, 10, 10, 100 });
+    scheduler.onSourceTaskCompleted(sourceAttempt(1));
+    scheduler.onSourceTaskCompleted(sourceAttempt(2));
+    Assert.assertEquals(Arrays.asList(task(3), task(0)), scheduled);
+
+    scheduler.onSourceTaskCompleted(sourceAttempt(3));
+    Assert.assertEquals(Arrays.asList(task(3), task(0), task(1), task(2)),
+        scheduled);
+  }
+
+  @Test
+  public void testSkewReportedBeforeStart() {
+    BipartiteSlowStartVertexScheduler scheduler =
+        new BipartiteSlowStartVertexScheduler(managedVertex, 0.5f, 1.0f);
+    scheduler.onPartitionsSkewed(Arrays.asList(2, 3),
+        new long[] { 10, 10, 100, 100 });
+    scheduler.onVertexStarted();
+    for (int i = 0; i < 3; ++i) {
+      scheduler.onSourceTaskCompleted(sourceAttempt(i));
+    }
+    Assert.assertEquals(Arrays.asList(task(2), task(3)), scheduled);
+  }
+}
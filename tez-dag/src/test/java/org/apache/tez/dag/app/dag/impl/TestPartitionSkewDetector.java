@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.app.dag.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.hadoop.yarn.util.BuilderUtils;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPartitionSkewDetector {
+
+  private final TezVertexID vertexId = new TezVertexID(
+      new TezDAGID(BuilderUtils.newApplicationId(1, 1), 1), 1);
+
+  private TezTaskID task(int id) {
+    return new TezTaskID(vertexId, id);
+  }
+
+  @Test
+  public void testTotalsAcrossSources() {
+    PartitionSkewDetector detector = new PartitionSkewDetector(2.0f, 0);
+    detector.sourceTaskSucceeded(task(0), new long[] { 10, 20, 30 });
+    detector.sourceTaskSucceeded(task(1), new long[] { 1, 2, 3 });
+    Assert.assertArrayEquals(new long[] { 11, 22, 33 },
+        detector.getPartitionSizes());
+
+    // a source reporting more partitions widens the totals
+    detector.sourceTaskSucceeded(task(2), new long[] { 0, 0, 0, 5 });
+    Assert.assertArrayEquals(new long[] { 11, 22, 33, 5 },
+        detector.getPartitionSizes());
+  }
+
+  @Test
+  public void testRerunReplacesPreviousOutput() {
+    PartitionSkewDetector detector = new PartitionSkewDetector(2.0f, 0);
+    detector.sourceTaskSucceeded(task(0), new long[] { 10, 20 });
+    detector.sourceTaskSucceeded(task(1), new long[] { 5, 5 });
+    detector.sourceTaskSucceeded(task(0), new long[] { 1, 2 });
+    Assert.assertArrayEquals(new long[] { 6, 7 },
+        detector.getPartitionSizes());
+  }
+
+  @Test
+  public void testSkewedPartitions() {
+    PartitionSkewDetector detector = new PartitionSkewDetector(2.0f, 100);
+    Assert.assertTrue(detector.getSkewedPartitions().isEmpty());
+
+    detector.sourceTaskSucceeded(task(0),
+        new long[] { 100, 100, 100, 150, 1000 });
+    // partition 3 is not twice the median, partition 4 is
+    Assert.assertEquals(Collections.singletonList(4),
+        detector.getSkewedPartitions());
+
+    detector.sourceTaskSucceeded(task(1),
+        new long[] { 10, 10, 10, 500, 10 });
+    // 110, 110, 110, 650, 1010
+    Assert.assertEquals(Arrays.asList(3, 4),
+        detector.getSkewedPartitions());
+  }
+
+  @Test
+  public void testMinSkewedBytes() {
+    PartitionSkewDetector detector = new PartitionSkewDetector(2.0f, 1000);
+    detector.sourceTaskSucceeded(task(0), new long[] { 1, 1, 1, 500 });
+    Assert.assertTrue(detector.getSkewedPartitions().isEmpty());
+    detector.sourceTaskSucceeded(task(1), new long[] { 1, 1, 1, 500 });
+    Assert.assertEquals(Collections.singletonList(3),
+        detector.getSkewedPartitions());
+  }
+
+  @Test
+  public void testSinglePartitionIsNeverSkewed() {
+    PartitionSkewDetector detector = new PartitionSkewDetector(2.0f, 0);
+    detector.sourceTaskSucceeded(task(0), new long[] { 1000 });
+    Assert.assertTrue(detector.getSkewedPartitions().isEmpty());
+  }
+}
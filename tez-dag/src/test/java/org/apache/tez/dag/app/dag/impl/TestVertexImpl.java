@@ -22,12 +22,18 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapred.MRVertexOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.security.Credentials;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.StringUtils;
@@ -37,6 +43,9 @@ import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
 import org.apache.hadoop.yarn.event.DrainDispatcher;
 import org.apache.hadoop.yarn.event.EventHandler;
 import org.apache.hadoop.yarn.util.BuilderUtils;
+import org.apache.tez.common.OutputSpec;
+import org.apache.tez.common.counters.FileSystemCounter;
+import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.dag.api.oldrecords.TaskState;
 import org.apache.tez.dag.api.records.DAGProtos.DAGPlan;
 import org.apache.tez.dag.api.records.DAGProtos.EdgePlan;
@@ -48,6 +57,8 @@ import org.apache.tez.dag.api.records.DAGProtos.PlanVertexType;
 import org.apache.tez.dag.api.records.DAGProtos.VertexPlan;
 import org.apache.tez.dag.api.DagTypeConverters;
 import org.apache.tez.dag.api.EdgeProperty;
+import org.apache.tez.dag.api.EdgeProperty.ConnectionPattern;
+import org.apache.tez.dag.api.EdgeProperty.SourceType;
 import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.dag.api.VertexLocationHint;
 import org.apache.tez.dag.api.committer.NullVertexOutputCommitter;
@@ -58,14 +69,18 @@ import org.apache.tez.dag.app.AppContext;
 import org.apache.tez.dag.app.TaskAttemptListener;
 import org.apache.tez.dag.app.TaskHeartbeatHandler;
 import org.apache.tez.dag.app.dag.DAG;
+import org.apache.tez.dag.app.dag.Task;
 import org.apache.tez.dag.app.dag.Vertex;
 import org.apache.tez.dag.app.dag.VertexState;
 import org.apache.tez.dag.app.dag.event.DAGEvent;
 import org.apache.tez.dag.app.dag.event.DAGEventType;
+import org.apache.tez.dag.app.dag.event.TaskAttemptEvent;
+import org.apache.tez.dag.app.dag.event.TaskAttemptEventType;
 import org.apache.tez.dag.app.dag.event.TaskEvent;
 import org.apache.tez.dag.app.dag.event.TaskEventType;
 import org.apache.tez.dag.app.dag.event.VertexEvent;
 import org.apache.tez.dag.app.dag.event.VertexEventTaskAttemptCompleted;
+import org.apache.tez.dag.app.dag.event.VertexEventTaskAttemptFetchFailure;
 import org.apache.tez.dag.app.dag.event.VertexEventTaskCompleted;
 import org.apache.tez.dag.app.dag.event.VertexEventTaskReschedule;
 import org.apache.tez.dag.app.dag.event.VertexEventType;
@@ -76,6 +91,7 @@ import org.apache.tez.dag.records.TezTaskAttemptID;
 import org.apache.tez.dag.records.TezTaskID;
 import org.apache.tez.dag.records.TezVertexID;
 import org.apache.tez.engine.common.security.JobTokenIdentifier;
+import org.apache.tez.engine.lib.input.BroadcastShuffledMergedInput;
 import org.apache.tez.engine.records.TezDependentTaskCompletionEvent;
 import org.apache.tez.engine.records.TezDependentTaskCompletionEvent.Status;
 import org.junit.After;
@@ -102,6 +118,7 @@ public class TestVertexImpl {
   private AppContext appContext;
   private VertexLocationHint vertexLocationHint;
   private TezConfiguration conf = new TezConfiguration();
+  private TaskAttemptEventHandler taskAttemptEventHandler;
   private Map<String, EdgeProperty> edges;
 
   private VertexEventDispatcher vertexEventDispatcher;
@@ -161,6 +178,21 @@ public class TestVertexImpl {
     }
   }
 
+  private class TaskAttemptEventHandler
+      implements EventHandler<TaskAttemptEvent> {
+    public Map<TaskAttemptEventType, Integer> eventCount =
+        new HashMap<TaskAttemptEventType, Integer>();
+
+    @Override
+    public void handle(TaskAttemptEvent event) {
+      int count = 1;
+      if (eventCount.containsKey(event.getType())) {
+        count = eventCount.get(event.getType()) + 1;
+      }
+      eventCount.put(event.getType(), count);
+    }
+  }
+
   private class DagEventDispatcher implements EventHandler<DAGEvent> {
     public Map<DAGEventType, Integer> eventCount =
         new HashMap<DAGEventType, Integer>();
@@ -486,6 +518,8 @@ public class TestVertexImpl {
     dispatcher.register(HistoryEventType.class,
         new HistoryHandler());
     dispatcher.register(TaskEventType.class, new TaskEventHandler());
+    taskAttemptEventHandler = new TaskAttemptEventHandler();
+    dispatcher.register(TaskAttemptEventType.class, taskAttemptEventHandler);
     dispatcher.init(conf);
     dispatcher.start();
   }
@@ -583,6 +617,123 @@ public class TestVertexImpl {
             .getOutputClassName()));
   }
 
+  @Test
+  public void testBroadcastOutputSpec() {
+    VertexImpl v3 = vertices.get("vertex3");
+    VertexImpl v4 = vertices.get("vertex4");
+    VertexImpl v5 = vertices.get("vertex5");
+    initVertex(v4);
+    initVertex(v5);
+
+    // only a broadcast input reads a single partition of a ONE_TO_ALL edge
+    Map<Vertex, EdgeProperty> outVertices =
+        new HashMap<Vertex, EdgeProperty>();
+    outVertices.put(v4, new EdgeProperty(ConnectionPattern.ONE_TO_ALL,
+        SourceType.STABLE, BroadcastShuffledMergedInput.class.getName(),
+        "o3_v4"));
+    outVertices.put(v5, new EdgeProperty(ConnectionPattern.ONE_TO_ALL,
+        SourceType.STABLE, "i5_v3", "o3_v5"));
+    v3.setOutputVertices(outVertices);
+
+    for (OutputSpec outputSpec : v3.getOutputSpecList()) {
+      if ("vertex4".equals(outputSpec.getVertexName())) {
+        Assert.assertEquals(1, outputSpec.getNumOutputs());
+      } else {
+        Assert.assertEquals(v5.getTotalTasks(), outputSpec.getNumOutputs());
+      }
+    }
+  }
+
+  @Test
+  public void testBroadcastInputNeedsOneToAllEdge() {
+    VertexImpl v3 = vertices.get("vertex3");
+    VertexImpl v4 = vertices.get("vertex4");
+    Map<Vertex, EdgeProperty> inVertices =
+        new HashMap<Vertex, EdgeProperty>();
+    inVertices.put(v3, new EdgeProperty(ConnectionPattern.BIPARTITE,
+        SourceType.STABLE, BroadcastShuffledMergedInput.class.getName(),
+        "o3_v4"));
+    v4.setInputVertices(inVertices);
+
+    v4.handle(new VertexEvent(v4.getVertexId(), VertexEventType.V_INIT));
+    dispatcher.await();
+    Assert.assertEquals(VertexState.FAILED, v4.getState());
+    Assert.assertTrue(StringUtils.join(",", v4.getDiagnostics())
+        .contains("ONE_TO_ALL"));
+  }
+
+  private void waitForSplits(VertexImpl v) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 60000;
+    while (v.getState() == VertexState.INITIALIZING
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    dispatcher.await();
+  }
+
+  private Path setupSplitGeneration(int numFiles) throws IOException {
+    FileSystem localFs = FileSystem.getLocal(conf);
+    Path inputDir = new Path(System.getProperty("test.build.data", "/tmp"),
+        "TestVertexImpl-input").makeQualified(localFs);
+    localFs.delete(inputDir, true);
+    for (int i = 0; i < numFiles; ++i) {
+      FSDataOutputStream out = localFs.create(new Path(inputDir, "f" + i));
+      out.writeBytes("line\n");
+      out.close();
+    }
+    conf.setBoolean(TezConfiguration.DAG_AM_GENERATE_SPLITS, true);
+    conf.setBoolean("mapred.mapper.new-api", true);
+    conf.set(FileInputFormat.INPUT_DIR, inputDir.toString());
+    return inputDir;
+  }
+
+  @Test
+  public void testSplitGenerationInAM() throws Exception {
+    Path inputDir = setupSplitGeneration(2);
+    try {
+      initVertex(vertices.get("vertex3"));
+      VertexImpl v1 = vertices.get("vertex1");
+      v1.handle(new VertexEvent(v1.getVertexId(), VertexEventType.V_INIT));
+      // a start which comes in while the splits are generated waits for them
+      v1.handle(new VertexEvent(v1.getVertexId(), VertexEventType.V_START));
+      waitForSplits(v1);
+      Assert.assertEquals(VertexState.RUNNING, v1.getState());
+      Assert.assertEquals(2, v1.getTotalTasks());
+      Assert.assertNotNull(v1.getSplitPayload(0));
+      Assert.assertNotNull(v1.getSplitPayload(1));
+    } finally {
+      FileSystem.getLocal(conf).delete(inputDir, true);
+    }
+  }
+
+  @Test
+  public void testSplitGenerationFailure() throws Exception {
+    Path inputDir = setupSplitGeneration(0);
+    VertexImpl v1 = vertices.get("vertex1");
+    v1.handle(new VertexEvent(v1.getVertexId(), VertexEventType.V_INIT));
+    waitForSplits(v1);
+    Assert.assertEquals(VertexState.FAILED, v1.getState());
+    Assert.assertTrue(StringUtils.join(",", v1.getDiagnostics())
+        .contains(inputDir.getName()));
+  }
+
+  @Test
+  public void testKillWhileGeneratingSplits() throws Exception {
+    Path inputDir = setupSplitGeneration(1);
+    try {
+      VertexImpl v1 = vertices.get("vertex1");
+      v1.handle(new VertexEvent(v1.getVertexId(), VertexEventType.V_INIT));
+      v1.handle(new VertexEvent(v1.getVertexId(), VertexEventType.V_KILL));
+      Assert.assertEquals(VertexState.KILLED, v1.getState());
+      // the splits which come in later are dropped
+      Thread.sleep(100);
+      dispatcher.await();
+      Assert.assertEquals(VertexState.KILLED, v1.getState());
+    } finally {
+      FileSystem.getLocal(conf).delete(inputDir, true);
+    }
+  }
+
   @Test
   public void testVertexStart() {
     VertexImpl v = vertices.get("vertex2");
@@ -915,6 +1066,74 @@ public class TestVertexImpl {
             DAGEventType.DAG_VERTEX_COMPLETED).intValue());
   }
 
+  private Task createMockTask(TezTaskID taskId, TezCounters counters) {
+    Task task = mock(Task.class);
+    doReturn(taskId).when(task).getTaskId();
+    doReturn(TaskState.SUCCEEDED).when(task).getState();
+    doReturn(counters).when(task).getCounters();
+    return task;
+  }
+
+  private TezCounters createCounters(long records, long bytesRead) {
+    TezCounters counters = new TezCounters();
+    counters.findCounter("TestGroup", "records").increment(records);
+    counters.findCounter("hdfs", FileSystemCounter.BYTES_READ)
+        .increment(bytesRead);
+    return counters;
+  }
+
+  @Test
+  public void testCountersOnTaskReschedule() {
+    VertexImpl v = vertices.get("vertex2");
+    initVertex(v);
+    startVertex(v);
+
+    TezTaskID t1 = new TezTaskID(v.getVertexId(), 0);
+    TezTaskID t2 = new TezTaskID(v.getVertexId(), 1);
+    Task task1 = createMockTask(t1, createCounters(5, 100));
+    Task task2 = createMockTask(t2, createCounters(7, 1000));
+    Map<TezTaskID, Task> mockTasks = new LinkedHashMap<TezTaskID, Task>();
+    mockTasks.put(t1, task1);
+    mockTasks.put(t2, task2);
+    v.tasks = mockTasks;
+
+    v.handle(new VertexEventTaskCompleted(t1, TaskState.SUCCEEDED));
+    dispatcher.await();
+    TezCounters counters = v.getAllCounters();
+    Assert.assertEquals(5,
+        counters.findCounter("TestGroup", "records").getValue());
+    Assert.assertEquals(100, counters.findCounter("hdfs",
+        FileSystemCounter.BYTES_READ).getValue());
+
+    // the counters the task added are taken back out
+    v.handle(new VertexEventTaskReschedule(t1));
+    dispatcher.await();
+    counters = v.getAllCounters();
+    Assert.assertEquals(0,
+        counters.findCounter("TestGroup", "records").getValue());
+    Assert.assertEquals(0, counters.findCounter("hdfs",
+        FileSystemCounter.BYTES_READ).getValue());
+
+    // the re-run reports different counters
+    doReturn(createCounters(6, 200)).when(task1).getCounters();
+    v.handle(new VertexEventTaskCompleted(t1, TaskState.SUCCEEDED));
+    dispatcher.await();
+    counters = v.getAllCounters();
+    Assert.assertEquals(6,
+        counters.findCounter("TestGroup", "records").getValue());
+    Assert.assertEquals(200, counters.findCounter("hdfs",
+        FileSystemCounter.BYTES_READ).getValue());
+
+    v.handle(new VertexEventTaskCompleted(t2, TaskState.SUCCEEDED));
+    dispatcher.await();
+    Assert.assertEquals(VertexState.SUCCEEDED, v.getState());
+    counters = v.getAllCounters();
+    Assert.assertEquals(13,
+        counters.findCounter("TestGroup", "records").getValue());
+    Assert.assertEquals(1200, counters.findCounter("hdfs",
+        FileSystemCounter.BYTES_READ).getValue());
+  }
+
   @Test
   public void testTaskReschedule() {
     // For downstream failures
@@ -981,7 +1200,96 @@ public class TestVertexImpl {
 
   @Test
   public void testTaskAttemptFetchFailureHandling() {
-    // FIXME needs testing
+    VertexImpl v1 = vertices.get("vertex1");
+    VertexImpl v2 = vertices.get("vertex2");
+    initVertex(v2);
+    startVertex(v2);
+
+    TezTaskAttemptID source = new TezTaskAttemptID(
+        new TezTaskID(v1.getVertexId(), 0), 0);
+    TezTaskAttemptID consumer = new TezTaskAttemptID(
+        new TezTaskID(v2.getVertexId(), 0), 0);
+
+    // below the notification threshold the source is left alone
+    for (int i = 0;
+        i < TezConfiguration.DAG_MAX_FETCH_FAILURES_NOTIFICATIONS_DEFAULT - 1;
+        ++i) {
+      v2.handle(new VertexEventTaskAttemptFetchFailure(consumer,
+          Collections.singletonList(source)));
+    }
+    dispatcher.await();
+    Assert.assertNull(taskAttemptEventHandler.eventCount.get(
+        TaskAttemptEventType.TA_TOO_MANY_FETCH_FAILURES));
+
+    v2.handle(new VertexEventTaskAttemptFetchFailure(consumer,
+        Collections.singletonList(source)));
+    dispatcher.await();
+    Assert.assertEquals(1, taskAttemptEventHandler.eventCount.get(
+        TaskAttemptEventType.TA_TOO_MANY_FETCH_FAILURES).intValue());
+  }
+
+  @Test
+  public void testTaskAttemptFetchFailureFromDistinctConsumers() {
+    VertexImpl v1 = vertices.get("vertex1");
+    VertexImpl v2 = vertices.get("vertex2");
+    initVertex(v2);
+    startVertex(v2);
+
+    // four running consumers, so that two distinct reporters are needed to
+    // reach the default fraction of 0.5
+    Map<TezTaskID, Task> runningTasks = new LinkedHashMap<TezTaskID, Task>();
+    TezTaskAttemptID[] consumers = new TezTaskAttemptID[4];
+    for (int i = 0; i < consumers.length; ++i) {
+      TezTaskID taskId = new TezTaskID(v2.getVertexId(), i);
+      Task task = mock(Task.class);
+      doReturn(TaskState.RUNNING).when(task).getState();
+      runningTasks.put(taskId, task);
+      consumers[i] = new TezTaskAttemptID(taskId, 0);
+    }
+    v2.tasks = runningTasks;
+
+    TezTaskAttemptID source1 = new TezTaskAttemptID(
+        new TezTaskID(v1.getVertexId(), 0), 0);
+    TezTaskAttemptID source2 = new TezTaskAttemptID(
+        new TezTaskID(v1.getVertexId(), 1), 0);
+
+    // one consumer repeating its report reaches the notification count but
+    // only a quarter of the consumers
+    for (int i = 0;
+        i < TezConfiguration.DAG_MAX_FETCH_FAILURES_NOTIFICATIONS_DEFAULT;
+        ++i) {
+      v2.handle(new VertexEventTaskAttemptFetchFailure(consumers[0],
+          Collections.singletonList(source1)));
+    }
+    // a repeat of a consumer which already reported the other source
+    v2.handle(new VertexEventTaskAttemptFetchFailure(consumers[1],
+        Collections.singletonList(source2)));
+    v2.handle(new VertexEventTaskAttemptFetchFailure(consumers[1],
+        Collections.singletonList(source2)));
+    dispatcher.await();
+    Assert.assertNull(taskAttemptEventHandler.eventCount.get(
+        TaskAttemptEventType.TA_TOO_MANY_FETCH_FAILURES));
+
+    // a second distinct consumer makes source1 faulty
+    v2.handle(new VertexEventTaskAttemptFetchFailure(consumers[2],
+        Collections.singletonList(source1)));
+    dispatcher.await();
+    Assert.assertEquals(1, taskAttemptEventHandler.eventCount.get(
+        TaskAttemptEventType.TA_TOO_MANY_FETCH_FAILURES).intValue());
+
+    // source2 has three notifications from two distinct consumers
+    v2.handle(new VertexEventTaskAttemptFetchFailure(consumers[3],
+        Collections.singletonList(source2)));
+    dispatcher.await();
+    Assert.assertEquals(2, taskAttemptEventHandler.eventCount.get(
+        TaskAttemptEventType.TA_TOO_MANY_FETCH_FAILURES).intValue());
+
+    // the counts were reset once source1 was declared faulty
+    v2.handle(new VertexEventTaskAttemptFetchFailure(consumers[0],
+        Collections.singletonList(source1)));
+    dispatcher.await();
+    Assert.assertEquals(2, taskAttemptEventHandler.eventCount.get(
+        TaskAttemptEventType.TA_TOO_MANY_FETCH_FAILURES).intValue());
   }
 
   @Test
@@ -0,0 +1,248 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.app.launcher;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.yarn.SystemClock;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
+import org.apache.hadoop.yarn.event.EventHandler;
+import org.apache.hadoop.yarn.service.Service.STATE;
+import org.apache.hadoop.yarn.util.BuilderUtils;
+import org.apache.tez.common.ContainerContext;
+import org.apache.tez.common.ContainerTask;
+import org.apache.tez.common.InputSpec;
+import org.apache.tez.common.OutputSpec;
+import org.apache.tez.common.TezEngineTaskContext;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezTaskStatus;
+import org.apache.tez.common.TezTaskUmbilicalProtocol;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.app.AppContext;
+import org.apache.tez.dag.app.rm.NMCommunicatorLaunchRequestEvent;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.engine.api.Input;
+import org.apache.tez.engine.api.Output;
+import org.apache.tez.engine.api.Processor;
+import org.apache.tez.engine.records.TezHeartbeatRequest;
+import org.apache.tez.engine.records.TezHeartbeatResponse;
+import org.apache.tez.mapreduce.hadoop.MultiStageMRConfigUtil;
+import org.apache.tez.mapreduce.processor.MRTask;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLocalContainerLauncher {
+
+  /** Runs until its container stops it. */
+  public static class WaitingProcessor extends MRTask implements Processor {
+
+    public WaitingProcessor(TezEngineTaskContext context) {
+      super(context);
+    }
+
+    @Override
+    public void process(Input[] in, Output[] out)
+        throws IOException, InterruptedException {
+      while (true) {
+        Thread.sleep(1000);
+      }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public TezCounter getOutputRecordsCounter() {
+      return null;
+    }
+
+    @Override
+    public TezCounter getInputRecordsCounter() {
+      return null;
+    }
+  }
+
+  /** Sends a status update, which the AM refuses. */
+  public static class StatusUpdateProcessor extends WaitingProcessor {
+
+    public StatusUpdateProcessor(TezEngineTaskContext context) {
+      super(context);
+    }
+
+    @Override
+    public void process(Input[] in, Output[] out)
+        throws IOException, InterruptedException {
+      statusUpdate();
+      Assert.fail("Task kept running after its container exited");
+    }
+  }
+
+  private static class Exit {
+    final ContainerId containerId;
+    final int status;
+    final String diagnostics;
+
+    Exit(ContainerId containerId, int status, String diagnostics) {
+      this.containerId = containerId;
+      this.status = status;
+      this.diagnostics = diagnostics;
+    }
+  }
+
+  private File localDir;
+  private ApplicationAttemptId appAttemptId;
+  private TezTaskUmbilicalProtocol umbilical;
+  private LocalContainerLauncher launcher;
+  private BlockingQueue<Exit> exits;
+
+  @Before
+  public void setup() {
+    localDir = new File(System.getProperty("test.build.data", "/tmp"),
+        "TestLocalContainerLauncher");
+    FileUtil.fullyDelete(localDir);
+    appAttemptId = BuilderUtils.newApplicationAttemptId(
+        BuilderUtils.newApplicationId(1, 1), 1);
+
+    AppContext context = mock(AppContext.class);
+    when(context.getApplicationID())
+        .thenReturn(appAttemptId.getApplicationId());
+    when(context.getDAGID())
+        .thenReturn(new TezDAGID(appAttemptId.getApplicationId(), 1));
+    when(context.getEventHandler()).thenReturn(mock(EventHandler.class));
+    when(context.getClock()).thenReturn(new SystemClock());
+    umbilical = mock(TezTaskUmbilicalProtocol.class);
+
+    Configuration conf = new Configuration();
+    conf.set(TezConfiguration.TEZ_LOCAL_MODE_LOCAL_DIRS,
+        localDir.getAbsolutePath());
+    conf.setLong(TezJobConfig.TEZ_ENGINE_TASK_HEARTBEAT_MIN_INTERVAL_MS, 50);
+    conf.setLong(TezJobConfig.TEZ_ENGINE_TASK_HEARTBEAT_MAX_INTERVAL_MS, 50);
+    launcher = new LocalContainerLauncher(context, umbilical);
+    exits = new ArrayBlockingQueue<Exit>(10);
+    launcher.setContainerExitListener(
+        new LocalContainerLauncher.ContainerExitListener() {
+          @Override
+          public void containerExited(ContainerId containerId,
+              int exitStatus, String diagnostics) {
+            exits.add(new Exit(containerId, exitStatus, diagnostics));
+          }
+        });
+    launcher.init(conf);
+    launcher.start();
+  }
+
+  @After
+  public void cleanup() {
+    launcher.stop();
+    FileUtil.fullyDelete(localDir);
+  }
+
+  /**
+   * Launch a container which runs a single attempt of a task with
+   * <code>processor</code>.
+   */
+  private ContainerId launch(int id, Class<? extends Processor> processor)
+      throws IOException {
+    TezTaskAttemptID attemptId = new TezTaskAttemptID(new TezTaskID(
+        new TezVertexID(new TezDAGID(appAttemptId.getApplicationId(), 1), 0),
+        id), 0);
+    TezEngineTaskContext taskContext = new TezEngineTaskContext(attemptId,
+        "user", "job", MultiStageMRConfigUtil.getInitialMapVertexName(),
+        processor.getName(), new ArrayList<InputSpec>(),
+        new ArrayList<OutputSpec>());
+    when(umbilical.getTask(any(ContainerContext.class))).thenReturn(
+        new ContainerTask(taskContext, false), new ContainerTask(null, true));
+
+    ContainerId containerId = BuilderUtils.newContainerId(appAttemptId, id);
+    ContainerLaunchContext clc = mock(ContainerLaunchContext.class);
+    when(clc.getServiceData())
+        .thenReturn(Collections.<String, ByteBuffer>emptyMap());
+    Container container = mock(Container.class);
+    when(container.getId()).thenReturn(containerId);
+    launcher.handle(new NMCommunicatorLaunchRequestEvent(clc, container));
+    return containerId;
+  }
+
+  private void assertExited(ContainerId containerId, int status)
+      throws Exception {
+    Exit exit = exits.poll(30, TimeUnit.SECONDS);
+    Assert.assertNotNull("Container did not exit", exit);
+    Assert.assertEquals(containerId, exit.containerId);
+    Assert.assertEquals(status, exit.status);
+    Assert.assertEquals("Parent died", exit.diagnostics);
+    // the attempt is gone, nothing is reported for it
+    verify(umbilical, never()).fatalError(any(TezTaskAttemptID.class),
+        anyString());
+    // the AM is still around
+    Assert.assertEquals(STATE.STARTED, launcher.getServiceState());
+  }
+
+  @Test
+  public void testKilledAttemptStopsContainer() throws Exception {
+    TezHeartbeatResponse response = new TezHeartbeatResponse();
+    response.setShouldDie(true);
+    when(umbilical.heartbeat(any(TezHeartbeatRequest.class)))
+        .thenReturn(response);
+
+    // the heartbeat of the attempt is told to die
+    ContainerId containerId = launch(1, WaitingProcessor.class);
+    assertExited(containerId, 66);
+  }
+
+  @Test
+  public void testRefusedStatusUpdateStopsContainer() throws Exception {
+    when(umbilical.heartbeat(any(TezHeartbeatRequest.class)))
+        .thenReturn(new TezHeartbeatResponse());
+    when(umbilical.statusUpdate(any(TezTaskAttemptID.class),
+        any(TezTaskStatus.class))).thenReturn(false);
+
+    ContainerId containerId = launch(2, StatusUpdateProcessor.class);
+    assertExited(containerId, 66);
+
+    // the launcher goes on running containers
+    containerId = launch(3, StatusUpdateProcessor.class);
+    assertExited(containerId, 66);
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.app.rm;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.yarn.api.protocolrecords.AllocateRequest;
+import org.apache.hadoop.yarn.api.protocolrecords.AllocateResponse;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.ContainerState;
+import org.apache.hadoop.yarn.api.records.ContainerStatus;
+import org.apache.hadoop.yarn.api.records.Priority;
+import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.hadoop.yarn.api.records.ResourceRequest;
+import org.apache.hadoop.yarn.util.BuilderUtils;
+import org.apache.tez.dag.app.rm.LocalAMRMClient.LocalResourceManager;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLocalAMRMClient {
+
+  private ApplicationAttemptId attemptId;
+  private Priority priority;
+  private Resource capability;
+  private int responseId = 0;
+
+  @Before
+  public void setup() {
+    attemptId = BuilderUtils.newApplicationAttemptId(
+        BuilderUtils.newApplicationId(1234, 1), 1);
+    priority = BuilderUtils.newPriority(1);
+    capability = BuilderUtils.newResource(1024, 1);
+  }
+
+  private AllocateRequest createRequest(int numContainers,
+      List<ContainerId> releases) {
+    ResourceRequest ask = mock(ResourceRequest.class);
+    when(ask.getResourceName()).thenReturn(ResourceRequest.ANY);
+    when(ask.getPriority()).thenReturn(priority);
+    when(ask.getCapability()).thenReturn(capability);
+    when(ask.getNumContainers()).thenReturn(numContainers);
+    AllocateRequest request = mock(AllocateRequest.class);
+    when(request.getAskList()).thenReturn(Collections.singletonList(ask));
+    when(request.getReleaseList()).thenReturn(releases);
+    when(request.getResponseId()).thenReturn(responseId++);
+    return request;
+  }
+
+  private AllocateRequest createRequest(int numContainers) {
+    return createRequest(numContainers, Collections.<ContainerId>emptyList());
+  }
+
+  @Test
+  public void testExitedContainersFreeTheirSlot() throws Exception {
+    LocalResourceManager rm = new LocalResourceManager(attemptId, 1);
+
+    AllocateResponse response = rm.allocate(createRequest(2));
+    List<Container> allocated = response.getAllocatedContainers();
+    Assert.assertEquals(1, allocated.size());
+    Assert.assertTrue(response.getCompletedContainersStatuses().isEmpty());
+    ContainerId first = allocated.get(0).getId();
+
+    // the only slot is taken
+    response = rm.allocate(createRequest(1));
+    Assert.assertTrue(response.getAllocatedContainers().isEmpty());
+
+    // the task loop of the container ended without the AM releasing it
+    rm.containerExited(first, 1, "failed");
+    response = rm.allocate(createRequest(1));
+    List<ContainerStatus> completed =
+        response.getCompletedContainersStatuses();
+    Assert.assertEquals(1, completed.size());
+    Assert.assertEquals(first, completed.get(0).getContainerId());
+    Assert.assertEquals(ContainerState.COMPLETE, completed.get(0).getState());
+    Assert.assertEquals(1, completed.get(0).getExitStatus());
+    Assert.assertEquals("failed", completed.get(0).getDiagnostics());
+    Assert.assertEquals(1, response.getAllocatedContainers().size());
+    ContainerId second = response.getAllocatedContainers().get(0).getId();
+    Assert.assertFalse(first.equals(second));
+
+    // releasing a container which already exited is not reported twice
+    response = rm.allocate(
+        createRequest(0, Collections.singletonList(first)));
+    Assert.assertTrue(response.getCompletedContainersStatuses().isEmpty());
+    Assert.assertTrue(response.getAllocatedContainers().isEmpty());
+  }
+
+  @Test
+  public void testReleasedContainersAreReportedOnce() throws Exception {
+    LocalResourceManager rm = new LocalResourceManager(attemptId, 2);
+    AllocateResponse response = rm.allocate(createRequest(2));
+    Assert.assertEquals(2, response.getAllocatedContainers().size());
+    ContainerId released = response.getAllocatedContainers().get(0).getId();
+
+    response = rm.allocate(
+        createRequest(0, Collections.singletonList(released)));
+    Assert.assertEquals(1, response.getCompletedContainersStatuses().size());
+    Assert.assertEquals(released, response.getCompletedContainersStatuses()
+        .get(0).getContainerId());
+
+    // the container thread ending afterwards changes nothing
+    rm.containerExited(released, 0, "Container exited");
+    response = rm.allocate(createRequest(0));
+    Assert.assertTrue(response.getCompletedContainersStatuses().isEmpty());
+  }
+}
@@ -39,6 +39,7 @@ import org.apache.hadoop.yarn.factories.RecordFactory;
 import org.apache.hadoop.yarn.factory.providers.RecordFactoryProvider;
 import org.apache.hadoop.yarn.util.BuilderUtils;
 import org.apache.hadoop.yarn.util.RackResolver;
+import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.dag.app.rm.AMRMClient.StoredContainerRequest;
 import org.apache.tez.dag.app.rm.TaskScheduler.CRCookie;
 import org.apache.tez.dag.app.rm.TaskScheduler.TaskSchedulerAppCallback;
@@ -276,4 +277,201 @@ public class TestTaskScheduler {
     verify(mockRMClient).stop();
   }
   
+  private TaskScheduler createScheduler(TaskSchedulerAppCallback mockApp,
+      AMRMClientAsync<StoredContainerRequest<CRCookie>> mockRMClient,
+      Configuration conf) {
+    RackResolver.init(new YarnConfiguration());
+    ApplicationAttemptId attemptId = 
+        BuilderUtils.newApplicationAttemptId(
+                                  BuilderUtils.newApplicationId(1234, 0), 0);
+    TaskScheduler scheduler = new TaskScheduler(attemptId, mockApp, "host", 
+                                                0, "url", mockRMClient);
+    scheduler.init(conf);
+    return scheduler;
+  }
+  
+  private Resource newResource(int memory) {
+    Resource resource = recordFactory.newRecordInstance(Resource.class);
+    resource.setMemory(memory);
+    return resource;
+  }
+  
+  private Priority newPriority(int value) {
+    Priority priority = recordFactory.newRecordInstance(Priority.class);
+    priority.setPriority(value);
+    return priority;
+  }
+  
+  @SuppressWarnings("rawtypes")
+  private static Object taskOf(StoredContainerRequest request) {
+    return ((CRCookie) request.getCookie()).task;
+  }
+  
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @Test
+  public void testHoldBackRequests() throws Exception {
+    TaskSchedulerAppCallback mockApp = mock(TaskSchedulerAppCallback.class);
+    AMRMClientAsync<StoredContainerRequest<CRCookie>> mockRMClient = 
+                                                  mock(AMRMClientAsync.class);
+    Configuration conf = new Configuration();
+    conf.setInt(TezConfiguration.DAG_AM_CONTAINER_REQUESTS_MIN_OUTSTANDING, 1);
+    conf.setInt(TezConfiguration.DAG_AM_CONTAINER_REQUESTS_BATCH_SIZE, 1);
+    TaskScheduler scheduler = createScheduler(mockApp, mockRMClient, conf);
+    
+    // room for one container
+    Resource capability = newResource(1024);
+    when(mockRMClient.getClusterAvailableResources()).
+                                              thenReturn(newResource(1024));
+    ArgumentCaptor<StoredContainerRequest> requestCaptor = 
+                        ArgumentCaptor.forClass(StoredContainerRequest.class);
+    Object task1 = new Object();
+    Object task2 = new Object();
+    Object task3 = new Object();
+    Object task4 = new Object();
+    scheduler.allocateTask(task1, capability, null, null, newPriority(2), 
+                           null);
+    scheduler.allocateTask(task2, capability, null, null, newPriority(2), 
+                           null);
+    scheduler.allocateTask(task3, capability, null, null, newPriority(1), 
+                           null);
+    scheduler.allocateTask(task4, capability, null, null, newPriority(2), 
+                           null);
+    verify(mockRMClient, times(1)).
+                           addContainerRequest(requestCaptor.capture());
+    Assert.assertSame(task1, taskOf(requestCaptor.getValue()));
+    Assert.assertEquals(3, scheduler.numPendingTaskRequests);
+    
+    // nothing more is sent while the cluster has no room
+    scheduler.getProgress();
+    verify(mockRMClient, times(1)).
+                           addContainerRequest((StoredContainerRequest) any());
+    
+    // one batch per heartbeat, the most important request first
+    when(mockRMClient.getClusterAvailableResources()).
+                                              thenReturn(newResource(4096));
+    scheduler.getProgress();
+    verify(mockRMClient, times(2)).
+                           addContainerRequest(requestCaptor.capture());
+    Assert.assertSame(task3, taskOf(requestCaptor.getValue()));
+    scheduler.getProgress();
+    verify(mockRMClient, times(3)).
+                           addContainerRequest(requestCaptor.capture());
+    Assert.assertSame(task2, taskOf(requestCaptor.getValue()));
+    
+    // a request withdrawn before it was sent never reaches the RM
+    Assert.assertNull(scheduler.deallocateTask(task4));
+    Assert.assertEquals(0, scheduler.numPendingTaskRequests);
+    scheduler.getProgress();
+    verify(mockRMClient, times(3)).
+                           addContainerRequest((StoredContainerRequest) any());
+    verify(mockRMClient, never()).
+                        removeContainerRequest((StoredContainerRequest) any());
+    
+    // with nothing held back a request is sent at once
+    Object task5 = new Object();
+    scheduler.allocateTask(task5, capability, null, null, newPriority(2), 
+                           null);
+    verify(mockRMClient, times(4)).
+                           addContainerRequest(requestCaptor.capture());
+    Assert.assertSame(task5, taskOf(requestCaptor.getValue()));
+  }
+  
+  private Container newContainer(String host) {
+    Container container = mock(Container.class, RETURNS_DEEP_STUBS);
+    when(container.getNodeId().getHost()).thenReturn(host);
+    ContainerId containerId = mock(ContainerId.class);
+    when(container.getId()).thenReturn(containerId);
+    return container;
+  }
+  
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @Test
+  public void testHoldContainersForLocalityDelay() throws Exception {
+    TaskSchedulerAppCallback mockApp = mock(TaskSchedulerAppCallback.class);
+    AMRMClientAsync<StoredContainerRequest<CRCookie>> mockRMClient = 
+                                                  mock(AMRMClientAsync.class);
+    TaskScheduler scheduler = 
+        createScheduler(mockApp, mockRMClient, new Configuration());
+    
+    // the task only takes a container off host1 after a minute
+    Object task1 = new Object();
+    Object cookie1 = new Object();
+    String[] hosts = {"host1"};
+    scheduler.allocateTask(task1, newResource(1024), hosts, null, 
+                           newPriority(1), 60000, 0, cookie1);
+    ArgumentCaptor<StoredContainerRequest> requestCaptor = 
+                        ArgumentCaptor.forClass(StoredContainerRequest.class);
+    verify(mockRMClient).addContainerRequest(requestCaptor.capture());
+    StoredContainerRequest<CRCookie> request1 = requestCaptor.getValue();
+    List<StoredContainerRequest<CRCookie>> requests = 
+                             new ArrayList<StoredContainerRequest<CRCookie>>();
+    requests.add(request1);
+    when(mockRMClient.getMatchingRequests((Priority) any(), 
+        eq("/default-rack"), (Resource) any())).thenReturn(requests);
+    when(mockRMClient.getMatchingRequests((Priority) any(), 
+        eq(ResourceRequest.ANY), (Resource) any())).thenReturn(requests);
+    
+    // a container on another host of the rack is held, not released
+    Container container1 = newContainer("host2");
+    List<Container> containers = new ArrayList<Container>();
+    containers.add(container1);
+    scheduler.onContainersAllocated(containers);
+    scheduler.getProgress();
+    verify(mockApp, never()).taskAllocated(any(), any(), (Container) any());
+    verify(mockRMClient, never()).
+                                 releaseAssignedContainer((ContainerId) any());
+    verify(mockRMClient, never()).
+                        removeContainerRequest((StoredContainerRequest) any());
+    Assert.assertEquals(1, scheduler.heldContainers.size());
+    
+    // and given to the task once the delay has passed
+    ((CRCookie) request1.getCookie()).requestTime -= 60000;
+    scheduler.getProgress();
+    verify(mockApp).taskAllocated(task1, cookie1, container1);
+    verify(mockRMClient).removeContainerRequest(request1);
+    verify(mockRMClient, never()).
+                                 releaseAssignedContainer((ContainerId) any());
+    Assert.assertTrue(scheduler.heldContainers.isEmpty());
+    
+    // a held container is released once its request is withdrawn
+    Object task2 = new Object();
+    scheduler.allocateTask(task2, newResource(1024), hosts, null, 
+                           newPriority(1), 60000, 0, new Object());
+    verify(mockRMClient, times(2)).addContainerRequest(requestCaptor.capture());
+    requests.clear();
+    requests.add(requestCaptor.getValue());
+    Container container2 = newContainer("host3");
+    containers.clear();
+    containers.add(container2);
+    scheduler.onContainersAllocated(containers);
+    Assert.assertEquals(1, scheduler.heldContainers.size());
+    Assert.assertNull(scheduler.deallocateTask(task2));
+    requests.clear();
+    scheduler.getProgress();
+    verify(mockRMClient).releaseAssignedContainer(container2.getId());
+    Assert.assertTrue(scheduler.heldContainers.isEmpty());
+    
+    // a held container which completes is forgotten
+    Object task3 = new Object();
+    scheduler.allocateTask(task3, newResource(1024), hosts, null, 
+                           newPriority(1), 60000, 0, new Object());
+    verify(mockRMClient, times(3)).addContainerRequest(requestCaptor.capture());
+    requests.add(requestCaptor.getValue());
+    Container container3 = newContainer("host4");
+    containers.clear();
+    containers.add(container3);
+    scheduler.onContainersAllocated(containers);
+    Assert.assertEquals(1, scheduler.heldContainers.size());
+    ContainerId containerId3 = container3.getId();
+    ContainerStatus status3 = mock(ContainerStatus.class);
+    when(status3.getContainerId()).thenReturn(containerId3);
+    List<ContainerStatus> statuses = new ArrayList<ContainerStatus>();
+    statuses.add(status3);
+    scheduler.onContainersCompleted(statuses);
+    Assert.assertTrue(scheduler.heldContainers.isEmpty());
+    verify(mockApp, never()).
+                      containerCompleted(any(), (ContainerStatus) any());
+    verify(mockApp, times(1)).taskAllocated(any(), any(), (Container) any());
+  }
+  
 }
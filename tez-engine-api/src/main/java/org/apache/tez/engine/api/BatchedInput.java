@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.engine.api;
+
+import java.io.IOException;
+
+/**
+ * An {@link Input} which can also hand out its key/value pairs a
+ * {@link RecordBatch} at a time, for consumers with no per-record work to do
+ * in between. Each pair of a batch has a single value: keys with several
+ * values appear once per value.
+ * 
+ * A consumer should use either the batches or the per-record methods of the
+ * <code>Input</code>, not both.
+ */
+public interface BatchedInput extends Input {
+
+  /**
+   * Clear the batch and fill it with up to {@link RecordBatch#capacity()}
+   * key/value pairs. The key and value objects may be reused by the next
+   * call.
+   * 
+   * @param batch the batch to fill
+   * @return false if there are no more key/value pairs, in which case the
+   *         batch is empty
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public boolean readBatch(RecordBatch batch)
+      throws IOException, InterruptedException;
+
+}
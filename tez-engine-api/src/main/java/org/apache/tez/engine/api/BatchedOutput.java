@@ -0,0 +1,40 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.engine.api;
+
+import java.io.IOException;
+
+/**
+ * An {@link Output} which can also take its key/value pairs a
+ * {@link RecordBatch} at a time, doing its per-write bookkeeping once per
+ * batch.
+ */
+public interface BatchedOutput extends Output {
+
+  /**
+   * Writes all the key/value pairs of a batch, in order. The batch can be
+   * reused once this returns.
+   * 
+   * @param batch the key/value pairs to write
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public void writeBatch(RecordBatch batch)
+      throws IOException, InterruptedException;
+
+}
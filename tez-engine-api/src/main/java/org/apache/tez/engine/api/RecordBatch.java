@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.engine.api;
+
+/**
+ * A reusable batch of key/value pairs passed to and from
+ * {@link BatchedInput}s and {@link BatchedOutput}s.
+ * 
+ * Clearing a batch keeps its key and value objects, so that an
+ * <code>Input</code> can read the next pairs into them instead of creating
+ * new ones.
+ */
+public class RecordBatch {
+
+  private final Object[] keys;
+  private final Object[] values;
+  private int size;
+
+  public RecordBatch(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Invalid batch capacity: "
+          + capacity);
+    }
+    this.keys = new Object[capacity];
+    this.values = new Object[capacity];
+  }
+
+  public int capacity() {
+    return keys.length;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean isFull() {
+    return size == keys.length;
+  }
+
+  public Object getKey(int i) {
+    checkIndex(i);
+    return keys[i];
+  }
+
+  public Object getValue(int i) {
+    checkIndex(i);
+    return values[i];
+  }
+
+  /**
+   * Append a key/value pair to the batch.
+   */
+  public void add(Object key, Object value) {
+    if (isFull()) {
+      throw new IllegalStateException("Batch is full: " + size);
+    }
+    keys[size] = key;
+    values[size] = value;
+    ++size;
+  }
+
+  /**
+   * @return the key object the next {@link #add(Object, Object)} replaces,
+   *         left by an earlier use of the batch, or null.
+   */
+  public Object getReusableKey() {
+    return isFull() ? null : keys[size];
+  }
+
+  /**
+   * @return the value object the next {@link #add(Object, Object)} replaces,
+   *         left by an earlier use of the batch, or null.
+   */
+  public Object getReusableValue() {
+    return isFull() ? null : values[size];
+  }
+
+  /**
+   * Empty the batch, keeping the key and value objects for reuse.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  private void checkIndex(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", size: " + size);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.records;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.ObjectWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.tez.common.TezTaskStatus;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+
+/**
+ * Everything a running task has to tell or ask the AM in one round trip: an
+ * optional status update, and whether it wants new dependency completion
+ * events, permission to proceed to completion or permission to commit.
+ */
+public class TezHeartbeatRequest implements Writable {
+
+  private TezTaskAttemptID taskAttemptId;
+  private TezTaskStatus status;
+  private int fromEventIdx = -1;
+  private int maxEvents;
+  private boolean askProceedToCompletion;
+  private boolean askCanCommit;
+
+  public TezHeartbeatRequest() {
+  }
+
+  public TezHeartbeatRequest(TezTaskAttemptID taskAttemptId) {
+    this.taskAttemptId = taskAttemptId;
+  }
+
+  public TezTaskAttemptID getTaskAttemptId() {
+    return taskAttemptId;
+  }
+
+  /**
+   * @return the status update, or null if the task has made no progress
+   *         since the last heartbeat.
+   */
+  public TezTaskStatus getStatus() {
+    return status;
+  }
+
+  public void setStatus(TezTaskStatus status) {
+    this.status = status;
+  }
+
+  /**
+   * @return the index of the first event wanted, or -1 if no events are
+   *         wanted.
+   */
+  public int getFromEventIdx() {
+    return fromEventIdx;
+  }
+
+  public int getMaxEvents() {
+    return maxEvents;
+  }
+
+  public void setEventRange(int fromEventIdx, int maxEvents) {
+    this.fromEventIdx = fromEventIdx;
+    this.maxEvents = maxEvents;
+  }
+
+  public boolean askProceedToCompletion() {
+    return askProceedToCompletion;
+  }
+
+  public void setAskProceedToCompletion(boolean askProceedToCompletion) {
+    this.askProceedToCompletion = askProceedToCompletion;
+  }
+
+  public boolean askCanCommit() {
+    return askCanCommit;
+  }
+
+  public void setAskCanCommit(boolean askCanCommit) {
+    this.askCanCommit = askCanCommit;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    taskAttemptId.write(out);
+    out.writeBoolean(status != null);
+    if (status != null) {
+      // the status is an interface, the implementation goes with it
+      ObjectWritable.writeObject(out, status, TezTaskStatus.class, null);
+    }
+    out.writeInt(fromEventIdx);
+    out.writeInt(maxEvents);
+    out.writeBoolean(askProceedToCompletion);
+    out.writeBoolean(askCanCommit);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    taskAttemptId = TezTaskAttemptID.read(in);
+    if (in.readBoolean()) {
+      status = (TezTaskStatus) ObjectWritable.readObject(in, null);
+    } else {
+      status = null;
+    }
+    fromEventIdx = in.readInt();
+    maxEvents = in.readInt();
+    askProceedToCompletion = in.readBoolean();
+    askCanCommit = in.readBoolean();
+  }
+
+  @Override
+  public String toString() {
+    return "attemptId: " + taskAttemptId + ", hasStatus: " + (status != null)
+        + ", fromEventIdx: " + fromEventIdx + ", maxEvents: " + maxEvents
+        + ", askProceedToCompletion: " + askProceedToCompletion
+        + ", askCanCommit: " + askCanCommit;
+  }
+}
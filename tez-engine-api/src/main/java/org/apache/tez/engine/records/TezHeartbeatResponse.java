@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.records;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.tez.common.records.ProceedToCompletionResponse;
+
+/**
+ * The answer to a {@link TezHeartbeatRequest}. Only the parts which were
+ * asked for are set.
+ */
+public class TezHeartbeatResponse implements Writable {
+
+  private boolean shouldDie;
+  private TezTaskDependencyCompletionEventsUpdate eventsUpdate;
+  private ProceedToCompletionResponse proceedToCompletion;
+  private boolean canCommit;
+
+  public TezHeartbeatResponse() {
+  }
+
+  /**
+   * Indicates that the AM does not know about the attempt anymore, or has
+   * killed or failed it, so the task should exit.
+   */
+  public boolean shouldDie() {
+    return shouldDie;
+  }
+
+  public void setShouldDie(boolean shouldDie) {
+    this.shouldDie = shouldDie;
+  }
+
+  /**
+   * @return the events, or null if no events were asked for.
+   */
+  public TezTaskDependencyCompletionEventsUpdate getEventsUpdate() {
+    return eventsUpdate;
+  }
+
+  public void setEventsUpdate(
+      TezTaskDependencyCompletionEventsUpdate eventsUpdate) {
+    this.eventsUpdate = eventsUpdate;
+  }
+
+  /**
+   * @return the answer, or null if it was not asked for.
+   */
+  public ProceedToCompletionResponse getProceedToCompletion() {
+    return proceedToCompletion;
+  }
+
+  public void setProceedToCompletion(
+      ProceedToCompletionResponse proceedToCompletion) {
+    this.proceedToCompletion = proceedToCompletion;
+  }
+
+  /**
+   * Valid only if permission to commit was asked for.
+   */
+  public boolean canCommit() {
+    return canCommit;
+  }
+
+  public void setCanCommit(boolean canCommit) {
+    this.canCommit = canCommit;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeBoolean(shouldDie);
+    out.writeBoolean(eventsUpdate != null);
+    if (eventsUpdate != null) {
+      eventsUpdate.write(out);
+    }
+    out.writeBoolean(proceedToCompletion != null);
+    if (proceedToCompletion != null) {
+      proceedToCompletion.write(out);
+    }
+    out.writeBoolean(canCommit);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    shouldDie = in.readBoolean();
+    eventsUpdate = null;
+    if (in.readBoolean()) {
+      eventsUpdate = new TezTaskDependencyCompletionEventsUpdate();
+      eventsUpdate.readFields(in);
+    }
+    proceedToCompletion = null;
+    if (in.readBoolean()) {
+      proceedToCompletion = new ProceedToCompletionResponse();
+      proceedToCompletion.readFields(in);
+    }
+    canCommit = in.readBoolean();
+  }
+
+  @Override
+  public String toString() {
+    return "shouldDie: " + shouldDie + ", events: "
+        + (eventsUpdate == null ? "none"
+            : eventsUpdate.getDependentTaskCompletionEvents().length)
+        + ", proceedToCompletion: " + proceedToCompletion
+        + ", canCommit: " + canCommit;
+  }
+}
@@ -33,6 +33,8 @@ public class TezEngineTaskContext extends TezTaskContext {
   private List<InputSpec> inputSpecList;
   private List<OutputSpec> outputSpecList;
   private String processorName;
+  // the serialized input split of the task, if computed by the AM
+  private byte[] splitPayload;
   
   public TezEngineTaskContext() {
     super();
@@ -71,6 +73,18 @@ public class TezEngineTaskContext extends TezTaskContext {
   public List<OutputSpec> getOutputSpecList() {
     return this.outputSpecList;
   }
+
+  /**
+   * @return the input split of the task as computed by the AM, or null if
+   *         the task reads its split from the split files.
+   */
+  public byte[] getSplitPayload() {
+    return splitPayload;
+  }
+
+  public void setSplitPayload(byte[] splitPayload) {
+    this.splitPayload = splitPayload;
+  }
   
   @Override
   public void write(DataOutput out) throws IOException {
@@ -84,6 +98,12 @@ public class TezEngineTaskContext extends TezTaskContext {
     for (OutputSpec outputSpec : outputSpecList) {
       outputSpec.write(out);
     }
+    if (splitPayload == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(splitPayload.length);
+      out.write(splitPayload);
+    }
   }
   
   @Override
@@ -105,6 +125,13 @@ public class TezEngineTaskContext extends TezTaskContext {
       outputSpec.readFields(in);
       outputSpecList.add(outputSpec);
     }
+    int splitPayloadLength = in.readInt();
+    if (splitPayloadLength < 0) {
+      splitPayload = null;
+    } else {
+      splitPayload = new byte[splitPayloadLength];
+      in.readFully(splitPayload);
+    }
   }
 
   @Override
@@ -112,7 +139,9 @@ public class TezEngineTaskContext extends TezTaskContext {
     StringBuffer sb = new StringBuffer();
     sb.append("processorName=" + processorName
         + ", inputSpecListSize=" + inputSpecList.size()
-        + ", outputSpecListSize=" + outputSpecList.size());
+        + ", outputSpecListSize=" + outputSpecList.size()
+        + ", splitPayloadSize="
+        + (splitPayload == null ? -1 : splitPayload.length));
     sb.append(", inputSpecList=[");
     for (InputSpec i : inputSpecList) {
       sb.append("{" + i.toString() + "}, ");
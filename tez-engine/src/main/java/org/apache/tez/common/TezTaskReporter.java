@@ -20,6 +20,7 @@ package org.apache.tez.common;
 
 import java.io.IOException;
 
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.ipc.ProtocolSignature;
 import org.apache.hadoop.util.Progressable;
 import org.apache.tez.common.counters.TezCounter;
@@ -48,6 +49,18 @@ public interface TezTaskReporter extends Progressable, Master {
   public void reportFatalError(TezTaskAttemptID taskAttemptId, 
       Throwable exception, String logMsg);
 
+  /**
+   * See {@link TezTaskUmbilicalProtocol#publishKeyFilter}.
+   */
+  public void publishKeyFilter(TezTaskAttemptID taskAttemptId,
+      BytesWritable filter) throws IOException;
+
+  /**
+   * See {@link TezTaskUmbilicalProtocol#getVertexKeyFilter}.
+   */
+  public BytesWritable getVertexKeyFilter(TezTaskAttemptID taskAttemptId,
+      String vertexName) throws IOException;
+
   public final TezTaskReporter NULL = new TezTaskReporter() {
 
     @Override
@@ -99,6 +112,17 @@ public interface TezTaskReporter extends Progressable, Master {
       
     }
 
+    @Override
+    public void publishKeyFilter(TezTaskAttemptID taskAttemptId,
+        BytesWritable filter) {
+    }
+
+    @Override
+    public BytesWritable getVertexKeyFilter(TezTaskAttemptID taskAttemptId,
+        String vertexName) {
+      return null;
+    }
+
     @Override
     public long getProtocolVersion(String protocol, long clientVersion)
         throws IOException {
@@ -22,10 +22,13 @@ import java.io.IOException;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.tez.common.records.ProceedToCompletionResponse;
 import org.apache.tez.dag.records.TezTaskAttemptID;
 import org.apache.tez.engine.api.Master;
 import org.apache.tez.engine.records.OutputContext;
+import org.apache.tez.engine.records.TezHeartbeatRequest;
+import org.apache.tez.engine.records.TezHeartbeatResponse;
 
 /** Protocol that task child process uses to contact its parent process.  The
  * parent is a daemon which which polls the central master for a new map or
@@ -35,7 +38,7 @@ import org.apache.tez.engine.records.OutputContext;
 @InterfaceStability.Stable
 public interface TezTaskUmbilicalProtocol extends Master {
 
-  public static final long versionID = 19L;
+  public static final long versionID = 21L;
 
   ContainerTask getTask(ContainerContext containerContext) throws IOException;
   
@@ -76,4 +79,33 @@ public interface TezTaskUmbilicalProtocol extends Master {
   
   ProceedToCompletionResponse
       proceedToCompletion(TezTaskAttemptID taskAttemptId) throws IOException;
+
+  /**
+   * Combines {@link #statusUpdate(TezTaskAttemptID, TezTaskStatus)} or
+   * {@link #ping(TezTaskAttemptID)},
+   * {@link #getDependentTasksCompletionEvents(int, int, TezTaskAttemptID)},
+   * {@link #proceedToCompletion(TezTaskAttemptID)} and
+   * {@link #canCommit(TezTaskAttemptID)} into a single call, so that a task
+   * needs one round trip per interval for all of them.
+   */
+  TezHeartbeatResponse heartbeat(TezHeartbeatRequest request)
+      throws IOException, InterruptedException;
+
+  /**
+   * Publish a serialized
+   * {@link org.apache.tez.engine.common.semijoin.KeyBloomFilter} over the
+   * keys of the attempt's output. Once the attempt's vertex has succeeded
+   * the filters of its successful attempts are combined into one.
+   */
+  void publishKeyFilter(TezTaskAttemptID taskAttemptId,
+      BytesWritable filter) throws IOException;
+
+  /**
+   * Get the combined key filter of the named vertex.
+   * 
+   * @return the filter, an empty filter if no task of the vertex published
+   *         one, or null if the vertex has not succeeded yet.
+   */
+  BytesWritable getVertexKeyFilter(TezTaskAttemptID taskAttemptId,
+      String vertexName) throws IOException;
 }
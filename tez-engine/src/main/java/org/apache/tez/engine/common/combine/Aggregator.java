@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.engine.common.combine;
+
+/**
+ * An associative aggregation of the values of a key, such as a sum, count,
+ * min or max, which lets a shuffled input fold each fetched output into a
+ * running aggregate as it arrives instead of merging all outputs first.
+ * Configured with {@link org.apache.tez.common.TezJobConfig#TEZ_ENGINE_SHUFFLE_AGGREGATOR_CLASS}.
+ */
+public interface Aggregator<K, V> {
+
+  /**
+   * Fold a value into the aggregate of its key. The first value of a key is
+   * its initial aggregate.
+   * 
+   * @param key the key, not to be modified
+   * @param aggregate the aggregate of the values of the key seen so far,
+   *                  which may be modified and returned
+   * @param value the next value, only valid during the call
+   * @return the new aggregate of the key
+   */
+  V aggregate(K key, V aggregate, V value);
+}
@@ -0,0 +1,343 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.engine.common.combine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.QuickSort;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.engine.common.ConfigUtils;
+import org.apache.tez.engine.common.sort.impl.IFile;
+import org.apache.tez.engine.common.sort.impl.IFile.Reader.KeyState;
+import org.apache.tez.engine.common.sort.impl.TezRawKeyValueIterator;
+
+/**
+ * Keeps a running aggregate per key, in a hash table, of the shuffled
+ * outputs folded into it with an {@link Aggregator}. Once all outputs have
+ * been folded, the aggregates are read with {@link #iterator()}, one record
+ * per key, in no particular order.
+ * 
+ * The memory taken by the table is estimated from the serialized size of
+ * each key and its first value. Folding stops once it goes over a limit, so
+ * that the owner can take the aggregates sorted by key with
+ * {@link #sortedIterator(RawComparator)} to spill them, and then resume.
+ */
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public class HashAggregator {
+
+  /**
+   * Estimated JVM overhead of an entry of the table and of its key and
+   * aggregate objects, on top of their serialized size.
+   */
+  static final int ENTRY_OVERHEAD = 96;
+
+  private final Aggregator aggregator;
+  private final Configuration conf;
+  private final Map<Object, Object> aggregates = new HashMap<Object, Object>();
+  private long memoryUsed = 0;
+
+  private final Deserializer keyDeserializer;
+  private final Deserializer valueDeserializer;
+  private final DataInputBuffer keyIn = new DataInputBuffer();
+  private final DataInputBuffer valueIn = new DataInputBuffer();
+  private final DataInputBuffer rawKey = new DataInputBuffer();
+  private final DataInputBuffer rawValue = new DataInputBuffer();
+  // the key of the last record folded, and its aggregate, across the calls
+  // folding the same output
+  private Object key = null;
+  private Object aggregate = null;
+  // reused until it becomes the initial aggregate of a key
+  private Object value = null;
+  private long numFolded = 0;
+
+  public HashAggregator(Configuration conf) throws IOException {
+    this.conf = conf;
+    Class<? extends Aggregator> aggregatorClass = conf.getClass(
+        TezJobConfig.TEZ_ENGINE_SHUFFLE_AGGREGATOR_CLASS, null,
+        Aggregator.class);
+    this.aggregator = ReflectionUtils.newInstance(aggregatorClass, conf);
+    SerializationFactory factory = new SerializationFactory(conf);
+    keyDeserializer = factory.getDeserializer(
+        ConfigUtils.getIntermediateInputKeyClass(conf));
+    keyDeserializer.open(keyIn);
+    valueDeserializer = factory.getDeserializer(
+        ConfigUtils.getIntermediateInputValueClass(conf));
+    valueDeserializer.open(valueIn);
+  }
+
+  /**
+   * @return true if an {@link Aggregator} is configured.
+   */
+  public static boolean isEnabled(Configuration conf) {
+    return conf.get(TezJobConfig.TEZ_ENGINE_SHUFFLE_AGGREGATOR_CLASS) != null;
+  }
+
+  /**
+   * Fold the records of a shuffled output into the aggregates, until the
+   * output is exhausted, in which case the reader is closed, or until the
+   * aggregates take more than <code>memoryLimit</code> bytes. In the latter
+   * case the reader is left at the next record, for the output to be folded
+   * further by another call.
+   * 
+   * @return true if all the records of the output have been folded
+   */
+  public synchronized boolean fold(IFile.Reader reader, long memoryLimit)
+      throws IOException {
+    boolean done = false;
+    try {
+      while (memoryUsed <= memoryLimit) {
+        KeyState keyState = reader.readRawKey(rawKey);
+        if (keyState == KeyState.NO_KEY) {
+          done = true;
+          break;
+        }
+        int keyLength = rawKey.getLength() - rawKey.getPosition();
+        if (keyState == KeyState.NEW_KEY) {
+          keyIn.reset(rawKey.getData(), rawKey.getPosition(), keyLength);
+          // the key is kept in the table, so it is never reused
+          key = keyDeserializer.deserialize(null);
+          aggregate = aggregates.get(key);
+        }
+        reader.nextRawValue(rawValue);
+        int valueLength = rawValue.getLength() - rawValue.getPosition();
+        valueIn.reset(rawValue.getData(), rawValue.getPosition(),
+            valueLength);
+        value = valueDeserializer.deserialize(value);
+        if (aggregate == null) {
+          aggregate = value;
+          value = null;
+          memoryUsed += keyLength + valueLength + ENTRY_OVERHEAD;
+        } else {
+          aggregate = aggregator.aggregate(key, aggregate, value);
+          if (aggregate == value) {
+            // kept as the aggregate, so the next value may not reuse it
+            value = null;
+          }
+        }
+        aggregates.put(key, aggregate);
+        ++numFolded;
+      }
+    } finally {
+      if (done) {
+        reader.close();
+      }
+    }
+    return done;
+  }
+
+  /**
+   * @return the estimated memory taken by the aggregates.
+   */
+  public synchronized long getMemoryUsed() {
+    return memoryUsed;
+  }
+
+  /**
+   * @return the number of values folded so far.
+   */
+  public synchronized long getNumFolded() {
+    return numFolded;
+  }
+
+  /**
+   * @return the number of keys aggregated so far.
+   */
+  public synchronized int getNumKeys() {
+    return aggregates.size();
+  }
+
+  /**
+   * @return the aggregates, serialized, one per key. No more outputs may be
+   *         folded once the aggregates are read.
+   */
+  public TezRawKeyValueIterator iterator() throws IOException {
+    final Iterator<Map.Entry<Object, Object>> entries;
+    final int numKeys;
+    synchronized (this) {
+      entries = aggregates.entrySet().iterator();
+      numKeys = aggregates.size();
+    }
+    return new AggregatesIterator(numKeys) {
+      @Override
+      protected Map.Entry<Object, Object> nextEntry() throws IOException {
+        if (!entries.hasNext()) {
+          return null;
+        }
+        Map.Entry<Object, Object> entry = entries.next();
+        keyOut.reset();
+        keySerializer.serialize(entry.getKey());
+        key.reset(keyOut.getData(), keyOut.getLength());
+        return entry;
+      }
+
+      @Override
+      public void close() throws IOException {
+        super.close();
+        synchronized (HashAggregator.this) {
+          aggregates.clear();
+          memoryUsed = 0;
+        }
+      }
+    };
+  }
+
+  /**
+   * Take the aggregates folded so far, sorted by key, and empty the table
+   * for more outputs to be folded into.
+   */
+  public TezRawKeyValueIterator sortedIterator(
+      final RawComparator comparator) throws IOException {
+    final List<Map.Entry<Object, Object>> entries;
+    synchronized (this) {
+      entries = new ArrayList<Map.Entry<Object, Object>>(
+          aggregates.entrySet());
+      aggregates.clear();
+      memoryUsed = 0;
+      // the aggregate of the current key is not in the table anymore
+      aggregate = null;
+    }
+
+    // sort the serialized keys
+    final DataOutputBuffer keys = new DataOutputBuffer();
+    final int[] offsets = new int[entries.size() + 1];
+    final int[] order = new int[entries.size()];
+    Serializer keySerializer = new SerializationFactory(conf).getSerializer(
+        ConfigUtils.getIntermediateInputKeyClass(conf));
+    keySerializer.open(keys);
+    for (int i = 0; i < entries.size(); ++i) {
+      keySerializer.serialize(entries.get(i).getKey());
+      offsets[i + 1] = keys.getLength();
+      order[i] = i;
+    }
+    keySerializer.close();
+    new QuickSort().sort(new IndexedSortable() {
+      @Override
+      public int compare(int i, int j) {
+        int ki = order[i];
+        int kj = order[j];
+        return comparator.compare(
+            keys.getData(), offsets[ki], offsets[ki + 1] - offsets[ki],
+            keys.getData(), offsets[kj], offsets[kj + 1] - offsets[kj]);
+      }
+
+      @Override
+      public void swap(int i, int j) {
+        int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+      }
+    }, 0, order.length);
+
+    return new AggregatesIterator(entries.size()) {
+      private int next = 0;
+
+      @Override
+      protected Map.Entry<Object, Object> nextEntry() {
+        if (next == order.length) {
+          return null;
+        }
+        int i = order[next++];
+        key.reset(keys.getData(), offsets[i], offsets[i + 1] - offsets[i]);
+        return entries.get(i);
+      }
+    };
+  }
+
+  /**
+   * Serializes the aggregates of the entries it is given.
+   */
+  private abstract class AggregatesIterator
+      implements TezRawKeyValueIterator {
+    protected final Serializer keySerializer;
+    protected final DataOutputBuffer keyOut = new DataOutputBuffer();
+    protected final DataInputBuffer key = new DataInputBuffer();
+    private final Serializer valueSerializer;
+    private final DataOutputBuffer valueOut = new DataOutputBuffer();
+    private final DataInputBuffer value = new DataInputBuffer();
+    private final Progress progress = new Progress();
+    private final int numKeys;
+    private int numRead = 0;
+
+    AggregatesIterator(int numKeys) throws IOException {
+      this.numKeys = numKeys;
+      SerializationFactory factory = new SerializationFactory(conf);
+      keySerializer = factory.getSerializer(
+          ConfigUtils.getIntermediateInputKeyClass(conf));
+      valueSerializer = factory.getSerializer(
+          ConfigUtils.getIntermediateInputValueClass(conf));
+      keySerializer.open(keyOut);
+      valueSerializer.open(valueOut);
+    }
+
+    /**
+     * @return the next entry, with its key set up, or null at the end
+     */
+    protected abstract Map.Entry<Object, Object> nextEntry()
+        throws IOException;
+
+    @Override
+    public boolean next() throws IOException {
+      Map.Entry<Object, Object> entry = nextEntry();
+      if (entry == null) {
+        progress.complete();
+        return false;
+      }
+      valueOut.reset();
+      valueSerializer.serialize(entry.getValue());
+      value.reset(valueOut.getData(), valueOut.getLength());
+      progress.set((float) ++numRead / numKeys);
+      return true;
+    }
+
+    @Override
+    public DataInputBuffer getKey() throws IOException {
+      return key;
+    }
+
+    @Override
+    public DataInputBuffer getValue() throws IOException {
+      return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+      keySerializer.close();
+      valueSerializer.close();
+    }
+
+    @Override
+    public Progress getProgress() {
+      return progress;
+    }
+  }
+}
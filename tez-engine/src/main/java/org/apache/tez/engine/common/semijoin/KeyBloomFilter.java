@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.common.semijoin;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * A Bloom filter over serialized keys. Keys are given as byte ranges so that
+ * adding and testing do not allocate. Filters built with the same size and
+ * number of hashes by several tasks can be combined with
+ * {@link #or(KeyBloomFilter)}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class KeyBloomFilter implements Writable {
+
+  private int numBits;
+  private int numHashes;
+  private long[] bits;
+
+  public KeyBloomFilter() {
+  }
+
+  public KeyBloomFilter(int numBits, int numHashes) {
+    if (numBits <= 0 || numHashes <= 0) {
+      throw new IllegalArgumentException("Invalid filter: bits=" + numBits
+          + " hashes=" + numHashes);
+    }
+    this.numBits = numBits;
+    this.numHashes = numHashes;
+    this.bits = new long[(numBits + 63) >>> 6];
+  }
+
+  public void add(byte[] key, int offset, int length) {
+    long hash = hash(key, offset, length);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    for (int i = 0; i < numHashes; ++i) {
+      int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+      bits[bit >>> 6] |= 1L << bit;
+    }
+  }
+
+  /**
+   * @return false if the key was definitely not added to the filter
+   */
+  public boolean mightContain(byte[] key, int offset, int length) {
+    long hash = hash(key, offset, length);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    for (int i = 0; i < numHashes; ++i) {
+      int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+      if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Add all keys of <code>other</code> to this filter.
+   */
+  public void or(KeyBloomFilter other) {
+    if (other.numBits != numBits || other.numHashes != numHashes) {
+      throw new IllegalArgumentException("Cannot combine a filter of "
+          + other.numBits + " bits and " + other.numHashes
+          + " hashes with one of " + numBits + " bits and " + numHashes
+          + " hashes");
+    }
+    for (int i = 0; i < bits.length; ++i) {
+      bits[i] |= other.bits[i];
+    }
+  }
+
+  // 64 bit FNV-1a with a final mix, split in two for double hashing
+  private static long hash(byte[] key, int offset, int length) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = offset; i < offset + length; ++i) {
+      h ^= key[i];
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(numBits);
+    out.writeInt(numHashes);
+    for (long word : bits) {
+      out.writeLong(word);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    numBits = in.readInt();
+    numHashes = in.readInt();
+    bits = new long[(numBits + 63) >>> 6];
+    for (int i = 0; i < bits.length; ++i) {
+      bits[i] = in.readLong();
+    }
+  }
+}
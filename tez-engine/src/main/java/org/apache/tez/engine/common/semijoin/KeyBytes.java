@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.common.semijoin;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.tez.engine.common.ConfigUtils;
+
+/**
+ * Serializes intermediate output keys into a reused buffer, so that both
+ * sides of a semi-join see the same bytes for equal keys.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class KeyBytes {
+
+  private final DataOutputBuffer buffer = new DataOutputBuffer();
+  private final Serializer<Object> serializer;
+
+  @SuppressWarnings("unchecked")
+  public KeyBytes(Configuration conf) throws IOException {
+    SerializationFactory serializationFactory = new SerializationFactory(conf);
+    serializer = serializationFactory.getSerializer(
+        (Class<Object>) ConfigUtils.getIntermediateOutputKeyClass(conf));
+    serializer.open(buffer);
+  }
+
+  public void set(Object key) throws IOException {
+    buffer.reset();
+    serializer.serialize(key);
+  }
+
+  public byte[] getData() {
+    return buffer.getData();
+  }
+
+  public int getLength() {
+    return buffer.getLength();
+  }
+}
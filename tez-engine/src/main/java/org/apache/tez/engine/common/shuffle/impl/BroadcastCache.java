@@ -0,0 +1,262 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.engine.common.shuffle.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+
+/**
+ * Node-local copies of the source outputs of a broadcast input, kept under
+ * the local dirs of the application, in a dir per DAG, so that all tasks of
+ * the DAG on the node, in any container, share them. Each entry holds the
+ * shuffle header followed by the output as it is served by the shuffle
+ * handler. The dirs of the earlier DAGs of a session are removed by the
+ * first task of the next DAG which uses the cache.
+ * 
+ * A task which does not find an entry claims it by creating a lock file
+ * holding a token of its own before fetching it, while other tasks wait for
+ * the entry to appear. The claimer writes the output to a file of its own,
+ * renames it into place once complete, and keeps touching the lock until
+ * then. A lock left untouched for longer than
+ * {@link TezJobConfig#TEZ_ENGINE_BROADCAST_CACHE_LOCK_TIMEOUT_MS} is
+ * considered left behind by a failed task and may be taken over. Should two
+ * tasks ever fetch the same output, each writes its own copy and the entry
+ * is replaced atomically.
+ */
+class BroadcastCache {
+
+  private static final Log LOG = LogFactory.getLog(BroadcastCache.class);
+
+  private static final String CACHE_DIR = "broadcast";
+
+  private static final AtomicInteger nextClaimId = new AtomicInteger();
+
+  private final File[] dirs;
+  private final long lockTimeout;
+  private final String claimerPrefix;
+
+  BroadcastCache(Configuration conf, TezTaskAttemptID taskAttemptId) {
+    TezDAGID dagId = taskAttemptId.getTaskID().getVertexID().getDAGId();
+    String[] localDirs = conf.getTrimmedStrings(TezJobConfig.LOCAL_DIRS,
+        TezJobConfig.DEFAULT_LOCAL_DIRS);
+    dirs = new File[localDirs.length];
+    for (int i = 0; i < localDirs.length; ++i) {
+      File cacheDir = new File(localDirs[i], CACHE_DIR);
+      removeEarlierDags(cacheDir, dagId);
+      dirs[i] = new File(cacheDir, dagId.toString());
+    }
+    lockTimeout = 
+        conf.getLong(TezJobConfig.TEZ_ENGINE_BROADCAST_CACHE_LOCK_TIMEOUT_MS,
+            TezJobConfig.DEFAULT_TEZ_ENGINE_BROADCAST_CACHE_LOCK_TIMEOUT_MS);
+    claimerPrefix = taskAttemptId.toString() + "_";
+  }
+
+  // the DAGs of a session run one after the other
+  private static void removeEarlierDags(File cacheDir, TezDAGID dagId) {
+    String[] names = cacheDir.list();
+    if (names == null) {
+      return;
+    }
+    for (String name : names) {
+      TezDAGID other = TezDAGID.fromString(name);
+      if (other != null
+          && other.getApplicationId().equals(dagId.getApplicationId())
+          && other.getId() < dagId.getId()) {
+        LOG.info("Removing broadcast cache of " + other);
+        FileUtil.fullyDelete(new File(cacheDir, name));
+      }
+    }
+  }
+
+  // the same dir for an output in every task
+  private File getFile(TezTaskAttemptID mapId, String suffix) {
+    String name = mapId.toString();
+    File dir = dirs[(name.hashCode() & Integer.MAX_VALUE) % dirs.length];
+    return new File(dir, name + suffix);
+  }
+
+  /**
+   * @return a stream over the cached output, or null if it is not cached
+   */
+  DataInputStream open(TezTaskAttemptID mapId) {
+    try {
+      return new DataInputStream(new BufferedInputStream(
+          new FileInputStream(getFile(mapId, ".out")), 64 * 1024));
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return the claim of the caller, now the one to fetch and cache the
+   *         output, or null if another task holds it
+   */
+  Claim claim(TezTaskAttemptID mapId) throws IOException {
+    File lock = getFile(mapId, ".lock");
+    File dir = lock.getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("Cannot create broadcast cache dir " + dir);
+    }
+    String token = claimerPrefix + nextClaimId.incrementAndGet();
+    if (lock.createNewFile()) {
+      return new Claim(mapId, lock, token);
+    }
+    long age = System.currentTimeMillis() - lock.lastModified();
+    if (age <= lockTimeout) {
+      return null;
+    }
+    // only one task can move the stale lock out of the way
+    File stale = getFile(mapId, ".lock." + token);
+    if (!lock.renameTo(stale)) {
+      return null;
+    }
+    age = System.currentTimeMillis() - stale.lastModified();
+    if (age <= lockTimeout) {
+      // touched or taken over by another task in the meantime
+      stale.renameTo(lock);
+      return null;
+    }
+    stale.delete();
+    if (!lock.createNewFile()) {
+      return null;
+    }
+    LOG.warn("Took over stale lock of " + age + " ms for " + mapId);
+    return new Claim(mapId, lock, token);
+  }
+
+  /**
+   * Remove a cached output which turned out to be unusable.
+   */
+  void discard(TezTaskAttemptID mapId) {
+    getFile(mapId, ".out").delete();
+  }
+
+  /**
+   * The right of a fetcher to fetch an output into the cache, given up by
+   * {@link #commit()} or {@link #release()}.
+   */
+  class Claim {
+    private final TezTaskAttemptID mapId;
+    private final File lock;
+    private final String token;
+    private final File tmp;
+    private long lastTouched;
+
+    private Claim(TezTaskAttemptID mapId, File lock, String token)
+        throws IOException {
+      this.mapId = mapId;
+      this.lock = lock;
+      this.token = token;
+      this.tmp = getFile(mapId, ".tmp." + token);
+      OutputStream out = null;
+      try {
+        out = new FileOutputStream(lock);
+        out.write(token.getBytes("UTF-8"));
+        out.close();
+        out = null;
+      } catch (IOException e) {
+        IOUtils.cleanup(LOG, out);
+        lock.delete();
+        throw e;
+      }
+      lastTouched = System.currentTimeMillis();
+    }
+
+    /**
+     * Create the file the output is written to until it is committed.
+     */
+    OutputStream create() throws IOException {
+      touch();
+      return new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024);
+    }
+
+    /**
+     * Keep the lock from looking stale to the other tasks, while the output
+     * is being fetched.
+     */
+    void touch() {
+      long now = System.currentTimeMillis();
+      if (now - lastTouched < lockTimeout / 4) {
+        return;
+      }
+      lastTouched = now;
+      if (isOwner()) {
+        lock.setLastModified(now);
+      }
+    }
+
+    /**
+     * Make the output written to {@link #create()} visible, and give up the
+     * claim.
+     */
+    void commit() throws IOException {
+      if (!tmp.renameTo(getFile(mapId, ".out"))) {
+        throw new IOException("Failed to rename " + tmp);
+      }
+      release();
+      LOG.info("Cached output of " + mapId);
+    }
+
+    /**
+     * Give up the claim, whether or not the output got committed. The lock
+     * is left alone if another task took it over.
+     */
+    void release() {
+      tmp.delete();
+      if (isOwner()) {
+        lock.delete();
+      }
+    }
+
+    private boolean isOwner() {
+      byte[] data = new byte[token.length() + 1];
+      FileInputStream in = null;
+      try {
+        in = new FileInputStream(lock);
+        int n = 0;
+        int read;
+        while (n < data.length
+            && (read = in.read(data, n, data.length - n)) > 0) {
+          n += read;
+        }
+        return token.equals(new String(data, 0, n, "UTF-8"));
+      } catch (IOException e) {
+        return false;
+      } finally {
+        IOUtils.cleanup(LOG, in);
+      }
+    }
+  }
+}
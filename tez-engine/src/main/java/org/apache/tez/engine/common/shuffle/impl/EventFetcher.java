@@ -22,18 +22,20 @@ import java.net.URI;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.tez.dag.records.TezTaskAttemptID;
 import org.apache.tez.engine.api.Master;
 import org.apache.tez.engine.records.TezDependentTaskCompletionEvent;
 import org.apache.tez.engine.records.TezTaskDependencyCompletionEventsUpdate;
 
-class EventFetcher extends Thread {
+class EventFetcher extends ShuffleWorker {
   private static final long SLEEP_TIME = 1000;
   private static final int MAX_RETRIES = 10;
   private static final int RETRY_PERIOD = 5000;
   private static final Log LOG = LogFactory.getLog(EventFetcher.class);
 
   private final TezTaskAttemptID reduce;
+  private final int partition;
   private final Master umbilical;
   private final ShuffleScheduler scheduler;
   private int fromEventIdx = 0;
@@ -44,14 +46,17 @@ class EventFetcher extends Thread {
 
   private volatile boolean stopped = false;
   
-  public EventFetcher(TezTaskAttemptID reduce,
+  public EventFetcher(Configuration conf,
+                      TezTaskAttemptID reduce,
+                      int partition,
                       Master umbilical,
                       ShuffleScheduler scheduler,
                       ExceptionReporter reporter,
                       int maxEventsToFetch) {
+    super(conf);
     setName("EventFetcher for fetching Map Completion Events");
-    setDaemon(true);    
     this.reduce = reduce;
+    this.partition = partition;
     this.umbilical = umbilical;
     this.scheduler = scheduler;
     exceptionReporter = reporter;
@@ -192,7 +197,7 @@ class EventFetcher extends Thread {
 
     baseUrl.append(jobID);
     baseUrl.append("&reduce=");
-    baseUrl.append(reduce.getTaskID().getId());
+    baseUrl.append(partition);
     baseUrl.append("&map=");
     URI u = URI.create(baseUrl.toString());
     return u;
@@ -17,18 +17,30 @@
  */
 package org.apache.tez.engine.common.shuffle.impl;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.crypto.SecretKey;
@@ -37,33 +49,48 @@ import javax.net.ssl.HttpsURLConnection;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.SecureIOUtils;
 import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.nativeio.NativeIO;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.security.ssl.SSLFactory;
 import org.apache.hadoop.util.Progressable;
 import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.yarn.api.ApplicationConstants.Environment;
+import org.apache.tez.common.Constants;
 import org.apache.tez.common.IDUtils;
 import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezTaskReporter;
+import org.apache.tez.common.counters.TaskPhaseCounter;
 import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.dag.records.TezTaskAttemptID;
 import org.apache.tez.engine.common.ConfigUtils;
 import org.apache.tez.engine.common.security.SecureShuffleUtils;
 import org.apache.tez.engine.common.shuffle.impl.MapOutput.Type;
 import org.apache.tez.engine.common.sort.impl.IFileInputStream;
+import org.apache.tez.engine.common.sort.impl.TezIndexRecord;
+import org.apache.tez.engine.common.sort.impl.TezSpillRecord;
+import org.apache.tez.engine.common.task.local.output.TezTaskOutputFiles;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.LimitInputStream;
 
-class Fetcher extends Thread {
+class Fetcher extends ShuffleWorker {
   
   private static final Log LOG = LogFactory.getLog(Fetcher.class);
   
   /** Basic/unit connection timeout (in milliseconds) */
   private final static int UNIT_CONNECT_TIMEOUT = 60 * 1000;
   
+  /** How often to look for an output another task is caching */
+  private final static int CACHE_WAIT_MILLIS = 1000;
+  
   private final Progressable reporter;
   private static enum ShuffleErrors{IO_ERROR, WRONG_LENGTH, BAD_ID, WRONG_MAP,
                                     CONNECTION, WRONG_REDUCE}
@@ -75,6 +102,8 @@ class Fetcher extends Thread {
   private final TezCounter badIdErrs;
   private final TezCounter wrongMapErrs;
   private final TezCounter wrongReduceErrs;
+  private final TezCounter waitMillis;
+  private final TezCounter copyMillis;
   private final MergeManager merger;
   private final ShuffleScheduler scheduler;
   private final ShuffleClientMetrics metrics;
@@ -82,6 +111,7 @@ class Fetcher extends Thread {
   private final int id;
   private static int nextId = 0;
   private final int reduce;
+  private final BroadcastCache broadcastCache;
   
   private final int connectionTimeout;
   private final int readTimeout;
@@ -95,13 +125,21 @@ class Fetcher extends Thread {
 
   private Configuration job;
 
-  private static boolean sslShuffle;
-  private static SSLFactory sslFactory;
+  private final boolean sslShuffle;
+
+  // for reading outputs of maps which ran on this node from the local dirs
+  private final boolean localRead;
+  private String localHostName;
+  private String localUser;
+  private Configuration localConf;
+  private TezTaskOutputFiles localOutputFiles;
 
   public Fetcher(Configuration job, TezTaskAttemptID reduceId, 
+      int partition, BroadcastCache broadcastCache,
       ShuffleScheduler scheduler, MergeManager merger,
       TezTaskReporter reporter, ShuffleClientMetrics metrics,
       ExceptionReporter exceptionReporter, SecretKey jobTokenSecret) {
+    super(job);
     this.job = job;
     this.reporter = reporter;
     this.scheduler = scheduler;
@@ -109,7 +147,8 @@ class Fetcher extends Thread {
     this.metrics = metrics;
     this.exceptionReporter = exceptionReporter;
     this.id = ++nextId;
-    this.reduce = reduceId.getTaskID().getId();
+    this.reduce = partition;
+    this.broadcastCache = broadcastCache;
     this.jobTokenSecret = jobTokenSecret;
     ioErrs = reporter.getCounter(SHUFFLE_ERR_GRP_NAME,
         ShuffleErrors.IO_ERROR.toString());
@@ -123,6 +162,8 @@ class Fetcher extends Thread {
         ShuffleErrors.CONNECTION.toString());
     wrongReduceErrs = reporter.getCounter(SHUFFLE_ERR_GRP_NAME,
         ShuffleErrors.WRONG_REDUCE.toString());
+    waitMillis = reporter.getCounter(TaskPhaseCounter.SHUFFLE_WAIT_MILLIS);
+    copyMillis = reporter.getCounter(TaskPhaseCounter.SHUFFLE_COPY_MILLIS);
 
     if (ConfigUtils.isIntermediateInputCompressed(job)) {
       Class<? extends CompressionCodec> codecClass =
@@ -142,36 +183,56 @@ class Fetcher extends Thread {
             TezJobConfig.DEFAULT_TEZ_ENGINE_SHUFFLE_READ_TIMEOUT);
 
     setName("fetcher#" + id);
-    setDaemon(true);
 
-    synchronized (Fetcher.class) {
-      sslShuffle = job.getBoolean(TezJobConfig.TEZ_ENGINE_SHUFFLE_ENABLE_SSL,
-          TezJobConfig.DEFAULT_TEZ_ENGINE_SHUFFLE_ENABLE_SSL);
-      if (sslShuffle && sslFactory == null) {
-        sslFactory = new SSLFactory(SSLFactory.Mode.CLIENT, job);
-        try {
-          sslFactory.init();
-        } catch (Exception ex) {
-          sslFactory.destroy();
-          throw new RuntimeException(ex);
+    sslShuffle = job.getBoolean(TezJobConfig.TEZ_ENGINE_SHUFFLE_ENABLE_SSL,
+        TezJobConfig.DEFAULT_TEZ_ENGINE_SHUFFLE_ENABLE_SSL);
+
+    localRead = job.getBoolean(
+        TezJobConfig.TEZ_ENGINE_SHUFFLE_LOCAL_READ_ENABLED,
+        TezJobConfig.DEFAULT_TEZ_ENGINE_SHUFFLE_LOCAL_READ_ENABLED);
+    if (localRead) {
+      localHostName = System.getenv(Environment.NM_HOST.name());
+      try {
+        if (localHostName == null) {
+          localHostName = InetAddress.getLocalHost().getHostName();
+        }
+        localUser = UserGroupInformation.getCurrentUser().getShortUserName();
+        if (UserGroupInformation.isSecurityEnabled()
+            && !NativeIO.isAvailable()) {
+          throw new IOException("Native IO is needed to check the owners "
+              + "of local outputs");
         }
+      } catch (IOException e) {
+        LOG.warn("Cannot read outputs from the local dirs, fetching all "
+            + "of them over HTTP", e);
+        localHostName = null;
       }
+      // the attempt id in it is set for each output read
+      localConf = new Configuration(job);
+      localOutputFiles = new TezTaskOutputFiles();
+      localOutputFiles.setConf(localConf);
     }
   }
+
   public void run() {
     try {
       while (!stopped && !Thread.currentThread().isInterrupted()) {
         MapHost host = null;
         try {
+          long waitStart = System.currentTimeMillis();
           // If merge is on, block
           merger.waitForInMemoryMerge();
 
           // Get a host to shuffle from
           host = scheduler.getHost();
           metrics.threadBusy();
+          long copyStart = System.currentTimeMillis();
+          // summed over all fetchers, so may exceed the shuffle wall time
+          waitMillis.increment(copyStart - waitStart);
 
           // Shuffle
           copyFromHost(host);
+          copyMillis.increment(System.currentTimeMillis() - copyStart);
         } finally {
           if (host != null) {
             scheduler.freeHost(host);
@@ -189,13 +250,15 @@ class Fetcher extends Thread {
   public void shutDown() throws InterruptedException {
     this.stopped = true;
     interrupt();
+    boolean stoppedRunning = false;
     try {
-      join(5000);
+      stoppedRunning = join(5000);
     } catch (InterruptedException ie) {
       LOG.warn("Got interrupt while joining " + getName(), ie);
     }
-    if (sslFactory != null) {
-      sslFactory.destroy();
+    // the next task in this container takes it from the pool
+    if (stoppedRunning && decompressor != null) {
+      CodecPool.returnDecompressor(decompressor);
     }
   }
 
@@ -203,6 +266,7 @@ class Fetcher extends Thread {
   protected HttpURLConnection openConnection(URL url) throws IOException {
     HttpURLConnection conn = (HttpURLConnection) url.openConnection();
     if (sslShuffle) {
+      SSLFactory sslFactory = ShuffleClientService.getSSLFactory(job);
       HttpsURLConnection httpsConn = (HttpsURLConnection) conn;
       try {
         httpsConn.setSSLSocketFactory(sslFactory.createSSLSocketFactory());
@@ -225,6 +289,31 @@ class Fetcher extends Thread {
     // Get completed maps on 'host'
     List<TezTaskAttemptID> maps = scheduler.getMapsForHost(host);
     
+    if (localRead && isLocalHost(host)) {
+      copyFromLocalDisk(host, maps);
+    }
+
+    if (broadcastCache == null) {
+      copyFromHost(host, maps, null);
+      return;
+    }
+
+    // maps this task is going to fetch into the node-local cache
+    Map<TezTaskAttemptID, BroadcastCache.Claim> claimed =
+        copyFromCache(host, maps);
+    try {
+      copyFromHost(host, maps, claimed);
+    } finally {
+      // let other tasks on the node fetch whatever was not cached
+      for (BroadcastCache.Claim claim : claimed.values()) {
+        claim.release();
+      }
+    }
+  }
+
+  private void copyFromHost(MapHost host, List<TezTaskAttemptID> maps,
+      Map<TezTaskAttemptID, BroadcastCache.Claim> toCache)
+      throws IOException {
     // Sanity check to catch hosts with only 'OBSOLETE' maps, 
     // especially at the tail of large jobs
     if (maps.size() == 0) {
@@ -311,7 +400,8 @@ class Fetcher extends Thread {
       // yet_to_be_fetched list and marking the failed tasks.
       TezTaskAttemptID[] failedTasks = null;
       while (!remaining.isEmpty() && failedTasks == null) {
-        failedTasks = copyMapOutput(host, input, remaining);
+        failedTasks = copyMapOutput(host, input, remaining, toCache,
+            false);
       }
       
       if(failedTasks != null && failedTasks.length > 0) {
@@ -335,22 +425,187 @@ class Fetcher extends Thread {
     }
   }
   
+  /**
+   * Take the outputs which another task on this node already fetched from the
+   * node-local cache, and remove them from <code>maps</code>. Outputs which
+   * another task is fetching right now are waited for, the rest are left in
+   * <code>maps</code> to be fetched and cached by this task.
+   * 
+   * @return the maps this task claimed to fetch into the cache
+   */
+  private Map<TezTaskAttemptID, BroadcastCache.Claim> copyFromCache(
+      MapHost host, List<TezTaskAttemptID> maps) throws IOException {
+    Map<TezTaskAttemptID, BroadcastCache.Claim> claimed =
+        new HashMap<TezTaskAttemptID, BroadcastCache.Claim>();
+    Iterator<TezTaskAttemptID> iter = maps.iterator();
+    while (iter.hasNext()) {
+      TezTaskAttemptID mapId = iter.next();
+      DataInputStream cached;
+      while ((cached = broadcastCache.open(mapId)) == null) {
+        BroadcastCache.Claim claim = broadcastCache.claim(mapId);
+        if (claim != null) {
+          claimed.put(mapId, claim);
+          break;
+        }
+        // another task on this node is fetching it
+        reporter.progress();
+        try {
+          Thread.sleep(CACHE_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted waiting for "
+              + mapId + " to be cached");
+        }
+      }
+      if (cached == null) {
+        continue;
+      }
+      Set<TezTaskAttemptID> single = new HashSet<TezTaskAttemptID>(1);
+      single.add(mapId);
+      TezTaskAttemptID[] failed;
+      try {
+        failed = copyMapOutput(host, cached, single, null, false);
+      } finally {
+        IOUtils.cleanup(LOG, cached);
+      }
+      if (failed == null) {
+        iter.remove();
+      } else if (failed.length == 0) {
+        // the merger asked to wait, try again later
+        iter.remove();
+        scheduler.putBackKnownMapOutput(host, mapId);
+      } else {
+        LOG.warn("Bad cached output of " + mapId + ", fetching it again");
+        broadcastCache.discard(mapId);
+        BroadcastCache.Claim claim = broadcastCache.claim(mapId);
+        if (claim != null) {
+          claimed.put(mapId, claim);
+        }
+      }
+    }
+    return claimed;
+  }
+
+  private boolean isLocalHost(MapHost host) {
+    if (localHostName == null) {
+      return false;
+    }
+    String hostName = host.getHostName();
+    int colon = hostName.indexOf(':');
+    if (colon >= 0) {
+      hostName = hostName.substring(0, colon);
+    }
+    return localHostName.equalsIgnoreCase(hostName);
+  }
+
+  /**
+   * Read the outputs of maps which ran on this node straight from the
+   * application's local dirs, and remove them from <code>maps</code>. Outputs
+   * which are not on disk there, like those of in-memory sorters, or which
+   * cannot be read are left in <code>maps</code> to be fetched over HTTP.
+   */
+  private void copyFromLocalDisk(MapHost host, List<TezTaskAttemptID> maps)
+      throws IOException {
+    Iterator<TezTaskAttemptID> iter = maps.iterator();
+    while (iter.hasNext()) {
+      TezTaskAttemptID mapId = iter.next();
+      DataInputStream local = openLocalMapOutput(mapId);
+      if (local == null) {
+        continue;
+      }
+      Set<TezTaskAttemptID> single = new HashSet<TezTaskAttemptID>(1);
+      single.add(mapId);
+      TezTaskAttemptID[] failed;
+      try {
+        failed = copyMapOutput(host, local, single, null, true);
+      } finally {
+        IOUtils.cleanup(LOG, local);
+      }
+      if (failed == null) {
+        iter.remove();
+      } else if (failed.length == 0) {
+        // the merger asked to wait, try again later
+        iter.remove();
+        scheduler.putBackKnownMapOutput(host, mapId);
+      } else {
+        LOG.info("Bad local output of " + mapId + ", fetching it over HTTP");
+      }
+    }
+  }
+
+  /**
+   * Open the partition of this reduce in the on-disk output of
+   * <code>mapId</code>, preceded by the same header the shuffle server would
+   * send. Only the local dirs of this application are looked at, and the
+   * owners of the index and the data file are checked like the shuffle
+   * server checks them, so nothing is read which the shuffle server would
+   * not have served to this task.
+   * 
+   * @return the stream, or null if the output cannot be read locally
+   */
+  private DataInputStream openLocalMapOutput(TezTaskAttemptID mapId) {
+    localConf.set(Constants.TEZ_ENGINE_TASK_ATTEMPT_ID, mapId.toString());
+    FileInputStream in = null;
+    try {
+      Path indexFile = localOutputFiles.getOutputIndexFile();
+      Path dataFile = localOutputFiles.getOutputFile();
+      in = openLocalFile(new File(indexFile.toUri().getRawPath()), localUser);
+      TezIndexRecord info = new TezSpillRecord(in, in.getChannel().size(),
+          indexFile).getIndex(reduce);
+      ShuffleHeader header = new ShuffleHeader(mapId.toString(),
+          info.getPartLength(), info.getRawLength(), reduce);
+      DataOutputBuffer dob = new DataOutputBuffer();
+      header.write(dob);
+      in = openLocalFile(new File(dataFile.toUri().getRawPath()), localUser);
+      in.getChannel().position(info.getStartOffset());
+      return new DataInputStream(new SequenceInputStream(
+          new ByteArrayInputStream(dob.getData(), 0, dob.getLength()),
+          new LimitInputStream(new BufferedInputStream(in),
+              info.getPartLength())));
+    } catch (IOException e) {
+      IOUtils.cleanup(LOG, in);
+      // outputs kept in memory or owned by another user are expected
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Cannot read local output of " + mapId
+            + ", fetching it over HTTP", e);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Open a local output file, failing unless it is owned by
+   * <code>owner</code>. As for the shuffle server, the owner is checked on
+   * the opened file with native IO when security is enabled, and not at all
+   * otherwise, when all the tasks run as the same user.
+   */
+  @VisibleForTesting
+  protected FileInputStream openLocalFile(File file, String owner)
+      throws IOException {
+    return SecureIOUtils.openForRead(file, owner, null);
+  }
+
   private static TezTaskAttemptID[] EMPTY_ATTEMPT_ID_ARRAY = new TezTaskAttemptID[0];
   
+  /**
+   * @param local whether <code>input</code> is read from the local dirs.
+   *          Failing to read it then is not a fetch error, as the output is
+   *          fetched over HTTP next.
+   */
   private TezTaskAttemptID[] copyMapOutput(MapHost host,
-                                DataInputStream input,
-                                Set<TezTaskAttemptID> remaining) {
+      DataInputStream input, Set<TezTaskAttemptID> remaining,
+      Map<TezTaskAttemptID, BroadcastCache.Claim> toCache, boolean local) {
     MapOutput mapOutput = null;
     TezTaskAttemptID mapId = null;
     long decompressedLength = -1;
     long compressedLength = -1;
+    CachingInputStream caching = null;
     
     try {
       long startTime = System.currentTimeMillis();
       int forReduce = -1;
       //Read the shuffle header
+      ShuffleHeader header = new ShuffleHeader();
       try {
-        ShuffleHeader header = new ShuffleHeader();
         header.readFields(input);
         mapId = IDUtils.toTaskAttemptId(header.mapId);
         compressedLength = header.compressedLength;
@@ -390,11 +645,21 @@ class Fetcher extends Thread {
                mapOutput.getMapId() + " decomp: " +
                decompressedLength + " len: " + compressedLength + " to " +
                mapOutput.getType());
+      InputStream dataIn = input;
+      if (toCache != null && toCache.containsKey(mapId)) {
+        caching = new CachingInputStream(input, mapId, toCache.get(mapId),
+            header);
+        dataIn = caching;
+      }
       if (mapOutput.getType() == Type.MEMORY) {
-        shuffleToMemory(host, mapOutput, input, 
+        shuffleToMemory(host, mapOutput, dataIn, 
                         (int) decompressedLength, (int) compressedLength);
       } else {
-        shuffleToDisk(host, mapOutput, input, compressedLength);
+        shuffleToDisk(host, mapOutput, dataIn, compressedLength);
+      }
+      if (caching != null) {
+        caching.finish();
+        caching = null;
       }
       
       // Inform the shuffle scheduler
@@ -406,7 +671,12 @@ class Fetcher extends Thread {
       metrics.successFetch();
       return null;
     } catch (IOException ioe) {
-      ioErrs.increment(1);
+      if (caching != null) {
+        caching.stopCaching();
+      }
+      if (!local) {
+        ioErrs.increment(1);
+      }
       if (mapId == null || mapOutput == null) {
         LOG.info("fetcher#" + id + " failed to read map header" + 
                  mapId + " decomp: " + 
@@ -423,7 +693,9 @@ class Fetcher extends Thread {
 
       // Inform the shuffle-scheduler
       mapOutput.abort();
-      metrics.failedFetch();
+      if (!local) {
+        metrics.failedFetch();
+      }
       return new TezTaskAttemptID[] {mapId};
     }
 
@@ -613,4 +885,104 @@ class Fetcher extends Thread {
       );
     }
   }
+
+  /**
+   * Passes the data of one map output through and writes a copy of it,
+   * preceded by its shuffle header, to the node-local cache. A failure to
+   * write the copy does not fail the fetch.
+   */
+  private class CachingInputStream extends FilterInputStream {
+    private final TezTaskAttemptID mapId;
+    private final BroadcastCache.Claim claim;
+    private final long length;
+    private OutputStream cacheOut;
+    private long copied = 0;
+
+    CachingInputStream(InputStream in, TezTaskAttemptID mapId,
+        BroadcastCache.Claim claim, ShuffleHeader header) {
+      super(in);
+      this.mapId = mapId;
+      this.claim = claim;
+      this.length = header.compressedLength;
+      try {
+        cacheOut = claim.create();
+        DataOutputStream headerOut = new DataOutputStream(cacheOut);
+        header.write(headerOut);
+        headerOut.flush();
+      } catch (IOException ioe) {
+        LOG.warn("Not caching output of " + mapId, ioe);
+        stopCaching();
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b >= 0 && cacheOut != null && copied < length) {
+        try {
+          cacheOut.write(b);
+          ++copied;
+          claim.touch();
+        } catch (IOException ioe) {
+          LOG.warn("Failed caching output of " + mapId, ioe);
+          stopCaching();
+        }
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      if (n > 0 && cacheOut != null) {
+        int toCopy = (int) Math.min(n, length - copied);
+        try {
+          cacheOut.write(b, off, toCopy);
+          copied += toCopy;
+          claim.touch();
+        } catch (IOException ioe) {
+          LOG.warn("Failed caching output of " + mapId, ioe);
+          stopCaching();
+        }
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // skipped bytes are not in the copy
+      stopCaching();
+      return in.skip(n);
+    }
+
+    @Override
+    public void close() throws IOException {
+      stopCaching();
+      in.close();
+    }
+
+    void stopCaching() {
+      IOUtils.cleanup(LOG, cacheOut);
+      cacheOut = null;
+    }
+
+    /**
+     * Publish the copy to the other tasks, if all of the output went through.
+     */
+    void finish() {
+      if (cacheOut == null) {
+        return;
+      }
+      try {
+        cacheOut.close();
+        cacheOut = null;
+        if (copied == length) {
+          claim.commit();
+        }
+      } catch (IOException ioe) {
+        LOG.warn("Failed caching output of " + mapId, ioe);
+        stopCaching();
+      }
+    }
+  }
 }
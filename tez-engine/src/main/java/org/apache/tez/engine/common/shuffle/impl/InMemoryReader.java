@@ -41,7 +41,10 @@ public class InMemoryReader extends Reader {
   DataInputBuffer memDataIn = new DataInputBuffer();
   private int start;
   private int length;
+  private byte[] prevKeyData;
   private int prevKeyPos;
+  // front-coded keys are not contiguous in the data and are rebuilt here
+  private byte[] keyCopy = new byte[0];
 
   public InMemoryReader(MergeManager merger, TezTaskAttemptID taskAttemptId,
                         byte[] data, int start, int length)
@@ -99,11 +102,15 @@ public class InMemoryReader extends Reader {
       int pos = memDataIn.getPosition();
       byte[] data = memDataIn.getData();      
       if(currentKeyLength == IFile.RLE_MARKER) {
-        key.reset(data, prevKeyPos, prevKeyLength);
+        key.reset(prevKeyData, prevKeyPos, prevKeyLength);
         currentKeyLength = prevKeyLength;
         return KeyState.SAME_KEY;
       }      
+      if (currentKeyLength == IFile.PREFIX_MARKER) {
+        return readPrefixedKey(key);
+      }
       key.reset(data, pos, currentKeyLength);
+      prevKeyData = data;
       prevKeyPos = pos;
       // Position for the next value
       long skipped = memDataIn.skip(currentKeyLength);
@@ -122,6 +129,31 @@ public class InMemoryReader extends Reader {
     }
   }
   
+  private KeyState readPrefixedKey(DataInputBuffer key) throws IOException {
+    int shared = readPrefixHeader(memDataIn);
+    int suffixLength = currentKeyLength - shared;
+    if (keyCopy.length < currentKeyLength) {
+      byte[] newCopy = new byte[currentKeyLength << 1];
+      System.arraycopy(prevKeyData, prevKeyPos, newCopy, 0, shared);
+      keyCopy = newCopy;
+    } else if (prevKeyData != keyCopy) {
+      System.arraycopy(prevKeyData, prevKeyPos, keyCopy, 0, shared);
+    } // else the prefix is already in place
+    System.arraycopy(memDataIn.getData(), memDataIn.getPosition(), 
+                     keyCopy, shared, suffixLength);
+    long skipped = memDataIn.skip(suffixLength);
+    if (skipped != suffixLength) {
+      throw new IOException("Rec# " + recNo + 
+          ": Failed to skip past key suffix of length: " + suffixLength);
+    }
+    key.reset(keyCopy, 0, currentKeyLength);
+    prevKeyData = keyCopy;
+    prevKeyPos = 0;
+
+    bytesRead += suffixLength;
+    return KeyState.NEW_KEY;
+  }
+
   public void nextRawValue(DataInputBuffer value) throws IOException {
     try {
       int pos = memDataIn.getPosition();
@@ -44,6 +44,7 @@ import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.tez.common.Constants;
 import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezTaskReporter;
+import org.apache.tez.common.counters.TaskPhaseCounter;
 import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.dag.records.TezTaskAttemptID;
 import org.apache.tez.dag.records.TezTaskID;
@@ -53,7 +54,9 @@ import org.apache.tez.engine.api.Processor;
 import org.apache.tez.engine.common.ConfigUtils;
 import org.apache.tez.engine.common.combine.CombineInput;
 import org.apache.tez.engine.common.combine.CombineOutput;
+import org.apache.tez.engine.common.combine.HashAggregator;
 import org.apache.tez.engine.common.sort.impl.IFile;
+import org.apache.tez.engine.common.sort.impl.PrefetchingInputStream;
 import org.apache.tez.engine.common.sort.impl.TezMerger;
 import org.apache.tez.engine.common.sort.impl.TezRawKeyValueIterator;
 import org.apache.tez.engine.common.sort.impl.IFile.Writer;
@@ -66,6 +69,8 @@ import org.apache.tez.engine.common.task.local.output.TezTaskOutputFiles;
 public class MergeManager {
   
   private static final Log LOG = LogFactory.getLog(MergeManager.class);
+
+  private static final String AGGREGATES_SUFFIX = ".aggregates";
   
   private final TezTaskAttemptID taskAttemptId;
   
@@ -105,11 +110,24 @@ public class MergeManager {
    */
   private final Processor combineProcessor;
 
+  /**
+   * Running aggregates the fetched outputs are folded into instead of being
+   * merged, if an aggregator is configured. Their memory is part of
+   * usedMemory. Once it runs out they are spilled to a sorted file, and the
+   * outputs fetched after that are merged as usual, along with the spills.
+   */
+  private final HashAggregator aggregator;
+  private long aggregatesMemory = 0;
+  private volatile boolean aggregatesSpilled = false;
+  private int numAggregateSpills = 0;
+
   private final TezCounter spilledRecordsCounter;
 
   private final TezCounter reduceCombineInputCounter;
 
   private final TezCounter mergedMapOutputsCounter;
+
+  private final TezCounter mergeMillisCounter;
   
   private final CompressionCodec codec;
   
@@ -125,7 +143,7 @@ public class MergeManager {
                       TezCounter reduceCombineInputCounter,
                       TezCounter mergedMapOutputsCounter,
                       ExceptionReporter exceptionReporter,
-                      Progress mergePhase) {
+                      Progress mergePhase) throws IOException {
     this.taskAttemptId = taskAttemptId;
     this.conf = conf;
     this.localDirAllocator = localDirAllocator;
@@ -133,9 +151,13 @@ public class MergeManager {
     
     this.reporter = reporter;
     this.combineProcessor = combineProcessor;
+    this.aggregator = 
+        HashAggregator.isEnabled(conf) ? new HashAggregator(conf) : null;
     this.reduceCombineInputCounter = reduceCombineInputCounter;
     this.spilledRecordsCounter = spilledRecordsCounter;
     this.mergedMapOutputsCounter = mergedMapOutputsCounter;
+    this.mergeMillisCounter =
+        reporter.getCounter(TaskPhaseCounter.SHUFFLE_MERGE_MILLIS);
     this.mapOutputFile = new TezTaskOutputFiles();
     this.mapOutputFile.setConf(conf);
     
@@ -161,10 +183,16 @@ public class MergeManager {
     }
 
     // Allow unit tests to fix Runtime memory
+    // The prefetch buffers of the on-disk merges come out of the same memory
     this.memoryLimit = 
       (long)(conf.getLong(Constants.TEZ_ENGINE_TASK_MEMORY,
           Math.min(Runtime.getRuntime().maxMemory(), Integer.MAX_VALUE))
-        * maxInMemCopyUse);
+        * maxInMemCopyUse) - PrefetchingInputStream.getMemoryLimit(conf);
+    if (memoryLimit <= 0) {
+      throw new IllegalArgumentException("Invalid value for "
+          + TezJobConfig.TEZ_ENGINE_MERGE_PREFETCH_MEMORY_BYTES
+          + ": prefetch buffers do not fit into the shuffle memory");
+    }
  
     this.ioSortFactor = 
         conf.getInt(
@@ -301,7 +329,92 @@ public class MergeManager {
     usedMemory -= size;
   }
 
-  public synchronized void closeInMemoryFile(MapOutput mapOutput) { 
+  public void closeInMemoryFile(MapOutput mapOutput) throws IOException {
+    if (aggregator != null && !aggregatesSpilled) {
+      synchronized (this) {
+        commitMemory += mapOutput.getSize();
+      }
+      byte[] data = mapOutput.getMemory();
+      // the reader gives the memory back once the output is folded
+      fold(new InMemoryReader(this, mapOutput.getMapId(), 
+                              data, 0, data.length));
+      return;
+    }
+    addInMemoryFile(mapOutput);
+  }
+
+  /**
+   * Fold an output into the aggregates, spilling them whenever they take
+   * more than the memory left.
+   */
+  private void fold(IFile.Reader reader) throws IOException {
+    synchronized (aggregator) {
+      boolean done;
+      do {
+        long memoryBefore = aggregator.getMemoryUsed();
+        done = aggregator.fold(reader, getAggregatesMemoryLimit());
+        reserveAggregatesMemory(aggregator.getMemoryUsed() - memoryBefore);
+        if (!done) {
+          spillAggregates();
+        }
+      } while (!done);
+    }
+  }
+
+  /**
+   * @return the memory the aggregates may take: what they have, and what no
+   *         one else has reserved
+   */
+  private synchronized long getAggregatesMemoryLimit() {
+    return aggregatesMemory + memoryLimit - usedMemory;
+  }
+
+  private synchronized void reserveAggregatesMemory(long size) {
+    aggregatesMemory += size;
+    usedMemory += size;
+  }
+
+  /**
+   * Write the aggregates to a sorted file to be merged with the outputs not
+   * folded, and merge rather than fold from then on.
+   */
+  private void spillAggregates() throws IOException {
+    int numKeys = aggregator.getNumKeys();
+    long size;
+    synchronized (this) {
+      size = aggregatesMemory;
+    }
+    Path outputPath = 
+        mapOutputFile.getInputFileForWrite(taskAttemptId.getTaskID(), size)
+            .suffix(AGGREGATES_SUFFIX + numAggregateSpills++);
+    LOG.info("Spilling " + numKeys + " aggregates of an estimated " + size
+        + " bytes to " + outputPath);
+    aggregatesSpilled = true;
+    TezRawKeyValueIterator iter = aggregator.sortedIterator(
+        (RawComparator)ConfigUtils.getIntermediateInputKeyComparator(conf));
+    Writer writer = 
+        new Writer(conf, rfs, outputPath, 
+                   (Class)ConfigUtils.getIntermediateInputKeyClass(conf), 
+                   (Class)ConfigUtils.getIntermediateInputValueClass(conf),
+                   codec, null);
+    try {
+      TezMerger.writeFile(iter, writer, reporter, conf);
+      writer.close();
+    } catch (IOException e) {
+      localFS.delete(outputPath, true);
+      throw e;
+    } finally {
+      iter.close();
+    }
+    spilledRecordsCounter.increment(numKeys);
+    synchronized (this) {
+      usedMemory -= aggregatesMemory;
+      aggregatesMemory = 0;
+    }
+    addOnDiskFile(outputPath);
+  }
+
+  private synchronized void addInMemoryFile(MapOutput mapOutput) { 
     inMemoryMapOutputs.add(mapOutput);
     LOG.info("closeInMemoryFile -> map-output of size: " + mapOutput.getSize()
         + ", inMemoryMapOutputs.size() -> " + inMemoryMapOutputs.size()
@@ -339,7 +452,16 @@ public class MergeManager {
              inMemoryMergedMapOutputs.size());
   }
   
-  public synchronized void closeOnDiskFile(Path file) {
+  public void closeOnDiskFile(Path file) throws IOException {
+    if (aggregator != null && !aggregatesSpilled) {
+      fold(new IFile.Reader(conf, rfs, file, codec, null));
+      localFS.delete(file, true);
+      return;
+    }
+    addOnDiskFile(file);
+  }
+
+  private synchronized void addOnDiskFile(Path file) {
     onDiskMapOutputs.add(file);
     
     synchronized (onDiskMerger) {
@@ -351,18 +473,47 @@ public class MergeManager {
   }
   
   public TezRawKeyValueIterator close() throws Throwable {
+    if (aggregator != null && aggregatesSpilled
+        && aggregator.getNumKeys() > 0) {
+      // merged with the other spills and outputs
+      synchronized (aggregator) {
+        spillAggregates();
+      }
+    }
+
     // Wait for on-going merges to complete
     if (memToMemMerger != null) { 
       memToMemMerger.close();
     }
     inMemoryMerger.close();
     onDiskMerger.close();
+
+    if (aggregator != null) {
+      LOG.info("Aggregated " + aggregator.getNumFolded() + " values, "
+          + numAggregateSpills + " spills");
+      if (!aggregatesSpilled) {
+        // nothing to merge, the outputs were folded as they were fetched
+        mergePhase.complete();
+        return aggregator.iterator();
+      }
+    }
     
     List<MapOutput> memory = 
       new ArrayList<MapOutput>(inMemoryMergedMapOutputs);
     memory.addAll(inMemoryMapOutputs);
     List<Path> disk = new ArrayList<Path>(onDiskMapOutputs);
-    return finalMerge(conf, rfs, memory, disk);
+    long mergeStart = System.currentTimeMillis();
+    TezRawKeyValueIterator kvIter = finalMerge(conf, rfs, memory, disk);
+    addMergeTime(System.currentTimeMillis() - mergeStart);
+    return kvIter;
+  }
+
+  /**
+   * Account time spent merging map outputs, by the merge threads or the
+   * final merge.
+   */
+  void addMergeTime(long millis) {
+    mergeMillisCounter.increment(millis);
   }
    
   void runCombineProcessor(TezRawKeyValueIterator kvIter, Writer writer)
@@ -86,7 +86,9 @@ abstract class MergeThread<T> extends Thread {
         }
 
         // Merge
+        long mergeStart = System.currentTimeMillis();
         merge(inputs);
+        manager.addMergeTime(System.currentTimeMillis() - mergeStart);
       } catch (InterruptedException ie) {
         return;
       } catch(Throwable t) {
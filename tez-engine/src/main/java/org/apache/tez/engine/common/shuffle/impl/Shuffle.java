@@ -60,6 +60,10 @@ public class Shuffle implements ExceptionReporter {
   private final Progress copyPhase;
   private final Progress mergePhase;
   private final int tasksInDegree;
+  // the partition of the source outputs this task consumes
+  private final int partition;
+  // node-local copies of the source outputs, only for broadcast inputs
+  private final BroadcastCache broadcastCache;
   
   public Shuffle(TezEngineTaskContext taskContext,
                  RunningTaskContext runningTaskContext,
@@ -68,6 +72,24 @@ public class Shuffle implements ExceptionReporter {
                  TezTaskReporter reporter,
                  Processor combineProcessor
                  ) throws IOException {
+    this(taskContext, runningTaskContext, conf, tasksInDegree, reporter,
+        combineProcessor, false);
+  }
+
+  /**
+   * @param broadcast whether every task consumes the single partition of
+   *                  each source output, as on a ONE_TO_ALL edge. Such
+   *                  outputs are kept in a node-local cache shared by the
+   *                  tasks on the node.
+   */
+  public Shuffle(TezEngineTaskContext taskContext,
+                 RunningTaskContext runningTaskContext,
+                 Configuration conf,
+                 int tasksInDegree,
+                 TezTaskReporter reporter,
+                 Processor combineProcessor,
+                 boolean broadcast
+                 ) throws IOException {
     this.taskContext = taskContext;
     this.runningTaskContext = runningTaskContext;
     this.conf = conf;
@@ -77,6 +99,16 @@ public class Shuffle implements ExceptionReporter {
             taskContext.getTaskAttemptId(), this.conf, 
             this.taskContext.getUser(), this.taskContext.getJobName());
     this.tasksInDegree = tasksInDegree;
+    if (broadcast) {
+      this.partition = 0;
+      this.broadcastCache = 
+          conf.getBoolean(TezJobConfig.TEZ_ENGINE_BROADCAST_NODE_CACHE,
+              TezJobConfig.DEFAULT_TEZ_ENGINE_BROADCAST_NODE_CACHE)
+          ? new BroadcastCache(conf, taskContext.getTaskAttemptId()) : null;
+    } else {
+      this.partition = taskContext.getTaskAttemptId().getTaskID().getId();
+      this.broadcastCache = null;
+    }
     
     FileSystem localFS = FileSystem.getLocal(this.conf);
     LocalDirAllocator localDirAllocator = 
@@ -125,7 +157,9 @@ public class Shuffle implements ExceptionReporter {
 
     // Start the map-completion events fetcher thread
     final EventFetcher eventFetcher = 
-      new EventFetcher(taskContext.getTaskAttemptId(), reporter, scheduler, this,
+      new EventFetcher(conf, taskContext.getTaskAttemptId(), partition, 
+          reporter,
+          scheduler, this,
           maxEventsToFetch);
     eventFetcher.start();
     
@@ -137,6 +171,7 @@ public class Shuffle implements ExceptionReporter {
     Fetcher[] fetchers = new Fetcher[numFetchers];
     for (int i=0; i < numFetchers; ++i) {
       fetchers[i] = new Fetcher(conf, taskContext.getTaskAttemptId(), 
+                                     partition, broadcastCache,
                                      scheduler, merger, 
                                      reporter, metrics, this, 
                                      runningTaskContext.getJobTokenSecret());
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.engine.common.shuffle.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.security.ssl.SSLFactory;
+import org.apache.tez.common.TezJobConfig;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * What the shuffles of all the tasks run by a container share: the threads
+ * the fetchers and event fetchers run on, and the SSL factory of the
+ * fetchers. Tasks run one after the other in a reused container, so they
+ * take over the idle threads of the previous task instead of starting new
+ * ones. Connections to the shuffle servers are kept alive across tasks by
+ * the JVM, as long as the fetchers read each response to its end.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class ShuffleClientService {
+
+  private static final Log LOG = LogFactory.getLog(ShuffleClientService.class);
+
+  private static ExecutorService threads;
+  private static SSLFactory sslFactory;
+
+  private ShuffleClientService() {
+  }
+
+  static synchronized void execute(Configuration conf, Runnable runnable) {
+    if (threads == null) {
+      long keepAlive = conf.getLong(
+          TezJobConfig.TEZ_ENGINE_SHUFFLE_THREAD_KEEP_ALIVE_MS,
+          TezJobConfig.DEFAULT_TEZ_ENGINE_SHUFFLE_THREAD_KEEP_ALIVE_MS);
+      threads = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 
+          keepAlive, TimeUnit.MILLISECONDS, 
+          new SynchronousQueue<Runnable>(),
+          new ThreadFactoryBuilder()
+              .setNameFormat("ShuffleThread #%d")
+              .setDaemon(true)
+              .build());
+    }
+    threads.execute(runnable);
+  }
+
+  /**
+   * @return the SSL factory of the fetchers, initialized on first use.
+   */
+  static synchronized SSLFactory getSSLFactory(Configuration conf) {
+    if (sslFactory == null) {
+      SSLFactory factory = new SSLFactory(SSLFactory.Mode.CLIENT, conf);
+      try {
+        factory.init();
+      } catch (Exception ex) {
+        factory.destroy();
+        throw new RuntimeException(ex);
+      }
+      sslFactory = factory;
+    }
+    return sslFactory;
+  }
+
+  /**
+   * Stop the idle threads and release the SSL factory, once the container
+   * runs no more tasks.
+   */
+  public static synchronized void shutdown() {
+    if (threads != null) {
+      threads.shutdownNow();
+      threads = null;
+    }
+    if (sslFactory != null) {
+      sslFactory.destroy();
+      sslFactory = null;
+    }
+    LOG.info("Shuffle client service stopped");
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.engine.common.shuffle.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * A long running part of a shuffle, such as a fetcher, which runs on a
+ * thread of the {@link ShuffleClientService} of the container rather than on
+ * a thread of its own. It is started, interrupted and joined like a thread.
+ */
+abstract class ShuffleWorker implements Runnable {
+
+  private final Configuration conf;
+  private final CountDownLatch done = new CountDownLatch(1);
+  private String name;
+  private Thread runner = null;
+  private boolean interrupted = false;
+
+  ShuffleWorker(Configuration conf) {
+    this.conf = conf;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  void setName(String name) {
+    this.name = name;
+  }
+
+  void start() {
+    ShuffleClientService.execute(conf, new Runnable() {
+      @Override
+      public void run() {
+        runWorker();
+      }
+    });
+  }
+
+  private void runWorker() {
+    Thread thread = Thread.currentThread();
+    synchronized (this) {
+      if (interrupted) {
+        done.countDown();
+        return;
+      }
+      runner = thread;
+    }
+    String threadName = thread.getName();
+    thread.setName(name);
+    try {
+      run();
+    } finally {
+      synchronized (this) {
+        runner = null;
+        // the next worker on this thread starts afresh
+        Thread.interrupted();
+      }
+      thread.setName(threadName);
+      done.countDown();
+    }
+  }
+
+  synchronized void interrupt() {
+    interrupted = true;
+    if (runner != null) {
+      runner.interrupt();
+    }
+  }
+
+  /**
+   * @return false if the worker is still running after the timeout
+   */
+  boolean join(long millis) throws InterruptedException {
+    return done.await(millis, TimeUnit.MILLISECONDS);
+  }
+}
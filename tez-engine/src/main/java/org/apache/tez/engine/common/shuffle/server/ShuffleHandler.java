@@ -101,7 +101,14 @@ import org.jboss.netty.util.CharsetUtil;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
-public class ShuffleHandler extends AbstractService 
+/**
+ * Serves the partitions of a single {@link ExternalSorter} which keeps its
+ * output in memory, such as the in-memory shuffle sorter. Final outputs
+ * written to disk are served by the shuffle service of the NodeManager, or
+ * of the local container launcher, which is where caching of their indexes
+ * and mapping of their files belongs.
+ */
+public class ShuffleHandler extends AbstractService
     implements AuxServices.AuxiliaryService {
 
   private static final Log LOG = LogFactory.getLog(ShuffleHandler.class);
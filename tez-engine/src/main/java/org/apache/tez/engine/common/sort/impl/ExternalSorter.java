@@ -21,16 +21,21 @@ package org.apache.tez.engine.common.sort.impl;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience.Private;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.RawLocalFileSystem;
 import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.DefaultCodec;
 import org.apache.hadoop.io.serializer.SerializationFactory;
@@ -43,7 +48,9 @@ import org.apache.tez.common.Constants;
 import org.apache.tez.common.RunningTaskContext;
 import org.apache.tez.common.TezEngineTaskContext;
 import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezTaskStatus;
 import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TaskPhaseCounter;
 import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.dag.records.TezTaskAttemptID;
 import org.apache.tez.engine.api.Input;
@@ -51,6 +58,7 @@ import org.apache.tez.engine.api.Master;
 import org.apache.tez.engine.api.Output;
 import org.apache.tez.engine.api.Partitioner;
 import org.apache.tez.engine.api.Processor;
+import org.apache.tez.engine.api.RecordBatch;
 import org.apache.tez.engine.common.ConfigUtils;
 import org.apache.tez.engine.common.combine.CombineInput;
 import org.apache.tez.engine.common.combine.CombineOutput;
@@ -72,6 +80,17 @@ public abstract class ExternalSorter {
   public abstract void write(Object key, Object value) throws IOException,
       InterruptedException;
 
+  /**
+   * Write all the key/value pairs of a batch. Sorters which can save work
+   * per batch override this.
+   */
+  public void write(RecordBatch batch) throws IOException,
+      InterruptedException {
+    for (int i = 0; i < batch.size(); ++i) {
+      write(batch.getKey(i), batch.getValue(i));
+    }
+  }
+
   protected Processor combineProcessor;
   protected Partitioner partitioner;
   protected TezEngineTaskContext task;
@@ -97,7 +116,16 @@ public abstract class ExternalSorter {
   protected TezCounter mapOutputRecordCounter;
   protected TezCounter fileOutputByteCounter;
   protected TezCounter spilledRecordsCounter;
+  protected TezCounter spillMillisCounter;
+  protected TezCounter mergeMillisCounter;
+  // per-partition serialized bytes and records, reported for skew detection
+  protected long[] partitionBytes;
+  protected long[] partitionRecords;
   protected Progress sortPhase;
+  protected boolean copySingleSegments;
+  // records written to each partition by each spill, in spill order. A
+  // partition copied by copySingleSegment is not counted by a Writer.
+  protected final List<long[]> spillRecordCounts = new ArrayList<long[]>();
 
   public void initialize(Configuration conf, Master master)
       throws IOException, InterruptedException {
@@ -107,6 +135,8 @@ public abstract class ExternalSorter {
         job.get(Constants.TEZ_ENGINE_TASK_ATTEMPT_ID));
 
     partitions = task.getOutputSpecList().get(0).getNumOutputs();
+    partitionBytes = new long[partitions];
+    partitionRecords = new long[partitions];
 //    partitions = 
 //        job.getInt(
 //            TezJobConfig.TEZ_ENGINE_TASK_OUTDEGREE, 
@@ -137,6 +167,12 @@ public abstract class ExternalSorter {
             getCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES);
     spilledRecordsCounter = 
         runningTaskContext.getTaskReporter().getCounter(TaskCounter.SPILLED_RECORDS);
+    spillMillisCounter =
+        runningTaskContext.getTaskReporter().
+            getCounter(TaskPhaseCounter.SORT_SPILL_MILLIS);
+    mergeMillisCounter =
+        runningTaskContext.getTaskReporter().
+            getCounter(TaskPhaseCounter.SORT_MERGE_MILLIS);
     // compression
     if (ConfigUtils.shouldCompressIntermediateOutput(job)) {
       Class<? extends CompressionCodec> codecClass =
@@ -156,6 +192,10 @@ public abstract class ExternalSorter {
     
     // sortPhase
     sortPhase  = runningTaskContext.getProgress().addPhase("sort", 0.333f);
+
+    copySingleSegments = job.getBoolean(
+        TezJobConfig.TEZ_ENGINE_SORT_COPY_SINGLE_SEGMENTS,
+        TezJobConfig.DEFAULT_TEZ_ENGINE_SORT_COPY_SINGLE_SEGMENTS);
   }
 
   /**
@@ -208,6 +248,59 @@ public abstract class ExternalSorter {
 
   }
 
+  /**
+   * Copy a partition which has records in at most one spill to the final
+   * output as is, instead of merging it. IFile segments are self contained,
+   * so their bytes, checksum included, stay valid at another offset.
+   *
+   * @return the index record of the copy in the final output, or null if the
+   *         partition has records in several spills and has to be merged
+   */
+  protected TezIndexRecord copySingleSegment(Path[] spillFiles,
+      List<TezSpillRecord> spillIndices, int partition,
+      FSDataOutputStream finalOut) throws IOException {
+    if (!copySingleSegments) {
+      return null;
+    }
+    final long emptyRawLength = 2 * WritableUtils.getVIntSize(IFile.EOF_MARKER);
+    int spill = 0;
+    int nonEmpty = 0;
+    for (int i = 0; i < spillFiles.length; ++i) {
+      if (spillIndices.get(i).getIndex(partition).getRawLength()
+          > emptyRawLength) {
+        spill = i;
+        ++nonEmpty;
+      }
+    }
+    if (nonEmpty > 1) {
+      return null;
+    }
+
+    TezIndexRecord indexRecord = spillIndices.get(spill).getIndex(partition);
+    long segmentStart = finalOut.getPos();
+    byte[] buf = new byte[64 * 1024];
+    FSDataInputStream in = rfs.open(spillFiles[spill]);
+    try {
+      in.seek(indexRecord.getStartOffset());
+      long remaining = indexRecord.getPartLength();
+      while (remaining > 0) {
+        int len = (int) Math.min(buf.length, remaining);
+        in.readFully(buf, 0, len);
+        finalOut.write(buf, 0, len);
+        remaining -= len;
+      }
+    } finally {
+      in.close();
+    }
+    // account for the records as if they had been merged
+    if (spilledRecordsCounter != null && spill < spillRecordCounts.size()) {
+      spilledRecordsCounter.increment(
+          spillRecordCounts.get(spill)[partition]);
+    }
+    return new TezIndexRecord(segmentStart, indexRecord.getRawLength(),
+        indexRecord.getPartLength());
+  }
+
   /**
    * Rename srcPath to dstPath on the same volume. This is the same as
    * RawLocalFileSystem's rename method, except that it will not fall back to a
@@ -249,4 +342,20 @@ public abstract class ExternalSorter {
   public OutputContext getOutputContext() {
     return null;
   }
+
+  protected void updatePartitionStats(int partition, long bytes) {
+    partitionBytes[partition] += bytes;
+    ++partitionRecords[partition];
+  }
+
+  /**
+   * Publish the size of each output partition in the task status, so that
+   * the AM can detect skewed partitions.
+   */
+  protected void reportPartitionStats() {
+    TezTaskStatus status = runningTaskContext.getStatus();
+    if (status != null) {
+      status.setPartitionStats(partitionBytes, partitionRecords);
+    }
+  }
 }
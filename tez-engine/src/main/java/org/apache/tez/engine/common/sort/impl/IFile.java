@@ -23,6 +23,8 @@ import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
@@ -30,7 +32,6 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -38,6 +39,7 @@ import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.BufferUtils;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
@@ -46,6 +48,7 @@ import org.apache.hadoop.io.compress.Compressor;
 import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.io.serializer.SerializationFactory;
 import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.counters.TezCounter;
 
 /**
@@ -54,6 +57,11 @@ import org.apache.tez.common.counters.TezCounter;
  *
  * There is a <code>Writer</code> to write out map-outputs in this format and 
  * a <code>Reader</code> to read files of this format.
+ *
+ * A key equal to the previous one may be written as {@link #RLE_MARKER} and
+ * a key sharing a prefix with the previous one as {@link #PREFIX_MARKER},
+ * followed by the shared length, the suffix length and the suffix bytes.
+ * Readers always understand both forms.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Unstable
@@ -61,6 +69,9 @@ public class IFile {
   private static final Log LOG = LogFactory.getLog(IFile.class);
   public static final int EOF_MARKER = -1; // End of File Marker
   public static final int RLE_MARKER = -2; // Repeat same key marker
+  public static final int PREFIX_MARKER = -3; // Key shares prefix with previous
+  // front-code a key only if that saves more than the two extra vints
+  private static final int MIN_SHARED_PREFIX = 3;
   public static final DataInputBuffer REPEAT_KEY = new DataInputBuffer();
     
   /**
@@ -94,11 +105,18 @@ public class IFile {
     Serializer keySerializer;
     Serializer valueSerializer;
     
+    // serialized value
     DataOutputBuffer buffer = new DataOutputBuffer();
+    // Keys are serialized alternately into these two buffers, the other one
+    // holding the previous key, so detecting a repeated key copies nothing.
+    DataOutputBuffer keyBuffer = new DataOutputBuffer();
     DataOutputBuffer previous = new DataOutputBuffer();
+    private final KeyOutputStream keyOut = new KeyOutputStream();
     
     // de-dup keys or not
     private boolean rle = false;
+    // front-code keys against the previous key or not
+    private boolean prefixKeys = false;
 
     public Writer(Configuration conf, FileSystem fs, Path file, 
                   Class keyClass, Class valueClass,
@@ -139,11 +157,18 @@ public class IFile {
       this.keyClass = keyClass;
       this.valueClass = valueClass;
 
+      if (conf != null) {
+        this.prefixKeys = conf.getBoolean(
+            TezJobConfig.TEZ_ENGINE_IFILE_PREFIX_KEYS,
+            TezJobConfig.DEFAULT_TEZ_ENGINE_IFILE_PREFIX_KEYS);
+      }
+
       if (keyClass != null) {
         SerializationFactory serializationFactory = 
           new SerializationFactory(conf);
+        this.keyOut.target = keyBuffer;
         this.keySerializer = serializationFactory.getSerializer(keyClass);
-        this.keySerializer.open(buffer);
+        this.keySerializer.open(keyOut);
         this.valueSerializer = serializationFactory.getSerializer(valueClass);
         this.valueSerializer.open(buffer);
       }
@@ -212,27 +237,21 @@ public class IFile {
         throw new IOException("wrong value class: "+ value.getClass()
                               +" is not "+ valueClass);
       
-      boolean sameKey = false;
-
       // Append the 'key'
       keySerializer.serialize(key);
-      int keyLength = buffer.getLength();
+      int keyLength = keyBuffer.getLength();
       if (keyLength < 0) {
         throw new IOException("Negative key-length not allowed: " + keyLength + 
                               " for " + key);
       }     
       
-      if(keyLength == previous.getLength()) {
-        sameKey = (BufferUtils.compare(previous, buffer) == 0);       
-      }
-      
-      if(!sameKey) {
-        BufferUtils.copy(buffer, previous);
-      }
+      // length check first, most keys differ in length or early bytes
+      boolean sameKey = keyLength != 0 && keyLength == previous.getLength()
+          && BufferUtils.compare(previous, keyBuffer) == 0;
 
       // Append the 'value'
       valueSerializer.serialize(value);
-      int valueLength = buffer.getLength() - keyLength;
+      int valueLength = buffer.getLength();
       if (valueLength < 0) {
         throw new IOException("Negative value-length not allowed: " + 
                               valueLength + " for " + value);
@@ -241,20 +260,24 @@ public class IFile {
       if(sameKey) {        
         WritableUtils.writeVInt(out, RLE_MARKER);                   // Same key as previous
         WritableUtils.writeVInt(out, valueLength);                  // value length
-        out.write(buffer.getData(), keyLength, buffer.getLength()); // only the value
+        out.write(buffer.getData(), 0, valueLength);                // only the value
         // Update bytes written
         decompressedBytesWritten += 0 + valueLength + 
                                     WritableUtils.getVIntSize(RLE_MARKER) + 
                                     WritableUtils.getVIntSize(valueLength);
+        keyBuffer.reset();
       } else {        
         // Write the record out        
-        WritableUtils.writeVInt(out, keyLength);                  // key length
-        WritableUtils.writeVInt(out, valueLength);                // value length
-        out.write(buffer.getData(), 0, buffer.getLength());       // data
+        writeKey(keyBuffer.getData(), 0, keyLength, valueLength); // key
+        out.write(buffer.getData(), 0, valueLength);              // value
         // Update bytes written
-        decompressedBytesWritten += keyLength + valueLength + 
-                                    WritableUtils.getVIntSize(keyLength) + 
-                                    WritableUtils.getVIntSize(valueLength);
+        decompressedBytesWritten += valueLength;
+        // this key becomes the previous one
+        DataOutputBuffer tmp = previous;
+        previous = keyBuffer;
+        keyBuffer = tmp;
+        keyBuffer.reset();
+        keyOut.target = keyBuffer;
       }
 
       // Reset
@@ -278,13 +301,12 @@ public class IFile {
                               valueLength + " for " + value);
       }
       
-      boolean sameKey = false;
+      boolean sameKey = rle && keyLength != 0
+          && keyLength == previous.getLength()
+          && WritableComparator.compareBytes(key.getData(), key.getPosition(),
+              keyLength, previous.getData(), 0, keyLength) == 0;
       
-      if(rle && keyLength == previous.getLength()) {
-        sameKey = (keyLength != 0) && (BufferUtils.compare(previous, key) == 0);        
-      }
-      
-      if(rle && sameKey) {
+      if(sameKey) {
         WritableUtils.writeVInt(out, RLE_MARKER);
         WritableUtils.writeVInt(out, valueLength);        
         out.write(value.getData(), value.getPosition(), valueLength);
@@ -294,21 +316,57 @@ public class IFile {
             + WritableUtils.getVIntSize(RLE_MARKER)
             + WritableUtils.getVIntSize(valueLength);
       } else {
-        WritableUtils.writeVInt(out, keyLength);
-        WritableUtils.writeVInt(out, valueLength);
-        out.write(key.getData(), key.getPosition(), keyLength);
+        writeKey(key.getData(), key.getPosition(), keyLength, valueLength);
         out.write(value.getData(), value.getPosition(), valueLength);
 
         // Update bytes written
-        decompressedBytesWritten += keyLength + valueLength
-            + WritableUtils.getVIntSize(keyLength)
-            + WritableUtils.getVIntSize(valueLength);
-                
-        BufferUtils.copy(key, previous);        
+        decompressedBytesWritten += valueLength;
+
+        // the caller may reuse the key's bytes, keep a copy if it is needed
+        if (rle || prefixKeys) {
+          previous.reset();
+          previous.write(key.getData(), key.getPosition(), keyLength);
+        }
       }
       ++numRecordsWritten;
     }
     
+    /**
+     * Write the key and value lengths and the key, front-coded against the
+     * previous key when that is enabled and worthwhile.
+     */
+    private void writeKey(byte[] key, int offset, int keyLength,
+        int valueLength) throws IOException {
+      int shared = 0;
+      if (prefixKeys) {
+        byte[] prev = previous.getData();
+        int max = Math.min(keyLength, previous.getLength());
+        while (shared < max && key[offset + shared] == prev[shared]) {
+          ++shared;
+        }
+      }
+      if (shared >= MIN_SHARED_PREFIX) {
+        int suffixLength = keyLength - shared;
+        WritableUtils.writeVInt(out, PREFIX_MARKER);
+        WritableUtils.writeVInt(out, valueLength);
+        WritableUtils.writeVInt(out, shared);
+        WritableUtils.writeVInt(out, suffixLength);
+        out.write(key, offset + shared, suffixLength);
+        decompressedBytesWritten += suffixLength
+            + WritableUtils.getVIntSize(PREFIX_MARKER)
+            + WritableUtils.getVIntSize(valueLength)
+            + WritableUtils.getVIntSize(shared)
+            + WritableUtils.getVIntSize(suffixLength);
+      } else {
+        WritableUtils.writeVInt(out, keyLength);
+        WritableUtils.writeVInt(out, valueLength);
+        out.write(key, offset, keyLength);
+        decompressedBytesWritten += keyLength
+            + WritableUtils.getVIntSize(keyLength)
+            + WritableUtils.getVIntSize(valueLength);
+      }
+    }
+
     // Required for mark/reset
     public DataOutputStream getOutputStream () {
       return out;
@@ -327,6 +385,10 @@ public class IFile {
     public long getCompressedLength() {
       return compressedBytesWritten;
     }
+
+    public long getNumRecordsWritten() {
+      return numRecordsWritten;
+    }
     
     public void setRLE(boolean rle) {
       this.rle = rle;
@@ -335,6 +397,24 @@ public class IFile {
 
   }
 
+  /**
+   * Stream the key serializer writes to, pointed at whichever key buffer is
+   * current.
+   */
+  private static class KeyOutputStream extends OutputStream {
+    DataOutputBuffer target;
+
+    @Override
+    public void write(int b) throws IOException {
+      target.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      target.write(b, off, len);
+    }
+  }
+
   /**
    * <code>IFile.Reader</code> to read intermediate map-outputs. 
    */
@@ -398,7 +478,7 @@ public class IFile {
      * @param readsCounter Counter for records read from disk
      * @throws IOException
      */
-    public Reader(Configuration conf, FSDataInputStream in, long length, 
+    public Reader(Configuration conf, InputStream in, long length, 
                   CompressionCodec codec,
                   TezCounter readsCounter) throws IOException {
       readRecordsCounter = readsCounter;
@@ -472,7 +552,8 @@ public class IFile {
       }      
       
       // Sanity check
-      if (currentKeyLength != RLE_MARKER && currentKeyLength < 0) {
+      if (currentKeyLength != RLE_MARKER && currentKeyLength != PREFIX_MARKER
+          && currentKeyLength < 0) {
         throw new IOException("Rec# " + recNo + ": Negative key-length: " + 
                               currentKeyLength);
       }
@@ -484,6 +565,26 @@ public class IFile {
       return true;
     }
     
+    /**
+     * Read the shared and suffix lengths of a {@link IFile#PREFIX_MARKER}
+     * record and set the current key length to the full key length.
+     * 
+     * @return the length of the prefix shared with the previous key
+     */
+    protected int readPrefixHeader(DataInput dIn) throws IOException {
+      int shared = WritableUtils.readVInt(dIn);
+      int suffixLength = WritableUtils.readVInt(dIn);
+      bytesRead += WritableUtils.getVIntSize(shared) +
+                   WritableUtils.getVIntSize(suffixLength);
+      if (shared < 0 || shared > prevKeyLength || suffixLength < 0) {
+        throw new IOException("Rec# " + recNo + ": Bad key prefix: shared=" +
+                              shared + " suffix=" + suffixLength +
+                              " previous key-length=" + prevKeyLength);
+      }
+      currentKeyLength = shared + suffixLength;
+      return shared;
+    }
+
     public boolean nextRawKey(DataInputBuffer key) throws IOException {
       return readRawKey(key) != KeyState.NO_KEY;
     }
@@ -498,15 +599,21 @@ public class IFile {
         key.reset(keyBytes, currentKeyLength);
         return KeyState.SAME_KEY;
       }
+      int shared = 0;
+      if (currentKeyLength == PREFIX_MARKER) {
+        // the shared prefix is still at the start of keyBytes
+        shared = readPrefixHeader(dataIn);
+      }
+      int suffixLength = currentKeyLength - shared;
       if (keyBytes.length < currentKeyLength) {
-        keyBytes = new byte[currentKeyLength << 1];
+        keyBytes = Arrays.copyOf(keyBytes, currentKeyLength << 1);
       }
-      int i = readData(keyBytes, 0, currentKeyLength);
-      if (i != currentKeyLength) {
-        throw new IOException ("Asked for " + currentKeyLength + " Got: " + i);
+      int i = readData(keyBytes, shared, suffixLength);
+      if (i != suffixLength) {
+        throw new IOException ("Asked for " + suffixLength + " Got: " + i);
       }
       key.reset(keyBytes, currentKeyLength);
-      bytesRead += currentKeyLength;
+      bytesRead += suffixLength;
       return KeyState.NEW_KEY;
     }
     
@@ -129,7 +129,15 @@ public class PipelinedSorter extends ExternalSorter implements SortingOutput {
     }
     
     // buffers and accounting
-    int maxMemUsage = sortmb << 20;
+    // the prefetch buffers of the final merge come out of the sort buffer
+    final long prefetchMemory = PrefetchingInputStream.getMemoryLimit(job);
+    if (prefetchMemory >= (sortmb << 20)) {
+      throw new IOException("\""
+          + TezJobConfig.TEZ_ENGINE_MERGE_PREFETCH_MEMORY_BYTES + "\": "
+          + prefetchMemory + " must be less than \""
+          + TezJobConfig.TEZ_ENGINE_IO_SORT_MB + "\": " + sortmb);
+    }
+    int maxMemUsage = (sortmb << 20) - (int) prefetchMemory;
     maxMemUsage -= maxMemUsage % METASIZE;
     largeBuffer = ByteBuffer.allocate(maxMemUsage);
     LOG.info(TezJobConfig.TEZ_ENGINE_IO_SORT_MB + " = " + sortmb);
@@ -262,10 +270,12 @@ public class PipelinedSorter extends ExternalSorter implements SortingOutput {
     }
     mapOutputRecordCounter.increment(1);
     mapOutputByteCounter.increment(valend - keystart);
+    updatePartitionStats(partition, valend - keystart);
     runningTaskContext.getTaskReporter().progress();
   }
 
   public void spill() throws IOException { 
+    final long spillStart = System.currentTimeMillis();
     // create spill file
     final long size = largeBuffer.capacity() + 
       (partitions * APPROX_HEADER_LENGTH);
@@ -277,6 +287,7 @@ public class PipelinedSorter extends ExternalSorter implements SortingOutput {
     try {
       merger.ready(); // wait for all the future results from sort threads
       LOG.info("Spilling to " + filename.toString());
+      final long[] recordCounts = new long[partitions];
       for (int i = 0; i < partitions; ++i) {
         TezRawKeyValueIterator kvIter = merger.filter(i);
         //write merged output to disk
@@ -294,6 +305,7 @@ public class PipelinedSorter extends ExternalSorter implements SortingOutput {
         }
         //close
         writer.close();
+        recordCounts[i] = writer.getNumRecordsWritten();
 
         // record offsets
         final TezIndexRecord rec = 
@@ -309,21 +321,19 @@ public class PipelinedSorter extends ExternalSorter implements SortingOutput {
             * MAP_OUTPUT_INDEX_RECORD_LENGTH);
       // TODO: cache
       spillRec.writeToFile(indexFilename, job);
+      spillRecordCounts.add(recordCounts);
       ++numSpills;
     } catch(InterruptedException ie) {
       // TODO:the combiner has been interrupted
     } finally {
       out.close();
+      spillMillisCounter.increment(System.currentTimeMillis() - spillStart);
     }
   }
 
   @Override
   public void flush() throws IOException, InterruptedException {
     final TezTaskAttemptID mapId = task.getTaskAttemptId();
-    Path finalOutputFile =
-        mapOutputFile.getOutputFileForWrite(0); //TODO
-    Path finalIndexFile =
-        mapOutputFile.getOutputIndexFileForWrite(0); //TODO
 
     LOG.info("Starting flush of map output");
     span.end();
@@ -332,6 +342,7 @@ public class PipelinedSorter extends ExternalSorter implements SortingOutput {
     sortmaster.shutdown();
 
     largeBuffer = null;
+    reportPartitionStats();
 
     if(numSpills == 1) {
       // someday be able to pass this directly to shuffle
@@ -340,11 +351,20 @@ public class PipelinedSorter extends ExternalSorter implements SortingOutput {
           mapOutputFile.getSpillFile(0);
       Path indexFilename =
               mapOutputFile.getSpillIndexFile(0);
-      sameVolRename(filename, finalOutputFile);
-      sameVolRename(indexFilename, finalIndexFile);
+      // the spill and its index may be on different volumes
+      sameVolRename(filename,
+          mapOutputFile.getOutputFileForWriteInVolume(filename));
+      sameVolRename(indexFilename,
+          mapOutputFile.getOutputIndexFileForWriteInVolume(indexFilename));
       return;
     }
+
+    Path finalOutputFile =
+        mapOutputFile.getOutputFileForWrite(0);
+    Path finalIndexFile =
+        mapOutputFile.getOutputIndexFileForWrite(0);
     
+    final long mergeStart = System.currentTimeMillis();
     //The output stream for the final single output file
     FSDataOutputStream finalOut = rfs.create(finalOutputFile, true, 4096);
     
@@ -354,14 +374,25 @@ public class PipelinedSorter extends ExternalSorter implements SortingOutput {
     final TezSpillRecord spillRec = new TezSpillRecord(partitions);
     final ArrayList<TezSpillRecord> indexCacheList = new ArrayList<TezSpillRecord>();
 
+    final Path[] spillFilenames = new Path[numSpills];
     for(int i = 0; i < numSpills; i++) {
       // TODO: build this cache before
       Path indexFilename = mapOutputFile.getSpillIndexFile(i);
       TezSpillRecord spillIndex = new TezSpillRecord(indexFilename, job);
       indexCacheList.add(spillIndex);
+      spillFilenames[i] = mapOutputFile.getSpillFile(i);
     }
     
     for (int parts = 0; parts < partitions; parts++) {
+      // nothing to merge if only one spill has records for the partition
+      TezIndexRecord copied =
+          copySingleSegment(spillFilenames, indexCacheList, parts, finalOut);
+      if (copied != null) {
+        spillRec.putIndex(copied, parts);
+        sortPhase.startNextPhase();
+        continue;
+      }
+
       //create the segments to be merged
       List<Segment> segmentList =
           new ArrayList<Segment>(numSpills);
@@ -418,6 +449,7 @@ public class PipelinedSorter extends ExternalSorter implements SortingOutput {
 
     spillRec.writeToFile(finalIndexFile, job);
     finalOut.close();
+    mergeMillisCounter.increment(System.currentTimeMillis() - mergeStart);
     for(int i = 0; i < numSpills; i++) {
       Path indexFilename = mapOutputFile.getSpillIndexFile(i);
       Path spillFilename = mapOutputFile.getSpillFile(i);
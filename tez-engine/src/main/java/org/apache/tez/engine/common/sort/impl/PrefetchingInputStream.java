@@ -0,0 +1,312 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.common.sort.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.tez.common.TezJobConfig;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * An input stream over a byte range of a file which reads ahead into two
+ * large buffers on a background thread: while the consumer reads one buffer
+ * the next part of the range is read into the other one. Used by
+ * {@link TezMerger} so that a merge over many on-disk segments issues large
+ * sequential reads which overlap with the comparisons, instead of blocking
+ * on small reads.
+ *
+ * Prefetching is off by default. When it is turned on the buffers of the
+ * streams opened by one merge come out of that merge's {@link Budget}, whose
+ * size is taken out of the memory of the sort buffer or of the shuffle, so
+ * that turning it on does not grow the memory a task uses.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class PrefetchingInputStream extends InputStream {
+
+  private static final Log LOG =
+      LogFactory.getLog(PrefetchingInputStream.class);
+
+  private static ExecutorService prefetchPool = null;
+
+  /**
+   * The memory the prefetch buffers of one merge may use.
+   */
+  public static class Budget {
+    private final long limit;
+    private final AtomicLong reserved = new AtomicLong();
+
+    Budget(long limit) {
+      this.limit = limit;
+    }
+
+    boolean reserve(long bytes) {
+      while (true) {
+        long current = reserved.get();
+        if (current + bytes > limit) {
+          return false;
+        }
+        if (reserved.compareAndSet(current, current + bytes)) {
+          return true;
+        }
+      }
+    }
+
+    void release(long bytes) {
+      reserved.addAndGet(-bytes);
+    }
+
+    public long getLimit() {
+      return limit;
+    }
+
+    public long getReserved() {
+      return reserved.get();
+    }
+  }
+
+  private final FSDataInputStream in;
+  private final long end;
+  private final Budget budget;
+  private final long reservation;
+  private final ExecutorService pool;
+
+  // absolute file position of the next read to be issued
+  private long fetchPos;
+  private byte[] current;
+  private int currentPos = 0;
+  private int currentLen = 0;
+  private byte[] spare;
+  private Future<Integer> pending = null;
+  private boolean closed = false;
+  private final byte[] oneByte = new byte[1];
+
+  /**
+   * @return the memory of the prefetch buffers of one merge, or 0 if
+   *         prefetching is disabled. Whoever sizes the memory of a merge
+   *         takes this out of it.
+   */
+  public static long getMemoryLimit(Configuration conf) {
+    if (conf == null
+        || !conf.getBoolean(TezJobConfig.TEZ_ENGINE_MERGE_PREFETCH,
+        TezJobConfig.DEFAULT_TEZ_ENGINE_MERGE_PREFETCH)) {
+      return 0;
+    }
+    return Math.max(0, conf.getLong(
+        TezJobConfig.TEZ_ENGINE_MERGE_PREFETCH_MEMORY_BYTES,
+        TezJobConfig.DEFAULT_TEZ_ENGINE_MERGE_PREFETCH_MEMORY_BYTES));
+  }
+
+  /**
+   * @return the budget for the prefetch buffers of a new merge, or
+   *         <code>null</code> if prefetching is disabled.
+   */
+  public static Budget createBudget(Configuration conf) {
+    long limit = getMemoryLimit(conf);
+    return (limit > 0) ? new Budget(limit) : null;
+  }
+
+  /**
+   * Open a prefetching stream over <code>length</code> bytes of
+   * <code>in</code> starting at <code>start</code>, with buffers reserved
+   * from <code>budget</code> until the stream is closed.
+   *
+   * @return the stream, or <code>null</code> if there is no budget or it is
+   *         used up, in which case the caller should read <code>in</code>
+   *         directly.
+   */
+  public static PrefetchingInputStream open(Configuration conf,
+      Budget budget, FSDataInputStream in, long start, long length) {
+    if (budget == null) {
+      return null;
+    }
+    int bufferSize = conf.getInt(
+        TezJobConfig.TEZ_ENGINE_MERGE_PREFETCH_BUFFER_BYTES,
+        TezJobConfig.DEFAULT_TEZ_ENGINE_MERGE_PREFETCH_BUFFER_BYTES);
+    // no point in two buffers for a segment which fits into one
+    bufferSize = (int) Math.min(bufferSize, length);
+    if (bufferSize <= 0) {
+      return null;
+    }
+    long reservation = 2L * bufferSize;
+    if (!budget.reserve(reservation)) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Prefetch memory of " + budget.getLimit() + " bytes used up,"
+            + " reading segment synchronously");
+      }
+      return null;
+    }
+    int threads = conf.getInt(TezJobConfig.TEZ_ENGINE_MERGE_PREFETCH_THREADS,
+        TezJobConfig.DEFAULT_TEZ_ENGINE_MERGE_PREFETCH_THREADS);
+    boolean opened = false;
+    try {
+      PrefetchingInputStream stream = new PrefetchingInputStream(in, start,
+          length, bufferSize, budget, reservation, getPool(threads));
+      opened = true;
+      return stream;
+    } finally {
+      if (!opened) {
+        budget.release(reservation);
+      }
+    }
+  }
+
+  private static synchronized ExecutorService getPool(int threads) {
+    if (prefetchPool == null) {
+      prefetchPool = Executors.newFixedThreadPool(threads,
+          new ThreadFactoryBuilder()
+            .setNameFormat("IFile Prefetch #%d")
+            .setDaemon(true)
+            .build());
+    }
+    return prefetchPool;
+  }
+
+  private PrefetchingInputStream(FSDataInputStream in, long start,
+      long length, int bufferSize, Budget budget, long reservation,
+      ExecutorService pool) {
+    this.in = in;
+    this.end = start + length;
+    this.fetchPos = start;
+    this.budget = budget;
+    this.reservation = reservation;
+    this.pool = pool;
+    this.current = new byte[bufferSize];
+    this.spare = new byte[bufferSize];
+    fetchInto(spare);
+  }
+
+  private void fetchInto(final byte[] buf) {
+    if (fetchPos >= end) {
+      pending = null;
+      return;
+    }
+    final long pos = fetchPos;
+    final int len = (int) Math.min(buf.length, end - pos);
+    fetchPos += len;
+    pending = pool.submit(new Callable<Integer>() {
+      @Override
+      public Integer call() throws IOException {
+        // positional read, the stream is only ever used by one fetch at a time
+        in.readFully(pos, buf, 0, len);
+        return len;
+      }
+    });
+  }
+
+  /**
+   * Wait for the outstanding read, make its buffer current and start
+   * reading the next part of the range into the one just consumed.
+   *
+   * @return false at the end of the range
+   */
+  private boolean advance() throws IOException {
+    if (pending == null) {
+      return false;
+    }
+    int len;
+    try {
+      len = pending.get();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted waiting for prefetch");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+    byte[] filled = spare;
+    spare = current;
+    current = filled;
+    currentPos = 0;
+    currentLen = len;
+    fetchInto(spare);
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int n = read(oneByte, 0, 1);
+    return (n <= 0) ? -1 : (oneByte[0] & 0xff);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (len == 0) {
+      return 0;
+    }
+    if (currentPos == currentLen && !advance()) {
+      return -1;
+    }
+    int n = Math.min(len, currentLen - currentPos);
+    System.arraycopy(current, currentPos, b, off, n);
+    currentPos += n;
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return currentLen - currentPos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (pending != null && !pending.cancel(false)) {
+        // the read is in progress, it must not run against a closed stream
+        try {
+          pending.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+          // the data is not wanted anymore
+        }
+      }
+      pending = null;
+      in.close();
+    } finally {
+      current = null;
+      spare = null;
+      budget.release(reservation);
+    }
+  }
+}
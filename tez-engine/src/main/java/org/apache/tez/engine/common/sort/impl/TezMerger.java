@@ -18,6 +18,7 @@
 package org.apache.tez.engine.common.sort.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -277,10 +278,29 @@ public class TezMerger {
     }
 
     void init(TezCounter readsCounter) throws IOException {
+      init(readsCounter, null);
+    }
+
+    void init(TezCounter readsCounter,
+        PrefetchingInputStream.Budget prefetchBudget) throws IOException {
       if (reader == null) {
         FSDataInputStream in = fs.open(file);
-        in.seek(segmentOffset);
-        reader = new Reader(conf, in, segmentLength, codec, readsCounter);
+        InputStream prefetched = PrefetchingInputStream.open(conf,
+            prefetchBudget, in, segmentOffset, segmentLength);
+        if (prefetched != null) {
+          try {
+            reader = new Reader(conf, prefetched, segmentLength, codec, 
+                readsCounter);
+          } finally {
+            if (reader == null) {
+              // gives the prefetch buffers back to the budget
+              prefetched.close();
+            }
+          }
+        } else {
+          in.seek(segmentOffset);
+          reader = new Reader(conf, in, segmentLength, codec, readsCounter);
+        }
       }
       
       if (mapOutputsCounter != null) {
@@ -371,6 +391,8 @@ public class TezMerger {
     Configuration conf;
     FileSystem fs;
     CompressionCodec codec;
+    // prefetch buffers of all the on-disk segments of this merge
+    final PrefetchingInputStream.Budget prefetchBudget;
     
     List<Segment> segments = new ArrayList<Segment>();
     
@@ -409,6 +431,7 @@ public class TezMerger {
       this.codec = codec;
       this.comparator = comparator;
       this.reporter = reporter;
+      this.prefetchBudget = PrefetchingInputStream.createBudget(conf);
       
       for (Path file : inputs) {
         LOG.debug("MergeQ: adding: " + file);
@@ -430,6 +453,7 @@ public class TezMerger {
       this.comparator = comparator;
       this.segments = segments;
       this.reporter = reporter;
+      this.prefetchBudget = PrefetchingInputStream.createBudget(conf);
       if (sortSegments) {
         Collections.sort(segments, segmentComparator);
       }
@@ -577,7 +601,7 @@ public class TezMerger {
           for (Segment segment : mStream) {
             // Initialize the segment at the last possible moment;
             // this helps in ensuring we don't use buffers until we need them
-            segment.init(readsCounter);
+            segment.init(readsCounter, prefetchBudget);
             long startPos = segment.getPosition();
             boolean hasNext = segment.nextRawKey();
             long endPos = segment.getPosition();
@@ -17,7 +17,9 @@
  */
 package org.apache.tez.engine.common.sort.impl;
 
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
 import java.util.zip.CheckedInputStream;
@@ -64,28 +66,51 @@ public class TezSpillRecord {
     final FSDataInputStream in = rfs.open(indexFileName);
     try {
       final long length = rfs.getFileStatus(indexFileName).getLen();
-      final int partitions = 
-          (int) length / Constants.MAP_OUTPUT_INDEX_RECORD_LENGTH;
-      final int size = partitions * Constants.MAP_OUTPUT_INDEX_RECORD_LENGTH;
+      buf = readIndex(in, length, crc, indexFileName);
+      entries = buf.asLongBuffer();
+    } finally {
+      in.close();
+    }
+  }
 
-      buf = ByteBuffer.allocate(size);
-      if (crc != null) {
-        crc.reset();
-        CheckedInputStream chk = new CheckedInputStream(in, crc);
-        IOUtils.readFully(chk, buf.array(), 0, size);
-        if (chk.getChecksum().getValue() != in.readLong()) {
-          throw new ChecksumException("Checksum error reading spill index: " +
-                                indexFileName, -1);
-        }
-      } else {
-        IOUtils.readFully(in, buf.array(), 0, size);
-      }
+  /**
+   * Read the index from a stream opened by the caller, which is closed.
+   * 
+   * @param length the length of the index file
+   * @param indexFileName the name of the index file, for errors
+   */
+  public TezSpillRecord(InputStream in, long length, Path indexFileName)
+      throws IOException {
+    try {
+      buf = readIndex(new DataInputStream(in), length, new PureJavaCrc32(),
+          indexFileName);
       entries = buf.asLongBuffer();
     } finally {
       in.close();
     }
   }
 
+  private static ByteBuffer readIndex(DataInputStream in, long length,
+      Checksum crc, Path indexFileName) throws IOException {
+    final int partitions = 
+        (int) length / Constants.MAP_OUTPUT_INDEX_RECORD_LENGTH;
+    final int size = partitions * Constants.MAP_OUTPUT_INDEX_RECORD_LENGTH;
+
+    ByteBuffer buf = ByteBuffer.allocate(size);
+    if (crc != null) {
+      crc.reset();
+      CheckedInputStream chk = new CheckedInputStream(in, crc);
+      IOUtils.readFully(chk, buf.array(), 0, size);
+      if (chk.getChecksum().getValue() != in.readLong()) {
+        throw new ChecksumException("Checksum error reading spill index: " +
+                              indexFileName, -1);
+      }
+    } else {
+      IOUtils.readFully(in, buf.array(), 0, size);
+    }
+    return buf;
+  }
+
   /**
    * Return number of IndexRecord entries in this spill.
    */
@@ -44,9 +44,11 @@ import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezTaskContext;
 import org.apache.tez.dag.records.TezTaskAttemptID;
 import org.apache.tez.engine.api.Master;
+import org.apache.tez.engine.api.RecordBatch;
 import org.apache.tez.engine.common.ConfigUtils;
 import org.apache.tez.engine.common.sort.impl.ExternalSorter;
 import org.apache.tez.engine.common.sort.impl.IFile;
+import org.apache.tez.engine.common.sort.impl.PrefetchingInputStream;
 import org.apache.tez.engine.common.sort.impl.TezIndexRecord;
 import org.apache.tez.engine.common.sort.impl.TezMerger;
 import org.apache.tez.engine.common.sort.impl.TezRawKeyValueIterator;
@@ -146,7 +148,15 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
                                        TezJobConfig.DEFAULT_TEZ_ENGINE_INDEX_CACHE_MEMORY_LIMIT_BYTES);
     
     // buffers and accounting
-    int maxMemUsage = sortmb << 20;
+    // the prefetch buffers of the final merge come out of the sort buffer
+    final long prefetchMemory = PrefetchingInputStream.getMemoryLimit(job);
+    if (prefetchMemory >= (sortmb << 20)) {
+      throw new IOException("\""
+          + TezJobConfig.TEZ_ENGINE_MERGE_PREFETCH_MEMORY_BYTES + "\": "
+          + prefetchMemory + " must be less than \""
+          + TezJobConfig.TEZ_ENGINE_IO_SORT_MB + "\": " + sortmb);
+    }
+    int maxMemUsage = (sortmb << 20) - (int) prefetchMemory;
     maxMemUsage -= maxMemUsage % METASIZE;
     kvbuffer = new byte[maxMemUsage];
     bufvoid = kvbuffer.length;
@@ -200,13 +210,34 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
   }
 
   /**
-   * Serialize the key, value to intermediate storage.
-   * When this method returns, kvindex must refer to sufficient unused
-   * storage to store one METADATA.
+   * Take the lock and report progress once for the whole batch.
    */
+  @Override
+  public synchronized void write(RecordBatch batch)
+      throws IOException, InterruptedException {
+    runningTaskContext.getTaskReporter().progress();
+    int size = batch.size();
+    for (int i = 0; i < size; ++i) {
+      Object key = batch.getKey(i);
+      Object value = batch.getValue(i);
+      collectRecord(
+          key, value, partitioner.getPartition(key, value, partitions));
+    }
+  }
+
   synchronized void collect(Object key, Object value, final int partition
                                    ) throws IOException {
     runningTaskContext.getTaskReporter().progress();
+    collectRecord(key, value, partition);
+  }
+
+  /**
+   * Serialize the key, value to intermediate storage.
+   * When this method returns, kvindex must refer to sufficient unused
+   * storage to store one METADATA. The caller holds the lock on the sorter.
+   */
+  private void collectRecord(Object key, Object value, final int partition
+                                   ) throws IOException {
     if (key.getClass() != keyClass) {
       throw new IOException("Type mismatch in key from map: expected "
                             + keyClass.getName() + ", received "
@@ -309,6 +340,7 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
       mapOutputRecordCounter.increment(1);
       mapOutputByteCounter.increment(
           distanceTo(keystart, valend, bufvoid));
+      updatePartitionStats(partition, distanceTo(keystart, valend, bufvoid));
 
       // write accounting info
       kvmeta.put(kvindex + INDEX, kvindex);
@@ -649,9 +681,12 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
     // release sort buffer before the merge
     //FIXME
     //kvbuffer = null;
+    final long mergeStart = System.currentTimeMillis();
     mergeParts();
+    mergeMillisCounter.increment(System.currentTimeMillis() - mergeStart);
     Path outputPath = mapOutputFile.getOutputFile();
     fileOutputByteCounter.increment(rfs.getFileStatus(outputPath).getLen());
+    reportPartitionStats();
   }
 
   @Override
@@ -737,10 +772,12 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
   
   protected void sortAndSpill() 
       throws IOException, InterruptedException {
+    final long spillStart = System.currentTimeMillis();
     final int mstart = getMetaStart();
     final int mend = getMetaEnd();
     sorter.sort(this, mstart, mend, runningTaskContext.getTaskReporter());
     spill(mstart, mend); 
+    spillMillisCounter.increment(System.currentTimeMillis() - spillStart);
   }
   
   protected void spill(int mstart, int mend) 
@@ -762,6 +799,7 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
 
       int spindex = mstart;
       final InMemValBytes value = createInMemValBytes();
+      final long[] recordCounts = new long[partitions];
       for (int i = 0; i < partitions; ++i) {
         IFile.Writer writer = null;
         try {
@@ -802,6 +840,7 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
 
           // close the writer
           writer.close();
+          recordCounts[i] = writer.getNumRecordsWritten();
 
           // record offsets
           final TezIndexRecord rec = 
@@ -828,6 +867,7 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
         totalIndexCacheMemory +=
           spillRec.size() * MAP_OUTPUT_INDEX_RECORD_LENGTH;
       }
+      spillRecordCounts.add(recordCounts);
       LOG.info("Finished spill " + numSpills);
       ++numSpills;
     } finally {
@@ -852,6 +892,8 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
       out = rfs.create(filename);
 
       // we don't run the combiner for a single record
+      final long[] recordCounts = new long[partitions];
+      recordCounts[partition] = 1;
       for (int i = 0; i < partitions; ++i) {
         IFile.Writer writer = null;
         try {
@@ -866,6 +908,7 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
             // Note that our map byte count will not be accurate with
             // compression
             mapOutputByteCounter.increment(out.getPos() - recordStart);
+            updatePartitionStats(partition, out.getPos() - recordStart);
           }
           writer.close();
 
@@ -894,6 +937,7 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
         totalIndexCacheMemory +=
           spillRec.size() * MAP_OUTPUT_INDEX_RECORD_LENGTH;
       }
+      spillRecordCounts.add(recordCounts);
       ++numSpills;
     } finally {
       if (out != null) out.close();
@@ -1001,8 +1045,10 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
       sameVolRename(filename[0],
           mapOutputFile.getOutputFileForWriteInVolume(filename[0]));
       if (indexCacheList.size() == 0) {
-        sameVolRename(mapOutputFile.getSpillIndexFile(0),
-          mapOutputFile.getOutputIndexFileForWriteInVolume(filename[0]));
+        // the index may have been spilled to another volume than the data
+        Path indexFilename = mapOutputFile.getSpillIndexFile(0);
+        sameVolRename(indexFilename,
+          mapOutputFile.getOutputIndexFileForWriteInVolume(indexFilename));
       } else {
         indexCacheList.get(0).writeToFile(
           mapOutputFile.getOutputIndexFileForWriteInVolume(filename[0]), job);
@@ -1060,6 +1106,15 @@ public class DefaultSorter extends ExternalSorter implements IndexedSortable {
       
       final TezSpillRecord spillRec = new TezSpillRecord(partitions);
       for (int parts = 0; parts < partitions; parts++) {
+        // nothing to merge if only one spill has records for the partition
+        TezIndexRecord copied =
+            copySingleSegment(filename, indexCacheList, parts, finalOut);
+        if (copied != null) {
+          spillRec.putIndex(copied, parts);
+          sortPhase.startNextPhase();
+          continue;
+        }
+
         //create the segments to be merged
         List<Segment> segmentList =
           new ArrayList<Segment>(numSpills);
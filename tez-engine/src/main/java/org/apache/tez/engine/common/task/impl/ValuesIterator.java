@@ -23,6 +23,7 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.RawComparator;
 import org.apache.hadoop.io.serializer.Deserializer;
@@ -30,11 +31,18 @@ import org.apache.hadoop.io.serializer.SerializationFactory;
 import org.apache.hadoop.util.Progressable;
 import org.apache.tez.engine.common.sort.impl.TezRawKeyValueIterator;
 
-/** Iterates values while keys match in sorted input. */
+/**
+ * Iterates values while keys match in sorted input.
+ *
+ * Group boundaries are detected by comparing the raw key bytes exposed by the
+ * underlying {@link TezRawKeyValueIterator}, so keys are only deserialized
+ * when {@link #getKey()} is invoked. Values are deserialized into a single
+ * instance which is reused for the lifetime of the iterator.
+ */
 public class ValuesIterator<KEY,VALUE> implements Iterator<VALUE> {
   protected TezRawKeyValueIterator in; //input iterator
-  private KEY key;               // current key
-  private KEY nextKey;
+  private KEY key;               // current key, deserialized lazily
+  private boolean keyDeserialized;              // key matches currentRawKey
   private VALUE value;             // current value
   private boolean hasNext;                      // more w/ this key
   private boolean more;                         // more in file
@@ -44,6 +52,8 @@ public class ValuesIterator<KEY,VALUE> implements Iterator<VALUE> {
   private Deserializer<VALUE> valDeserializer;
   private DataInputBuffer keyIn = new DataInputBuffer();
   private DataInputBuffer valueIn = new DataInputBuffer();
+  // raw bytes of the first key of the current group
+  private BytesWritable currentRawKey = new BytesWritable();
   
   public ValuesIterator (TezRawKeyValueIterator in, 
                          RawComparator<KEY> comparator, 
@@ -59,9 +69,10 @@ public class ValuesIterator<KEY,VALUE> implements Iterator<VALUE> {
     this.keyDeserializer.open(keyIn);
     this.valDeserializer = serializationFactory.getDeserializer(valClass);
     this.valDeserializer.open(this.valueIn);
-    readNextKey();
-    key = nextKey;
-    nextKey = null; // force new instance creation
+    more = in.next();
+    if (more) {
+      setCurrentRawKey();
+    }
     hasNext = more;
   }
 
@@ -98,10 +109,10 @@ public class ValuesIterator<KEY,VALUE> implements Iterator<VALUE> {
     }
     ++ctr;
     
-    // move the next key to the current one
-    KEY tmpKey = key;
-    key = nextKey;
-    nextKey = tmpKey;
+    // the raw iterator is positioned on the first record of the next group
+    if (more) {
+      setCurrentRawKey();
+    }
     hasNext = more;
   }
 
@@ -111,10 +122,26 @@ public class ValuesIterator<KEY,VALUE> implements Iterator<VALUE> {
   }
 
   /** The current key. */
-  public KEY getKey() { 
+  public KEY getKey() throws IOException {
+    if (!keyDeserialized) {
+      keyIn.reset(currentRawKey.getBytes(), 0, currentRawKey.getLength());
+      key = keyDeserializer.deserialize(key);
+      keyDeserialized = true;
+    }
     return key; 
   }
 
+  /**
+   * Remember the raw bytes of the key the input is positioned on as the
+   * start of a new group.
+   */
+  private void setCurrentRawKey() throws IOException {
+    DataInputBuffer rawKey = in.getKey();
+    currentRawKey.set(rawKey.getData(), rawKey.getPosition(),
+        rawKey.getLength() - rawKey.getPosition());
+    keyDeserialized = false;
+  }
+
   /** 
    * read the next key 
    */
@@ -122,9 +149,10 @@ public class ValuesIterator<KEY,VALUE> implements Iterator<VALUE> {
     more = in.next();
     if (more) {
       DataInputBuffer nextKeyBytes = in.getKey();
-      keyIn.reset(nextKeyBytes.getData(), nextKeyBytes.getPosition(), nextKeyBytes.getLength());
-      nextKey = keyDeserializer.deserialize(nextKey);
-      hasNext = key != null && (comparator.compare(key, nextKey) == 0);
+      hasNext = comparator.compare(
+          currentRawKey.getBytes(), 0, currentRawKey.getLength(),
+          nextKeyBytes.getData(), nextKeyBytes.getPosition(),
+          nextKeyBytes.getLength() - nextKeyBytes.getPosition()) == 0;
     } else {
       hasNext = false;
     }
@@ -136,7 +164,8 @@ public class ValuesIterator<KEY,VALUE> implements Iterator<VALUE> {
    */
   private void readNextValue() throws IOException {
     DataInputBuffer nextValueBytes = in.getValue();
-    valueIn.reset(nextValueBytes.getData(), nextValueBytes.getPosition(), nextValueBytes.getLength());
+    valueIn.reset(nextValueBytes.getData(), nextValueBytes.getPosition(),
+        nextValueBytes.getLength() - nextValueBytes.getPosition());
     value = valDeserializer.deserialize(value);
   }
 }
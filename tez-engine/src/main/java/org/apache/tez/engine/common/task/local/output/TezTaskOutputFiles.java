@@ -18,6 +18,7 @@
 
 package org.apache.tez.engine.common.task.local.output;
 
+import java.io.File;
 import java.io.IOException;
 
 import org.apache.commons.logging.Log;
@@ -58,6 +59,9 @@ public class TezTaskOutputFiles extends TezTaskOutput {
   private LocalDirAllocator lDirAlloc = 
     new LocalDirAllocator(TezJobConfig.LOCAL_DIRS);
 
+  // next local dir to use when striping files over the volumes
+  private int nextVolume = -1;
+
   private Path getAttemptOutputDir() {
     LOG.info("DEBUG: getAttemptOutputDir: "
         + Constants.TASK_OUTPUT_DIR + "/"
@@ -88,6 +92,10 @@ public class TezTaskOutputFiles extends TezTaskOutput {
   public Path getOutputFileForWrite(long size) throws IOException {
     Path attemptOutput = 
       new Path(getAttemptOutputDir(), Constants.TEZ_ENGINE_TASK_OUTPUT_FILENAME_STRING);
+    Path rotated = getPathForWriteOnNextVolume(attemptOutput.toString(), size);
+    if (rotated != null) {
+      return rotated;
+    }
     return lDirAlloc.getLocalPathForWrite(attemptOutput.toString(), size, conf);
   }
 
@@ -163,9 +171,13 @@ public class TezTaskOutputFiles extends TezTaskOutput {
    */
   public Path getSpillFileForWrite(int spillNumber, long size)
       throws IOException {
-    return lDirAlloc.getLocalPathForWrite(
-        String.format(String.format(SPILL_FILE_PATTERN,
-            conf.get(Constants.TEZ_ENGINE_TASK_ATTEMPT_ID), spillNumber)), size, conf);
+    String spillFile = String.format(SPILL_FILE_PATTERN,
+        conf.get(Constants.TEZ_ENGINE_TASK_ATTEMPT_ID), spillNumber);
+    Path rotated = getPathForWriteOnNextVolume(spillFile, size);
+    if (rotated != null) {
+      return rotated;
+    }
+    return lDirAlloc.getLocalPathForWrite(spillFile, size, conf);
   }
 
   /**
@@ -223,6 +235,43 @@ public class TezTaskOutputFiles extends TezTaskOutput {
         size, conf);
   }
 
+  /**
+   * Create a file name in the local dir following the one used last, so
+   * that consecutive spills and the final output of the task are written to
+   * different volumes. Files are still found by the LocalDirAllocator when
+   * read back.
+   *
+   * @return the path, or null if rotation is disabled or no local dir has
+   *         enough space
+   */
+  private Path getPathForWriteOnNextVolume(String pathStr, long size) {
+    if (!conf.getBoolean(TezJobConfig.TEZ_ENGINE_SPILL_ROTATE_VOLUMES,
+        TezJobConfig.DEFAULT_TEZ_ENGINE_SPILL_ROTATE_VOLUMES)) {
+      return null;
+    }
+    String[] localDirs = conf.getTrimmedStrings(TezJobConfig.LOCAL_DIRS);
+    if (localDirs == null || localDirs.length < 2) {
+      return null;
+    }
+    if (nextVolume < 0) {
+      // spread the tasks running on a node over the volumes too
+      String attemptId = conf.get(Constants.TEZ_ENGINE_TASK_ATTEMPT_ID);
+      nextVolume = attemptId == null ? 0
+          : (attemptId.hashCode() & Integer.MAX_VALUE) % localDirs.length;
+    }
+    for (int i = 0; i < localDirs.length; ++i) {
+      int volume = (nextVolume + i) % localDirs.length;
+      Path dir = new Path(localDirs[volume]);
+      File dirFile = new File(dir.toUri().getPath());
+      if ((dirFile.isDirectory() || dirFile.mkdirs()) && dirFile.canWrite()
+          && dirFile.getUsableSpace() > size) {
+        nextVolume = (volume + 1) % localDirs.length;
+        return new Path(dir, pathStr);
+      }
+    }
+    return null;
+  }
+
   /** Removes all of the files related to a task. */
   public void removeAll() throws IOException {
     throw new UnsupportedOperationException("Incompatible with LocalRunner");
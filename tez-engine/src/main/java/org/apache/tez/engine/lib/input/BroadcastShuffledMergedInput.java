@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.engine.lib.input;
+
+import java.io.IOException;
+
+import org.apache.tez.common.TezEngineTaskContext;
+import org.apache.tez.common.TezTaskReporter;
+import org.apache.tez.engine.common.shuffle.impl.Shuffle;
+
+/**
+ * {@link ShuffledMergedInput} for a ONE_TO_ALL edge: every task reads the
+ * complete, single-partition output of each source task. The outputs are
+ * fetched once per node and kept in a node-local cache which the other tasks
+ * on the node, including later tasks in reused containers, read instead of
+ * fetching again. The AM fails a vertex which reads it over another kind of
+ * edge.
+ */
+public class BroadcastShuffledMergedInput extends ShuffledMergedInput {
+
+  public BroadcastShuffledMergedInput(TezEngineTaskContext task) {
+    super(task);
+  }
+
+  @Override
+  protected Shuffle createShuffle(TezTaskReporter reporter)
+      throws IOException {
+    return new Shuffle(
+        task, runningTaskContext, getConf(), 
+        task.getInputSpecList().get(0).getNumInputs(),
+        reporter, 
+        runningTaskContext.getCombineProcessor(),
+        true);
+  }
+}
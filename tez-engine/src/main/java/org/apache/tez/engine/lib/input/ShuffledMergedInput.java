@@ -22,11 +22,17 @@ import java.io.IOException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
 import org.apache.tez.common.RunningTaskContext;
 import org.apache.tez.common.TezEngineTaskContext;
 import org.apache.tez.common.TezTaskReporter;
+import org.apache.tez.engine.api.BatchedInput;
 import org.apache.tez.engine.api.Input;
 import org.apache.tez.engine.api.Master;
+import org.apache.tez.engine.api.RecordBatch;
+import org.apache.tez.engine.common.ConfigUtils;
 import org.apache.tez.engine.common.combine.CombineInput;
 import org.apache.tez.engine.common.shuffle.impl.Shuffle;
 import org.apache.tez.engine.common.sort.impl.TezRawKeyValueIterator;
@@ -35,7 +41,7 @@ import org.apache.tez.engine.common.sort.impl.TezRawKeyValueIterator;
  * {@link ShuffledMergedInput} in an {@link Input} which shuffles intermediate
  * sorted data, merges them and provides key/<values> to the consumer. 
  */
-public class ShuffledMergedInput implements Input {
+public class ShuffledMergedInput implements BatchedInput {
 
   static final Log LOG = LogFactory.getLog(ShuffledMergedInput.class);
   TezRawKeyValueIterator rIter = null;
@@ -46,6 +52,12 @@ public class ShuffledMergedInput implements Input {
   private Configuration conf;
   private CombineInput raw;
 
+  // used by readBatch() only
+  private Deserializer<Object> keyDeserializer;
+  private Deserializer<Object> valueDeserializer;
+  private final DataInputBuffer keyBuffer = new DataInputBuffer();
+  private final DataInputBuffer valueBuffer = new DataInputBuffer();
+
   public ShuffledMergedInput(TezEngineTaskContext task) {
     this.task = task;
   }
@@ -58,17 +70,29 @@ public class ShuffledMergedInput implements Input {
       InterruptedException {
     this.conf = conf;
     
-    Shuffle shuffle = 
-      new Shuffle(
-          task, runningTaskContext, this.conf, 
-          task.getInputSpecList().get(0).getNumInputs(),
-          (TezTaskReporter)master, 
-          runningTaskContext.getCombineProcessor());
+    Shuffle shuffle = createShuffle((TezTaskReporter)master);
     rIter = shuffle.run();
     
     raw = new CombineInput(rIter);
   }
 
+  /**
+   * Create the {@link Shuffle} which fetches and merges the partition of the
+   * source outputs this input reads.
+   */
+  protected Shuffle createShuffle(TezTaskReporter reporter)
+      throws IOException {
+    return new Shuffle(
+        task, runningTaskContext, this.conf, 
+        task.getInputSpecList().get(0).getNumInputs(),
+        reporter, 
+        runningTaskContext.getCombineProcessor());
+  }
+
+  protected Configuration getConf() {
+    return conf;
+  }
+
   public boolean hasNext() throws IOException, InterruptedException {
     return raw.hasNext();
   }
@@ -83,6 +107,37 @@ public class ShuffledMergedInput implements Input {
     return raw.getNextValues();
   }
 
+  /**
+   * Deserializes the merged key/value pairs straight into the objects of the
+   * batch, without grouping the values of a key.
+   */
+  @Override
+  public boolean readBatch(RecordBatch batch)
+      throws IOException, InterruptedException {
+    if (keyDeserializer == null) {
+      SerializationFactory factory = new SerializationFactory(conf);
+      keyDeserializer = factory.getDeserializer(
+          ConfigUtils.<Object>getIntermediateInputKeyClass(conf));
+      keyDeserializer.open(keyBuffer);
+      valueDeserializer = factory.getDeserializer(
+          ConfigUtils.<Object>getIntermediateInputValueClass(conf));
+      valueDeserializer.open(valueBuffer);
+    }
+    batch.clear();
+    TezRawKeyValueIterator iter = getIterator();
+    while (!batch.isFull() && iter.next()) {
+      DataInputBuffer nextKey = iter.getKey();
+      keyBuffer.reset(nextKey.getData(), nextKey.getPosition(),
+          nextKey.getLength() - nextKey.getPosition());
+      DataInputBuffer nextValue = iter.getValue();
+      valueBuffer.reset(nextValue.getData(), nextValue.getPosition(),
+          nextValue.getLength() - nextValue.getPosition());
+      batch.add(keyDeserializer.deserialize(batch.getReusableKey()),
+          valueDeserializer.deserialize(batch.getReusableValue()));
+    }
+    return !batch.isEmpty();
+  }
+
   public float getProgress() throws IOException, InterruptedException {
     return raw.getProgress();
   }
@@ -22,8 +22,10 @@ import java.io.IOException;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.tez.common.RunningTaskContext;
 import org.apache.tez.common.TezEngineTaskContext;
+import org.apache.tez.engine.api.BatchedOutput;
 import org.apache.tez.engine.api.Master;
 import org.apache.tez.engine.api.Output;
+import org.apache.tez.engine.api.RecordBatch;
 import org.apache.tez.engine.common.sort.SortingOutput;
 import org.apache.tez.engine.common.sort.impl.ExternalSorter;
 import org.apache.tez.engine.common.sort.impl.dflt.DefaultSorter;
@@ -33,7 +35,7 @@ import org.apache.tez.engine.records.OutputContext;
  * {@link OnFileSortedOutput} is an {@link Output} which sorts key/value pairs 
  * written to it and persists it to a file.
  */
-public class OnFileSortedOutput implements SortingOutput {
+public class OnFileSortedOutput implements SortingOutput, BatchedOutput {
   
   protected ExternalSorter sorter;
   
@@ -56,6 +58,12 @@ public class OnFileSortedOutput implements SortingOutput {
     sorter.write(key, value);
   }
 
+  @Override
+  public void writeBatch(RecordBatch batch) throws IOException,
+      InterruptedException {
+    sorter.write(batch);
+  }
+
   public void close() throws IOException, InterruptedException {
     sorter.flush();
     sorter.close();
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.engine.lib.output;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.tez.common.TezEngineTaskContext;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezTaskReporter;
+import org.apache.tez.engine.api.Master;
+import org.apache.tez.engine.api.RecordBatch;
+import org.apache.tez.engine.common.semijoin.KeyBloomFilter;
+import org.apache.tez.engine.common.semijoin.KeyBytes;
+
+/**
+ * {@link OnFileSortedOutput} for the small side of a join. Besides sorting
+ * its output it builds a Bloom filter over the keys written and publishes it
+ * through the AM when closed, for {@link SemiJoinFilteredOutput}s of other
+ * vertices to drop records which cannot join.
+ */
+public class SemiJoinFilterBuildingOutput extends OnFileSortedOutput {
+
+  private static final Log LOG = 
+      LogFactory.getLog(SemiJoinFilterBuildingOutput.class);
+
+  private TezTaskReporter reporter;
+  private KeyBloomFilter filter;
+  private KeyBytes keyBytes;
+
+  public SemiJoinFilterBuildingOutput(TezEngineTaskContext task)
+      throws IOException {
+    super(task);
+  }
+
+  @Override
+  public void initialize(Configuration conf, Master master)
+      throws IOException, InterruptedException {
+    super.initialize(conf, master);
+    reporter = (TezTaskReporter) master;
+    filter = new KeyBloomFilter(
+        conf.getInt(TezJobConfig.TEZ_ENGINE_SEMIJOIN_FILTER_BITS,
+            TezJobConfig.DEFAULT_TEZ_ENGINE_SEMIJOIN_FILTER_BITS),
+        conf.getInt(TezJobConfig.TEZ_ENGINE_SEMIJOIN_FILTER_HASHES,
+            TezJobConfig.DEFAULT_TEZ_ENGINE_SEMIJOIN_FILTER_HASHES));
+    keyBytes = new KeyBytes(conf);
+  }
+
+  @Override
+  public void write(Object key, Object value) throws IOException,
+      InterruptedException {
+    keyBytes.set(key);
+    filter.add(keyBytes.getData(), 0, keyBytes.getLength());
+    super.write(key, value);
+  }
+
+  @Override
+  public void writeBatch(RecordBatch batch) throws IOException,
+      InterruptedException {
+    for (int i = 0; i < batch.size(); ++i) {
+      keyBytes.set(batch.getKey(i));
+      filter.add(keyBytes.getData(), 0, keyBytes.getLength());
+    }
+    super.writeBatch(batch);
+  }
+
+  @Override
+  public void close() throws IOException, InterruptedException {
+    super.close();
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    filter.write(out);
+    LOG.info("Publishing key filter of " + out.getLength() + " bytes");
+    reporter.publishKeyFilter(sorter.getTaskAttemptId(),
+        new BytesWritable(Arrays.copyOf(out.getData(), out.getLength())));
+  }
+}
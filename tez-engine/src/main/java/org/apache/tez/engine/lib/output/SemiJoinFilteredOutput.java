@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.engine.lib.output;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.tez.common.TezEngineTaskContext;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezTaskReporter;
+import org.apache.tez.engine.api.Master;
+import org.apache.tez.engine.api.RecordBatch;
+import org.apache.tez.engine.common.semijoin.KeyBloomFilter;
+import org.apache.tez.engine.common.semijoin.KeyBytes;
+
+/**
+ * {@link OnFileSortedOutput} for the large side of a join. Records whose key
+ * is not in the filter published by the {@link SemiJoinFilterBuildingOutput}
+ * of the vertex named by
+ * {@link TezJobConfig#TEZ_ENGINE_SEMIJOIN_FILTER_SOURCE_VERTEX} are dropped
+ * before they reach the sorter.
+ * 
+ * The filter is only available once that vertex has succeeded. Until then
+ * records pass through unfiltered and the AM is asked again every
+ * {@link TezJobConfig#TEZ_ENGINE_SEMIJOIN_FILTER_POLL_INTERVAL_MS}, so the
+ * task never waits for the other vertex.
+ */
+public class SemiJoinFilteredOutput extends OnFileSortedOutput {
+
+  private static final Log LOG = 
+      LogFactory.getLog(SemiJoinFilteredOutput.class);
+
+  private TezTaskReporter reporter;
+  private String sourceVertex;
+  private long pollInterval;
+  private long nextPoll;
+  // set once the source vertex has succeeded
+  private boolean filterResolved = false;
+  private KeyBloomFilter filter = null;
+  private KeyBytes keyBytes;
+
+  private long recordsWritten = 0;
+  private long recordsDropped = 0;
+
+  public SemiJoinFilteredOutput(TezEngineTaskContext task) throws IOException {
+    super(task);
+  }
+
+  @Override
+  public void initialize(Configuration conf, Master master)
+      throws IOException, InterruptedException {
+    super.initialize(conf, master);
+    reporter = (TezTaskReporter) master;
+    sourceVertex = 
+        conf.get(TezJobConfig.TEZ_ENGINE_SEMIJOIN_FILTER_SOURCE_VERTEX);
+    if (sourceVertex == null) {
+      throw new IOException(
+          TezJobConfig.TEZ_ENGINE_SEMIJOIN_FILTER_SOURCE_VERTEX + " not set");
+    }
+    pollInterval = 
+        conf.getLong(TezJobConfig.TEZ_ENGINE_SEMIJOIN_FILTER_POLL_INTERVAL_MS,
+            TezJobConfig.DEFAULT_TEZ_ENGINE_SEMIJOIN_FILTER_POLL_INTERVAL_MS);
+    keyBytes = new KeyBytes(conf);
+    fetchFilter();
+  }
+
+  private void fetchFilter() throws IOException {
+    nextPoll = System.currentTimeMillis() + pollInterval;
+    BytesWritable serialized = 
+        reporter.getVertexKeyFilter(sorter.getTaskAttemptId(), sourceVertex);
+    if (serialized == null) {
+      return;
+    }
+    filterResolved = true;
+    if (serialized.getLength() == 0) {
+      LOG.warn("Vertex " + sourceVertex + " published no key filter,"
+          + " not filtering");
+      return;
+    }
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(serialized.getBytes(), serialized.getLength());
+    filter = new KeyBloomFilter();
+    filter.readFields(in);
+    LOG.info("Applying key filter of " + sourceVertex + " after "
+        + recordsWritten + " records");
+  }
+
+  @Override
+  public void write(Object key, Object value) throws IOException,
+      InterruptedException {
+    if (!filterResolved && System.currentTimeMillis() >= nextPoll) {
+      fetchFilter();
+    }
+    ++recordsWritten;
+    if (filter != null) {
+      keyBytes.set(key);
+      if (!filter.mightContain(keyBytes.getData(), 0, keyBytes.getLength())) {
+        ++recordsDropped;
+        return;
+      }
+    }
+    super.write(key, value);
+  }
+
+  @Override
+  public void writeBatch(RecordBatch batch) throws IOException,
+      InterruptedException {
+    // records are dropped one by one
+    for (int i = 0; i < batch.size(); ++i) {
+      write(batch.getKey(i), batch.getValue(i));
+    }
+  }
+
+  @Override
+  public void close() throws IOException, InterruptedException {
+    super.close();
+    LOG.info("Dropped " + recordsDropped + " of " + recordsWritten
+        + " records not matching the keys of " + sourceVertex);
+  }
+}
@@ -18,9 +18,17 @@
 
 package org.apache.tez.engine.runtime;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -33,6 +41,8 @@ import org.apache.tez.engine.api.Output;
 import org.apache.tez.engine.api.Processor;
 import org.apache.tez.engine.task.RuntimeTask;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 public class RuntimeUtils {
 
   private static final Log LOG = LogFactory.getLog(RuntimeUtils.class);
@@ -135,4 +145,60 @@ public class RuntimeUtils {
       throw new RuntimeException(e);
     }
   }
+
+  /**
+   * Run the initializations of the inputs of a task, up to
+   * <code>threads</code> of them at a time, so that e.g. the shuffles of
+   * several inputs fetch at the same time. Waits for all of them; if one
+   * fails the others are interrupted and its failure is rethrown.
+   */
+  public static void initializeConcurrently(
+      List<? extends Callable<Void>> initializers, int threads)
+      throws IOException, InterruptedException {
+    threads = Math.min(threads, initializers.size());
+    if (threads <= 1) {
+      for (Callable<Void> initializer : initializers) {
+        try {
+          initializer.call();
+        } catch (Exception e) {
+          rethrow(e);
+        }
+      }
+      return;
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("IOInitializer #%d").build());
+    try {
+      // take them as they complete, so that a failure is seen right away
+      CompletionService<Void> completed =
+          new ExecutorCompletionService<Void>(pool);
+      for (Callable<Void> initializer : initializers) {
+        completed.submit(initializer);
+      }
+      for (int i = 0; i < initializers.size(); ++i) {
+        completed.take().get();
+      }
+    } catch (ExecutionException e) {
+      rethrow(e.getCause());
+    } finally {
+      // interrupts the others if one of them failed
+      pool.shutdownNow();
+    }
+  }
+
+  private static void rethrow(Throwable t)
+      throws IOException, InterruptedException {
+    if (t instanceof IOException) {
+      throw (IOException) t;
+    } else if (t instanceof InterruptedException) {
+      throw (InterruptedException) t;
+    } else if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    }
+    throw new IOException(t);
+  }
 }
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.common.combine;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.engine.common.sort.impl.IFile;
+import org.apache.tez.engine.common.sort.impl.TezRawKeyValueIterator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestHashAggregator {
+
+  public static class SumAggregator
+      implements Aggregator<Text, LongWritable> {
+    @Override
+    public LongWritable aggregate(Text key, LongWritable aggregate,
+        LongWritable value) {
+      aggregate.set(aggregate.get() + value.get());
+      return aggregate;
+    }
+  }
+
+  /** Keeps the last value of each key, as the one to keep. */
+  public static class LastValueAggregator
+      implements Aggregator<Text, LongWritable> {
+    @Override
+    public LongWritable aggregate(Text key, LongWritable aggregate,
+        LongWritable value) {
+      return value;
+    }
+  }
+
+  private Configuration conf;
+  private FileSystem rfs;
+  private Path workDir;
+
+  @Before
+  public void setup() throws IOException {
+    conf = new Configuration();
+    conf.setClass(TezJobConfig.TEZ_ENGINE_SHUFFLE_AGGREGATOR_CLASS,
+        SumAggregator.class, Aggregator.class);
+    conf.setClass(TezJobConfig.TEZ_ENGINE_INTERMEDIATE_INPUT_KEY_CLASS,
+        Text.class, Object.class);
+    conf.setClass(TezJobConfig.TEZ_ENGINE_INTERMEDIATE_INPUT_VALUE_CLASS,
+        LongWritable.class, Object.class);
+    rfs = FileSystem.getLocal(conf).getRaw();
+    workDir = new Path(System.getProperty("test.build.data", "/tmp"),
+        "TestHashAggregator").makeQualified(rfs);
+    rfs.delete(workDir, true);
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    rfs.delete(workDir, true);
+  }
+
+  public static String key(int i) {
+    return String.format("key%03d", i);
+  }
+
+  /**
+   * Write a sorted output with the keys from <code>from</code> to
+   * <code>to</code>, each with <code>repeat</code> values of 1.
+   */
+  public static Path writeOutput(Configuration conf, FileSystem fs,
+      Path file, int from, int to, int repeat) throws IOException {
+    IFile.Writer writer = new IFile.Writer(conf, fs, file, Text.class,
+        LongWritable.class, null, null);
+    for (int i = from; i < to; ++i) {
+      for (int r = 0; r < repeat; ++r) {
+        writer.append(new Text(key(i)), new LongWritable(1));
+      }
+    }
+    writer.close();
+    return file;
+  }
+
+  private IFile.Reader openOutput(String name, int from, int to, int repeat)
+      throws IOException {
+    Path file = writeOutput(conf, rfs, new Path(workDir, name), from, to,
+        repeat);
+    return new IFile.Reader(conf, rfs, file, null, null);
+  }
+
+  /**
+   * Add the values of the records of the iterator to the sums of their keys
+   * and close it.
+   */
+  public static void addTo(Map<String, Long> sums,
+      TezRawKeyValueIterator iter, boolean sorted) throws IOException {
+    Text key = new Text();
+    LongWritable value = new LongWritable();
+    String prev = null;
+    try {
+      while (iter.next()) {
+        DataInputBuffer keyIn = iter.getKey();
+        key.readFields(keyIn);
+        DataInputBuffer valueIn = iter.getValue();
+        value.readFields(valueIn);
+        String k = key.toString();
+        if (sorted && prev != null) {
+          Assert.assertTrue(prev + " before " + k, prev.compareTo(k) <= 0);
+        }
+        prev = k;
+        Long sum = sums.get(k);
+        sums.put(k, (sum == null ? 0 : sum) + value.get());
+      }
+    } finally {
+      iter.close();
+    }
+  }
+
+  @Test
+  public void testFoldOutputs() throws IOException {
+    HashAggregator aggregator = new HashAggregator(conf);
+    Assert.assertTrue(aggregator.fold(openOutput("out1", 0, 50, 2),
+        Long.MAX_VALUE));
+    Assert.assertTrue(aggregator.fold(openOutput("out2", 25, 75, 1),
+        Long.MAX_VALUE));
+    Assert.assertEquals(150, aggregator.getNumFolded());
+    Assert.assertEquals(75, aggregator.getNumKeys());
+    Assert.assertTrue(aggregator.getMemoryUsed()
+        > 75 * HashAggregator.ENTRY_OVERHEAD);
+
+    Map<String, Long> sums = new HashMap<String, Long>();
+    addTo(sums, aggregator.iterator(), false);
+    Assert.assertEquals(75, sums.size());
+    for (int i = 0; i < 75; ++i) {
+      long expected = (i < 50 ? 2 : 0) + (i >= 25 ? 1 : 0);
+      Assert.assertEquals(key(i), expected, (long) sums.get(key(i)));
+    }
+    Assert.assertEquals(0, aggregator.getNumKeys());
+    Assert.assertEquals(0, aggregator.getMemoryUsed());
+  }
+
+  @Test
+  public void testAggregatorReturningValue() throws IOException {
+    conf.setClass(TezJobConfig.TEZ_ENGINE_SHUFFLE_AGGREGATOR_CLASS,
+        LastValueAggregator.class, Aggregator.class);
+    Path file = new Path(workDir, "out");
+    IFile.Writer writer = new IFile.Writer(conf, rfs, file, Text.class,
+        LongWritable.class, null, null);
+    for (int i = 0; i < 10; ++i) {
+      for (int v = 1; v <= 3; ++v) {
+        writer.append(new Text(key(i)), new LongWritable(i * 10 + v));
+      }
+    }
+    writer.close();
+
+    // the value returned as the aggregate is not overwritten by the next
+    // values read
+    HashAggregator aggregator = new HashAggregator(conf);
+    Assert.assertTrue(aggregator.fold(
+        new IFile.Reader(conf, rfs, file, null, null), Long.MAX_VALUE));
+    Map<String, Long> values = new HashMap<String, Long>();
+    addTo(values, aggregator.iterator(), false);
+    Assert.assertEquals(10, values.size());
+    for (int i = 0; i < 10; ++i) {
+      Assert.assertEquals(key(i), i * 10 + 3, (long) values.get(key(i)));
+    }
+  }
+
+  @Test
+  public void testFoldUpToMemoryLimit() throws IOException {
+    HashAggregator aggregator = new HashAggregator(conf);
+    long limit = 10 * HashAggregator.ENTRY_OVERHEAD;
+    IFile.Reader reader = openOutput("out", 0, 100, 3);
+
+    // each time the limit is reached the aggregates are taken sorted and
+    // the rest of the output is folded into an empty table
+    Map<String, Long> sums = new HashMap<String, Long>();
+    int spills = 0;
+    while (!aggregator.fold(reader, limit)) {
+      Assert.assertTrue(aggregator.getMemoryUsed() > limit);
+      int numKeys = aggregator.getNumKeys();
+      Assert.assertTrue(numKeys <= 11);
+      Map<String, Long> spilled = new HashMap<String, Long>();
+      addTo(spilled, aggregator.sortedIterator(
+          new Text.Comparator()), true);
+      Assert.assertEquals(numKeys, spilled.size());
+      for (Map.Entry<String, Long> entry : spilled.entrySet()) {
+        Long sum = sums.get(entry.getKey());
+        sums.put(entry.getKey(), (sum == null ? 0 : sum) + entry.getValue());
+      }
+      Assert.assertEquals(0, aggregator.getNumKeys());
+      Assert.assertEquals(0, aggregator.getMemoryUsed());
+      ++spills;
+    }
+    addTo(sums, aggregator.iterator(), false);
+
+    Assert.assertTrue(spills > 5);
+    Assert.assertEquals(300, aggregator.getNumFolded());
+    Assert.assertEquals(100, sums.size());
+    for (int i = 0; i < 100; ++i) {
+      // including keys whose values were split over two spills
+      Assert.assertEquals(key(i), 3, (long) sums.get(key(i)));
+    }
+  }
+}
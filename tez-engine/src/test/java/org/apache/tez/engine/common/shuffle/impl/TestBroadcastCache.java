@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.common.shuffle.impl;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.yarn.util.BuilderUtils;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBroadcastCache {
+
+  private static final long LOCK_TIMEOUT = 400;
+
+  private Configuration conf;
+  private File localDir;
+  private TezTaskAttemptID mapId;
+
+  @Before
+  public void setup() {
+    localDir = new File(System.getProperty("test.build.data", "/tmp"),
+        "TestBroadcastCache");
+    FileUtil.fullyDelete(localDir);
+    conf = new Configuration();
+    conf.set(TezJobConfig.LOCAL_DIRS, localDir.getAbsolutePath());
+    conf.setLong(TezJobConfig.TEZ_ENGINE_BROADCAST_CACHE_LOCK_TIMEOUT_MS,
+        LOCK_TIMEOUT);
+    mapId = attempt(1, 1, 0);
+  }
+
+  @After
+  public void cleanup() {
+    FileUtil.fullyDelete(localDir);
+  }
+
+  private static TezTaskAttemptID attempt(int dag, int vertex, int task) {
+    return new TezTaskAttemptID(new TezTaskID(new TezVertexID(
+        new TezDAGID(BuilderUtils.newApplicationId(1, 1), dag), vertex),
+        task), 0);
+  }
+
+  /** The cache of a task of the second vertex of <code>dag</code>. */
+  private BroadcastCache createCache(int dag, int task) {
+    return new BroadcastCache(conf, attempt(dag, 2, task));
+  }
+
+  private File getLock(TezTaskAttemptID output) {
+    return new File(new File(new File(localDir, "broadcast"),
+        output.getTaskID().getVertexID().getDAGId().toString()),
+        output + ".lock");
+  }
+
+  private static void write(BroadcastCache.Claim claim, int value)
+      throws IOException {
+    OutputStream out = claim.create();
+    out.write(value);
+    out.close();
+  }
+
+  private static int read(BroadcastCache cache, TezTaskAttemptID output)
+      throws IOException {
+    DataInputStream in = cache.open(output);
+    Assert.assertNotNull(in);
+    try {
+      return in.read();
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testClaimAndCommit() throws IOException {
+    BroadcastCache cache1 = createCache(1, 0);
+    BroadcastCache cache2 = createCache(1, 1);
+    Assert.assertNull(cache1.open(mapId));
+
+    BroadcastCache.Claim claim = cache1.claim(mapId);
+    Assert.assertNotNull(claim);
+    Assert.assertNull(cache2.claim(mapId));
+    write(claim, 42);
+    Assert.assertNull(cache2.open(mapId));
+
+    claim.commit();
+    Assert.assertFalse(getLock(mapId).exists());
+    Assert.assertEquals(42, read(cache2, mapId));
+    // giving up a committed claim does nothing
+    claim.release();
+    Assert.assertEquals(42, read(cache1, mapId));
+  }
+
+  @Test
+  public void testTakeOverStaleLock() throws IOException {
+    BroadcastCache cache1 = createCache(1, 0);
+    BroadcastCache cache2 = createCache(1, 1);
+    BroadcastCache cache3 = createCache(1, 2);
+    BroadcastCache.Claim claim1 = cache1.claim(mapId);
+    write(claim1, 1);
+    Assert.assertTrue(getLock(mapId).setLastModified(
+        System.currentTimeMillis() - 2 * LOCK_TIMEOUT));
+
+    BroadcastCache.Claim claim2 = cache2.claim(mapId);
+    Assert.assertNotNull(claim2);
+    write(claim2, 2);
+    // the first claimer neither frees the lock of the second one nor
+    // removes its copy
+    claim1.release();
+    Assert.assertTrue(getLock(mapId).exists());
+    Assert.assertNull(cache3.claim(mapId));
+
+    claim2.commit();
+    Assert.assertEquals(2, read(cache3, mapId));
+  }
+
+  @Test
+  public void testTouchKeepsLock() throws Exception {
+    BroadcastCache cache1 = createCache(1, 0);
+    BroadcastCache cache2 = createCache(1, 1);
+    BroadcastCache.Claim claim = cache1.claim(mapId);
+    write(claim, 1);
+    Assert.assertTrue(getLock(mapId).setLastModified(
+        System.currentTimeMillis() - 2 * LOCK_TIMEOUT));
+
+    Thread.sleep(LOCK_TIMEOUT / 2);
+    claim.touch();
+    Assert.assertNull(cache2.claim(mapId));
+    claim.release();
+    Assert.assertNotNull(cache2.claim(mapId));
+  }
+
+  @Test
+  public void testRemoveEarlierDags() throws IOException {
+    BroadcastCache.Claim claim = createCache(1, 0).claim(mapId);
+    write(claim, 1);
+    claim.commit();
+
+    TezTaskAttemptID nextMapId = attempt(2, 1, 0);
+    BroadcastCache cache = createCache(2, 0);
+    Assert.assertFalse(getLock(mapId).getParentFile().exists());
+    Assert.assertNull(cache.open(mapId));
+    Assert.assertNotNull(cache.claim(nextMapId));
+    Assert.assertTrue(getLock(nextMapId).exists());
+  }
+}
@@ -0,0 +1,338 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.common.shuffle.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.yarn.util.BuilderUtils;
+import org.apache.tez.common.Constants;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezTaskReporter;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.engine.common.sort.impl.IFile;
+import org.apache.tez.engine.common.sort.impl.TezIndexRecord;
+import org.apache.tez.engine.common.sort.impl.TezSpillRecord;
+import org.apache.tez.engine.common.task.local.output.TezTaskOutputFiles;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestFetcher {
+
+  private static final int PARTITION = 1;
+
+  /**
+   * Fetcher which checks the owners of local files as with security enabled,
+   * and has no shuffle server to connect to.
+   */
+  private static class LocalFetcher extends Fetcher {
+    final List<URL> connections = new ArrayList<URL>();
+    final List<String> openedFiles = new ArrayList<String>();
+
+    LocalFetcher(Configuration conf, TezTaskAttemptID reduceId,
+        ShuffleScheduler scheduler, MergeManager merger,
+        TezTaskReporter reporter, ShuffleClientMetrics metrics) {
+      super(conf, reduceId, PARTITION, null, scheduler, merger, reporter,
+          metrics, mock(ExceptionReporter.class), null);
+    }
+
+    @Override
+    protected HttpURLConnection openConnection(URL url) throws IOException {
+      connections.add(url);
+      throw new IOException("No shuffle server to connect to");
+    }
+
+    @Override
+    protected FileInputStream openLocalFile(File file, String owner)
+        throws IOException {
+      String fileOwner = FileSystem.getLocal(new Configuration()).getRaw()
+          .getFileStatus(new Path(file.getAbsolutePath())).getOwner();
+      if (!fileOwner.equals(owner)) {
+        throw new IOException("Owner '" + fileOwner + "' for path " + file
+            + " did not match expected owner '" + owner + "'");
+      }
+      openedFiles.add(file.getName());
+      return new FileInputStream(file);
+    }
+  }
+
+  private Configuration conf;
+  private FileSystem rfs;
+  private Path workDir;
+  private TezTaskAttemptID reduceId;
+  private TezTaskAttemptID mapId;
+  private MapHost host;
+  private ShuffleScheduler scheduler;
+  private MergeManager merger;
+  private ShuffleClientMetrics metrics;
+  private TezTaskReporter reporter;
+  private TezCounters counters;
+  private List<MapOutput> reserved;
+
+  @Before
+  public void setup() throws IOException {
+    conf = new Configuration();
+    rfs = FileSystem.getLocal(conf).getRaw();
+    workDir = new Path(System.getProperty("test.build.data", "/tmp"),
+        "TestFetcher").makeQualified(rfs);
+    rfs.delete(workDir, true);
+    Path localDir = new Path(workDir, "local");
+    rfs.mkdirs(localDir);
+    conf.set(TezJobConfig.LOCAL_DIRS, localDir.toUri().getPath());
+    conf.setBoolean(TezJobConfig.TEZ_ENGINE_SHUFFLE_LOCAL_READ_ENABLED, true);
+
+    TezVertexID vertexId = new TezVertexID(
+        new TezDAGID(BuilderUtils.newApplicationId(1, 1), 1), 1);
+    mapId = new TezTaskAttemptID(new TezTaskID(vertexId, 0), 0);
+    reduceId = new TezTaskAttemptID(new TezTaskID(
+        new TezVertexID(vertexId.getDAGId(), 2), PARTITION), 0);
+    String hostName = System.getenv("NM_HOST");
+    if (hostName == null) {
+      hostName = InetAddress.getLocalHost().getHostName();
+    }
+    host = new MapHost(hostName + ":8080",
+        "http://" + hostName + ":8080/mapOutput?job=job_1_1&reduce="
+        + PARTITION + "&map=");
+
+    scheduler = mock(ShuffleScheduler.class);
+    doReturn(new ArrayList<TezTaskAttemptID>(Arrays.asList(mapId)))
+        .when(scheduler).getMapsForHost(host);
+
+    reserved = new ArrayList<MapOutput>();
+    merger = mock(MergeManager.class);
+    doAnswer(new Answer<MapOutput>() {
+      @Override
+      public MapOutput answer(InvocationOnMock invocation) {
+        Object[] args = invocation.getArguments();
+        MapOutput output = new MapOutput((TezTaskAttemptID) args[0], merger,
+            (int) ((Long) args[1]).longValue(), true);
+        reserved.add(output);
+        return output;
+      }
+    }).when(merger).reserve(any(TezTaskAttemptID.class), anyLong(), anyInt());
+
+    metrics = mock(ShuffleClientMetrics.class);
+    counters = new TezCounters();
+    reporter = mock(TezTaskReporter.class);
+    doAnswer(new Answer<TezCounter>() {
+      @Override
+      public TezCounter answer(InvocationOnMock invocation) {
+        Object[] args = invocation.getArguments();
+        return counters.findCounter((String) args[0], (String) args[1]);
+      }
+    }).when(reporter).getCounter(anyString(), anyString());
+    doReturn(counters.findCounter("test", "MILLIS"))
+        .when(reporter).getCounter(any(Enum.class));
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    rfs.delete(workDir, true);
+  }
+
+  /**
+   * Write the output of the map with two partitions of ten records each,
+   * and its index, where the map would have left them.
+   *
+   * @return the index record of {@link #PARTITION}
+   */
+  private TezIndexRecord writeMapOutput() throws IOException {
+    Configuration mapConf = new Configuration(conf);
+    mapConf.set(Constants.TEZ_ENGINE_TASK_ATTEMPT_ID, mapId.toString());
+    TezTaskOutputFiles outputFiles = new TezTaskOutputFiles();
+    outputFiles.setConf(mapConf);
+
+    TezSpillRecord spillRecord = new TezSpillRecord(2);
+    FSDataOutputStream out =
+        rfs.create(outputFiles.getOutputFileForWrite(1024));
+    try {
+      for (int partition = 0; partition < 2; ++partition) {
+        long start = out.getPos();
+        IFile.Writer writer = new IFile.Writer(mapConf, out, Text.class,
+            LongWritable.class, null, null);
+        for (int i = 0; i < 10; ++i) {
+          writer.append(new Text("key" + partition + i),
+              new LongWritable(i));
+        }
+        writer.close();
+        spillRecord.putIndex(new TezIndexRecord(start,
+            writer.getRawLength(), writer.getCompressedLength()), partition);
+      }
+    } finally {
+      out.close();
+    }
+    spillRecord.writeToFile(outputFiles.getOutputIndexFileForWrite(1024),
+        mapConf);
+    return spillRecord.getIndex(PARTITION);
+  }
+
+  private byte[] readMapOutput(TezIndexRecord record) throws IOException {
+    Configuration mapConf = new Configuration(conf);
+    mapConf.set(Constants.TEZ_ENGINE_TASK_ATTEMPT_ID, mapId.toString());
+    TezTaskOutputFiles outputFiles = new TezTaskOutputFiles();
+    outputFiles.setConf(mapConf);
+    byte[] data = new byte[(int) record.getRawLength()];
+    FSDataInputStream in = rfs.open(outputFiles.getOutputFile());
+    try {
+      in.seek(record.getStartOffset());
+      IOUtils.readFully(in, data, 0, data.length);
+    } finally {
+      in.close();
+    }
+    return data;
+  }
+
+  private long getIoErrors() {
+    return counters.findCounter("Shuffle Errors", "IO_ERROR").getValue();
+  }
+
+  @Test
+  public void testReadLocalOutput() throws IOException {
+    TezIndexRecord record = writeMapOutput();
+    LocalFetcher fetcher = new LocalFetcher(conf, reduceId, scheduler,
+        merger, reporter, metrics);
+    fetcher.copyFromHost(host);
+
+    Assert.assertTrue(fetcher.connections.isEmpty());
+    Assert.assertEquals(Arrays.asList(
+        Constants.TEZ_ENGINE_TASK_OUTPUT_FILENAME_STRING
+            + Constants.TEZ_ENGINE_TASK_OUTPUT_INDEX_SUFFIX_STRING,
+        Constants.TEZ_ENGINE_TASK_OUTPUT_FILENAME_STRING),
+        fetcher.openedFiles);
+    verify(merger).reserve(eq(mapId), eq(record.getRawLength()), anyInt());
+    Assert.assertEquals(1, reserved.size());
+    Assert.assertArrayEquals(readMapOutput(record),
+        reserved.get(0).getMemory());
+    verify(scheduler).copySucceeded(eq(mapId), eq(host),
+        eq(record.getPartLength()), anyLong(), eq(reserved.get(0)));
+    verify(metrics).successFetch();
+    Assert.assertEquals(0, getIoErrors());
+  }
+
+  @Test
+  public void testMissingLocalOutput() throws IOException {
+    // e.g. an output an in-memory sorter kept
+    LocalFetcher fetcher = new LocalFetcher(conf, reduceId, scheduler,
+        merger, reporter, metrics);
+    fetcher.copyFromHost(host);
+
+    Assert.assertEquals(1, fetcher.connections.size());
+    Assert.assertTrue(fetcher.connections.get(0).toString()
+        .endsWith(mapId.toString()));
+    verify(merger, never()).reserve(any(TezTaskAttemptID.class), anyLong(),
+        anyInt());
+    // only the failed connection is an error
+    Assert.assertEquals(1, getIoErrors());
+  }
+
+  @Test
+  public void testLocalOutputOfOtherUser() throws Exception {
+    writeMapOutput();
+    LocalFetcher fetcher = UserGroupInformation.createRemoteUser(
+        "tez-other-user").doAs(new PrivilegedExceptionAction<LocalFetcher>() {
+          @Override
+          public LocalFetcher run() {
+            return new LocalFetcher(conf, reduceId, scheduler, merger,
+                reporter, metrics);
+          }
+        });
+    fetcher.copyFromHost(host);
+
+    Assert.assertEquals(1, fetcher.connections.size());
+    Assert.assertTrue(fetcher.openedFiles.isEmpty());
+    verify(merger, never()).reserve(any(TezTaskAttemptID.class), anyLong(),
+        anyInt());
+    Assert.assertEquals(1, getIoErrors());
+  }
+
+  @Test
+  public void testBadLocalOutputIsNotFetchError() throws IOException {
+    TezIndexRecord record = writeMapOutput();
+    // corrupt the first record of the partition
+    Configuration mapConf = new Configuration(conf);
+    mapConf.set(Constants.TEZ_ENGINE_TASK_ATTEMPT_ID, mapId.toString());
+    TezTaskOutputFiles outputFiles = new TezTaskOutputFiles();
+    outputFiles.setConf(mapConf);
+    Path dataFile = outputFiles.getOutputFile();
+    byte[] data = new byte[(int) rfs.getFileStatus(dataFile).getLen()];
+    FSDataInputStream in = rfs.open(dataFile);
+    try {
+      IOUtils.readFully(in, data, 0, data.length);
+    } finally {
+      in.close();
+    }
+    data[(int) record.getStartOffset() + 4] ^= 0xff;
+    FSDataOutputStream out = rfs.create(dataFile, true);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+
+    LocalFetcher fetcher = new LocalFetcher(conf, reduceId, scheduler,
+        merger, reporter, metrics);
+    fetcher.copyFromHost(host);
+
+    // the local read failed, and the output is fetched over HTTP instead
+    Assert.assertEquals(1, reserved.size());
+    Assert.assertEquals(1, fetcher.connections.size());
+    verify(scheduler, never()).copySucceeded(any(TezTaskAttemptID.class),
+        any(MapHost.class), anyLong(), anyLong(), any(MapOutput.class));
+    verify(scheduler).copyFailed(mapId, host, false);
+    verify(metrics, never()).failedFetch();
+    Assert.assertEquals(1, getIoErrors());
+  }
+}
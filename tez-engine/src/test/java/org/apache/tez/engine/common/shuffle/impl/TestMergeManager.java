@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.common.shuffle.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.yarn.util.BuilderUtils;
+import org.apache.tez.common.Constants;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.TezTaskReporter;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.engine.common.combine.Aggregator;
+import org.apache.tez.engine.common.combine.TestHashAggregator;
+import org.apache.tez.engine.common.sort.impl.TezRawKeyValueIterator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMergeManager {
+
+  private Configuration conf;
+  private FileSystem localFs;
+  private Path workDir;
+  private TezTaskAttemptID attemptId;
+  private TezCounter spilledRecords;
+
+  @Before
+  public void setup() throws IOException {
+    conf = new Configuration();
+    localFs = FileSystem.getLocal(conf);
+    workDir = new Path(System.getProperty("test.build.data", "/tmp"),
+        "TestMergeManager").makeQualified(localFs);
+    localFs.delete(workDir, true);
+
+    attemptId = new TezTaskAttemptID(new TezTaskID(new TezVertexID(
+        new TezDAGID(BuilderUtils.newApplicationId(1, 1), 1), 1), 0), 0);
+    conf.set(TezJobConfig.LOCAL_DIRS, new Path(workDir, "local").toString());
+    conf.set(Constants.TEZ_ENGINE_TASK_ATTEMPT_ID, attemptId.toString());
+    conf.setClass(TezJobConfig.TEZ_ENGINE_SHUFFLE_AGGREGATOR_CLASS,
+        TestHashAggregator.SumAggregator.class, Aggregator.class);
+    conf.setClass(TezJobConfig.TEZ_ENGINE_INTERMEDIATE_INPUT_KEY_CLASS,
+        Text.class, Object.class);
+    conf.setClass(TezJobConfig.TEZ_ENGINE_INTERMEDIATE_INPUT_VALUE_CLASS,
+        LongWritable.class, Object.class);
+    spilledRecords = new TezCounters().findCounter("test", "SPILLED");
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    localFs.delete(workDir, true);
+  }
+
+  private MergeManager createMergeManager(long taskMemory)
+      throws IOException {
+    conf.setLong(Constants.TEZ_ENGINE_TASK_MEMORY, taskMemory);
+    TezCounters counters = new TezCounters();
+    TezTaskReporter reporter = mock(TezTaskReporter.class);
+    doReturn(counters.findCounter("test", "MERGE_MILLIS"))
+        .when(reporter).getCounter(any(Enum.class));
+    return new MergeManager(attemptId, conf, localFs,
+        new LocalDirAllocator(TezJobConfig.LOCAL_DIRS), reporter, null,
+        spilledRecords, counters.findCounter("test", "COMBINE_INPUT"),
+        counters.findCounter("test", "MERGED_OUTPUTS"),
+        mock(ExceptionReporter.class),
+        new Progress());
+  }
+
+  /**
+   * Fetch four outputs of 100 keys each, shifted by 50 keys, with two
+   * values per key, and return the sums of the keys the merge manager
+   * gives.
+   */
+  private Map<String, Long> shuffle(MergeManager merger, boolean sorted)
+      throws Throwable {
+    for (int i = 0; i < 4; ++i) {
+      Path file = TestHashAggregator.writeOutput(conf, localFs,
+          new Path(workDir, "output" + i), i * 50, i * 50 + 100, 2);
+      merger.closeOnDiskFile(file);
+    }
+    TezRawKeyValueIterator iter = merger.close();
+    Map<String, Long> sums = new HashMap<String, Long>();
+    TestHashAggregator.addTo(sums, iter, sorted);
+    return sums;
+  }
+
+  private void verifySums(Map<String, Long> sums) {
+    Assert.assertEquals(250, sums.size());
+    for (int i = 0; i < 250; ++i) {
+      long expected = (i < 50 || i >= 200) ? 2 : 4;
+      Assert.assertEquals(TestHashAggregator.key(i), expected,
+          (long) sums.get(TestHashAggregator.key(i)));
+    }
+  }
+
+  @Test
+  public void testAggregatesInMemory() throws Throwable {
+    MergeManager merger = createMergeManager(64 * 1024 * 1024);
+    verifySums(shuffle(merger, false));
+    Assert.assertEquals(0, spilledRecords.getValue());
+  }
+
+  @Test
+  public void testAggregatesSpilledAndMerged() throws Throwable {
+    // room for a few dozen aggregates only
+    MergeManager merger = createMergeManager(8 * 1024);
+    Map<String, Long> sums = shuffle(merger, true);
+    verifySums(sums);
+    Assert.assertTrue(spilledRecords.getValue() > 0);
+  }
+}
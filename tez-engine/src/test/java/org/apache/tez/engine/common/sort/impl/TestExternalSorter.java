@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.common.sort.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.tez.common.counters.TezCounters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestExternalSorter {
+
+  private static final int PARTITIONS = 3;
+
+  private Configuration conf;
+  private FileSystem rfs;
+  private Path workDir;
+  private TestSorter sorter;
+
+  /** Only used for the final merge helpers of ExternalSorter. */
+  private static class TestSorter extends ExternalSorter {
+    TestSorter(Configuration conf, FileSystem rfs) {
+      super(null);
+      this.job = conf;
+      this.rfs = rfs;
+      this.copySingleSegments = true;
+      this.spilledRecordsCounter =
+          new TezCounters().findCounter("test", "SPILLED_RECORDS");
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void write(Object key, Object value) {
+    }
+  }
+
+  @Before
+  public void setup() throws IOException {
+    conf = new Configuration();
+    rfs = FileSystem.getLocal(conf).getRaw();
+    workDir = new Path(System.getProperty("test.build.data", "/tmp"),
+        "TestExternalSorter").makeQualified(rfs);
+    rfs.delete(workDir, true);
+    sorter = new TestSorter(conf, rfs);
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    rfs.delete(workDir, true);
+  }
+
+  /**
+   * Write a spill with the given number of records in each partition, as
+   * the sorters do, and return its index.
+   */
+  private TezSpillRecord writeSpill(Path file, int[] records)
+      throws IOException {
+    TezSpillRecord spillRec = new TezSpillRecord(PARTITIONS);
+    long[] recordCounts = new long[PARTITIONS];
+    FSDataOutputStream out = rfs.create(file);
+    try {
+      for (int i = 0; i < PARTITIONS; ++i) {
+        long segmentStart = out.getPos();
+        IFile.Writer writer = new IFile.Writer(conf, out, Text.class,
+            Text.class, null, sorter.spilledRecordsCounter);
+        for (int r = 0; r < records[i]; ++r) {
+          writer.append(new Text("key" + i + "_" + r), new Text("v" + r));
+        }
+        writer.close();
+        recordCounts[i] = writer.getNumRecordsWritten();
+        spillRec.putIndex(new TezIndexRecord(segmentStart,
+            writer.getRawLength(), writer.getCompressedLength()), i);
+      }
+    } finally {
+      out.close();
+    }
+    sorter.spillRecordCounts.add(recordCounts);
+    return spillRec;
+  }
+
+  private List<String> readSegment(Path file, TezIndexRecord index)
+      throws IOException {
+    List<String> keys = new ArrayList<String>();
+    FSDataInputStream in = rfs.open(file);
+    in.seek(index.getStartOffset());
+    IFile.Reader reader =
+        new IFile.Reader(conf, in, index.getPartLength(), null, null);
+    try {
+      DataInputBuffer key = new DataInputBuffer();
+      DataInputBuffer value = new DataInputBuffer();
+      Text text = new Text();
+      while (reader.nextRawKey(key)) {
+        reader.nextRawValue(value);
+        text.readFields(key);
+        keys.add(text.toString());
+      }
+    } finally {
+      reader.close();
+    }
+    return keys;
+  }
+
+  @Test
+  public void testCopySingleSegment() throws IOException {
+    Path[] spills = new Path[] { new Path(workDir, "spill0.out"),
+        new Path(workDir, "spill1.out") };
+    List<TezSpillRecord> indices = new ArrayList<TezSpillRecord>();
+    // partition 0 only in the first spill, 1 in both, 2 only in the second
+    indices.add(writeSpill(spills[0], new int[] { 3, 2, 0 }));
+    indices.add(writeSpill(spills[1], new int[] { 0, 1, 4 }));
+    long spilled = sorter.spilledRecordsCounter.getValue();
+    Assert.assertEquals(10, spilled);
+
+    Path finalFile = new Path(workDir, "file.out");
+    FSDataOutputStream finalOut = rfs.create(finalFile);
+    TezIndexRecord copied0;
+    TezIndexRecord copied1;
+    TezIndexRecord copied2;
+    try {
+      // something before the copies, so that their offsets change
+      finalOut.write(new byte[17]);
+      copied0 = sorter.copySingleSegment(spills, indices, 0, finalOut);
+      copied1 = sorter.copySingleSegment(spills, indices, 1, finalOut);
+      copied2 = sorter.copySingleSegment(spills, indices, 2, finalOut);
+    } finally {
+      finalOut.close();
+    }
+
+    Assert.assertNull("partition in two spills must be merged", copied1);
+    Assert.assertNotNull(copied0);
+    Assert.assertNotNull(copied2);
+    Assert.assertEquals(17, copied0.getStartOffset());
+    Assert.assertEquals(indices.get(0).getIndex(0).getRawLength(),
+        copied0.getRawLength());
+
+    // the copies are counted as if the records had been merged
+    Assert.assertEquals(spilled + 3 + 4,
+        sorter.spilledRecordsCounter.getValue());
+
+    List<String> keys = readSegment(finalFile, copied0);
+    Assert.assertEquals(3, keys.size());
+    Assert.assertEquals("key0_0", keys.get(0));
+    Assert.assertEquals("key0_2", keys.get(2));
+    keys = readSegment(finalFile, copied2);
+    Assert.assertEquals(4, keys.size());
+    Assert.assertEquals("key2_3", keys.get(3));
+  }
+
+  @Test
+  public void testCopyDisabled() throws IOException {
+    Path[] spills = new Path[] { new Path(workDir, "spill0.out") };
+    List<TezSpillRecord> indices = new ArrayList<TezSpillRecord>();
+    indices.add(writeSpill(spills[0], new int[] { 1, 1, 1 }));
+    sorter.copySingleSegments = false;
+    FSDataOutputStream finalOut = rfs.create(new Path(workDir, "file.out"));
+    try {
+      Assert.assertNull(
+          sorter.copySingleSegment(spills, indices, 0, finalOut));
+    } finally {
+      finalOut.close();
+    }
+  }
+}
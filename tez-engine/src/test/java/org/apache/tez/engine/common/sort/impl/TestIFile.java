@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.common.sort.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.engine.common.shuffle.impl.InMemoryReader;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestIFile {
+
+  private Configuration conf;
+  private FileSystem rfs;
+  private Path workDir;
+
+  @Before
+  public void setup() throws IOException {
+    conf = new Configuration();
+    rfs = FileSystem.getLocal(conf).getRaw();
+    workDir = new Path(System.getProperty("test.build.data", "/tmp"),
+        "TestIFile").makeQualified(rfs);
+    rfs.delete(workDir, true);
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    rfs.delete(workDir, true);
+  }
+
+  /**
+   * Sorted keys with long shared prefixes, repeated keys, keys sharing
+   * fewer bytes than are worth front-coding and an empty key.
+   */
+  private List<String> sortedKeys() {
+    List<String> keys = new ArrayList<String>();
+    keys.add("");
+    keys.add("a");
+    keys.add("ab");
+    for (int i = 0; i < 50; ++i) {
+      String key = "http://www.example.com/logs/2013/07/" + (100 + i / 3);
+      keys.add(key);
+      if (i % 5 == 0) {
+        keys.add(key);
+      }
+    }
+    keys.add("http://www.example.com/logs/2013/07/149/longer/than/before");
+    keys.add("https");
+    keys.add("zzz");
+    return keys;
+  }
+
+  private Text value(int i) {
+    return new Text("value" + i);
+  }
+
+  private IFile.Writer createWriter(Path file, boolean prefixKeys,
+      CompressionCodec codec) throws IOException {
+    Configuration writerConf = new Configuration(conf);
+    writerConf.setBoolean(TezJobConfig.TEZ_ENGINE_IFILE_PREFIX_KEYS,
+        prefixKeys);
+    return new IFile.Writer(writerConf, rfs, file, Text.class, Text.class,
+        codec, null);
+  }
+
+  /** Write through the serializing append. */
+  private IFile.Writer writeObjects(Path file, List<String> keys,
+      boolean prefixKeys, CompressionCodec codec) throws IOException {
+    IFile.Writer writer = createWriter(file, prefixKeys, codec);
+    for (int i = 0; i < keys.size(); ++i) {
+      writer.append(new Text(keys.get(i)), value(i));
+    }
+    writer.close();
+    return writer;
+  }
+
+  /** Write through the raw append, as merges do, reusing the key buffer. */
+  private IFile.Writer writeRaw(Path file, List<String> keys,
+      boolean prefixKeys) throws IOException {
+    IFile.Writer writer = createWriter(file, prefixKeys, null);
+    writer.setRLE(true);
+    DataOutputBuffer keyOut = new DataOutputBuffer();
+    DataOutputBuffer valueOut = new DataOutputBuffer();
+    DataInputBuffer key = new DataInputBuffer();
+    DataInputBuffer value = new DataInputBuffer();
+    for (int i = 0; i < keys.size(); ++i) {
+      keyOut.reset();
+      new Text(keys.get(i)).write(keyOut);
+      valueOut.reset();
+      value(i).write(valueOut);
+      key.reset(keyOut.getData(), keyOut.getLength());
+      value.reset(valueOut.getData(), valueOut.getLength());
+      writer.append(key, value);
+    }
+    writer.close();
+    return writer;
+  }
+
+  private void verify(IFile.Reader reader, List<String> keys)
+      throws IOException {
+    DataInputBuffer keyIn = new DataInputBuffer();
+    DataInputBuffer valueIn = new DataInputBuffer();
+    Text key = new Text();
+    Text value = new Text();
+    int i = 0;
+    try {
+      while (reader.nextRawKey(keyIn)) {
+        key.readFields(keyIn);
+        reader.nextRawValue(valueIn);
+        value.readFields(valueIn);
+        Assert.assertEquals("key " + i, keys.get(i), key.toString());
+        Assert.assertEquals(value(i), value);
+        ++i;
+      }
+    } finally {
+      reader.close();
+    }
+    Assert.assertEquals(keys.size(), i);
+  }
+
+  private void verifyFile(Path file, List<String> keys,
+      CompressionCodec codec) throws IOException {
+    FSDataInputStream in = rfs.open(file);
+    verify(new IFile.Reader(conf, in, rfs.getFileStatus(file).getLen(),
+        codec, null), keys);
+  }
+
+  private void verifyInMemory(Path file, IFile.Writer writer,
+      List<String> keys) throws IOException {
+    // in memory segments hold the uncompressed records without checksum
+    byte[] data = new byte[(int) writer.getRawLength()];
+    FSDataInputStream in = rfs.open(file);
+    try {
+      IOUtils.readFully(in, data, 0, data.length);
+    } finally {
+      in.close();
+    }
+    verify(new InMemoryReader(null, null, data, 0, data.length), keys);
+  }
+
+  @Test
+  public void testRoundTripWithoutPrefixKeys() throws IOException {
+    List<String> keys = sortedKeys();
+    Path file = new Path(workDir, "plain.out");
+    IFile.Writer writer = writeObjects(file, keys, false, null);
+    verifyFile(file, keys, null);
+    verifyInMemory(file, writer, keys);
+
+    writer = writeRaw(file, keys, false);
+    verifyFile(file, keys, null);
+    verifyInMemory(file, writer, keys);
+  }
+
+  @Test
+  public void testRoundTripWithPrefixKeys() throws IOException {
+    List<String> keys = sortedKeys();
+    Path plain = new Path(workDir, "plain.out");
+    Path prefixed = new Path(workDir, "prefixed.out");
+    long plainLength = writeObjects(plain, keys, false, null).getRawLength();
+    IFile.Writer writer = writeObjects(prefixed, keys, true, null);
+    Assert.assertTrue("front coding did not shrink the keys",
+        writer.getRawLength() < plainLength);
+    verifyFile(prefixed, keys, null);
+    verifyInMemory(prefixed, writer, keys);
+
+    writer = writeRaw(prefixed, keys, true);
+    Assert.assertTrue(writer.getRawLength() < plainLength);
+    verifyFile(prefixed, keys, null);
+    verifyInMemory(prefixed, writer, keys);
+  }
+
+  @Test
+  public void testRoundTripWithPrefixKeysCompressed() throws IOException {
+    List<String> keys = sortedKeys();
+    CompressionCodec codec = ReflectionUtils.newInstance(DefaultCodec.class,
+        conf);
+    Path file = new Path(workDir, "compressed.out");
+    writeObjects(file, keys, true, codec);
+    verifyFile(file, keys, codec);
+  }
+}
@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.common.sort.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.Progressable;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.engine.common.sort.impl.TezMerger.Segment;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPrefetchingInputStream {
+
+  private Configuration conf;
+  private FileSystem rfs;
+  private Path workDir;
+
+  @Before
+  public void setup() throws IOException {
+    conf = new Configuration();
+    conf.setBoolean(TezJobConfig.TEZ_ENGINE_MERGE_PREFETCH, true);
+    conf.setInt(TezJobConfig.TEZ_ENGINE_MERGE_PREFETCH_BUFFER_BYTES, 16);
+    conf.setLong(TezJobConfig.TEZ_ENGINE_MERGE_PREFETCH_MEMORY_BYTES, 64);
+    rfs = FileSystem.getLocal(conf).getRaw();
+    workDir = new Path(System.getProperty("test.build.data", "/tmp"),
+        "TestPrefetchingInputStream").makeQualified(rfs);
+    rfs.delete(workDir, true);
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    rfs.delete(workDir, true);
+  }
+
+  private Path writeBytes(String name, int length) throws IOException {
+    Path file = new Path(workDir, name);
+    FSDataOutputStream out = rfs.create(file);
+    try {
+      for (int i = 0; i < length; ++i) {
+        out.write(i);
+      }
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  @Test
+  public void testDisabledByDefault() {
+    Configuration defaults = new Configuration();
+    Assert.assertEquals(0, PrefetchingInputStream.getMemoryLimit(defaults));
+    Assert.assertNull(PrefetchingInputStream.createBudget(defaults));
+    Assert.assertNull(PrefetchingInputStream.open(defaults, null, null, 0, 1));
+  }
+
+  @Test
+  public void testReadsRange() throws IOException {
+    Path file = writeBytes("range", 200);
+    PrefetchingInputStream.Budget budget =
+        PrefetchingInputStream.createBudget(conf);
+    PrefetchingInputStream in =
+        PrefetchingInputStream.open(conf, budget, rfs.open(file), 10, 100);
+    Assert.assertNotNull(in);
+    Assert.assertEquals(32, budget.getReserved());
+    try {
+      byte[] buf = new byte[7];
+      int expected = 10;
+      int n;
+      // reads of a size other than the buffers cross buffer boundaries
+      while ((n = in.read(buf, 0, buf.length)) > 0) {
+        for (int i = 0; i < n; ++i) {
+          Assert.assertEquals((byte) expected++, buf[i]);
+        }
+      }
+      Assert.assertEquals(110, expected);
+      Assert.assertEquals(-1, in.read());
+    } finally {
+      in.close();
+    }
+    Assert.assertEquals(0, budget.getReserved());
+    // closing twice does not give the buffers back twice
+    in.close();
+    Assert.assertEquals(0, budget.getReserved());
+  }
+
+  @Test
+  public void testBudgetUsedUp() throws IOException {
+    Path file = writeBytes("budget", 100);
+    PrefetchingInputStream.Budget budget =
+        PrefetchingInputStream.createBudget(conf);
+    List<PrefetchingInputStream> streams =
+        new ArrayList<PrefetchingInputStream>();
+    try {
+      // 64 bytes hold the two 16 byte buffers of two streams
+      for (int i = 0; i < 2; ++i) {
+        PrefetchingInputStream in =
+            PrefetchingInputStream.open(conf, budget, rfs.open(file), 0, 100);
+        Assert.assertNotNull(in);
+        streams.add(in);
+      }
+      Assert.assertNull(
+          PrefetchingInputStream.open(conf, budget, rfs.open(file), 0, 100));
+      Assert.assertEquals(64, budget.getReserved());
+
+      streams.remove(0).close();
+      PrefetchingInputStream in =
+          PrefetchingInputStream.open(conf, budget, rfs.open(file), 0, 100);
+      Assert.assertNotNull(in);
+      streams.add(in);
+      // a budget belongs to one merge, others have their own
+      Assert.assertNotNull(PrefetchingInputStream.open(conf,
+          PrefetchingInputStream.createBudget(conf), rfs.open(file), 0, 100));
+    } finally {
+      for (PrefetchingInputStream in : streams) {
+        in.close();
+      }
+    }
+    Assert.assertEquals(0, budget.getReserved());
+  }
+
+  private Path writeSegment(String name, String[] keys) throws IOException {
+    Path file = new Path(workDir, name);
+    FSDataOutputStream out = rfs.create(file);
+    IFile.Writer writer =
+        new IFile.Writer(conf, out, Text.class, Text.class, null, null);
+    for (String key : keys) {
+      writer.append(new Text(key), new Text("v"));
+    }
+    writer.close();
+    out.close();
+    return file;
+  }
+
+  @Test
+  public void testMergeWithPrefetch() throws IOException {
+    // more segments than the budget holds, some are read synchronously
+    List<Segment> segments = new ArrayList<Segment>();
+    for (int s = 0; s < 4; ++s) {
+      String[] keys = new String[20];
+      for (int i = 0; i < keys.length; ++i) {
+        keys[i] = String.format("key%03d", i * 4 + s);
+      }
+      segments.add(new Segment(conf, rfs, writeSegment("seg" + s, keys),
+          null, false));
+    }
+    TezCounter readsCounter = new TezCounters().findCounter("test", "READS");
+    TezRawKeyValueIterator iter = TezMerger.merge(conf, rfs, Text.class,
+        Text.class, segments, 10, new Path(workDir, "tmp"),
+        WritableComparator.get(Text.class), new Progressable() {
+          @Override
+          public void progress() {
+          }
+        }, readsCounter, null, new Progress());
+    Text key = new Text();
+    int count = 0;
+    while (iter.next()) {
+      DataInputBuffer keyBuffer = iter.getKey();
+      key.readFields(keyBuffer);
+      Assert.assertEquals(String.format("key%03d", count++), key.toString());
+    }
+    iter.close();
+    Assert.assertEquals(80, count);
+    Assert.assertEquals(80, readsCounter.getValue());
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.engine.runtime;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRuntimeUtils {
+
+  /**
+   * Waits for all the initializers of a latch to have started, as inputs
+   * fetching from each other's sources would.
+   */
+  private static class WaitingInitializer implements Callable<Void> {
+    private final CountDownLatch started;
+    volatile boolean interrupted = false;
+
+    WaitingInitializer(CountDownLatch started) {
+      this.started = started;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      started.countDown();
+      try {
+        if (!started.await(10, TimeUnit.SECONDS)) {
+          throw new IOException("not run concurrently");
+        }
+      } catch (InterruptedException e) {
+        interrupted = true;
+        throw e;
+      }
+      return null;
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testInitializeConcurrently() throws Exception {
+    CountDownLatch started = new CountDownLatch(3);
+    List<WaitingInitializer> initializers = new ArrayList<WaitingInitializer>();
+    for (int i = 0; i < 3; ++i) {
+      initializers.add(new WaitingInitializer(started));
+    }
+    RuntimeUtils.initializeConcurrently(initializers, 4);
+    Assert.assertEquals(0, started.getCount());
+  }
+
+  @Test(timeout = 20000)
+  public void testInitializeSerially() throws Exception {
+    final List<Thread> threads = new ArrayList<Thread>();
+    List<Callable<Void>> initializers = new ArrayList<Callable<Void>>();
+    for (int i = 0; i < 3; ++i) {
+      initializers.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          threads.add(Thread.currentThread());
+          return null;
+        }
+      });
+    }
+    RuntimeUtils.initializeConcurrently(initializers, 1);
+    Assert.assertEquals(3, threads.size());
+    for (Thread thread : threads) {
+      Assert.assertSame(Thread.currentThread(), thread);
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testFailureInterruptsOthers() throws Exception {
+    // the waiting one never sees the failing one start
+    WaitingInitializer waiting = new WaitingInitializer(new CountDownLatch(2));
+    List<Callable<Void>> initializers = new ArrayList<Callable<Void>>();
+    initializers.add(waiting);
+    initializers.add(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        Thread.sleep(100);
+        throw new IOException("shuffle failed");
+      }
+    });
+    try {
+      RuntimeUtils.initializeConcurrently(initializers, 2);
+      Assert.fail("expected the failure of the second initializer");
+    } catch (IOException e) {
+      Assert.assertEquals("shuffle failed", e.getMessage());
+    }
+    for (int i = 0; i < 100 && !waiting.interrupted; ++i) {
+      Thread.sleep(50);
+    }
+    Assert.assertTrue(waiting.interrupted);
+  }
+}
@@ -39,6 +39,7 @@ import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.ipc.ProtocolSignature;
 import org.apache.hadoop.mapreduce.Cluster.JobTrackerStatus;
@@ -78,6 +79,8 @@ import org.apache.tez.engine.common.task.local.output.TezTaskOutput;
 import org.apache.tez.engine.lib.input.LocalMergedInput;
 import org.apache.tez.engine.lib.output.LocalOnFileSorterOutput;
 import org.apache.tez.engine.records.OutputContext;
+import org.apache.tez.engine.records.TezHeartbeatRequest;
+import org.apache.tez.engine.records.TezHeartbeatResponse;
 import org.apache.tez.engine.records.TezTaskDependencyCompletionEventsUpdate;
 import org.apache.tez.engine.runtime.RuntimeUtils;
 import org.apache.tez.mapreduce.hadoop.IDConverter;
@@ -665,6 +668,39 @@ public class LocalJobRunner implements ClientProtocol {
       // TODO TEZAM5 Really depends on the module - inmem shuffle or not.
       return new ProceedToCompletionResponse(true, true);
     }
+
+    @Override
+    public TezHeartbeatResponse heartbeat(TezHeartbeatRequest request)
+        throws IOException, InterruptedException {
+      TezTaskAttemptID taskAttemptId = request.getTaskAttemptId();
+      TezHeartbeatResponse response = new TezHeartbeatResponse();
+      if (request.getStatus() != null) {
+        statusUpdate(taskAttemptId, request.getStatus());
+      }
+      if (request.getFromEventIdx() >= 0) {
+        response.setEventsUpdate(getDependentTasksCompletionEvents(
+            request.getFromEventIdx(), request.getMaxEvents(), taskAttemptId));
+      }
+      if (request.askProceedToCompletion()) {
+        response.setProceedToCompletion(proceedToCompletion(taskAttemptId));
+      }
+      if (request.askCanCommit()) {
+        response.setCanCommit(canCommit(taskAttemptId));
+      }
+      return response;
+    }
+
+    @Override
+    public void publishKeyFilter(TezTaskAttemptID taskAttemptId,
+        BytesWritable filter) throws IOException {
+      // no other vertices to hand it to
+    }
+
+    @Override
+    public BytesWritable getVertexKeyFilter(TezTaskAttemptID taskAttemptId,
+        String vertexName) throws IOException {
+      return null;
+    }
   }
 
   public LocalJobRunner(Configuration conf) throws IOException {
@@ -0,0 +1,401 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.mapreduce.hadoop;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.yarn.util.RackResolver;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.mapreduce.input.TezGroupedSplit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Computes the input splits of a map vertex in the AM. The splits of input
+ * formats based on {@link FileInputFormat} are computed in parallel over the
+ * input directories, and small splits can be grouped by node and rack into
+ * {@link TezGroupedSplit}s. Each resulting split is serialized into a
+ * payload which is sent to its task along with the task, so tasks do not
+ * need to read the split files.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class InputSplitGenerator {
+
+  private static final Log LOG = LogFactory.getLog(InputSplitGenerator.class);
+
+  /**
+   * A split, or group of splits, read by a single task.
+   */
+  public static class TaskSplit {
+    private final byte[] payload;
+    private final String[] hosts;
+    private final String[] racks;
+
+    TaskSplit(byte[] payload, String[] hosts, String[] racks) {
+      this.payload = payload;
+      this.hosts = hosts;
+      this.racks = racks;
+    }
+
+    /**
+     * @return the split, as read by {@link InputSplitGenerator#readSplit}
+     */
+    public byte[] getPayload() {
+      return payload;
+    }
+
+    public String[] getHosts() {
+      return hosts;
+    }
+
+    /**
+     * @return the racks, or null if the hosts are known.
+     */
+    public String[] getRacks() {
+      return racks;
+    }
+  }
+
+  /**
+   * Compute the splits for the map vertex configured by <code>conf</code>,
+   * largest first.
+   */
+  public static TaskSplit[] generate(JobConf conf) throws IOException {
+    long start = System.currentTimeMillis();
+    List<TaskSplit> taskSplits = new ArrayList<TaskSplit>();
+    try {
+      if (conf.getUseNewMapper()) {
+        List<InputSplit> splits = getNewSplits(conf);
+        if (conf.getBoolean(TezConfiguration.DAG_AM_GROUP_SPLITS,
+            TezConfiguration.DAG_AM_GROUP_SPLITS_DEFAULT)) {
+          splits = groupSplits(splits, conf.getLong(
+              TezConfiguration.DAG_AM_GROUPING_SPLIT_SIZE,
+              TezConfiguration.DAG_AM_GROUPING_SPLIT_SIZE_DEFAULT), conf);
+        }
+        sortNewSplits(splits);
+        for (InputSplit split : splits) {
+          String rack = (split instanceof TezGroupedSplit)
+              ? ((TezGroupedSplit) split).getRack() : null;
+          taskSplits.add(new TaskSplit(writeSplit(split, conf),
+              rack == null ? split.getLocations() : null,
+              rack == null ? null : new String[] { rack }));
+        }
+      } else {
+        org.apache.hadoop.mapred.InputSplit[] splits =
+            conf.getInputFormat().getSplits(conf, conf.getNumMapTasks());
+        sortOldSplits(splits);
+        for (org.apache.hadoop.mapred.InputSplit split : splits) {
+          taskSplits.add(new TaskSplit(writeSplit(split, conf),
+              split.getLocations(), null));
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new IOException("Interrupted while generating splits", e);
+    }
+    LOG.info("Generated " + taskSplits.size() + " splits in "
+        + (System.currentTimeMillis() - start) + " ms");
+    return taskSplits.toArray(new TaskSplit[taskSplits.size()]);
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static List<InputSplit> getNewSplits(JobConf conf)
+      throws IOException, InterruptedException {
+    JobContext jobContext = new JobContextImpl(conf, null);
+    final Class<? extends InputFormat> inputFormatClass;
+    try {
+      inputFormatClass = jobContext.getInputFormatClass();
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    }
+    InputFormat inputFormat =
+        ReflectionUtils.newInstance(inputFormatClass, conf);
+    int threads = conf.getInt(
+        TezConfiguration.DAG_AM_SPLIT_GENERATION_THREADS,
+        TezConfiguration.DAG_AM_SPLIT_GENERATION_THREADS_DEFAULT);
+    Path[] dirs = FileInputFormat.getInputPaths(jobContext);
+
+    // splits of combining input formats depend on all the input together
+    if (threads <= 1 || dirs.length <= 1
+        || !(inputFormat instanceof FileInputFormat)
+        || inputFormat instanceof CombineFileInputFormat) {
+      return new ArrayList<InputSplit>(inputFormat.getSplits(jobContext));
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(
+        Math.min(threads, dirs.length), new ThreadFactoryBuilder()
+            .setNameFormat("InputSplitGenerator #%d")
+            .setDaemon(true)
+            .build());
+    try {
+      List<Future<List<InputSplit>>> futures =
+          new ArrayList<Future<List<InputSplit>>>(dirs.length);
+      for (Path dir : dirs) {
+        final JobConf dirConf = new JobConf(conf);
+        dirConf.set(FileInputFormat.INPUT_DIR,
+            StringUtils.escapeString(dir.toString()));
+        futures.add(pool.submit(new Callable<List<InputSplit>>() {
+          @SuppressWarnings("unchecked")
+          @Override
+          public List<InputSplit> call() throws Exception {
+            InputFormat dirInputFormat =
+                ReflectionUtils.newInstance(inputFormatClass, dirConf);
+            return dirInputFormat.getSplits(
+                new JobContextImpl(dirConf, null));
+          }
+        }));
+      }
+      List<InputSplit> splits = new ArrayList<InputSplit>();
+      for (Future<List<InputSplit>> future : futures) {
+        splits.addAll(future.get());
+      }
+      return splits;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Group splits into groups of at least <code>targetSize</code> bytes: first
+   * splits on the same node, then what is left on the same rack, and finally
+   * the splits without locations. The remainder on each rack, and of the
+   * splits without locations, makes a smaller group.
+   */
+  static List<InputSplit> groupSplits(List<InputSplit> splits,
+      long targetSize, Configuration conf)
+      throws IOException, InterruptedException {
+    RackResolver.init(conf);
+    int numSplits = splits.size();
+    long[] lengths = new long[numSplits];
+    boolean[] grouped = new boolean[numSplits];
+    Map<String, List<Integer>> splitsByHost =
+        new LinkedHashMap<String, List<Integer>>();
+    List<Integer> noLocation = new ArrayList<Integer>();
+    for (int i = 0; i < numSplits; ++i) {
+      InputSplit split = splits.get(i);
+      lengths[i] = split.getLength();
+      String[] hosts = split.getLocations();
+      if (hosts == null || hosts.length == 0) {
+        noLocation.add(i);
+        continue;
+      }
+      for (String host : hosts) {
+        List<Integer> hostSplits = splitsByHost.get(host);
+        if (hostSplits == null) {
+          hostSplits = new ArrayList<Integer>();
+          splitsByHost.put(host, hostSplits);
+        }
+        hostSplits.add(i);
+      }
+    }
+
+    List<InputSplit> groups = new ArrayList<InputSplit>();
+    for (Map.Entry<String, List<Integer>> entry : splitsByHost.entrySet()) {
+      makeGroups(splits, lengths, grouped, entry.getValue(), targetSize,
+          new String[] { entry.getKey() }, null, false, groups, conf);
+    }
+
+    Map<String, List<Integer>> splitsByRack =
+        new LinkedHashMap<String, List<Integer>>();
+    for (List<Integer> hostSplits : splitsByHost.values()) {
+      for (int i : hostSplits) {
+        if (grouped[i]) {
+          continue;
+        }
+        String rack = RackResolver.resolve(
+            splits.get(i).getLocations()[0]).getNetworkLocation();
+        List<Integer> rackSplits = splitsByRack.get(rack);
+        if (rackSplits == null) {
+          rackSplits = new ArrayList<Integer>();
+          splitsByRack.put(rack, rackSplits);
+        }
+        rackSplits.add(i);
+      }
+    }
+    for (Map.Entry<String, List<Integer>> entry : splitsByRack.entrySet()) {
+      makeGroups(splits, lengths, grouped, entry.getValue(), targetSize,
+          null, entry.getKey(), true, groups, conf);
+    }
+
+    makeGroups(splits, lengths, grouped, noLocation, targetSize,
+        new String[0], null, true, groups, conf);
+
+    LOG.info("Grouped " + numSplits + " splits into " + groups.size()
+        + " groups of about " + targetSize + " bytes");
+    return groups;
+  }
+
+  private static void makeGroups(List<InputSplit> splits, long[] lengths,
+      boolean[] grouped, List<Integer> candidates, long targetSize,
+      String[] hosts, String rack, boolean includeRemainder,
+      List<InputSplit> groups, Configuration conf) {
+    List<Integer> current = new ArrayList<Integer>();
+    long size = 0;
+    for (int i : candidates) {
+      if (grouped[i]) {
+        continue;
+      }
+      current.add(i);
+      size += lengths[i];
+      if (size >= targetSize) {
+        groups.add(makeGroup(splits, grouped, current, size, hosts, rack,
+            conf));
+        current.clear();
+        size = 0;
+      }
+    }
+    if (includeRemainder && !current.isEmpty()) {
+      groups.add(makeGroup(splits, grouped, current, size, hosts, rack, conf));
+    }
+  }
+
+  private static InputSplit makeGroup(List<InputSplit> splits,
+      boolean[] grouped, List<Integer> members, long size, String[] hosts,
+      String rack, Configuration conf) {
+    for (int i : members) {
+      grouped[i] = true;
+    }
+    if (members.size() == 1) {
+      // keep the original split, so that mappers see its usual type
+      return splits.get(members.get(0));
+    }
+    List<InputSplit> wrapped = new ArrayList<InputSplit>(members.size());
+    for (int i : members) {
+      wrapped.add(splits.get(i));
+    }
+    TezGroupedSplit group = new TezGroupedSplit(wrapped, hosts, rack, size);
+    group.setConf(conf);
+    return group;
+  }
+
+  private static void sortNewSplits(List<InputSplit> splits)
+      throws IOException, InterruptedException {
+    final Map<InputSplit, Long> lengths =
+        new IdentityHashMap<InputSplit, Long>();
+    for (InputSplit split : splits) {
+      lengths.put(split, split.getLength());
+    }
+    Collections.sort(splits, new Comparator<InputSplit>() {
+      @Override
+      public int compare(InputSplit a, InputSplit b) {
+        return lengths.get(b).compareTo(lengths.get(a));
+      }
+    });
+  }
+
+  private static void sortOldSplits(
+      org.apache.hadoop.mapred.InputSplit[] splits) throws IOException {
+    final Map<org.apache.hadoop.mapred.InputSplit, Long> lengths =
+        new IdentityHashMap<org.apache.hadoop.mapred.InputSplit, Long>();
+    for (org.apache.hadoop.mapred.InputSplit split : splits) {
+      lengths.put(split, split.getLength());
+    }
+    Arrays.sort(splits, new Comparator<org.apache.hadoop.mapred.InputSplit>() {
+      @Override
+      public int compare(org.apache.hadoop.mapred.InputSplit a,
+          org.apache.hadoop.mapred.InputSplit b) {
+        return lengths.get(b).compareTo(lengths.get(a));
+      }
+    });
+  }
+
+  /**
+   * Serialize a split of either API in the format of the job split file: the
+   * class name followed by the split.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> byte[] writeSplit(T split, Configuration conf)
+      throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    Text.writeString(out, split.getClass().getName());
+    SerializationFactory factory = new SerializationFactory(conf);
+    Serializer<T> serializer =
+        factory.getSerializer((Class<T>) split.getClass());
+    serializer.open(out);
+    serializer.serialize(split);
+    serializer.close();
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  /**
+   * Read a split written by {@link #writeSplit(Object, Configuration)}.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T readSplit(byte[] payload, Configuration conf)
+      throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(payload, payload.length);
+    String className = Text.readString(in);
+    Class<T> cls;
+    try {
+      cls = (Class<T>) conf.getClassByName(className);
+    } catch (ClassNotFoundException ce) {
+      IOException wrap = new IOException("Split class " + className +
+          " not found");
+      wrap.initCause(ce);
+      throw wrap;
+    }
+    SerializationFactory factory = new SerializationFactory(conf);
+    Deserializer<T> deserializer = factory.getDeserializer(cls);
+    deserializer.open(in);
+    T split = deserializer.deserialize(null);
+    deserializer.close();
+    return split;
+  }
+}
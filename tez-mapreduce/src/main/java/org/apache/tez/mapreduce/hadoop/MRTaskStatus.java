@@ -48,6 +48,8 @@ public class MRTaskStatus implements TezTaskStatus {
   private TezCounters counters;
   
   private long localOutputSize;
+  private long[] partitionSizes;
+  private long[] partitionRecords;
   List<TezTaskAttemptID> failedTaskDependencies = 
       new ArrayList<TezTaskAttemptID>();
   
@@ -177,6 +179,22 @@ public class MRTaskStatus implements TezTaskStatus {
     return localOutputSize;
   }
 
+  @Override
+  public long[] getPartitionSizes() {
+    return partitionSizes;
+  }
+
+  @Override
+  public long[] getPartitionRecords() {
+    return partitionRecords;
+  }
+
+  @Override
+  public void setPartitionStats(long[] sizes, long[] records) {
+    this.partitionSizes = sizes;
+    this.partitionRecords = records;
+  }
+
   @Override
   public List<TezTaskAttemptID> getFailedDependencies() {
     return failedTaskDependencies;
@@ -268,6 +286,33 @@ public class MRTaskStatus implements TezTaskStatus {
     for(TezTaskAttemptID taskAttemptId : failedTaskDependencies) {
       taskAttemptId.write(out);
     }
+
+    writeLongArray(out, partitionSizes);
+    writeLongArray(out, partitionRecords);
+  }
+
+  private static void writeLongArray(DataOutput out, long[] array)
+      throws IOException {
+    if (array == null) {
+      WritableUtils.writeVInt(out, -1);
+      return;
+    }
+    WritableUtils.writeVInt(out, array.length);
+    for (long value : array) {
+      WritableUtils.writeVLong(out, value);
+    }
+  }
+
+  private static long[] readLongArray(DataInput in) throws IOException {
+    int length = WritableUtils.readVInt(in);
+    if (length < 0) {
+      return null;
+    }
+    long[] array = new long[length];
+    for (int i = 0; i < length; ++i) {
+      array[i] = WritableUtils.readVLong(in);
+    }
+    return array;
   }
 
   @Override
@@ -294,7 +339,9 @@ public class MRTaskStatus implements TezTaskStatus {
       TezTaskAttemptID taskAttemptId = TezTaskAttemptID.read(in);
       failedTaskDependencies.add(taskAttemptId);
     }
-    
+
+    partitionSizes = readLongArray(in);
+    partitionRecords = readLongArray(in);
   }
   
 }
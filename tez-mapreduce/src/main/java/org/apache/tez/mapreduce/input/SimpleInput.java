@@ -42,9 +42,13 @@ import org.apache.hadoop.mapreduce.split.JobSplit.TaskSplitIndex;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.tez.common.TezEngineTaskContext;
 import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TaskPhaseCounter;
 import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.engine.api.BatchedInput;
 import org.apache.tez.engine.api.Input;
 import org.apache.tez.engine.api.Master;
+import org.apache.tez.engine.api.RecordBatch;
+import org.apache.tez.mapreduce.hadoop.InputSplitGenerator;
 import org.apache.tez.mapreduce.processor.MRTask;
 import org.apache.tez.mapreduce.processor.MRTaskReporter;
 
@@ -56,11 +60,14 @@ import org.apache.tez.mapreduce.processor.MRTaskReporter;
  * {@link InputFormat} implementations.
  */
 @SuppressWarnings({ "unchecked", "rawtypes" })
-public class SimpleInput implements Input {
+public class SimpleInput implements BatchedInput {
 
   private static final Log LOG = LogFactory.getLog(SimpleInput.class);
   
   MRTask task;
+
+  // the split chosen by the AM, if any
+  private final byte[] splitPayload;
   
   boolean useNewApi;
   
@@ -81,9 +88,13 @@ public class SimpleInput implements Input {
   private TezCounter fileInputByteCounter; 
   private List<Statistics> fsStats;
   private MRTaskReporter reporter;
+  // set until the first record has been read
+  private long initStartTime;
 
   public SimpleInput(TezEngineTaskContext task)
-  {}
+  {
+    this.splitPayload = task.getSplitPayload();
+  }
   
   public void setTask(MRTask task) {
     this.task = task;
@@ -94,6 +105,7 @@ public class SimpleInput implements Input {
     if (task == null) {
       return;
     }
+    initStartTime = System.currentTimeMillis();
     
     if (conf instanceof JobConf) {
       jobConf = (JobConf)conf;
@@ -118,20 +130,37 @@ public class SimpleInput implements Input {
         throw new IOException(cnfe);
       }
       
-      newInputSplit = getNewSplitDetails(task.getSplitIndex());
+      if (splitPayload != null) {
+        newInputSplit = readSplitPayload();
+      } else {
+        newInputSplit = getNewSplitDetails(task.getSplitIndex());
+      }
+      org.apache.hadoop.mapreduce.InputSplit firstSplit = newInputSplit;
+      if (newInputSplit instanceof TezGroupedSplit) {
+        firstSplit =
+            ((TezGroupedSplit) newInputSplit).getWrappedSplits().get(0);
+      }
       List<Statistics> matchedStats = null;
-      if (newInputSplit instanceof org.apache.hadoop.mapreduce.lib.input.FileSplit) {
+      if (firstSplit instanceof org.apache.hadoop.mapreduce.lib.input.FileSplit) {
         matchedStats = MRTask.getFsStatistics(
             ((org.apache.hadoop.mapreduce.lib.input.FileSplit)
-                newInputSplit).getPath(), jobConf);
+                firstSplit).getPath(), jobConf);
       }
       fsStats = matchedStats;
-      newRecordReader = 
-          newInputFormat.createRecordReader(newInputSplit, taskAttemptContext);
+      if (newInputSplit instanceof TezGroupedSplit) {
+        newRecordReader = new TezGroupedSplitsRecordReader(newInputFormat);
+      } else {
+        newRecordReader = newInputFormat.createRecordReader(newInputSplit,
+            taskAttemptContext);
+      }
     } else {
       oldInputFormat = jobConf.getInputFormat();
-      org.apache.hadoop.mapred.InputSplit oldInputSplit =
-          getOldSplitDetails(task.getSplitIndex());
+      org.apache.hadoop.mapred.InputSplit oldInputSplit;
+      if (splitPayload != null) {
+        oldInputSplit = readSplitPayload();
+      } else {
+        oldInputSplit = getOldSplitDetails(task.getSplitIndex());
+      }
       
       List<Statistics> matchedStats = null;
       if (oldInputSplit instanceof FileSplit) {
@@ -169,10 +198,61 @@ public class SimpleInput implements Input {
     if (hasNext) {
       inputRecordCounter.increment(1);
     }
+    if (initStartTime != 0) {
+      // time to the first record includes opening the split
+      reporter.getCounter(TaskPhaseCounter.FIRST_RECORD_MILLIS).increment(
+          System.currentTimeMillis() - initStartTime);
+      initStartTime = 0;
+    }
     
     return hasNext;
   }
 
+  /**
+   * Batches are read into the key and value objects of the batch, which
+   * only record readers of the old API can do. Record readers of the new
+   * API reuse their own key and value objects, so their records are read
+   * one by one.
+   * 
+   * @throws UnsupportedOperationException if the input uses the new API
+   */
+  @Override
+  public boolean readBatch(RecordBatch batch)
+      throws IOException, InterruptedException {
+    if (useNewApi) {
+      throw new UnsupportedOperationException(
+          "Batches are only read with the old API");
+    }
+    batch.clear();
+    long bytesInPrev = getInputBytes();
+
+    while (!batch.isFull()) {
+      Object key = batch.getReusableKey();
+      Object value = batch.getReusableValue();
+      if (key == null) {
+        key = oldRecordReader.createKey();
+      }
+      if (value == null) {
+        value = oldRecordReader.createValue();
+      }
+      if (!oldRecordReader.next(key, value)) {
+        break;
+      }
+      batch.add(key, value);
+    }
+
+    long bytesInCurr = getInputBytes();
+    fileInputByteCounter.increment(bytesInCurr - bytesInPrev);
+    reporter.setProgress(getProgress());
+    inputRecordCounter.increment(batch.size());
+    if (initStartTime != 0) {
+      reporter.getCounter(TaskPhaseCounter.FIRST_RECORD_MILLIS).increment(
+          System.currentTimeMillis() - initStartTime);
+      initStartTime = 0;
+    }
+    return !batch.isEmpty();
+  }
+
   private SimpleValueIterator vIter = new SimpleValueIterator();
   private SimpleIterable valuesIterable =
       new SimpleIterable(vIter);
@@ -264,6 +344,13 @@ public class SimpleInput implements Input {
     return newRecordReader;
   }
   
+  private <T> T readSplitPayload() throws IOException {
+    T split = InputSplitGenerator.readSplit(splitPayload, jobConf);
+    reporter.getCounter(TaskCounter.SPLIT_RAW_BYTES).increment(
+        splitPayload.length);
+    return split;
+  }
+
   public org.apache.hadoop.mapred.InputSplit 
   getOldSplitDetails(TaskSplitIndex splitMetaInfo) 
       throws IOException {
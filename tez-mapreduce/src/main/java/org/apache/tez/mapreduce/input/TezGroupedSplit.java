@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.mapreduce.input;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.tez.mapreduce.hadoop.InputSplitGenerator;
+
+/**
+ * A group of splits of the new mapreduce API which is read by a single task
+ * with a {@link TezGroupedSplitsRecordReader}. Groups are made by
+ * {@link InputSplitGenerator} out of splits on the same node or rack.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class TezGroupedSplit extends InputSplit
+    implements Writable, Configurable {
+
+  private List<InputSplit> wrappedSplits;
+  private long length;
+  // only used in the AM, to place the task
+  private String[] locations;
+  private String rack;
+  private Configuration conf;
+
+  public TezGroupedSplit() {
+  }
+
+  public TezGroupedSplit(List<InputSplit> wrappedSplits, String[] locations,
+      String rack, long length) {
+    this.wrappedSplits = wrappedSplits;
+    this.locations = locations;
+    this.rack = rack;
+    this.length = length;
+  }
+
+  public List<InputSplit> getWrappedSplits() {
+    return wrappedSplits;
+  }
+
+  @Override
+  public long getLength() {
+    return length;
+  }
+
+  @Override
+  public String[] getLocations() {
+    return locations == null ? new String[0] : locations;
+  }
+
+  /**
+   * @return the rack the splits are on, or null if they are on the nodes
+   *         given by {@link #getLocations()}.
+   */
+  public String getRack() {
+    return rack;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeLong(length);
+    out.writeInt(wrappedSplits.size());
+    for (InputSplit split : wrappedSplits) {
+      byte[] payload = InputSplitGenerator.writeSplit(split, conf);
+      out.writeInt(payload.length);
+      out.write(payload);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    length = in.readLong();
+    int numSplits = in.readInt();
+    wrappedSplits = new ArrayList<InputSplit>(numSplits);
+    for (int i = 0; i < numSplits; ++i) {
+      byte[] payload = new byte[in.readInt()];
+      in.readFully(payload);
+      InputSplit split = InputSplitGenerator.readSplit(payload, conf);
+      wrappedSplits.add(split);
+    }
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  @Override
+  public String toString() {
+    return "TezGroupedSplit: " + wrappedSplits.size() + " splits, length: "
+        + length + ", splits: " + wrappedSplits;
+  }
+}
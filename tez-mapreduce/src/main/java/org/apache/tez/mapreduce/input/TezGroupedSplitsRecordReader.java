@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.mapreduce.input;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * Reads the splits of a {@link TezGroupedSplit} one after the other, each
+ * with a record reader of the job's {@link InputFormat}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class TezGroupedSplitsRecordReader<K, V> extends RecordReader<K, V> {
+
+  private final InputFormat<K, V> inputFormat;
+  private List<InputSplit> splits;
+  private TaskAttemptContext context;
+  private RecordReader<K, V> current = null;
+  private int nextSplit = 0;
+  private long lengthDone = 0;
+  private long currentLength = 0;
+  private long totalLength;
+
+  public TezGroupedSplitsRecordReader(InputFormat<K, V> inputFormat) {
+    this.inputFormat = inputFormat;
+  }
+
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context)
+      throws IOException, InterruptedException {
+    TezGroupedSplit groupedSplit = (TezGroupedSplit) split;
+    this.splits = groupedSplit.getWrappedSplits();
+    this.totalLength = groupedSplit.getLength();
+    this.context = context;
+    initNextRecordReader();
+  }
+
+  private boolean initNextRecordReader()
+      throws IOException, InterruptedException {
+    if (current != null) {
+      current.close();
+      current = null;
+      lengthDone += currentLength;
+    }
+    if (nextSplit == splits.size()) {
+      return false;
+    }
+    InputSplit split = splits.get(nextSplit++);
+    currentLength = split.getLength();
+    current = inputFormat.createRecordReader(split, context);
+    current.initialize(split, context);
+    return true;
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException, InterruptedException {
+    while (current == null || !current.nextKeyValue()) {
+      if (!initNextRecordReader()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public K getCurrentKey() throws IOException, InterruptedException {
+    return current.getCurrentKey();
+  }
+
+  @Override
+  public V getCurrentValue() throws IOException, InterruptedException {
+    return current.getCurrentValue();
+  }
+
+  @Override
+  public float getProgress() throws IOException, InterruptedException {
+    if (totalLength == 0) {
+      return current == null ? 1.0f : (float) nextSplit / splits.size();
+    }
+    float done = lengthDone;
+    if (current != null) {
+      done += current.getProgress() * currentLength;
+    }
+    return Math.min(1.0f, done / totalLength);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (current != null) {
+      current.close();
+      current = null;
+    }
+  }
+}
@@ -27,8 +27,10 @@ import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.tez.common.TezEngineTaskContext;
 import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.engine.api.BatchedOutput;
 import org.apache.tez.engine.api.Master;
 import org.apache.tez.engine.api.Output;
+import org.apache.tez.engine.api.RecordBatch;
 import org.apache.tez.engine.records.OutputContext;
 import org.apache.tez.mapreduce.processor.MRTask;
 import org.apache.tez.mapreduce.processor.MRTaskReporter;
@@ -41,7 +43,7 @@ import org.apache.tez.mapreduce.processor.MRTaskReporter;
  * {@link OutputFormat} implementations. 
  */
 @SuppressWarnings({ "unchecked", "rawtypes" })
-public class SimpleOutput implements Output {
+public class SimpleOutput implements BatchedOutput {
 
   private MRTask task;
   
@@ -156,6 +158,29 @@ public class SimpleOutput implements Output {
 
   }
 
+  @Override
+  public void writeBatch(RecordBatch batch)
+      throws IOException, InterruptedException {
+
+    reporter.progress();
+    long bytesOutPrev = getOutputBytes();
+
+    int size = batch.size();
+    if (useNewApi) {
+      for (int i = 0; i < size; ++i) {
+        newRecordWriter.write(batch.getKey(i), batch.getValue(i));
+      }
+    } else {
+      for (int i = 0; i < size; ++i) {
+        oldRecordWriter.write(batch.getKey(i), batch.getValue(i));
+      }
+    }
+
+    long bytesOutCurr = getOutputBytes();
+    fileOutputByteCounter.increment(bytesOutCurr - bytesOutPrev);
+    outputRecordCounter.increment(size);
+  }
+
   public void close() throws IOException, InterruptedException {
     reporter.progress();
     long bytesOutPrev = getOutputBytes();
@@ -19,11 +19,14 @@
 package org.apache.tez.mapreduce.processor;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
@@ -53,21 +56,27 @@ import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.yarn.util.ResourceCalculatorProcessTree;
 import org.apache.tez.common.Constants;
+import org.apache.tez.common.ContainerExit;
 import org.apache.tez.common.RunningTaskContext;
 import org.apache.tez.common.TezEngineTaskContext;
+import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezTaskStatus;
 import org.apache.tez.common.TezTaskUmbilicalProtocol;
 import org.apache.tez.common.TezTaskStatus.Phase;
 import org.apache.tez.common.TezTaskStatus.State;
 import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TaskPhaseCounter;
 import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.common.records.ProceedToCompletionResponse;
 import org.apache.tez.dag.records.TezDAGID;
 import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.engine.api.Input;
 import org.apache.tez.engine.api.Master;
+import org.apache.tez.engine.api.Output;
 import org.apache.tez.engine.common.sort.impl.TezRawKeyValueIterator;
 import org.apache.tez.engine.records.OutputContext;
+import org.apache.tez.engine.runtime.RuntimeUtils;
 import org.apache.tez.mapreduce.combine.MRCombiner;
 import org.apache.tez.mapreduce.hadoop.IDConverter;
 import org.apache.tez.mapreduce.hadoop.MRConfig;
@@ -171,6 +180,10 @@ extends RunningTaskContext {
   public TezTaskUmbilicalProtocol getUmbilical() {
     return ((TezTaskReporterImpl)reporter).getUmbilical();
   }
+
+  private TezTaskReporterImpl getTezReporter() {
+    return (TezTaskReporterImpl)reporter;
+  }
   
   public void initTask(JobConf job, TezDAGID dagId,
       MRTaskReporter mrReporter,
@@ -261,6 +274,70 @@ extends RunningTaskContext {
   }
 
   public TezCounters getCounters() { return counters; }
+
+  /**
+   * Account the time elapsed since <code>startMillis</code> to a phase of
+   * the task. The AM aggregates these into per-vertex histograms.
+   */
+  protected void addPhaseTime(TaskPhaseCounter phase, long startMillis) {
+    counters.findCounter(phase).increment(
+        System.currentTimeMillis() - startMillis);
+  }
+
+  /**
+   * Initialize the inputs of the task, then its outputs. With more than one
+   * input they are initialized concurrently, up to
+   * {@link TezJobConfig#TEZ_ENGINE_TASK_IO_INIT_THREADS} at a time, see
+   * {@link RuntimeUtils#initializeConcurrently(List, int)}. The outputs are
+   * initialized once the inputs are done, so that e.g. the buffer of a
+   * sorted output is not allocated while a shuffle holds its memory.
+   */
+  protected void initializeInputsAndOutputs(Input[] ins, Output[] outs)
+      throws IOException, InterruptedException {
+    List<Callable<Void>> initializers =
+        new ArrayList<Callable<Void>>(ins.length);
+    for (final Input in : ins) {
+      initializers.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          initializeInput(in);
+          return null;
+        }
+      });
+    }
+    RuntimeUtils.initializeConcurrently(initializers,
+        jobConf.getInt(TezJobConfig.TEZ_ENGINE_TASK_IO_INIT_THREADS,
+            TezJobConfig.DEFAULT_TEZ_ENGINE_TASK_IO_INIT_THREADS));
+    for (Output out : outs) {
+      initializeOutput(out);
+    }
+  }
+
+  private void initializeInput(Input in)
+      throws IOException, InterruptedException {
+    long initStart = System.currentTimeMillis();
+    in.initialize(jobConf, getTaskReporter());
+    addPhaseTime(TaskPhaseCounter.INPUT_INIT_MILLIS, initStart);
+  }
+
+  private void initializeOutput(Output out)
+      throws IOException, InterruptedException {
+    long initStart = System.currentTimeMillis();
+    out.initialize(jobConf, getTaskReporter());
+    addPhaseTime(TaskPhaseCounter.OUTPUT_INIT_MILLIS, initStart);
+  }
+
+  /**
+   * @return the CPU time consumed so far by the current thread, or 0 if the
+   *         JVM does not support measuring it
+   */
+  protected static long getCurrentThreadCpuMillis() {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (!threadMXBean.isCurrentThreadCpuTimeSupported()) {
+      return 0;
+    }
+    return threadMXBean.getCurrentThreadCpuTime() / 1000000;
+  }
   
   /**
    * Return current phase of the task. 
@@ -316,13 +393,15 @@ extends RunningTaskContext {
  
   public void waitBeforeCompletion(MRTaskReporter reporter) throws IOException,
       InterruptedException {
-    TezTaskUmbilicalProtocol umbilical = getUmbilical();
     int retries = MAX_RETRIES;
     boolean readyToProceed = false;
+    long backoff = getMinPollInterval();
     while (!readyToProceed) {
+      long pollStart = System.currentTimeMillis();
       try {
+        // waits for the next heartbeat, which paces this loop
         ProceedToCompletionResponse response =
-            umbilical.proceedToCompletion(taskAttemptId);
+            getTezReporter().proceedToCompletion();
         if (LOG.isDebugEnabled()) {
           LOG.debug("Got readyToProceed: " + response);
         }
@@ -339,12 +418,39 @@ extends RunningTaskContext {
           throw ie;
         }
       }
-      synchronized(this) {
-        wait(1000l); // Check if ready to exit every second.
+      if (!readyToProceed) {
+        backoff = pausePoll(pollStart, backoff);
       }
     }
   }
 
+  private long getMinPollInterval() {
+    return jobConf.getLong(
+        TezJobConfig.TEZ_ENGINE_TASK_HEARTBEAT_MIN_INTERVAL_MS,
+        TezJobConfig.DEFAULT_TEZ_ENGINE_TASK_HEARTBEAT_MIN_INTERVAL_MS);
+  }
+
+  /**
+   * Pause between two polls of the AM. A poll normally waits for the next
+   * heartbeat, which paces the loop. A poll which came back sooner, because
+   * there is no communication thread or the AM could not be reached, is
+   * followed by a sleep which doubles up to the max heartbeat interval.
+   *
+   * @return the sleep after the next poll, if that comes back sooner too
+   */
+  private long pausePoll(long pollStart, long backoff)
+      throws InterruptedException {
+    long minInterval = getMinPollInterval();
+    long elapsed = System.currentTimeMillis() - pollStart;
+    if (elapsed >= minInterval) {
+      return minInterval;
+    }
+    Thread.sleep(Math.max(backoff, minInterval) - elapsed);
+    return Math.min(2 * backoff, Math.max(minInterval, jobConf.getLong(
+        TezJobConfig.TEZ_ENGINE_TASK_HEARTBEAT_MAX_INTERVAL_MS,
+        TezJobConfig.DEFAULT_TEZ_ENGINE_TASK_HEARTBEAT_MAX_INTERVAL_MS)));
+  }
+
   public void outputReady(MRTaskReporter reporter, OutputContext outputContext)
       throws IOException,
       InterruptedException {
@@ -403,13 +509,15 @@ extends RunningTaskContext {
           LOG.warn("Failure sending commit pending: " + 
               StringUtils.stringifyException(ie));
           if (--retries == 0) {
-            System.exit(67);
+            ContainerExit.exit(67, "Failure sending commit pending");
           }
         }
       }
       //wait for commit approval and commit
       // TODO EVENTUALLY - Commit is not required for map tasks. skip a couple of RPCs before exiting.
+      long commitStart = System.currentTimeMillis();
       commit(umbilical, reporter, committer);
+      addPhaseTime(TaskPhaseCounter.OUTPUT_COMMIT_MILLIS, commitStart);
     }
     taskDone.set(true);
     reporter.stopCommunicationThread();
@@ -437,7 +545,7 @@ extends RunningTaskContext {
       try {
         if (!getUmbilical().statusUpdate(taskAttemptId, status)) {
           LOG.warn("Parent died.  Exiting " + taskAttemptId);
-          System.exit(66);
+          ContainerExit.exit(66, "Parent died");
         }
         status.clearStatus();
         return;
@@ -470,29 +578,33 @@ extends RunningTaskContext {
       org.apache.hadoop.mapreduce.OutputCommitter committer
       ) throws IOException {
     int retries = MAX_RETRIES;
+    long backoff = getMinPollInterval();
     while (true) {
+      long pollStart = System.currentTimeMillis();
       try {
-        while (!umbilical.canCommit(taskAttemptId)) {
-          // This will loop till the AM asks for the task to be killed. As
-          // against, the AM sending a signal to the task to kill itself
-          // gracefully.
-          try {
-            Thread.sleep(1000);
-          } catch(InterruptedException ie) {
-            //ignore
-          }
-          reporter.setProgressFlag();
+        // Each check waits for the next heartbeat, which carries the
+        // question to the AM.
+        if (getTezReporter().canCommit()) {
+          break;
         }
-        break;
+        // This will loop till the AM asks for the task to be killed. As
+        // against, the AM sending a signal to the task to kill itself
+        // gracefully.
+        reporter.setProgressFlag();
       } catch (IOException ie) {
         LOG.warn("Failure asking whether task can commit: " + 
             StringUtils.stringifyException(ie));
         if (--retries == 0) {
           //if it couldn't query successfully then delete the output
           discardOutput(taskAttemptContext);
-          System.exit(68);
+          ContainerExit.exit(68, "Failure asking whether task can commit");
         }
       }
+      try {
+        backoff = pausePoll(pollStart, backoff);
+      } catch (InterruptedException ie) {
+        //ignore
+      }
     }
 
     // task can Commit now  
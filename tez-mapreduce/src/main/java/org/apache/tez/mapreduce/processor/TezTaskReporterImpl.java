@@ -19,19 +19,28 @@
 package org.apache.tez.mapreduce.processor;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.ipc.ProtocolSignature;
 import org.apache.hadoop.util.Progress;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.StringUtils;
+import org.apache.tez.common.ContainerExit;
+import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezTaskUmbilicalProtocol;
 import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.common.records.ProceedToCompletionResponse;
 import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.engine.records.TezDependentTaskCompletionEvent;
+import org.apache.tez.engine.records.TezHeartbeatRequest;
+import org.apache.tez.engine.records.TezHeartbeatResponse;
 import org.apache.tez.engine.records.TezTaskDependencyCompletionEventsUpdate;
 
 @InterfaceAudience.Private
@@ -55,11 +64,45 @@ class TezTaskReporterImpl
    * Using AtomicBoolean since we need an atomic read & reset method. 
    */  
   private AtomicBoolean progressFlag = new AtomicBoolean(false);
-  
+
+  /*
+   * Everything below is guarded by lock. Status, events, and the proceed and
+   * commit queries all go to the AM in a single heartbeat. Callers which need
+   * an answer register their question and wait for the next heartbeat.
+   */
+  private final long minHeartbeatInterval;
+  private final long maxHeartbeatInterval;
+  private long heartbeatInterval;
+  private boolean heartbeatNow = false;
+  private long heartbeatsStarted = 0;
+  private long heartbeatsCompleted = 0;
+
+  // index of the next event to ask the AM for, -1 until events are wanted
+  private int nextEventIdx = -1;
+  private int maxEventsToFetch;
+  // index of the next event to hand out, as seen by the event fetcher
+  private int eventsHandedOut = 0;
+  private boolean eventsReset = false;
+  private final List<TezDependentTaskCompletionEvent> fetchedEvents =
+      new ArrayList<TezDependentTaskCompletionEvent>();
+
+  private boolean askProceedToCompletion = false;
+  private ProceedToCompletionResponse proceedToCompletionResponse = null;
+  private boolean askCanCommit = false;
+  private boolean canCommit = false;
+
   TezTaskReporterImpl(MRTask mrTask, TezTaskUmbilicalProtocol umbilical) {
     this.mrTask = mrTask;
     this.umbilical = umbilical;
     this.taskProgress = mrTask.getProgress();
+    this.minHeartbeatInterval = mrTask.jobConf.getLong(
+        TezJobConfig.TEZ_ENGINE_TASK_HEARTBEAT_MIN_INTERVAL_MS,
+        TezJobConfig.DEFAULT_TEZ_ENGINE_TASK_HEARTBEAT_MIN_INTERVAL_MS);
+    this.maxHeartbeatInterval = Math.max(minHeartbeatInterval,
+        mrTask.jobConf.getLong(
+            TezJobConfig.TEZ_ENGINE_TASK_HEARTBEAT_MAX_INTERVAL_MS,
+            TezJobConfig.DEFAULT_TEZ_ENGINE_TASK_HEARTBEAT_MAX_INTERVAL_MS));
+    this.heartbeatInterval = maxHeartbeatInterval;
   }
 
   // getters and setters for flag
@@ -129,6 +172,10 @@ class TezTaskReporterImpl
    * The communication thread handles communication with the parent (Task Tracker). 
    * It sends progress updates if progress has been made or if the task needs to 
    * let the parent know that it's alive. It also pings the parent to see if it's alive. 
+   * Every heartbeat also fetches new events, and asks whether the task can
+   * proceed to completion or commit, if anyone is waiting for that. The
+   * interval between heartbeats is short while there are new events or
+   * waiters, and backs off while there is nothing going on.
    */
   public void run() {
     final int MAX_RETRIES = 3;
@@ -140,16 +187,26 @@ class TezTaskReporterImpl
         done = false;
       }
       try {
-        boolean taskFound = true; // whether TT knows about this task
+        TezHeartbeatRequest request;
         // sleep for a bit
         synchronized(lock) {
           if (this.mrTask.taskDone.get()) {
             break;
           }
-          lock.wait(MRTask.PROGRESS_INTERVAL);
-        }
-        if (this.mrTask.taskDone.get()) {
-          break;
+          if (!heartbeatNow) {
+            lock.wait(heartbeatInterval);
+          }
+          if (this.mrTask.taskDone.get()) {
+            break;
+          }
+          heartbeatNow = false;
+          request = new TezHeartbeatRequest(this.mrTask.getTaskAttemptId());
+          if (nextEventIdx >= 0) {
+            request.setEventRange(nextEventIdx, maxEventsToFetch);
+          }
+          request.setAskProceedToCompletion(askProceedToCompletion);
+          request.setAskCanCommit(askCanCommit);
+          ++heartbeatsStarted;
         }
 
         if (sendProgress) {
@@ -159,23 +216,22 @@ class TezTaskReporterImpl
               taskProgress.get(),
               taskProgress.toString(), 
               this.mrTask.counters);
-          taskFound = 
-              umbilical.statusUpdate(
-                  this.mrTask.getTaskAttemptId(), this.mrTask.getStatus());
-          this.mrTask.getStatus().clearStatus();
+          request.setStatus(this.mrTask.getStatus());
         }
-        else {
-          // send ping 
-          taskFound = umbilical.ping(this.mrTask.getTaskAttemptId());
+        TezHeartbeatResponse response = umbilical.heartbeat(request);
+        if (sendProgress) {
+          this.mrTask.getStatus().clearStatus();
         }
 
         // if Task Tracker is not aware of our task ID (probably because it died and 
         // came back up), kill ourselves
-        if (!taskFound) {
+        if (response.shouldDie()) {
           MRTask.LOG.warn("Parent died.  Exiting " + this.mrTask.getTaskAttemptId());
           resetDoneFlag();
-          System.exit(66);
+          exit(66, "Parent died");
+          return;
         }
+        processResponse(request, response);
 
         sendProgress = resetProgressFlag(); 
         remainingRetries = MAX_RETRIES;
@@ -187,17 +243,130 @@ class TezTaskReporterImpl
           ReflectionUtils.logThreadInfo(MRTask.LOG, "Communication exception", 0);
           MRTask.LOG.warn("Last retry, killing " + this.mrTask.getTaskAttemptId());
           resetDoneFlag();
-          System.exit(65);
+          exit(65, "Lost contact with the parent");
+          return;
         }
       }
     }
     //Notify that we are done with the work
     resetDoneFlag();
   }
+
+  private void processResponse(TezHeartbeatRequest request,
+      TezHeartbeatResponse response) {
+    synchronized (lock) {
+      boolean busy = false;
+      TezTaskDependencyCompletionEventsUpdate update =
+          response.getEventsUpdate();
+      // ignore the events if the fetcher started over in the meantime
+      if (update != null && request.getFromEventIdx() == nextEventIdx) {
+        if (update.shouldReset()) {
+          fetchedEvents.clear();
+          nextEventIdx = 0;
+          eventsHandedOut = 0;
+          eventsReset = true;
+        }
+        TezDependentTaskCompletionEvent[] events =
+            update.getDependentTaskCompletionEvents();
+        for (TezDependentTaskCompletionEvent event : events) {
+          fetchedEvents.add(event);
+        }
+        nextEventIdx += events.length;
+        if (events.length > 0) {
+          busy = true;
+        }
+        if (events.length == request.getMaxEvents()) {
+          // there are probably more
+          heartbeatNow = true;
+        }
+      }
+      if (request.askProceedToCompletion()) {
+        proceedToCompletionResponse = response.getProceedToCompletion();
+      }
+      if (request.askCanCommit()) {
+        canCommit = response.canCommit();
+      }
+      if (askProceedToCompletion || askCanCommit) {
+        busy = true;
+      }
+      heartbeatInterval = busy ? minHeartbeatInterval :
+          Math.min(2 * heartbeatInterval, maxHeartbeatInterval);
+      ++heartbeatsCompleted;
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Wait for a heartbeat which starts after the call, and bring it forward if
+   * <code>now</code> is set. The caller must hold the lock.
+   *
+   * @return false if there is no communication thread to wait for, in which
+   *         case the caller should talk to the umbilical directly.
+   */
+  private boolean awaitHeartbeat(boolean now) {
+    long target = heartbeatsStarted + 1;
+    if (now) {
+      heartbeatNow = true;
+      lock.notifyAll();
+    }
+    while (heartbeatsCompleted < target) {
+      if (pingThread == null || !pingThread.isAlive()) {
+        return false;
+      }
+      try {
+        lock.wait(maxHeartbeatInterval);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Ask the AM whether the task can proceed to completion. Blocks until the
+   * next heartbeat has been answered; the first call brings the heartbeat
+   * forward, further calls go with the regular heartbeats.
+   */
+  ProceedToCompletionResponse proceedToCompletion() throws IOException {
+    synchronized (lock) {
+      boolean first = !askProceedToCompletion;
+      askProceedToCompletion = true;
+      if (!awaitHeartbeat(first)) {
+        askProceedToCompletion = false;
+        return umbilical.proceedToCompletion(mrTask.getTaskAttemptId());
+      }
+      ProceedToCompletionResponse response = proceedToCompletionResponse;
+      if (response.shouldDie() || response.readyToProceed()) {
+        askProceedToCompletion = false;
+      }
+      return response;
+    }
+  }
+
+  /**
+   * Ask the AM whether the task can commit. Blocks like
+   * {@link #proceedToCompletion()}.
+   */
+  boolean canCommit() throws IOException {
+    synchronized (lock) {
+      boolean first = !askCanCommit;
+      askCanCommit = true;
+      if (!awaitHeartbeat(first)) {
+        askCanCommit = false;
+        return umbilical.canCommit(mrTask.getTaskAttemptId());
+      }
+      if (canCommit) {
+        askCanCommit = false;
+      }
+      return canCommit;
+    }
+  }
+
   void resetDoneFlag() {
     synchronized (lock) {
       done = true;
-      lock.notify();
+      lock.notifyAll();
     }
   }
   public void startCommunicationThread() {
@@ -230,8 +399,33 @@ class TezTaskReporterImpl
   public TezTaskDependencyCompletionEventsUpdate getDependentTasksCompletionEvents(
       int fromEventIdx, int maxEventsToFetch,
       TezTaskAttemptID reduce) {
-    return umbilical.getDependentTasksCompletionEvents(
-        fromEventIdx, maxEventsToFetch, reduce);
+    synchronized (lock) {
+      if (nextEventIdx < 0 || fromEventIdx != eventsHandedOut) {
+        // first call, or the fetcher started over: from now on every
+        // heartbeat fetches events, and this call waits for the first batch
+        fetchedEvents.clear();
+        nextEventIdx = fromEventIdx;
+        eventsHandedOut = fromEventIdx;
+        eventsReset = false;
+        this.maxEventsToFetch = maxEventsToFetch;
+        if (!awaitHeartbeat(true)) {
+          nextEventIdx = -1;
+          return umbilical.getDependentTasksCompletionEvents(
+              fromEventIdx, maxEventsToFetch, reduce);
+        }
+      }
+      // hand out what the heartbeats have fetched so far
+      int count = Math.min(maxEventsToFetch, fetchedEvents.size());
+      List<TezDependentTaskCompletionEvent> batch =
+          fetchedEvents.subList(0, count);
+      TezDependentTaskCompletionEvent[] events =
+          batch.toArray(new TezDependentTaskCompletionEvent[count]);
+      batch.clear();
+      eventsHandedOut += count;
+      boolean reset = eventsReset;
+      eventsReset = false;
+      return new TezTaskDependencyCompletionEventsUpdate(events, reset);
+    }
   }
 
   @Override
@@ -246,10 +440,34 @@ class TezTaskReporterImpl
       umbilical.fatalError(mrTask.getTaskAttemptId(), cause);
     } catch (IOException ioe) {
       LOG.fatal("Failed to contact the tasktracker", ioe);
-      System.exit(-1);
+      exit(-1, "Failed to report fatal error");
     }
   }
 
+  /**
+   * Exit the container of the task. Returns if the container is not a JVM of
+   * its own, in which case the task is stopped by the container.
+   */
+  private static void exit(int status, String reason) {
+    try {
+      ContainerExit.exit(status, reason);
+    } catch (ContainerExit.ExitException e) {
+      LOG.info("Exiting container: " + reason);
+    }
+  }
+
+  @Override
+  public void publishKeyFilter(TezTaskAttemptID taskAttemptId,
+      BytesWritable filter) throws IOException {
+    umbilical.publishKeyFilter(taskAttemptId, filter);
+  }
+
+  @Override
+  public BytesWritable getVertexKeyFilter(TezTaskAttemptID taskAttemptId,
+      String vertexName) throws IOException {
+    return umbilical.getVertexKeyFilter(taskAttemptId, vertexName);
+  }
+
   public TezTaskUmbilicalProtocol getUmbilical() {
     return umbilical;
   }
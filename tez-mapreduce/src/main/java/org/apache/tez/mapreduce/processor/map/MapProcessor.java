@@ -26,9 +26,11 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.JobContext;
 import org.apache.hadoop.mapred.MapRunnable;
+import org.apache.hadoop.mapred.MapRunner;
 import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.RecordReader;
 import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.lib.IdentityMapper;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
 import org.apache.hadoop.mapreduce.split.JobSplit.TaskSplitIndex;
@@ -37,13 +39,17 @@ import org.apache.hadoop.mapreduce.split.SplitMetaInfoReaderTez;
 import org.apache.hadoop.util.Progress;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.tez.common.TezEngineTaskContext;
+import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezTaskStatus;
 import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TaskPhaseCounter;
 import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.engine.api.BatchedOutput;
 import org.apache.tez.engine.api.Input;
 import org.apache.tez.engine.api.Master;
 import org.apache.tez.engine.api.Output;
 import org.apache.tez.engine.api.Processor;
+import org.apache.tez.engine.api.RecordBatch;
 import org.apache.tez.engine.common.sort.SortingOutput;
 import org.apache.tez.mapreduce.hadoop.IDConverter;
 import org.apache.tez.mapreduce.hadoop.mapred.TaskAttemptContextImpl;
@@ -78,12 +84,14 @@ public class MapProcessor extends MRTask implements Processor {
       final Output[] outs)
           throws IOException, InterruptedException {
     
-    // Read split information.
-    TaskSplitMetaInfo[] allMetaInfo = readSplits();
-    TaskSplitMetaInfo thisTaskMetaInfo = allMetaInfo[tezEngineTaskContext
-        .getTaskAttemptId().getTaskID().getId()];
-    splitMetaInfo = new TaskSplitIndex(thisTaskMetaInfo.getSplitLocation(),
-        thisTaskMetaInfo.getStartOffset());
+    // Read split information, unless the AM sent the split with the task.
+    if (tezEngineTaskContext.getSplitPayload() == null) {
+      TaskSplitMetaInfo[] allMetaInfo = readSplits();
+      TaskSplitMetaInfo thisTaskMetaInfo = allMetaInfo[tezEngineTaskContext
+          .getTaskAttemptId().getTaskID().getId()];
+      splitMetaInfo = new TaskSplitIndex(thisTaskMetaInfo.getSplitLocation(),
+          thisTaskMetaInfo.getStartOffset());
+    }
     
     MRTaskReporter reporter = new MRTaskReporter(getTaskReporter());
     boolean useNewApi = jobConf.getUseNewMapper();
@@ -109,9 +117,7 @@ public class MapProcessor extends MRTask implements Processor {
       ((SortingOutput)out).setTask(this);
     }
     
-    
-    in.initialize(jobConf, getTaskReporter());
-    out.initialize(jobConf, getTaskReporter());
+    initializeInputsAndOutputs(ins, outs);
 
     // If there are no reducers then there won't be any sort. Hence the map 
     // phase will govern the entire attempt's progress.
@@ -129,11 +135,19 @@ public class MapProcessor extends MRTask implements Processor {
     }
     SimpleInput input = (SimpleInput)in;
     
-    if (useNewApi) {
+    long processorStart = System.currentTimeMillis();
+    long processorCpuStart = getCurrentThreadCpuMillis();
+    if (!useNewApi && out instanceof BatchedOutput
+        && isIdentityMapper(jobConf)) {
+      runIdentityMapper(jobConf, input, (BatchedOutput)out);
+    } else if (useNewApi) {
       runNewMapper(jobConf, reporter, input, out, getTaskReporter());
     } else {
       runOldMapper(jobConf, reporter, input, out, getTaskReporter());
     }
+    addPhaseTime(TaskPhaseCounter.PROCESSOR_MILLIS, processorStart);
+    getCounters().findCounter(TaskPhaseCounter.PROCESSOR_CPU_MILLIS).increment(
+        getCurrentThreadCpuMillis() - processorCpuStart);
 
     done(out.getOutputContext(), reporter);
   }
@@ -143,6 +157,47 @@ public class MapProcessor extends MRTask implements Processor {
 
   }
   
+  /**
+   * @return true if the job maps with the old API identity mapper, whose
+   *         records need not go through the mapper one by one. Record
+   *         readers of the new API reuse their own key and value objects, so
+   *         their records would have to be copied into a batch, which costs
+   *         more than mapping them one by one.
+   */
+  static boolean isIdentityMapper(JobConf job) {
+    return job.getMapRunnerClass() == MapRunner.class
+        && job.getMapperClass() == IdentityMapper.class;
+  }
+
+  /**
+   * Map with the identity mapper by passing the records of the input to the
+   * output a batch at a time.
+   */
+  void runIdentityMapper(
+      final JobConf job,
+      final SimpleInput input,
+      final BatchedOutput output
+      ) throws IOException, InterruptedException {
+    RecordBatch batch = new RecordBatch(
+        job.getInt(TezJobConfig.TEZ_ENGINE_RECORD_BATCH_SIZE,
+            TezJobConfig.DEFAULT_TEZ_ENGINE_RECORD_BATCH_SIZE));
+    try {
+      while (input.readBatch(batch)) {
+        output.writeBatch(batch);
+      }
+      mapPhase.complete();
+      // start the sort phase only if there are reducers
+      if (tezEngineTaskContext.getOutputSpecList().get(0).getNumOutputs()
+          > 0) {
+        setPhase(TezTaskStatus.Phase.SORT);
+      }
+      this.statusUpdate();
+    } finally {
+      input.close();
+      output.close();
+    }
+  }
+
   void runOldMapper(
       final JobConf job,
       final MRTaskReporter reporter,
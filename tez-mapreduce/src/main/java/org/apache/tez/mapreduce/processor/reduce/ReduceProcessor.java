@@ -38,6 +38,7 @@ import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezTaskStatus;
 import org.apache.tez.common.TezTaskUmbilicalProtocol;
 import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TaskPhaseCounter;
 import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.engine.api.Input;
 import org.apache.tez.engine.api.Master;
@@ -117,8 +118,7 @@ implements Processor {
       ((SortingOutput)out).setTask(this);
     }
 
-    in.initialize(jobConf, getTaskReporter());
-    out.initialize(jobConf, getTaskReporter());
+    initializeInputsAndOutputs(ins, outs);
 
     sortPhase  = getProgress().addPhase("sort");
     reducePhase = getProgress().addPhase("reduce");
@@ -146,6 +146,8 @@ implements Processor {
     }
     ShuffledMergedInput shuffleInput = (ShuffledMergedInput)in;
 
+    long processorStart = System.currentTimeMillis();
+    long processorCpuStart = getCurrentThreadCpuMillis();
     if (useNewApi) {
       try {
         runNewReducer(
@@ -161,6 +163,9 @@ implements Processor {
           jobConf, (TezTaskUmbilicalProtocol)getUmbilical(), reporter, 
           shuffleInput, comparator, keyClass, valueClass, out);
     }
+    addPhaseTime(TaskPhaseCounter.PROCESSOR_MILLIS, processorStart);
+    getCounters().findCounter(TaskPhaseCounter.PROCESSOR_CPU_MILLIS).increment(
+        getCurrentThreadCpuMillis() - processorCpuStart);
     
     done(out.getOutputContext(), reporter);
   }
@@ -24,7 +24,10 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.crypto.SecretKey;
 
@@ -45,9 +48,11 @@ import org.apache.hadoop.security.Credentials;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.StringUtils;
+import org.apache.tez.common.ContainerExit;
 import org.apache.tez.common.TezEngineTaskContext;
 import org.apache.tez.common.TezJobConfig;
 import org.apache.tez.common.TezTaskUmbilicalProtocol;
+import org.apache.tez.dag.records.TezVertexID;
 import org.apache.tez.engine.api.Input;
 import org.apache.tez.engine.api.Master;
 import org.apache.tez.engine.api.Output;
@@ -68,6 +73,14 @@ public class MRRuntimeTask extends RuntimeTask {
 
   private MRTask mrTask;
 
+  // The parsed configuration of every vertex which ran a task in this JVM,
+  // by the container conf it was created from, so that tasks reusing a
+  // container do not parse the job.xml again. The vertex confs are never
+  // modified, tasks work on copies.
+  private static final
+      Map<Configuration, Map<TezVertexID, Configuration>> vertexConfs =
+          new WeakHashMap<Configuration, Map<TezVertexID, Configuration>>();
+
   public MRRuntimeTask(TezEngineTaskContext taskContext, Processor processor,
       Input[] inputs, Output[] outputs) {
     super(taskContext, processor, inputs, outputs);
@@ -79,9 +92,8 @@ public class MRRuntimeTask extends RuntimeTask {
 
     DeprecatedKeys.init();
 
-    Configuration mrConf = new Configuration(conf);
-    mrConf.addResource(MRJobConfig.JOB_CONF_FILE);
-    Configuration taskConf = MultiStageMRConfigUtil.getConfForVertex(mrConf,
+    Configuration taskConf = getVertexConf(conf,
+        taskContext.getTaskAttemptId().getTaskID().getVertexID(),
         taskContext.getVertexName());
 
     // TODO Avoid all this extra config manipulation.
@@ -96,6 +108,7 @@ public class MRRuntimeTask extends RuntimeTask {
     // vertex. A solution like this may be more practical once it's possible to
     // submit configuration parameters to the AM and effectively tasks via RPC.
 
+    // copies the parsed properties of the vertex conf, nothing is read again
     final JobConf job = new JobConf(taskConf);
     job.set(MRJobConfig.VERTEX_NAME, taskContext.getVertexName());
 
@@ -110,6 +123,29 @@ public class MRRuntimeTask extends RuntimeTask {
     processor.initialize(this.conf, this.master);
   }
 
+  private static synchronized Configuration getVertexConf(
+      Configuration conf, TezVertexID vertexId, String vertexName) {
+    // Configuration does not override equals, the container conf is the key
+    Map<TezVertexID, Configuration> confs = vertexConfs.get(conf);
+    if (confs == null) {
+      confs = new HashMap<TezVertexID, Configuration>();
+      vertexConfs.put(conf, confs);
+    }
+    Configuration vertexConf = confs.get(vertexId);
+    if (vertexConf == null) {
+      long start = System.currentTimeMillis();
+      Configuration mrConf = new Configuration(conf);
+      mrConf.addResource(MRJobConfig.JOB_CONF_FILE);
+      vertexConf = MultiStageMRConfigUtil.getConfForVertex(mrConf, vertexName);
+      // load the resources now, copies of a loaded conf do not parse them
+      vertexConf.size();
+      confs.put(vertexId, vertexConf);
+      LOG.info("Loaded configuration of vertex " + vertexId + " in "
+          + (System.currentTimeMillis() - start) + " ms");
+    }
+    return vertexConf;
+  }
+
   @Override
   public void run() throws IOException, InterruptedException {
     TezTaskUmbilicalProtocol umbilical = (TezTaskUmbilicalProtocol) master;
@@ -117,7 +153,14 @@ public class MRRuntimeTask extends RuntimeTask {
       super.run();
     } catch (FSError e) {
       throw e;
+    } catch (ContainerExit.ExitException e) {
+      throw e;
     } catch (Exception exception) {
+      if (ContainerExit.isExiting()) {
+        // stopped by the exit of its container, which reports nothing more
+        LOG.info("Task stopped by the exit of its container: " + exception);
+        return;
+      }
       LOG.warn("Exception running child : "
           + StringUtils.stringifyException(exception));
       try {
@@ -22,6 +22,7 @@ import java.io.IOException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.ipc.ProtocolSignature;
 import org.apache.tez.common.ContainerContext;
 import org.apache.tez.common.ContainerTask;
@@ -30,6 +31,8 @@ import org.apache.tez.common.TezTaskUmbilicalProtocol;
 import org.apache.tez.common.records.ProceedToCompletionResponse;
 import org.apache.tez.dag.records.TezTaskAttemptID;
 import org.apache.tez.engine.records.OutputContext;
+import org.apache.tez.engine.records.TezHeartbeatRequest;
+import org.apache.tez.engine.records.TezHeartbeatResponse;
 import org.apache.tez.engine.records.TezTaskDependencyCompletionEventsUpdate;
 
 public class TestUmbilicalProtocol implements TezTaskUmbilicalProtocol {
@@ -132,6 +135,18 @@ public class TestUmbilicalProtocol implements TezTaskUmbilicalProtocol {
     LOG.info("Got 'fatal-error' from " + taskId + ": message=" + message);
   }
 
+  @Override
+  public TezHeartbeatResponse heartbeat(TezHeartbeatRequest request)
+      throws IOException, InterruptedException {
+    LOG.info("Got 'heartbeat' " + request);
+    TezHeartbeatResponse response = new TezHeartbeatResponse();
+    if (request.askProceedToCompletion()) {
+      response.setProceedToCompletion(proceedToCompletionResponse);
+    }
+    response.setCanCommit(true);
+    return response;
+  }
+
   @Override
   public void outputReady(TezTaskAttemptID taskAttemptId,
       OutputContext outputContext) throws IOException {
@@ -145,4 +160,15 @@ public class TestUmbilicalProtocol implements TezTaskUmbilicalProtocol {
     return proceedToCompletionResponse;
   }
 
+  @Override
+  public void publishKeyFilter(TezTaskAttemptID taskAttemptId,
+      BytesWritable filter) throws IOException {
+  }
+
+  @Override
+  public BytesWritable getVertexKeyFilter(TezTaskAttemptID taskAttemptId,
+      String vertexName) throws IOException {
+    return null;
+  }
+
 }
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.mapreduce.hadoop;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.tez.mapreduce.input.TezGroupedSplit;
+import org.apache.tez.mapreduce.input.TezGroupedSplitsRecordReader;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestInputSplitGenerator {
+
+  private Configuration conf;
+  private FileSystem localFs;
+  private Path workDir;
+
+  @Before
+  public void setup() throws IOException {
+    conf = new Configuration();
+    localFs = FileSystem.getLocal(conf);
+    workDir = new Path(System.getProperty("test.build.data", "/tmp"),
+        "TestInputSplitGenerator").makeQualified(localFs);
+    localFs.delete(workDir, true);
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    localFs.delete(workDir, true);
+  }
+
+  private FileSplit split(String name, long length, String... hosts) {
+    return new FileSplit(new Path(workDir, name), 0, length, hosts);
+  }
+
+  @Test
+  public void testGroupSplits() throws Exception {
+    List<InputSplit> splits = new ArrayList<InputSplit>();
+    splits.add(split("a", 10, "h1"));
+    splits.add(split("b", 10, "h1"));
+    splits.add(split("c", 10, "h2"));
+    splits.add(split("d", 10, "h1"));
+    splits.add(split("e", 10));
+    splits.add(split("f", 10));
+
+    List<InputSplit> groups =
+        InputSplitGenerator.groupSplits(splits, 25, conf);
+    Assert.assertEquals(3, groups.size());
+
+    // the splits on h1 make a full group on that node
+    TezGroupedSplit onNode = (TezGroupedSplit) groups.get(0);
+    Assert.assertEquals(3, onNode.getWrappedSplits().size());
+    Assert.assertEquals(30, onNode.getLength());
+    Assert.assertArrayEquals(new String[] { "h1" }, onNode.getLocations());
+    Assert.assertNull(onNode.getRack());
+
+    // the remainder of the rack is a single split, which is kept as it is
+    Assert.assertSame(splits.get(2), groups.get(1));
+
+    // splits without locations are grouped together
+    TezGroupedSplit noLocation = (TezGroupedSplit) groups.get(2);
+    Assert.assertEquals(2, noLocation.getWrappedSplits().size());
+    Assert.assertEquals(20, noLocation.getLength());
+    Assert.assertEquals(0, noLocation.getLocations().length);
+  }
+
+  @Test
+  public void testGroupedSplitSerialization() throws Exception {
+    List<InputSplit> wrapped = new ArrayList<InputSplit>();
+    wrapped.add(split("a", 10, "h1"));
+    wrapped.add(split("b", 20, "h1"));
+    wrapped.add(new FileSplit(new Path(workDir, "c"), 5, 7, new String[0]));
+    TezGroupedSplit group =
+        new TezGroupedSplit(wrapped, new String[] { "h1" }, null, 37);
+    group.setConf(conf);
+
+    byte[] payload = InputSplitGenerator.writeSplit(group, conf);
+    TezGroupedSplit read = InputSplitGenerator.readSplit(payload, conf);
+    Assert.assertEquals(37, read.getLength());
+    Assert.assertEquals(3, read.getWrappedSplits().size());
+    for (int i = 0; i < wrapped.size(); ++i) {
+      FileSplit expected = (FileSplit) wrapped.get(i);
+      FileSplit actual = (FileSplit) read.getWrappedSplits().get(i);
+      Assert.assertEquals(expected.getPath(), actual.getPath());
+      Assert.assertEquals(expected.getStart(), actual.getStart());
+      Assert.assertEquals(expected.getLength(), actual.getLength());
+    }
+    // locations only matter to the AM and are not sent to the task
+    Assert.assertEquals(0, read.getLocations().length);
+  }
+
+  private FileSplit writeFile(String name, List<String> lines, int count)
+      throws IOException {
+    Path file = new Path(workDir, name);
+    FSDataOutputStream out = localFs.create(file);
+    try {
+      for (int i = 0; i < count; ++i) {
+        String line = name + i;
+        out.writeBytes(line + "\n");
+        lines.add(line);
+      }
+    } finally {
+      out.close();
+    }
+    return new FileSplit(file, 0, localFs.getFileStatus(file).getLen(),
+        new String[0]);
+  }
+
+  @Test
+  public void testGroupedSplitsRecordReader() throws Exception {
+    List<String> expected = new ArrayList<String>();
+    List<InputSplit> wrapped = new ArrayList<InputSplit>();
+    wrapped.add(writeFile("a", expected, 3));
+    // an empty split in between is skipped
+    wrapped.add(writeFile("b", expected, 0));
+    wrapped.add(writeFile("c", expected, 5));
+    long length = 0;
+    for (InputSplit split : wrapped) {
+      length += split.getLength();
+    }
+    TezGroupedSplit group = new TezGroupedSplit(wrapped, null, null, length);
+
+    TezGroupedSplitsRecordReader<LongWritable, Text> reader =
+        new TezGroupedSplitsRecordReader<LongWritable, Text>(
+            new TextInputFormat());
+    reader.initialize(group,
+        new TaskAttemptContextImpl(conf, new TaskAttemptID()));
+    List<String> lines = new ArrayList<String>();
+    float progress = 0;
+    try {
+      while (reader.nextKeyValue()) {
+        lines.add(reader.getCurrentValue().toString());
+        Assert.assertTrue(reader.getProgress() >= progress);
+        progress = reader.getProgress();
+      }
+    } finally {
+      reader.close();
+    }
+    Assert.assertEquals(expected, lines);
+    Assert.assertEquals(1.0f, reader.getProgress(), 0.0f);
+  }
+}
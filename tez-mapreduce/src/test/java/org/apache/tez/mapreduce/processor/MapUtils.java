@@ -33,6 +33,7 @@ import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.mapred.FileAlreadyExistsException;
 import org.apache.hadoop.mapred.FileInputFormat;
@@ -152,8 +153,16 @@ public class MapUtils {
         new FsPermission(JOB_FILE_PERMISSION));
 
     long offset = out.getPos();
-    Text.writeString(out, split.getClass().getName());
-    split.write(out);
+    Writable splitToWrite = split;
+    if (conf.getUseNewMapper()) {
+      // the new API reads splits of its own
+      FileSplit fileSplit = (FileSplit) split;
+      splitToWrite = new org.apache.hadoop.mapreduce.lib.input.FileSplit(
+          fileSplit.getPath(), fileSplit.getStart(), fileSplit.getLength(),
+          fileSplit.getLocations());
+    }
+    Text.writeString(out, splitToWrite.getClass().getName());
+    splitToWrite.write(out);
     out.close();
 
     String[] locations = split.getLocations();
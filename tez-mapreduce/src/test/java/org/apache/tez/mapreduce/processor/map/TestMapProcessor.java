@@ -19,7 +19,9 @@ package org.apache.tez.mapreduce.processor.map;
 
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -28,12 +30,16 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.tez.common.Constants;
 import org.apache.tez.common.InputSpec;
 import org.apache.tez.common.OutputSpec;
 import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.engine.api.Task;
 import org.apache.tez.engine.common.sort.impl.IFile;
 import org.apache.tez.engine.common.task.local.output.TezLocalTaskOutputFiles;
@@ -144,6 +150,89 @@ public class TestMapProcessor {
     reader.close();
   }
 
+  private List<String> readRecords(JobConf job, Path input)
+      throws IOException {
+    List<String> records = new ArrayList<String>();
+    SequenceFile.Reader reader = new SequenceFile.Reader(localFs, input, job);
+    try {
+      LongWritable key = new LongWritable();
+      Text value = new Text();
+      while (reader.next(key, value)) {
+        records.add(key.get() + "=" + value);
+      }
+    } finally {
+      reader.close();
+    }
+    return records;
+  }
+
+  @Test
+  public void testIdentityMapInBatches() throws Exception {
+    String vertexName = MultiStageMRConfigUtil.getInitialMapVertexName();
+    for (boolean useNewApi : new boolean[] { false, true }) {
+      localFs.delete(workDir, true);
+      JobConf jobConf = new JobConf(defaultConf);
+      setUpJobConf(jobConf);
+      Configuration conf =
+          MultiStageMRConfToTezTranslator.convertMRToLinearTez(jobConf);
+      conf.setInt(TezJobConfig.APPLICATION_ATTEMPT_ID, 0);
+      JobConf job = new JobConf(
+          MultiStageMRConfigUtil.getConfForVertex(conf, vertexName));
+      job.set(TezJobConfig.TASK_LOCAL_RESOURCE_DIR, new Path(workDir,
+          "localized-resources").toUri().toString());
+      job.setUseNewMapper(useNewApi);
+      job.setClass(MRJobConfig.INPUT_FORMAT_CLASS_ATTR,
+          org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat.class,
+          org.apache.hadoop.mapreduce.InputFormat.class);
+      // the 10 records of the input take several batches, the last not
+      // full. the new API maps them one by one
+      job.setInt(TezJobConfig.TEZ_ENGINE_RECORD_BATCH_SIZE, 3);
+      Assert.assertTrue(MapProcessor.isIdentityMapper(job));
+
+      Path input = new Path(workDir, "map0");
+      Task t = MapUtils.runMapProcessor(localFs, workDir, job, 0, input,
+          new TestUmbilicalProtocol(), vertexName,
+          Collections.singletonList(new InputSpec("NullVertex", 0,
+              SimpleInput.class.getName())),
+          Collections.singletonList(new OutputSpec("FakeVertex", 1,
+              LocalOnFileSorterOutput.class.getName())));
+      TezCounters counters = ((MapProcessor) t.getProcessor()).getCounters();
+      t.close();
+
+      // every record is written once, the reused objects of the record
+      // reader are not shared by the pairs of a batch
+      List<String> expected = readRecords(job, input);
+      mapOutputs.setConf(job);
+      IFile.Reader reader = new IFile.Reader(job, localFs,
+          mapOutputs.getInputFile(0), null, null);
+      LongWritable key = new LongWritable();
+      Text value = new Text();
+      DataInputBuffer keyBuf = new DataInputBuffer();
+      DataInputBuffer valueBuf = new DataInputBuffer();
+      List<String> written = new ArrayList<String>();
+      long prev = Long.MIN_VALUE;
+      try {
+        while (reader.nextRawKey(keyBuf)) {
+          reader.nextRawValue(valueBuf);
+          key.readFields(keyBuf);
+          value.readFields(valueBuf);
+          Assert.assertTrue(prev <= key.get());
+          prev = key.get();
+          written.add(key.get() + "=" + value);
+        }
+      } finally {
+        reader.close();
+      }
+      Collections.sort(expected);
+      Collections.sort(written);
+      Assert.assertEquals("new API " + useNewApi, expected, written);
+      Assert.assertEquals(expected.size(),
+          counters.findCounter(TaskCounter.MAP_INPUT_RECORDS).getValue());
+      Assert.assertEquals(expected.size(),
+          counters.findCounter(TaskCounter.MAP_OUTPUT_RECORDS).getValue());
+    }
+  }
+
   @Test
   @Ignore
   public void testMapProcessorWithInMemSort() throws Exception {
@@ -0,0 +1,273 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.mapreduce.processor.map;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.tez.common.Constants;
+import org.apache.tez.common.InputSpec;
+import org.apache.tez.common.OutputSpec;
+import org.apache.tez.common.TezJobConfig;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.engine.common.semijoin.KeyBloomFilter;
+import org.apache.tez.engine.common.sort.impl.IFile;
+import org.apache.tez.engine.common.task.local.output.TezLocalTaskOutputFiles;
+import org.apache.tez.engine.common.task.local.output.TezTaskOutput;
+import org.apache.tez.engine.lib.output.SemiJoinFilterBuildingOutput;
+import org.apache.tez.engine.lib.output.SemiJoinFilteredOutput;
+import org.apache.tez.mapreduce.TestUmbilicalProtocol;
+import org.apache.tez.mapreduce.hadoop.MultiStageMRConfToTezTranslator;
+import org.apache.tez.mapreduce.hadoop.MultiStageMRConfigUtil;
+import org.apache.tez.mapreduce.input.SimpleInput;
+import org.apache.tez.mapreduce.processor.MapUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSemiJoinOutputs {
+
+  private static final String SOURCE_VERTEX = "small";
+
+  private static JobConf defaultConf = new JobConf();
+  private static FileSystem localFs = null;
+  private static Path workDir = null;
+  static {
+    try {
+      defaultConf.set("fs.defaultFS", "file:///");
+      localFs = FileSystem.getLocal(defaultConf);
+      workDir =
+          new Path(new Path(System.getProperty("test.build.data", "/tmp")),
+                   "TestSemiJoinOutputs").makeQualified(localFs);
+      MapUtils.configureLocalDirs(defaultConf, workDir.toString());
+    } catch (IOException e) {
+      throw new RuntimeException("init failure", e);
+    }
+  }
+
+  /**
+   * Keeps the published filter and hands out a given one, as the AM does
+   * once the source vertex has succeeded.
+   */
+  private static class FilterUmbilical extends TestUmbilicalProtocol {
+    BytesWritable published = null;
+    BytesWritable vertexFilter = null;
+    String requestedVertex = null;
+
+    @Override
+    public void publishKeyFilter(TezTaskAttemptID taskAttemptId,
+        BytesWritable filter) throws IOException {
+      published = filter;
+    }
+
+    @Override
+    public BytesWritable getVertexKeyFilter(TezTaskAttemptID taskAttemptId,
+        String vertexName) throws IOException {
+      requestedVertex = vertexName;
+      return vertexFilter;
+    }
+  }
+
+  @Before
+  @After
+  public void cleanup() throws Exception {
+    localFs.delete(workDir, true);
+  }
+
+  private JobConf createJobConf(String vertexName) throws IOException {
+    JobConf jobConf = new JobConf(defaultConf);
+    jobConf.set(TezJobConfig.LOCAL_DIRS, workDir.toString());
+    jobConf.setClass(
+        Constants.TEZ_ENGINE_TASK_OUTPUT_MANAGER,
+        TezLocalTaskOutputFiles.class,
+        TezTaskOutput.class);
+    jobConf.setNumReduceTasks(1);
+
+    Configuration conf =
+        MultiStageMRConfToTezTranslator.convertMRToLinearTez(jobConf);
+    conf.setInt(TezJobConfig.APPLICATION_ATTEMPT_ID, 0);
+    JobConf job = new JobConf(
+        MultiStageMRConfigUtil.getConfForVertex(conf, vertexName));
+    job.set(TezJobConfig.TASK_LOCAL_RESOURCE_DIR, new Path(workDir,
+        "localized-resources").toUri().toString());
+    job.setInt(TezJobConfig.TEZ_ENGINE_SEMIJOIN_FILTER_BITS, 1 << 16);
+    job.set(TezJobConfig.TEZ_ENGINE_SEMIJOIN_FILTER_SOURCE_VERTEX,
+        SOURCE_VERTEX);
+    return job;
+  }
+
+  private void runMap(JobConf job, String vertexName, Path input,
+      FilterUmbilical umbilical, Class<?> outputClass) throws Exception {
+    // each map reads all files in the directory of its input
+    MapUtils.runMapProcessor(localFs, input.getParent(), job, 0, input,
+        umbilical,
+        vertexName,
+        Collections.singletonList(new InputSpec("NullVertex", 0,
+            SimpleInput.class.getName())),
+        Collections.singletonList(new OutputSpec("FakeVertex", 1,
+            outputClass.getName()))).close();
+  }
+
+  private List<Long> readInput(JobConf job, Path input) throws IOException {
+    List<Long> keys = new ArrayList<Long>();
+    SequenceFile.Reader reader = new SequenceFile.Reader(localFs, input, job);
+    try {
+      LongWritable key = new LongWritable();
+      Text value = new Text();
+      while (reader.next(key, value)) {
+        keys.add(key.get());
+      }
+    } finally {
+      reader.close();
+    }
+    return keys;
+  }
+
+  private List<Long> readOutput(JobConf job) throws IOException {
+    TezTaskOutput mapOutputs = new TezLocalTaskOutputFiles();
+    mapOutputs.setConf(job);
+    List<Long> keys = new ArrayList<Long>();
+    IFile.Reader reader = new IFile.Reader(job, localFs,
+        mapOutputs.getOutputFile(), null, null);
+    try {
+      LongWritable key = new LongWritable();
+      DataInputBuffer keyBuf = new DataInputBuffer();
+      DataInputBuffer valueBuf = new DataInputBuffer();
+      while (reader.nextRawKey(keyBuf)) {
+        reader.nextRawValue(valueBuf);
+        key.readFields(keyBuf);
+        keys.add(key.get());
+      }
+    } finally {
+      reader.close();
+    }
+    return keys;
+  }
+
+  private static boolean mightContain(KeyBloomFilter filter, long key)
+      throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    new LongWritable(key).write(out);
+    return filter.mightContain(out.getData(), 0, out.getLength());
+  }
+
+  private static KeyBloomFilter readFilter(BytesWritable serialized)
+      throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(serialized.getBytes(), serialized.getLength());
+    KeyBloomFilter filter = new KeyBloomFilter();
+    filter.readFields(in);
+    return filter;
+  }
+
+  @Test
+  public void testBuildAndApplyFilter() throws Exception {
+    String vertexName = MultiStageMRConfigUtil.getInitialMapVertexName();
+    JobConf job = createJobConf(vertexName);
+
+    // the small side publishes a filter over the keys it writes
+    FilterUmbilical buildUmbilical = new FilterUmbilical();
+    Path buildInput = new Path(workDir, "build/input");
+    runMap(job, vertexName, buildInput, buildUmbilical,
+        SemiJoinFilterBuildingOutput.class);
+    Assert.assertNotNull(buildUmbilical.published);
+    KeyBloomFilter filter = readFilter(buildUmbilical.published);
+    List<Long> buildKeys = readInput(job, buildInput);
+    for (long key : buildKeys) {
+      Assert.assertTrue(mightContain(filter, key));
+    }
+    // all records are still written
+    Assert.assertEquals(buildKeys.size(), readOutput(job).size());
+
+    // the large side drops the keys which are not in the filter
+    FilterUmbilical probeUmbilical = new FilterUmbilical();
+    probeUmbilical.vertexFilter = buildUmbilical.published;
+    Path probeInput = new Path(workDir, "probe/input");
+    runMap(job, vertexName, probeInput, probeUmbilical,
+        SemiJoinFilteredOutput.class);
+    Assert.assertEquals(SOURCE_VERTEX, probeUmbilical.requestedVertex);
+    List<Long> expected = new ArrayList<Long>();
+    for (long key : readInput(job, probeInput)) {
+      if (mightContain(filter, key)) {
+        expected.add(key);
+      }
+    }
+    List<Long> written = readOutput(job);
+    Collections.sort(expected);
+    Assert.assertEquals(expected, written);
+  }
+
+  @Test
+  public void testFilterOverKnownKeys() throws Exception {
+    String vertexName = MultiStageMRConfigUtil.getInitialMapVertexName();
+    JobConf job = createJobConf(vertexName);
+
+    // keys below 500, the inputs hold random keys below 1000
+    KeyBloomFilter filter = new KeyBloomFilter(1 << 16, 5);
+    DataOutputBuffer out = new DataOutputBuffer();
+    for (long key = 0; key < 500; ++key) {
+      out.reset();
+      new LongWritable(key).write(out);
+      filter.add(out.getData(), 0, out.getLength());
+    }
+    out.reset();
+    filter.write(out);
+    FilterUmbilical umbilical = new FilterUmbilical();
+    umbilical.vertexFilter = new BytesWritable(out.getData());
+    umbilical.vertexFilter.setSize(out.getLength());
+
+    Path input = new Path(workDir, "probe/input");
+    runMap(job, vertexName, input, umbilical, SemiJoinFilteredOutput.class);
+    List<Long> expected = new ArrayList<Long>();
+    for (long key : readInput(job, input)) {
+      if (key < 500 || mightContain(filter, key)) {
+        expected.add(key);
+      }
+    }
+    Collections.sort(expected);
+    Assert.assertEquals(expected, readOutput(job));
+  }
+
+  @Test
+  public void testNoFilterWhileSourceRuns() throws Exception {
+    String vertexName = MultiStageMRConfigUtil.getInitialMapVertexName();
+    JobConf job = createJobConf(vertexName);
+
+    // the AM has no filter yet, nothing is dropped
+    FilterUmbilical umbilical = new FilterUmbilical();
+    Path input = new Path(workDir, "probe/input");
+    runMap(job, vertexName, input, umbilical, SemiJoinFilteredOutput.class);
+    Assert.assertEquals(SOURCE_VERTEX, umbilical.requestedVertex);
+    Assert.assertEquals(readInput(job, input).size(),
+        readOutput(job).size());
+  }
+}
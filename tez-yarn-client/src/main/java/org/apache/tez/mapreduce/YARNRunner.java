@@ -304,10 +304,18 @@ public class YARNRunner implements ClientProtocol {
     }
 
     // TODO gross hack
-    for (String s : new String[] {
-        MRJobConfig.JOB_SPLIT,
-        MRJobConfig.JOB_SPLIT_METAINFO,
-        MRJobConfig.APPLICATION_TOKENS_FILE }) {
+    // the split files are not read by the tasks if the AM generates splits
+    String[] resources;
+    if (jobConf.getBoolean(TezConfiguration.DAG_AM_GENERATE_SPLITS,
+        TezConfiguration.DAG_AM_GENERATE_SPLITS_DEFAULT)) {
+      resources = new String[] { MRJobConfig.APPLICATION_TOKENS_FILE };
+    } else {
+      resources = new String[] {
+          MRJobConfig.JOB_SPLIT,
+          MRJobConfig.JOB_SPLIT_METAINFO,
+          MRJobConfig.APPLICATION_TOKENS_FILE };
+    }
+    for (String s : resources) {
       localResources.put(s,
           createApplicationResource(defaultFileContext,
               new Path(jobSubmitDir, s), LocalResourceType.FILE));
@@ -556,8 +564,15 @@ public class YARNRunner implements ClientProtocol {
     Map<String, String> mapEnv = new HashMap<String, String>();
     setupMapReduceEnv(jobConf, mapEnv, true);
 
-    TaskLocationHint[] inputSplitLocations =
-        getMapLocationHintsFromInputSplits(jobId, fs, jobConf, jobSubmitDir);
+    TaskLocationHint[] inputSplitLocations = null;
+    if (jobConf.getBoolean(TezConfiguration.DAG_AM_GENERATE_SPLITS,
+        TezConfiguration.DAG_AM_GENERATE_SPLITS_DEFAULT)) {
+      // the AM computes the splits and their locations again
+      dag.addConfiguration(TezConfiguration.DAG_AM_GENERATE_SPLITS, "true");
+    } else {
+      inputSplitLocations = getMapLocationHintsFromInputSplits(jobId, fs,
+          jobConf, jobSubmitDir);
+    }
 
     Resource mapResource = BuilderUtils.newResource(
         jobConf.getInt(MRJobConfig.MAP_MEMORY_MB,